@@ -1,6 +1,8 @@
 package com.vividsolutions.jump.datastore.postgis;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.postgresql.PGConnection;
 
@@ -18,14 +20,53 @@ import com.vividsolutions.jump.io.FeatureInputStream;
 public class PostgisDSConnection
     implements DataStoreConnection
 {
+  /**
+   * Number of rows fetched at a time by the queries of a connection, unless
+   * set otherwise with {@link #setFetchSize(int)}.
+   */
+  public static final int DEFAULT_FETCH_SIZE = 1000;
+
+  /**
+   * Maximum number of connections opened for the cursor streams. The
+   * streams created while all of them are in use read their result at once
+   * through the shared connection.
+   */
+  public static final int MAX_CURSOR_CONNECTIONS = 4;
+
   private PostgisDSMetadata dbMetadata;
   private Connection connection;
+  private int fetchSize = DEFAULT_FETCH_SIZE;
+
+  // parameters used to open the connections of the cursor streams, dropped
+  // once MAX_CURSOR_CONNECTIONS of them have been opened
+  private String url;
+  private String user;
+  private String password;
+  private final List<Connection> idleCursorConnections = new ArrayList<Connection>();
+  private int cursorConnectionCount = 0;
+  private boolean closed = false;
 
+  /**
+   * Creates a connection whose queries are read at once, unless conn is
+   * already outside autocommit mode.
+   */
   public PostgisDSConnection(Connection conn) {
     connection = conn;
     dbMetadata = new PostgisDSMetadata(this);
   }
 
+  /**
+   * Creates a connection whose queries are read through cursors, each on a
+   * connection of its own opened with url, user and password. The
+   * connections are reused by the next streams once a stream is closed.
+   */
+  public PostgisDSConnection(Connection conn, String url, String user, String password) {
+    this(conn);
+    this.url = url;
+    this.user = user;
+    this.password = password;
+  }
+
   public Connection getConnection()
   {
     return connection;
@@ -36,6 +77,74 @@ public class PostgisDSConnection
     return dbMetadata;
   }
 
+  /**
+   * Sets the number of rows fetched from the server at a time when reading
+   * the result of a query, through a cursor.
+   * @param fetchSize the number of rows, or 0 to read each result at once
+   */
+  public void setFetchSize(int fetchSize)
+  {
+    this.fetchSize = fetchSize;
+  }
+
+  public int getFetchSize()
+  {
+    return fetchSize;
+  }
+
+  /**
+   * Returns a connection outside autocommit mode for a stream reading
+   * through a cursor, or the shared connection if this connection was
+   * created without the parameters needed to open others, or if
+   * {@link #MAX_CURSOR_CONNECTIONS} are already in use.
+   */
+  synchronized Connection takeCursorConnection() throws SQLException
+  {
+    if (closed)
+      return connection;
+    while (! idleCursorConnections.isEmpty()) {
+      Connection conn = idleCursorConnections.remove(idleCursorConnections.size() - 1);
+      if (! conn.isClosed())
+        return conn;
+      cursorConnectionCount--;
+    }
+    if (url == null || cursorConnectionCount >= MAX_CURSOR_CONNECTIONS)
+      return connection;
+    Connection conn = DriverManager.getConnection(url, user, password);
+    conn.setAutoCommit(false);
+    cursorConnectionCount++;
+    if (cursorConnectionCount == MAX_CURSOR_CONNECTIONS) {
+      url = null;
+      user = null;
+      password = null;
+    }
+    return conn;
+  }
+
+  /**
+   * Ends the read-only transaction of a stream and keeps its connection
+   * for the next one.
+   */
+  synchronized void releaseCursorConnection(Connection conn) throws SQLException
+  {
+    if (conn == connection)
+      return;
+    try {
+      conn.rollback();
+    }
+    catch (SQLException ex) {
+      cursorConnectionCount--;
+      conn.close();
+      throw ex;
+    }
+    if (closed) {
+      cursorConnectionCount--;
+      conn.close();
+    }
+    else
+      idleCursorConnections.add(conn);
+  }
+
     public FeatureInputStream execute(Query query) {
         if (query instanceof FilterQuery) {
             try {
@@ -68,14 +177,14 @@ public class PostgisDSConnection
     PostgisSQLBuilder builder = new PostgisSQLBuilder(srid, colNames);
     String queryString = builder.getSQL(query);
 
-    PostgisFeatureInputStream ifs = new PostgisFeatureInputStream(connection, queryString);
+    PostgisFeatureInputStream ifs = new PostgisFeatureInputStream(this, queryString, fetchSize);
     return ifs;
   }
 
   public FeatureInputStream executeAdhocQuery(AdhocQuery query)
   {
     String queryString = query.getQuery();
-    PostgisFeatureInputStream ifs = new PostgisFeatureInputStream(connection, queryString);
+    PostgisFeatureInputStream ifs = new PostgisFeatureInputStream(this, queryString, fetchSize);
     return ifs;
   }
 
@@ -84,6 +193,12 @@ public class PostgisDSConnection
       throws DataStoreException
   {
     try {
+      synchronized (this) {
+        closed = true;
+        for (Connection conn : idleCursorConnections)
+          conn.close();
+        idleCursorConnections.clear();
+      }
       connection.close();
     }
     catch (Exception ex) { throw new DataStoreException(ex); }
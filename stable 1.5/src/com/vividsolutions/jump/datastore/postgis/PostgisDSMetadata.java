@@ -150,6 +150,23 @@ public class PostgisDSMetadata implements DataStoreMetadata {
   }
 
 
+  /**
+   * @return the names of the columns of the primary key of a table, in the
+   * order of the key, or an empty array if the table has no primary key
+   */
+  public String[] getPrimaryKeyColumnNames( String datasetName ) {
+    String sql = "SELECT kcu.column_name FROM information_schema.table_constraints tc "
+               + "JOIN information_schema.key_column_usage kcu "
+               + "ON kcu.constraint_schema = tc.constraint_schema "
+               + "AND kcu.constraint_name = tc.constraint_name "
+               + geomColumnMetadataWhereClause( "tc.table_schema", "tc.table_name", datasetName )
+               + " AND tc.constraint_type = 'PRIMARY KEY' ORDER BY kcu.ordinal_position";
+    ColumnNameBlock block = new ColumnNameBlock();
+    JDBCUtil.execute( conn.getConnection(), sql, block );
+    return block.colName;
+  }
+
+
   private String geomColumnMetadataWhereClause( String schemaCol, String tableCol, String tableName ) {
     // [mmichaud 2011-07-24] Fixed a bug related to tables having common
     // names in public schema and another schema
@@ -73,7 +73,7 @@ public class PostgisDataStoreDriver
     DriverManager.registerDriver(driver);
 
     Connection conn = DriverManager.getConnection(url, user, password);
-    return new PostgisDSConnection(conn);
+    return new PostgisDSConnection(conn, url, user, password);
   }
   public boolean isAdHocQuerySupported() {
       return true;
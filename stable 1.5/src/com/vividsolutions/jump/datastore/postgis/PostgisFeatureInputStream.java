@@ -4,18 +4,34 @@ import java.sql.*;
 
 import org.postgresql.*;
 
+import com.vividsolutions.jump.I18N;
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.FeatureSchema;
 import com.vividsolutions.jump.io.BaseFeatureInputStream;
+import com.vividsolutions.jump.task.TaskMonitor;
 
 /**
  * Reads features from a PostgreSQL/PostGIS database.
+ * <p>
+ * With a positive fetch size, the query is read through a server-side
+ * cursor, fetch size rows at a time, instead of being loaded in memory
+ * before the first feature is returned. The driver only uses a cursor
+ * outside of autocommit mode, so a stream created by a
+ * {@link PostgisDSConnection} reads through a connection of its own, in a
+ * read-only transaction ended when the stream is closed. The connection
+ * shared by the other queries stays in autocommit mode, whichever streams
+ * are left open.
+ * A stream created on a bare connection uses a cursor only if the
+ * connection is already outside autocommit mode, in a transaction of the
+ * caller's own.
  */
 public class PostgisFeatureInputStream
     extends BaseFeatureInputStream
 {
   private FeatureSchema featureSchema;
   private Connection conn;
+  private PostgisDSConnection cursorConnections;
+  private Connection cursorConn = null;
   private String queryString;
   private boolean initialized = false;
   private Exception savedException;
@@ -23,12 +39,50 @@ public class PostgisFeatureInputStream
   private Statement stmt = null;
   private ResultSet rs = null;
   private PostgisResultSetConverter mapper;
+  private int fetchSize;
+  private TaskMonitor monitor;
+  private int rowCount = 0;
 
   int geometryColIndex = -1;
 
   public PostgisFeatureInputStream(Connection conn, String queryString) {
+    this(conn, queryString, 0);
+  }
+
+  /**
+   * @param fetchSize the number of rows fetched from the server at a time,
+   * or 0 to read the whole result at once
+   */
+  public PostgisFeatureInputStream(Connection conn, String queryString, int fetchSize) {
     this.conn = conn;
     this.queryString = queryString;
+    this.fetchSize = fetchSize;
+  }
+
+  /**
+   * @param fetchSize the number of rows fetched from the server at a time,
+   * through a connection taken from dsConnection, or 0 to read the whole
+   * result at once through the connection of dsConnection
+   */
+  public PostgisFeatureInputStream(PostgisDSConnection dsConnection, String queryString, int fetchSize) {
+    this(dsConnection.getConnection(), queryString, fetchSize);
+    this.cursorConnections = dsConnection;
+  }
+
+  /**
+   * Sets the monitor to which the number of rows read is reported, once per
+   * fetched batch.
+   */
+  public void setTaskMonitor(TaskMonitor monitor) {
+    this.monitor = monitor;
+  }
+
+  /**
+   * @return the number of rows fetched from the server at a time, or 0 if
+   * the whole result is read at once
+   */
+  public int getFetchSize() {
+    return fetchSize;
   }
 
   /**
@@ -50,12 +104,25 @@ public class PostgisFeatureInputStream
     initialized = true;
 
     //conn.setDefaultRowPrefetch(100);
-    stmt = conn.createStatement();
-    String parsedQuery = queryString;
-    //String parsedQuery = QueryUtil.parseQuery(queryString);
-    rs = stmt.executeQuery(parsedQuery);
-    mapper = new PostgisResultSetConverter(conn, rs);
-    featureSchema = mapper.getFeatureSchema();
+    Connection queryConn = conn;
+    if (fetchSize > 0 && cursorConnections != null) {
+      cursorConn = cursorConnections.takeCursorConnection();
+      queryConn = cursorConn;
+    }
+    try {
+      stmt = queryConn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      if (fetchSize > 0)
+        stmt.setFetchSize(fetchSize);
+      String parsedQuery = queryString;
+      //String parsedQuery = QueryUtil.parseQuery(queryString);
+      rs = stmt.executeQuery(parsedQuery);
+      mapper = new PostgisResultSetConverter(queryConn, rs);
+      featureSchema = mapper.getFeatureSchema();
+    }
+    catch (SQLException ex) {
+      close();
+      throw ex;
+    }
   }
 
   protected Feature readNext()
@@ -69,6 +136,10 @@ public class PostgisFeatureInputStream
       return null;
     if (! rs.next())
       return null;
+    rowCount++;
+    if (monitor != null && fetchSize > 0 && rowCount % fetchSize == 0)
+      monitor.report(rowCount, -1,
+          I18N.get("jump.workbench.ui.plugin.datastore.RunDatastoreQueryPlugIn.features"));
     return getFeature();
   }
 
@@ -79,11 +150,22 @@ public class PostgisFeatureInputStream
   }
 
   public void close() throws SQLException {
-    if (rs != null) {
-      rs.close();
+    try {
+      if (rs != null) {
+        rs.close();
+        rs = null;
+      }
+      if (stmt != null) {
+        stmt.close();
+        stmt = null;
+      }
     }
-    if (stmt != null) {
-      stmt.close();
+    finally {
+      if (cursorConn != null) {
+        Connection cursorConn = this.cursorConn;
+        this.cursorConn = null;
+        cursorConnections.releaseCursorConnection(cursorConn);
+      }
     }
   }
 
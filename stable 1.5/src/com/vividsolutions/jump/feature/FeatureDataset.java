@@ -208,17 +208,18 @@ public class FeatureDataset implements FeatureCollection, Serializable {
     // the removeAll performance if c is large
     // note that the semantic is slightly changed as the FID is used to identify 
     // features to remove rather than object Equality
+    // the remaining features keep their order
     public void removeAll(Collection c) {
-        java.util.Map<Integer,Feature> map = new java.util.HashMap<Integer,Feature>();
+        java.util.Set<Integer> ids = new java.util.HashSet<Integer>();
+        for (Iterator i = c.iterator(); i.hasNext(); ) {
+            ids.add(((Feature)i.next()).getID());
+        }
+        ArrayList remaining = new ArrayList(features.size());
         for (Iterator i = features.iterator(); i.hasNext(); ) {
             Feature f = (Feature)i.next();
-            map.put(f.getID(), f);
-        }
-        for (Iterator i = c.iterator(); i.hasNext(); ) {
-            map.remove(((Feature)i.next()).getID());
+            if (!ids.contains(f.getID())) remaining.add(f);
         }
-        features = new ArrayList();
-        features.addAll(map.values());
+        features = remaining;
         invalidateEnvelope();
     }
 }
@@ -0,0 +1,252 @@
+
+/*
+ * The Unified Mapping Platform (JUMP) is an extensible, interactive GUI 
+ * for visualizing and manipulating spatial features with geometry and attributes.
+ *
+ * Copyright (C) 2003 Vivid Solutions
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ * For more information, contact:
+ *
+ * Vivid Solutions
+ * Suite #1A
+ * 2328 Government Street
+ * Victoria BC  V8T 5G5
+ * Canada
+ *
+ * (250)385-6040
+ * www.vividsolutions.com
+ */
+
+package com.vividsolutions.jump.feature;
+
+import java.util.*;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.quadtree.Quadtree;
+
+
+/**
+ * A FeatureDataset which maintains a spatial index of its features, so that
+ * #query does not have to scan the whole collection.
+ * <p>
+ * Contrary to IndexedFeatureCollection, features can be added and removed,
+ * the index being updated incrementally. When the geometry of a feature is
+ * modified, call #update so that the feature is indexed again with its new
+ * envelope (Layer does it when a GEOMETRY_MODIFIED event is fired).
+ * Queries return the features in the order of the collection, as
+ * FeatureDataset does.
+ */
+public class IndexedFeatureDataset extends FeatureDataset {
+    private static final long serialVersionUID = -2146503127440925380L;
+
+    //A quadtree can be updated, contrary to the STRtree used by
+    //IndexedFeatureCollection
+    private transient Quadtree index;
+    private transient Map entries;
+    private transient long nextOrder;
+
+    /**
+     * Creates an IndexedFeatureDataset, initialized with a group of Features.
+     * @param newFeatures an initial group of features to add to this IndexedFeatureDataset
+     * @param featureSchema the types of the attributes of the features in this collection
+     */
+    public IndexedFeatureDataset(Collection newFeatures, FeatureSchema featureSchema) {
+        super(newFeatures, featureSchema);
+    }
+
+    /**
+     * Creates an IndexedFeatureDataset.
+     * @param featureSchema the types of the attributes of the features in this collection
+     */
+    public IndexedFeatureDataset(FeatureSchema featureSchema) {
+        super(featureSchema);
+    }
+
+    /**
+     * Creates an IndexedFeatureDataset holding the features of a FeatureCollection.
+     */
+    public IndexedFeatureDataset(FeatureCollection featureCollection) {
+        this(featureCollection.getFeatures(), featureCollection.getFeatureSchema());
+    }
+
+    public synchronized List query(Envelope envelope) {
+        List candidates = getIndex().query(envelope);
+
+        //Restoring the collection order of a large part of the collection
+        //costs more than a scan
+        if (candidates.size() > size() / 2) {
+            return super.query(envelope);
+        }
+
+        Entry[] matches = new Entry[candidates.size()];
+        int count = 0;
+        for (Iterator i = candidates.iterator(); i.hasNext();) {
+            Entry entry = (Entry) i.next();
+
+            if (entry.feature.getGeometry().getEnvelopeInternal().intersects(envelope)) {
+                matches[count++] = entry;
+            }
+        }
+        Arrays.sort(matches, 0, count);
+
+        ArrayList queryResult = new ArrayList(count);
+        for (int i = 0; i < count; i++) {
+            queryResult.add(matches[i].feature);
+        }
+
+        return queryResult;
+    }
+
+    public synchronized void add(Feature feature) {
+        super.add(feature);
+        if (index != null) {
+            insert(feature);
+        }
+    }
+
+    public synchronized void addAll(Collection features) {
+        super.addAll(features);
+        if (index != null) {
+            for (Iterator i = features.iterator(); i.hasNext();) {
+                insert((Feature) i.next());
+            }
+        }
+    }
+
+    public synchronized void remove(Feature feature) {
+        int size = size();
+        super.remove(feature);
+        if (index != null && size() < size) {
+            Entry entry = (Entry) entries.get(feature);
+            if (entry != null && --entry.count == 0) {
+                delete(feature, entry);
+            }
+        }
+    }
+
+    public synchronized void removeAll(Collection c) {
+        super.removeAll(c);
+        if (index != null) {
+            //FeatureDataset removes the features having the FID of a feature
+            //of c, which are not necessarily the features of c themselves
+            Set ids = new HashSet();
+            for (Iterator i = c.iterator(); i.hasNext();) {
+                ids.add(Integer.valueOf(((Feature) i.next()).getID()));
+            }
+            for (Iterator i = entries.values().iterator(); i.hasNext();) {
+                Entry entry = (Entry) i.next();
+                if (ids.contains(Integer.valueOf(entry.feature.getID()))) {
+                    i.remove();
+                    if (entry.envelope != null) {
+                        index.remove(entry.envelope, entry);
+                    }
+                }
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        super.clear();
+        index = null;
+        entries = null;
+    }
+
+    /**
+     * Indexes again the given features of this collection with the envelope
+     * of their current geometry. Call this method when the geometry of
+     * features is modified.
+     */
+    public synchronized void update(Collection features) {
+        if (index == null) {
+            return;
+        }
+        for (Iterator i = features.iterator(); i.hasNext();) {
+            Feature feature = (Feature) i.next();
+            Entry entry = (Entry) entries.get(feature);
+            if (entry == null) {
+                continue;
+            }
+            if (entry.envelope != null) {
+                index.remove(entry.envelope, entry);
+            }
+            entry.envelope = getIndexedEnvelope(feature);
+            if (entry.envelope != null) {
+                index.insert(entry.envelope, entry);
+            }
+        }
+    }
+
+    //The index is built on the first query, and after deserialization
+    private Quadtree getIndex() {
+        if (index == null) {
+            index = new Quadtree();
+            entries = new IdentityHashMap();
+            for (Iterator i = iterator(); i.hasNext();) {
+                insert((Feature) i.next());
+            }
+        }
+        return index;
+    }
+
+    private void insert(Feature feature) {
+        Entry entry = (Entry) entries.get(feature);
+        if (entry != null) {
+            //the same feature has been added twice
+            entry.count++;
+            return;
+        }
+        entry = new Entry(feature, getIndexedEnvelope(feature), nextOrder++);
+        entries.put(feature, entry);
+        if (entry.envelope != null) {
+            index.insert(entry.envelope, entry);
+        }
+    }
+
+    private void delete(Feature feature, Entry entry) {
+        entries.remove(feature);
+        if (entry.envelope != null) {
+            index.remove(entry.envelope, entry);
+        }
+    }
+
+    //The envelope of a geometry is replaced rather than modified when the
+    //geometry changes, so it can be kept to remove the feature from the index.
+    //Empty geometries are not indexed, as they do not intersect any envelope.
+    private static Envelope getIndexedEnvelope(Feature feature) {
+        Envelope envelope = feature.getGeometry().getEnvelopeInternal();
+        return envelope.isNull() ? null : envelope;
+    }
+
+    //The item stored in the index, ordered as the collection
+    private static class Entry implements Comparable {
+        private final Feature feature;
+        private Envelope envelope;
+        private final long order;
+        private int count = 1;
+
+        Entry(Feature feature, Envelope envelope, long order) {
+            this.feature = feature;
+            this.envelope = envelope;
+            this.order = order;
+        }
+
+        public int compareTo(Object o) {
+            long other = ((Entry) o).order;
+            return order < other ? -1 : (order > other ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * The Unified Mapping Platform (JUMP) is an extensible, interactive GUI
+ * for visualizing and manipulating spatial features with geometry and attributes.
+ *
+ * Copyright (C) 2003 Vivid Solutions
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * Vivid Solutions
+ * Suite #1A
+ * 2328 Government Street
+ * Victoria BC  V8T 5G5
+ * Canada
+ *
+ * (250)385-6040
+ * www.vividsolutions.com
+ */
+package com.vividsolutions.jump.io;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import org.geotools.dbffile.DbfFile;
+
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.FeatureSchema;
+
+/**
+ * A feature read from a shapefile, whose attributes are decoded from the
+ * dbf file the first time one of them is accessed. Accessing the geometry
+ * does not decode the attributes.
+ */
+class DbfRecordFeature extends BasicFeature {
+
+    private static final long serialVersionUID = 2861564286917359430L;
+
+    private transient volatile DbfFile dbf;
+    private int row;
+
+    /**
+     * @param featureSchema the schema, with the GEOMETRY attribute first,
+     * followed by the dbf fields
+     * @param dbf the dbf file holding the attributes
+     * @param row the dbf record of this feature
+     */
+    DbfRecordFeature(FeatureSchema featureSchema, DbfFile dbf, int row) {
+        super(featureSchema);
+        this.dbf = dbf;
+        this.row = row;
+    }
+
+    public Object getAttribute(int i) {
+        if (i != getSchema().getGeometryIndex()) load();
+        return super.getAttribute(i);
+    }
+
+    public Object[] getAttributes() {
+        load();
+        return super.getAttributes();
+    }
+
+    public void setAttribute(int attributeIndex, Object newAttribute) {
+        if (attributeIndex != getSchema().getGeometryIndex()) load();
+        super.setAttribute(attributeIndex, newAttribute);
+    }
+
+    public void setAttributes(Object[] attributes) {
+        load();
+        super.setAttributes(attributes);
+    }
+
+    // Decodes the attributes directly into the attribute array, so that
+    // the modified flag is not changed
+    private void load() {
+        if (dbf == null) return;
+        synchronized (this) {
+            if (dbf == null) return;
+            Object[] attributes = super.getAttributes();
+            try {
+                for (int y = 0, n = dbf.getNumFields(); y < n; y++) {
+                    attributes[y + 1] = dbf.getFieldValue(row, y);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException("Could not read record " + row + " of the dbf file", e);
+            }
+            dbf = null;
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        load();
+        out.defaultWriteObject();
+    }
+}
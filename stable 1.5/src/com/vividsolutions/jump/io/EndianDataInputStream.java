@@ -41,6 +41,8 @@ package com.vividsolutions.jump.io;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  *  A class that gives most of the functionality of DataInputStream, but is endian aware.
@@ -55,6 +57,16 @@ public class EndianDataInputStream {
         inputStream = new DataInputStream(new BufferedInputStream(in));
     }
 
+    /**
+     * Creates an EndianDataInputStream reading directly from a buffer
+     * (typically a memory-mapped file), starting at its current position.
+     * No read-ahead is done, so the position of the buffer can be moved
+     * between two reads to jump to another record.
+     */
+    public EndianDataInputStream(ByteBuffer buffer) {
+        inputStream = new DataInputStream(new ByteBufferInputStream(buffer));
+    }
+
     /** close the stream**/
     public void close() throws IOException {
         inputStream.close();
@@ -157,4 +169,41 @@ public class EndianDataInputStream {
     public int skipBytes(int num) throws IOException {
         return inputStream.skipBytes(num);
     }
+
+    /**
+     * An InputStream over the remaining bytes of a ByteBuffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        public int available() {
+            return buffer.remaining();
+        }
+    }
 }
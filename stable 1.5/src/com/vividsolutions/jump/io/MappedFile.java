@@ -0,0 +1,166 @@
+/*
+ * The Unified Mapping Platform (JUMP) is an extensible, interactive GUI
+ * for visualizing and manipulating spatial features with geometry and attributes.
+ *
+ * Copyright (C) 2003 Vivid Solutions
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * Vivid Solutions
+ * Suite #1A
+ * 2328 Government Street
+ * Victoria BC  V8T 5G5
+ * Canada
+ *
+ * (250)385-6040
+ * www.vividsolutions.com
+ */
+package com.vividsolutions.jump.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file mapped in memory for reading. A MappedByteBuffer cannot hold more
+ * than Integer.MAX_VALUE bytes, so the file is mapped in consecutive
+ * segments, and positions in the file are longs.
+ * <p>
+ * The segments are never modified once mapped : a MappedFile can be read
+ * from several threads at the same time.
+ */
+public class MappedFile {
+
+    /** Default size of the mapped segments (1 GB) */
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private final File file;
+    private final long size;
+    private final int segmentSize;
+    private final ByteBuffer[] segments;
+
+    /**
+     * Maps a file in segments of DEFAULT_SEGMENT_SIZE bytes.
+     */
+    public MappedFile(File file) throws IOException {
+        this(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Maps a file in segments of segmentSize bytes.
+     * @param file the file to map
+     * @param segmentSize the size of the mapped segments
+     */
+    public MappedFile(File file, int segmentSize) throws IOException {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("segmentSize must be positive : " + segmentSize);
+        }
+        this.file = file;
+        this.segmentSize = segmentSize;
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            size = channel.size();
+            int count = (int) Math.max(1, (size + segmentSize - 1) / segmentSize);
+            segments = new ByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        start, Math.min(segmentSize, size - start));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the mapped file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the size of the file, in bytes.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Copies length bytes of the file, starting at position, into dst.
+     */
+    public void get(long position, byte[] dst, int offset, int length) {
+        checkRange(position, length);
+        while (length > 0) {
+            int segment = (int) (position / segmentSize);
+            int start = (int) (position - (long) segment * segmentSize);
+            int count = Math.min(length, segments[segment].capacity() - start);
+            ByteBuffer buffer = segments[segment].duplicate();
+            buffer.position(start);
+            buffer.get(dst, offset, count);
+            position += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Reads the big endian int starting at position.
+     */
+    public int getInt(long position) {
+        checkRange(position, 4);
+        int segment = (int) (position / segmentSize);
+        int start = (int) (position - (long) segment * segmentSize);
+        if (start + 4 <= segments[segment].capacity()) {
+            return segments[segment].getInt(start);
+        }
+        byte[] b = new byte[4];
+        get(position, b, 0, 4);
+        return ByteBuffer.wrap(b).getInt();
+    }
+
+    /**
+     * Returns a big endian buffer over length bytes of the file, starting at
+     * position. The buffer shares the mapped memory unless the bytes lie
+     * across two segments, in which case they are copied.
+     */
+    public ByteBuffer slice(long position, int length) {
+        checkRange(position, length);
+        if (length == 0) return ByteBuffer.allocate(0);
+        int segment = (int) (position / segmentSize);
+        int start = (int) (position - (long) segment * segmentSize);
+        if (start + length <= segments[segment].capacity()) {
+            ByteBuffer buffer = segments[segment].duplicate();
+            buffer.position(start);
+            buffer.limit(start + length);
+            return buffer.slice();
+        }
+        byte[] b = new byte[length];
+        get(position, b, 0, length);
+        return ByteBuffer.wrap(b);
+    }
+
+    private void checkRange(long position, int length) {
+        if (position < 0 || length < 0 || position + length > size) {
+            throw new IndexOutOfBoundsException("Cannot read " + length +
+                    " bytes at " + position + " in " + file + " (" + size + " bytes)");
+        }
+    }
+}
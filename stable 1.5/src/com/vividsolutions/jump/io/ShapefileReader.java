@@ -41,6 +41,7 @@ import com.vividsolutions.jts.geom.*;
 import com.vividsolutions.jump.I18N;
 import com.vividsolutions.jump.feature.*;
 
+import org.geotools.dbffile.DbfColumn;
 import org.geotools.dbffile.DbfFile;
 import org.geotools.shapefile.Shapefile;
 import org.geotools.shapefile.ShapefileException;
@@ -77,6 +78,17 @@ import java.nio.charset.Charset;
  *    </tr>
  *
  *    <tr>
+ *      <td>MemoryMapped</td>
+ *      <td>"true" (or Boolean.TRUE) to read the .shp, .shx and .dbf files
+ *          through memory-mapped buffers. This is the MemoryMapped option
+ *          of the open file wizard, shown when enabled in the Dataset
+ *          options. Geometries are decoded on all the available processors
+ *          and attributes of each feature are decoded from the .dbf
+ *          file the first time they are accessed. Ignored for compressed
+ *          files and for files larger than 2 GB.</td>
+ *    </tr>
+ *
+ *    <tr>
  *      <td colspan='2'>
  *         Uses a modified version of geotools to do the .dbf and .shp
  *         file reading.  If you are reading from a .zip file, the dbf
@@ -93,6 +105,7 @@ public class ShapefileReader implements JUMPReader {
 	public static final String FILE_PROPERTY_KEY = "File";
 	public static final String DEFAULT_VALUE_PROPERTY_KEY = "DefaultValue";
 	public static final String COMPRESSED_FILE_PROPERTY_KEY = "CompressedFile";
+	public static final String MEMORY_MAPPED_PROPERTY_KEY = "MemoryMapped";
 
     /** Creates new ShapeReader */
     public ShapefileReader() {
@@ -131,11 +144,25 @@ public class ShapefileReader implements JUMPReader {
         String fnameWithoutExtention = fname.substring(0, loc); // ie. "hills.shp" -> "hills"
         String dbfFileName = path + fnameWithoutExtention + ".dbf";
 
+        String compressedFname = dp.getProperty(COMPRESSED_FILE_PROPERTY_KEY);
+        // the open file wizard sets a Boolean, which getProperty ignores
+        boolean memoryMapped = Boolean.valueOf(String.valueOf(dp.get(MEMORY_MAPPED_PROPERTY_KEY))).booleanValue() &&
+                (compressedFname == null || compressedFname.length() == 0);
+
         //okay, have .shp and .dbf file paths, lets create Shapefile and DbfFile
-        Shapefile myshape = getShapefile(shpfileName, dp.getProperty(COMPRESSED_FILE_PROPERTY_KEY));
 		String charsetName = dp.getProperty("charset");
 		if (charsetName == null) charsetName = Charset.defaultCharset().name();
-        DbfFile mydbf = getDbfFile(dbfFileName, dp.getProperty(COMPRESSED_FILE_PROPERTY_KEY), Charset.forName(charsetName));
+        Shapefile myshape;
+        DbfFile mydbf;
+        if (memoryMapped) {
+            myshape = new Shapefile(new File(shpfileName));
+            myshape.setThreadCount(Runtime.getRuntime().availableProcessors());
+            mydbf = new File(dbfFileName).exists() ?
+                    new DbfFile(dbfFileName, Charset.forName(charsetName), true) : null;
+        } else {
+            myshape = getShapefile(shpfileName, compressedFname);
+            mydbf = getDbfFile(dbfFileName, compressedFname, Charset.forName(charsetName));
+        }
         GeometryFactory factory = new GeometryFactory();
         GeometryCollection collection = null;
         try {
@@ -179,14 +206,22 @@ public class ShapefileReader implements JUMPReader {
 
             featureCollection = new FeatureDataset(fs);
 
+            // without memory mapping, all the attributes are decoded at once
+            DbfColumn[] columns = memoryMapped ? null : mydbf.readColumns();
+
             for (int x = 0; x < mydbf.getLastRec(); x++) {
-                Feature feature = new BasicFeature(fs);
+                Feature feature;
                 Geometry geo = collection.getGeometryN(x);
-                //StringBuffer s = mydbf.GetDbfRec(x); //[sstein 9.Sept.08]
-                byte[] s = mydbf.GetDbfRec(x); //[sstein 9.Sept.08]
 
-                for (int y = 0; y < numfields; y++) {
-                    feature.setAttribute(y + 1, mydbf.ParseRecordColumn(s, y));
+                if (memoryMapped) {
+                    // attributes are decoded when they are first accessed
+                    feature = new DbfRecordFeature(fs, mydbf, x);
+                } else {
+                    feature = new BasicFeature(fs);
+
+                    for (int y = 0; y < numfields; y++) {
+                        feature.setAttribute(y + 1, columns[y].getValue(x));
+                    }
                 }
 
                 feature.setGeometry(geo);
@@ -268,7 +303,6 @@ public class ShapefileReader implements JUMPReader {
         return mydbf;
     }
 
-
     private void deleteTmpDbf() {
         if (delete_this_tmp_dbf != null) {
             delete_this_tmp_dbf.delete();
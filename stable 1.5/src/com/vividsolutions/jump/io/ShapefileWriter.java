@@ -461,6 +461,10 @@ public class ShapefileWriter implements JUMPWriter {
             }
         }
 
+        // features read through a memory-mapped dbf may still load their
+        // attributes from the file about to be overwritten
+        DbfFile.releaseMappedFile(new File(fname));
+
         // write header
         dbf = new DbfFileWriter(fname);
 		dbf.setCharset(charset);
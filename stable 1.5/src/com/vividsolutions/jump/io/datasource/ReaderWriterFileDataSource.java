@@ -36,6 +36,8 @@ import java.util.Collection;
 
 import com.vividsolutions.jump.coordsys.CoordinateSystem;
 import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.IndexedFeatureDataset;
 import com.vividsolutions.jump.io.DriverProperties;
 import com.vividsolutions.jump.io.JUMPReader;
 import com.vividsolutions.jump.io.JUMPWriter;
@@ -58,7 +60,12 @@ public class ReaderWriterFileDataSource extends DataSource {
         return new Connection() {
             public FeatureCollection executeQuery(String query, Collection exceptions, TaskMonitor monitor) {
                 try {
-					return reader.read(getReaderDriverProperties());
+					FeatureCollection featureCollection = reader.read(getReaderDriverProperties());
+					//Loaded layers are queried on every repaint, so index them
+					if (featureCollection != null && featureCollection.getClass() == FeatureDataset.class) {
+						featureCollection = new IndexedFeatureDataset(featureCollection);
+					}
+					return featureCollection;
                 } catch (Exception e) {
                     exceptions.add(e);
                     return null;
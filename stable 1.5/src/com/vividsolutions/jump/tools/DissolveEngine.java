@@ -0,0 +1,239 @@
+
+/*
+ * The Unified Mapping Platform (JUMP) is an extensible, interactive GUI
+ * for visualizing and manipulating spatial features with geometry and attributes.
+ *
+ * Copyright (C) 2003 Vivid Solutions
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * Vivid Solutions
+ * Suite #1A
+ * 2328 Government Street
+ * Victoria BC  V8T 5G5
+ * Canada
+ *
+ * (250)385-6040
+ * www.vividsolutions.com
+ */
+
+package com.vividsolutions.jump.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.operation.union.UnaryUnionOp;
+import com.vividsolutions.jump.task.TaskMonitor;
+
+
+/**
+ *  Computes the unions of large collections of geometries, such as the
+ *  dissolve of a layer by attribute, on several threads.
+ *  <p>
+ *  A collection of more than {@link #PARTITION_SIZE} geometries is sorted
+ *  along a Z-order curve and split into partitions of neighbouring geometries,
+ *  which are unioned in parallel and then merged by pairs.
+ *  Independent groups are unioned by {@link #invokeAll}, which only keeps a
+ *  few groups in progress at a time.
+ *  <p>
+ *  The engine owns a thread pool, which must be released by {@link #shutdown}.
+ */
+public class DissolveEngine {
+
+    /**
+     *  Maximum number of geometries unioned in a single cascaded union.
+     */
+    public static final int PARTITION_SIZE = 4096;
+
+    /**
+     *  Number of groups in progress per thread in {@link #invokeAll}.
+     */
+    private static final int GROUPS_PER_THREAD = 2;
+
+    // bits of each ordinate in the Z-order key of a geometry
+    private static final int KEY_BITS = 15;
+
+    private final ForkJoinPool pool;
+
+    public DissolveEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public DissolveEngine(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     *  Returns the union of the geometries, or null if there is none, as
+     *  UnaryUnionOp does.
+     */
+    public Geometry union(Collection geometries) {
+        if (geometries.size() <= PARTITION_SIZE) {
+            return UnaryUnionOp.union(geometries);
+        }
+        UnionTask task = new UnionTask(spatiallySorted(geometries), 0, geometries.size());
+        // a group unioned by invokeAll already runs in the pool
+        return ForkJoinTask.inForkJoinPool() ? task.invoke() : pool.invoke(task);
+    }
+
+    /**
+     *  Runs the tasks on the thread pool and returns their results in the
+     *  order of the tasks. A task is only taken from the iterator when a
+     *  thread is about to be free, so that the data of the tasks to come need
+     *  not be in memory yet, and can be released as soon as a task is done.
+     *  No more task is started once cancellation has been requested.
+     *  Tasks must not create features, as FeatureUtil#nextID is not
+     *  thread-safe: they return the data the caller builds features from.
+     *  @param taskCount the number of tasks, for the progress reports
+     *  @param message the progress message
+     */
+    public <T> List<T> invokeAll(Iterator<? extends Callable<T>> tasks,
+        int taskCount, TaskMonitor monitor, String message) {
+        List<T> results = new ArrayList<T>(taskCount);
+        LinkedList<Future<T>> running = new LinkedList<Future<T>>();
+        int window = pool.getParallelism() * GROUPS_PER_THREAD;
+        try {
+            while (true) {
+                while (tasks.hasNext() && running.size() < window
+                        && !monitor.isCancelRequested()) {
+                    running.add(pool.submit(tasks.next()));
+                }
+                if (running.isEmpty()) {
+                    break;
+                }
+                results.add(running.removeFirst().get());
+                monitor.report(results.size(), taskCount, message);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            for (Iterator<Future<T>> i = running.iterator(); i.hasNext();) {
+                i.next().cancel(true);
+            }
+        }
+        return results;
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     *  Sorts the geometries by the Z-order key of the centre of their envelope.
+     */
+    private static Geometry[] spatiallySorted(Collection geometries) {
+        Geometry[] source = (Geometry[]) geometries.toArray(new Geometry[geometries.size()]);
+        Envelope extent = new Envelope();
+        for (int i = 0; i < source.length; i++) {
+            extent.expandToInclude(source[i].getEnvelopeInternal());
+        }
+        // the key is in the high bits, the index of the geometry in the low bits
+        long[] keys = new long[source.length];
+        for (int i = 0; i < source.length; i++) {
+            Envelope env = source[i].getEnvelopeInternal();
+            long key = 0;
+            if (!env.isNull()) {
+                key = interleave(
+                    ordinate(env.getMinX() + env.getWidth() / 2, extent.getMinX(), extent.getWidth()),
+                    ordinate(env.getMinY() + env.getHeight() / 2, extent.getMinY(), extent.getHeight()));
+            }
+            keys[i] = (key << 32) | i;
+        }
+        Arrays.sort(keys);
+        Geometry[] sorted = new Geometry[source.length];
+        for (int i = 0; i < keys.length; i++) {
+            sorted[i] = source[(int) (keys[i] & 0xFFFFFFFFL)];
+        }
+        return sorted;
+    }
+
+    private static int ordinate(double x, double min, double size) {
+        if (size == 0) {
+            return 0;
+        }
+        int max = (1 << KEY_BITS) - 1;
+        return Math.min(max, (int) ((x - min) / size * max));
+    }
+
+    private static long interleave(int x, int y) {
+        long key = 0;
+        for (int b = 0; b < KEY_BITS; b++) {
+            key |= ((long) ((x >> b) & 1)) << (2 * b);
+            key |= ((long) ((y >> b) & 1)) << (2 * b + 1);
+        }
+        return key;
+    }
+
+    /**
+     *  Unions a range of spatially sorted geometries, splitting it in two
+     *  halves unioned in parallel while it is larger than a partition.
+     */
+    private static class UnionTask extends RecursiveTask<Geometry> {
+        private static final long serialVersionUID = -1431546366410000330L;
+
+        private final Geometry[] geometries;
+        private final int start;
+        private final int end;
+
+        UnionTask(Geometry[] geometries, int start, int end) {
+            this.geometries = geometries;
+            this.start = start;
+            this.end = end;
+        }
+
+        protected Geometry compute() {
+            if (end - start <= PARTITION_SIZE) {
+                return UnaryUnionOp.union(Arrays.asList(geometries).subList(start, end));
+            }
+            int middle = (start + end) >>> 1;
+            UnionTask first = new UnionTask(geometries, start, middle);
+            first.fork();
+            Geometry second = new UnionTask(geometries, middle, end).compute();
+            return merge(first.join(), second);
+        }
+
+        private static Geometry merge(Geometry a, Geometry b) {
+            if (a == null) {
+                return b;
+            }
+            if (b == null) {
+                return a;
+            }
+            return UnaryUnionOp.union(Arrays.asList(new Geometry[] {a, b}));
+        }
+    }
+}
@@ -33,12 +33,26 @@
 
 package com.vividsolutions.jump.tools;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
 import com.vividsolutions.jts.geom.*;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
 import com.vividsolutions.jts.precision.EnhancedPrecisionOp;
 import com.vividsolutions.jump.I18N;
 import com.vividsolutions.jump.feature.*;
@@ -51,8 +65,21 @@ import com.vividsolutions.jump.task.TaskMonitor;
  */
 public class OverlayEngine {
 	private static Logger LOG = Logger.getLogger(OverlayEngine.class);
+
+    /**
+     *  Average number of features of the first dataset in a chunk overlaid by
+     *  one task of the parallel mode.
+     */
+    private static final int CHUNK_SIZE = 256;
+
+    /**
+     *  Delay between two progress reports of the parallel mode, in milliseconds.
+     */
+    private static final long PROGRESS_INTERVAL = 200;
+
     private boolean splittingGeometryCollections = true;
     private boolean allowingPolygonsOnly = true;
+    private boolean parallel = false;
 
     /**
      *  Creates a new OverlayEngine.
@@ -95,6 +122,11 @@ public class OverlayEngine {
         FeatureDataset overlay = new FeatureDataset(mapping.createSchema("GEOMETRY"));
         List aFeatures = a.getFeatures();
 
+        if (parallel) {
+            parallelOverlay(aFeatures, indexedB, mapping, overlay, monitor);
+            return overlay;
+        }
+
         for (int i = 0; (i < aFeatures.size()) && !monitor.isCancelRequested();
                 i++) {
             Feature aFeature = (Feature) aFeatures.get(i);
@@ -138,6 +170,243 @@ public class OverlayEngine {
         addFeature(intersection, overlay, mapping, a, b);
     }
 
+    /**
+     *  Overlays the features of a split into spatial chunks, the
+     *  intersections of each chunk being computed by a task of a ForkJoinPool
+     *  into its own buffer. The features are then created from the buffers
+     *  on the calling thread, in the order of the features of a, so that the
+     *  overlay (feature IDs included) does not depend on the scheduling of
+     *  the tasks.
+     */
+    private void parallelOverlay(final List aFeatures,
+        final IndexedFeatureCollection indexedB, final AttributeMapping mapping,
+        FeatureDataset overlay, final TaskMonitor monitor) {
+        // The STRtree of b is built by its first query, which must not be
+        // made concurrently
+        indexedB.query(new Envelope());
+
+        List<int[]> chunkIndices = spatialChunks(aFeatures);
+        final AtomicInteger progress = new AtomicInteger();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        List<Chunk> chunks = new ArrayList<Chunk>(chunkIndices.size());
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>(chunkIndices.size());
+            for (Iterator<int[]> i = chunkIndices.iterator(); i.hasNext();) {
+                final Chunk chunk = new Chunk(i.next());
+                futures.add(pool.submit(new Callable<Chunk>() {
+                    public Chunk call() {
+                        overlayChunk(chunk, aFeatures, indexedB, mapping,
+                            progress, cancelled, monitor);
+                        return chunk;
+                    }
+                }));
+            }
+            for (Iterator<Future<Chunk>> i = futures.iterator(); i.hasNext();) {
+                Future<Chunk> future = i.next();
+                while (true) {
+                    try {
+                        chunks.add(future.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS));
+                        break;
+                    } catch (TimeoutException e) {
+                        monitor.report(progress.get(), aFeatures.size(), "features");
+                        if (monitor.isCancelRequested()) {
+                            cancelled.set(true);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled.set(true);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        monitor.report(progress.get(), aFeatures.size(), "features");
+
+        // Add the intersections in the order of the features of a
+        int[] chunkOf = new int[aFeatures.size()];
+        int[] positionOf = new int[aFeatures.size()];
+        Arrays.fill(chunkOf, -1);
+        for (int c = 0; c < chunks.size(); c++) {
+            int[] indices = chunks.get(c).indices;
+            for (int k = 0; k < indices.length; k++) {
+                chunkOf[indices[k]] = c;
+                positionOf[indices[k]] = k;
+            }
+        }
+        for (int i = 0; i < chunkOf.length; i++) {
+            if (chunkOf[i] < 0) {
+                continue;
+            }
+            Chunk chunk = chunks.get(chunkOf[i]);
+            int k = positionOf[i];
+            if (chunk.ends[k] < 0) {
+                continue;
+            }
+            int start = k == 0 ? 0 : chunk.ends[k - 1];
+            Feature aFeature = (Feature) aFeatures.get(i);
+            for (int j = start; j < chunk.ends[k]; j++) {
+                addFeature(chunk.intersections.get(j), overlay, mapping,
+                    aFeature, chunk.bFeatures.get(j));
+            }
+        }
+    }
+
+    /**
+     *  Splits the features into chunks of neighbouring features, according to
+     *  the cell of a grid containing the centre of their envelope.
+     *  @return the indices of the features of each chunk, in increasing order
+     */
+    private List<int[]> spatialChunks(List features) {
+        Envelope extent = new Envelope();
+        for (Iterator i = features.iterator(); i.hasNext();) {
+            extent.expandToInclude(((Feature) i.next()).getGeometry().getEnvelopeInternal());
+        }
+        int cells = Math.max(1, (int) Math.sqrt((double) features.size() / CHUNK_SIZE));
+        List[] cellIndices = new List[cells * cells];
+        for (int i = 0; i < features.size(); i++) {
+            Envelope env = ((Feature) features.get(i)).getGeometry().getEnvelopeInternal();
+            int cell = 0;
+            if (!env.isNull()) {
+                cell = cell(env.getMinX() + env.getWidth() / 2, extent.getMinX(), extent.getWidth(), cells)
+                    + cells * cell(env.getMinY() + env.getHeight() / 2, extent.getMinY(), extent.getHeight(), cells);
+            }
+            if (cellIndices[cell] == null) {
+                cellIndices[cell] = new ArrayList();
+            }
+            cellIndices[cell].add(Integer.valueOf(i));
+        }
+        List<int[]> chunks = new ArrayList<int[]>();
+        for (int c = 0; c < cellIndices.length; c++) {
+            if (cellIndices[c] == null) {
+                continue;
+            }
+            int[] indices = new int[cellIndices[c].size()];
+            for (int k = 0; k < indices.length; k++) {
+                indices[k] = ((Integer) cellIndices[c].get(k)).intValue();
+            }
+            chunks.add(indices);
+        }
+        return chunks;
+    }
+
+    private static int cell(double x, double min, double size, int cells) {
+        if (size == 0) {
+            return 0;
+        }
+        return Math.min(cells - 1, (int) ((x - min) / size * cells));
+    }
+
+    private void overlayChunk(Chunk chunk, List aFeatures,
+        IndexedFeatureCollection indexedB, AttributeMapping mapping,
+        AtomicInteger progress, AtomicBoolean cancelled, TaskMonitor monitor) {
+        // The geometries of b are prepared once per chunk, in which they are
+        // likely to be compared with several features of a
+        Map<Geometry,PreparedGeometry> preparedB = new IdentityHashMap<Geometry,PreparedGeometry>();
+        for (int k = 0; k < chunk.indices.length && !cancelled.get(); k++) {
+            Feature aFeature = (Feature) aFeatures.get(chunk.indices[k]);
+            PreparedGeometry preparedA = null;
+            for (Iterator j = indexedB.query(aFeature.getGeometry()
+                                                     .getEnvelopeInternal())
+                                      .iterator(); j.hasNext();) {
+                Feature bFeature = (Feature) j.next();
+                Geometry intersection;
+                if (isPreparable(aFeature.getGeometry()) && isPreparable(bFeature.getGeometry())) {
+                    if (preparedA == null) {
+                        preparedA = PreparedGeometryFactory.prepare(aFeature.getGeometry());
+                    }
+                    intersection = preparedIntersection(aFeature.getGeometry(), preparedA,
+                            bFeature.getGeometry(), preparedB, monitor);
+                } else {
+                    intersection = intersection(aFeature.getGeometry(), bFeature.getGeometry(), monitor);
+                }
+                if ((intersection != null) && !intersection.isEmpty()) {
+                    chunk.intersections.add(intersection);
+                    chunk.bFeatures.add(bFeature);
+                }
+            }
+            chunk.ends[k] = chunk.intersections.size();
+            progress.incrementAndGet();
+        }
+    }
+
+    /**
+     *  Prepared geometries do not support the relate operations on
+     *  heterogeneous GeometryCollections.
+     */
+    private static boolean isPreparable(Geometry g) {
+        return g.getClass() != GeometryCollection.class && !g.isEmpty();
+    }
+
+    /**
+     *  Returns the intersection of a and b, or null. Disjoint geometries are
+     *  detected, and a geometry contained in the other is copied, without
+     *  computing the intersection.
+     */
+    private Geometry preparedIntersection(Geometry a, PreparedGeometry preparedA,
+        Geometry b, Map<Geometry,PreparedGeometry> preparedB, TaskMonitor monitor) {
+        try {
+            if (!preparedA.intersects(b)) {
+                return null;
+            }
+            if (preparedA.contains(b)) {
+                return (Geometry) b.clone();
+            }
+            PreparedGeometry prepared = preparedB.get(b);
+            if (prepared == null) {
+                prepared = PreparedGeometryFactory.prepare(b);
+                preparedB.put(b, prepared);
+            }
+            if (prepared.contains(a)) {
+                return (Geometry) a.clone();
+            }
+        } catch (Exception ex) {
+            // let the intersection report the invalid geometries
+        }
+        return intersection(a, b, monitor);
+    }
+
+    private Geometry intersection(Geometry a, Geometry b, TaskMonitor monitor) {
+        try {
+            return EnhancedPrecisionOp.intersection(a, b);
+        } catch (Exception ex) {
+            synchronized (monitor) {
+                monitor.report(ex);
+            }
+            LOG.error(a);
+            LOG.error(b);
+            return null;
+        }
+    }
+
+    /**
+     *  Features of a overlaid by a task of the parallel mode, and their
+     *  intersections with the features of b. Features are not created by the
+     *  tasks, as FeatureUtil#nextID is not thread-safe.
+     */
+    private static class Chunk {
+        private final int[] indices;
+        private final List<Geometry> intersections = new ArrayList<Geometry>();
+        private final List<Feature> bFeatures = new ArrayList<Feature>();
+        /**
+         *  End of the intersections of each feature in the buffer, or -1 if
+         *  the feature has not been overlaid.
+         */
+        private final int[] ends;
+
+        Chunk(int[] indices) {
+            this.indices = indices;
+            this.ends = new int[indices.length];
+            Arrays.fill(ends, -1);
+        }
+    }
+
     protected void addFeature(Geometry intersection, FeatureCollection overlay,
         AttributeMapping mapping, Feature a, Feature b) {
         if (splittingGeometryCollections &&
@@ -169,4 +438,14 @@ public class OverlayEngine {
     public void setAllowingPolygonsOnly(boolean allowingPolygonsOnly) {
         this.allowingPolygonsOnly = allowingPolygonsOnly;
     }
+
+    /**
+     *  In parallel mode, the overlay is computed by several threads, and
+     *  prepared geometries short-cut the intersection of disjoint geometries
+     *  and of a geometry contained in the other, which is copied. The
+     *  features of the overlay are in the same order as in serial mode.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
 }
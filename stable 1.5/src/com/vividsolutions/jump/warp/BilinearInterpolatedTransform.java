@@ -37,6 +37,8 @@ import java.util.Iterator;
 import java.util.Map;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.strtree.STRtree;
 import com.vividsolutions.jts.util.Assert;
 import com.vividsolutions.jump.task.TaskMonitor;
 
@@ -45,11 +47,22 @@ import com.vividsolutions.jump.task.TaskMonitor;
  * Bilinear interpolated triangulation transform, also known as "rubber sheeting".
  * See Saalfeld, Alan. 1985. A Fast Rubber-Sheeting Transformation Using
  * Simplical Coordinates. "The American Cartographer" 12:2, 169-173.
+ * <p>
+ * The source triangle of a coordinate is found in an STRtree of the source
+ * triangles, after checking the triangle of the previous coordinate, which
+ * usually contains the next vertex of the same geometry.
  */
 public class BilinearInterpolatedTransform extends CoordinateTransform {
+    /**
+     * Number of coordinates transformed between two progress reports.
+     */
+    private static final int REPORT_INTERVAL = 1000;
+
     private Map triangleMap;
     private TaskMonitor monitor;
     private int coordinatesTransformed = 0;
+    private STRtree triangleIndex = new STRtree();
+    private Triangle lastSourceTriangle = null;
 
     /**
      * Creates a RubberSheetTransform using the given triangulation.
@@ -58,6 +71,10 @@ public class BilinearInterpolatedTransform extends CoordinateTransform {
     public BilinearInterpolatedTransform(Map triangleMap, TaskMonitor monitor) {
         this.triangleMap = triangleMap;
         this.monitor = monitor;
+        for (Iterator i = triangleMap.keySet().iterator(); i.hasNext();) {
+            Triangle triangle = (Triangle) i.next();
+            triangleIndex.insert(triangle.getEnvelope(), triangle);
+        }
         monitor.report("Transforming...");
     }
 
@@ -68,7 +85,9 @@ public class BilinearInterpolatedTransform extends CoordinateTransform {
      * @return the transformed Coordinate
      */
     public Coordinate transform(Coordinate c) {
-        monitor.report(++coordinatesTransformed, -1, "coordinates");
+        if (++coordinatesTransformed % REPORT_INTERVAL == 0) {
+            monitor.report(coordinatesTransformed, -1, "coordinates");
+        }
 
         Triangle sourceTriangle = sourceTriangle(c);
         Assert.isTrue(sourceTriangle != null, "Unable to determine source triangle for " + c);
@@ -80,10 +99,15 @@ public class BilinearInterpolatedTransform extends CoordinateTransform {
     }
 
     private Triangle sourceTriangle(Coordinate c) {
- 
-        for (Iterator i = triangleMap.keySet().iterator(); i.hasNext();) {
+        if (lastSourceTriangle != null && lastSourceTriangle.getEnvelope().contains(c)
+                && lastSourceTriangle.contains(c)) {
+            return lastSourceTriangle;
+        }
+
+        for (Iterator i = triangleIndex.query(new Envelope(c)).iterator(); i.hasNext();) {
             Triangle triangle = (Triangle) i.next();
-            if (triangle.getEnvelope().contains(c) && triangle.contains(c)) {
+            if (triangle.contains(c)) {
+                lastSourceTriangle = triangle;
                 return triangle;
             }
         }
@@ -40,6 +40,7 @@ import com.vividsolutions.jts.util.Assert;
 import com.vividsolutions.jump.feature.FeatureCollection;
 import com.vividsolutions.jump.feature.FeatureCollectionWrapper;
 import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.IndexedFeatureDataset;
 import com.vividsolutions.jump.io.datasource.DataSourceQuery;
 import com.vividsolutions.jump.util.Blackboard;
 import com.vividsolutions.jump.workbench.ui.plugin.AddNewLayerPlugIn;
@@ -515,6 +516,18 @@ public class Layer extends AbstractLayerable implements LayerManagerProxy {
 		}
 	}
 
+	/**
+	 * Updates the spatial index of the features whose geometry has been
+	 * modified. Does nothing if the underlying feature collection is not an
+	 * IndexedFeatureDataset.
+	 */
+	public static void tryToUpdateIndex(Layer layer, Collection features) {
+		if (layer.getFeatureCollectionWrapper().getUltimateWrappee() instanceof IndexedFeatureDataset) {
+			((IndexedFeatureDataset) layer.getFeatureCollectionWrapper()
+					.getUltimateWrappee()).update(features);
+		}
+	}
+
 	public DataSourceQuery getDataSourceQuery() {
 		return dataSourceQuery;
 	}
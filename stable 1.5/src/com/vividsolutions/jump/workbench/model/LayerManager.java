@@ -365,6 +365,10 @@ public class LayerManager {
     public void fireGeometryModified(final Collection features,
         final Layer layer, final Collection oldFeatureClones) {
         Assert.isTrue(oldFeatureClones != null);
+        //Update the index even if events are not fired
+        if (layer != null) {
+            Layer.tryToUpdateIndex(layer, features);
+        }
         fireFeaturesChanged(features, FeatureEventType.GEOMETRY_MODIFIED,
             layer, oldFeatureClones);
     }
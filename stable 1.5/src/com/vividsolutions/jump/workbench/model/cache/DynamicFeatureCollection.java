@@ -42,6 +42,10 @@ public class DynamicFeatureCollection implements FeatureCollection {
 
   private volatile Object currentQueryContext;
 
+  // The stream of the last query, closed by the next query even if its
+  // iterator has been abandoned (e.g. by a cancelled rendering)
+  private FeatureInputStream lastFeatureInputStream;
+
   private FeatureSchema schema = AddNewLayerPlugIn
                                .createBlankFeatureCollection().getFeatureSchema();
 
@@ -74,7 +78,8 @@ public class DynamicFeatureCollection implements FeatureCollection {
     }
     // Sometimes #execute takes a long time (e.g. SDE), and other calls to
     // #query may have occurred. [Jon Aquino 2005-03-15]
-    if (myQueryContext != currentQueryContext) {
+    if (!replaceLastFeatureInputStream(myFeatureInputStream, myQueryContext)) {
+      close(myFeatureInputStream);
       return Collections.EMPTY_LIST;
     }
     schema = myFeatureInputStream.getFeatureSchema();
@@ -95,6 +100,13 @@ public class DynamicFeatureCollection implements FeatureCollection {
           }
 
           public boolean hasNext() {
+            // A stream is closed by the next query on another thread
+            synchronized (myFeatureInputStream) {
+              return hasNextFeature();
+            }
+          }
+
+          private boolean hasNextFeature() {
             try {
               if (featureLimit != null
                   && featuresReturned >= featureLimit
@@ -136,7 +148,9 @@ public class DynamicFeatureCollection implements FeatureCollection {
             }
             try {
               featuresReturned++;
-              return myFeatureInputStream.next();
+              synchronized (myFeatureInputStream) {
+                return myFeatureInputStream.next();
+              }
             } catch (Exception e) {
               throw new RuntimeException(e);
             }
@@ -146,6 +160,37 @@ public class DynamicFeatureCollection implements FeatureCollection {
     };
   }
 
+  /**
+   * Makes a stream the one of the last query, closing the previous one,
+   * unless another query has been made since the stream was requested.
+   * @return false if another query has been made
+   */
+  private boolean replaceLastFeatureInputStream(
+      FeatureInputStream featureInputStream, Object queryContext) {
+    FeatureInputStream previous;
+    synchronized (this) {
+      if (queryContext != currentQueryContext) {
+        return false;
+      }
+      previous = lastFeatureInputStream;
+      lastFeatureInputStream = featureInputStream;
+    }
+    if (previous != null) {
+      close(previous);
+    }
+    return true;
+  }
+
+  private void close(FeatureInputStream featureInputStream) {
+    synchronized (featureInputStream) {
+      try {
+        featureInputStream.close();
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
   public void add(Feature feature) {
     throw new UnsupportedOperationException();
   }
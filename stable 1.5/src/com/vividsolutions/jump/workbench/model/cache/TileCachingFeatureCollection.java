@@ -0,0 +1,792 @@
+package com.vividsolutions.jump.workbench.model.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.SwingUtilities;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateFilter;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureCollectionWrapper;
+import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.FeatureSchema;
+import com.vividsolutions.jump.util.Block;
+import com.vividsolutions.jump.util.LazyList;
+import com.vividsolutions.jump.util.ListWrapper;
+import com.vividsolutions.jump.workbench.ui.plugin.AddNewLayerPlugIn;
+import com.vividsolutions.jump.workbench.ui.renderer.ThreadQueue;
+
+/**
+ * Caches the features of a database-backed FeatureCollection (typically a
+ * {@link DynamicFeatureCollection}) by tile of a square grid, so that panning
+ * or zooming in over an area already read does not query the database again.
+ * <p>
+ * The tile size is a power of two, chosen for each query so that the query
+ * envelope spans two or three tiles in each direction. A tile is served by
+ * itself or by a loaded tile of a coarser level containing it. The tiles
+ * missing for a query are read with a single query over their bounds; the
+ * tiles around them are then read in the background. Tiles are dropped,
+ * least recently used first, when the number of coordinates they hold
+ * exceeds a bound.
+ * <p>
+ * A feature crossing several tiles is read once per tile. The copies are
+ * merged by primary key (or by all their values if the key is unknown), so
+ * each feature is represented by a single instance. Adding, removing or
+ * modifying features drops the tiles they touch, which are read again from
+ * the database by the next query. The features added are returned by the
+ * queries along with those of the tiles, until they are removed or the
+ * cache is emptied. As with {@link CachingFeatureCollection},
+ * queries made on the GUI thread never reach the database, and all calls
+ * other than query(envelope).iterator() are delegated to the cached features.
+ * <p>
+ * A limit on the number of features read by a query applies to each read,
+ * so to the tiles read together rather than to the view. A read reaching
+ * the limit (see {@link #setReadLimit(int)}) may have missed features: its
+ * tiles are not cached, the features read are only returned for the view.
+ */
+public class TileCachingFeatureCollection extends FeatureCollectionWrapper {
+
+    public static final int DEFAULT_MAX_COORDINATES = 2000000;
+
+    /**
+     * Number of coarser levels searched for a loaded tile containing a
+     * missing one.
+     */
+    private static final int MAX_ANCESTOR_LEVELS = 8;
+
+    private static final ThreadQueue prefetchQueue = new ThreadQueue(1);
+
+    private final FeatureCollection featureCollection;
+
+    // Only one read at a time: a DynamicFeatureCollection closes its
+    // stream when another query is made.
+    private final Object loadLock = new Object();
+
+    private final Map<TileKey,Tile> tiles = new LinkedHashMap<TileKey,Tile>(16, 0.75f, true);
+
+    private final Map<Object,CachedFeature> features = new HashMap<Object,CachedFeature>();
+
+    /**
+     * Features added to the collection, which are not read from the database.
+     */
+    private final Map<Feature,Feature> addedFeatures = new IdentityHashMap<Feature,Feature>();
+
+    /**
+     * Tiles serving the last query, its own or coarser ones, which are not
+     * dropped to make room for others.
+     */
+    private Set<TileKey> protectedTiles = Collections.emptySet();
+
+    private int readLimit = 0;
+
+    private boolean prefetching = true;
+
+    private long coordinates = 0;
+
+    private int maxCoordinates = DEFAULT_MAX_COORDINATES;
+
+    private String[] keyAttributeNames = null;
+
+    private int[] keyIndices = null;
+
+    /**
+     * Incremented when tiles are dropped because of an edit, so that a read
+     * started before is not cached.
+     */
+    private int generation = 0;
+
+    /**
+     * Incremented by each query reaching the database, so that the prefetch
+     * of a view the user has already left is skipped.
+     */
+    private int queryCount = 0;
+
+    private boolean initialized = false;
+
+    public TileCachingFeatureCollection(FeatureCollection featureCollection) {
+        super(AddNewLayerPlugIn.createBlankFeatureCollection());
+        this.featureCollection = featureCollection;
+    }
+
+    /**
+     * @param keyAttributeNames the names of the attributes identifying a
+     * feature, or null to identify features by all their values
+     */
+    public TileCachingFeatureCollection setKeyAttributeNames(
+            String[] keyAttributeNames) {
+        synchronized (this) {
+            this.keyAttributeNames = keyAttributeNames;
+            keyIndices = null;
+        }
+        emptyCache();
+        return this;
+    }
+
+    /**
+     * @param maxCoordinates the number of coordinates over which the least
+     * recently used tiles are dropped
+     */
+    public synchronized TileCachingFeatureCollection setMaxCoordinates(
+            int maxCoordinates) {
+        this.maxCoordinates = maxCoordinates;
+        return this;
+    }
+
+    /**
+     * @param readLimit the maximum number of features returned by a query of
+     * the wrapped collection (the limit of its database query), or 0 if
+     * there is none
+     */
+    public synchronized TileCachingFeatureCollection setReadLimit(int readLimit) {
+        this.readLimit = readLimit;
+        return this;
+    }
+
+    /**
+     * @param prefetching whether the tiles around a query are read in the
+     * background
+     */
+    public synchronized TileCachingFeatureCollection setPrefetching(
+            boolean prefetching) {
+        this.prefetching = prefetching;
+        return this;
+    }
+
+    /**
+     * @see com.vividsolutions.jump.feature.FeatureCollectionWrapper#getEnvelope()
+     */
+    public Envelope getEnvelope() {
+        try {
+            Envelope e = featureCollection.getEnvelope();
+            if (e != null)
+                return e;
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+        return super.getEnvelope();
+    }
+
+    /**
+     * @see com.vividsolutions.jump.feature.FeatureCollectionWrapper#getFeatureSchema()
+     */
+    public FeatureSchema getFeatureSchema() {
+        return featureCollection.getFeatureSchema();
+    }
+
+    public List query(final Envelope envelope) {
+        // Same wrappers as CachingFeatureCollection: only #iterator, called
+        // by the LayerRenderer thread, may reach the database.
+        final LazyList cachedFeatureCollectionQueryResults = new LazyList(
+                new Block() {
+                    public Object yield() {
+                        return getCachedFeatureCollection().query(envelope);
+                    }
+                });
+        return new ListWrapper() {
+            public Collection getCollection() {
+                return cachedFeatureCollectionQueryResults;
+            }
+
+            public Iterator iterator() {
+                if (SwingUtilities.isEventDispatchThread() || envelope.isNull()) {
+                    return super.iterator();
+                }
+                if (envelope.getWidth() == 0 && envelope.getHeight() == 0) {
+                    // No tile size fits a point: read it directly
+                    return read(envelope).iterator();
+                }
+                return queryTiles(envelope).iterator();
+            }
+        };
+    }
+
+    private List queryTiles(Envelope envelope) {
+        int level = Math.getExponent(Math.max(envelope.getWidth(), envelope.getHeight()));
+        List<TileKey> keys = TileKey.cover(level, envelope);
+        int query;
+        synchronized (this) {
+            query = ++queryCount;
+            protectedTiles = servingKeys(keys);
+        }
+        List uncached = load(keys);
+        synchronized (this) {
+            protectedTiles = servingKeys(keys);
+        }
+        if (uncached != null) {
+            // The surroundings would be truncated as well
+            return collect(keys, envelope, uncached);
+        }
+        List result = collect(keys, envelope, Collections.EMPTY_LIST);
+        boolean prefetching;
+        synchronized (this) {
+            prefetching = this.prefetching;
+        }
+        if (prefetching) {
+            prefetchAround(level, envelope, query);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the keys of the view and of the coarser tiles serving them.
+     */
+    private Set<TileKey> servingKeys(List<TileKey> keys) {
+        Set<TileKey> servingKeys = new HashSet<TileKey>(keys);
+        for (Iterator<TileKey> i = keys.iterator(); i.hasNext();) {
+            Tile tile = find(i.next());
+            if (tile != null) {
+                servingKeys.add(tile.key);
+            }
+        }
+        return servingKeys;
+    }
+
+    /**
+     * Reads the tiles which are not loaded, with one query over their bounds.
+     * @return the features read if the read reached the limit, in which case
+     * the tiles are not cached, null otherwise
+     */
+    private List load(List<TileKey> keys) {
+        synchronized (loadLock) {
+            List<TileKey> missing = new ArrayList<TileKey>();
+            Envelope bounds = new Envelope();
+            int loadGeneration;
+            synchronized (this) {
+                for (Iterator<TileKey> i = keys.iterator(); i.hasNext();) {
+                    TileKey key = i.next();
+                    if (find(key) == null) {
+                        missing.add(key);
+                        bounds.expandToInclude(key.getEnvelope());
+                    }
+                }
+                loadGeneration = generation;
+            }
+            if (missing.isEmpty()) {
+                return null;
+            }
+            List read = read(bounds);
+            synchronized (this) {
+                initializeCacheIfNecessary();
+                if (readLimit > 0 && read.size() >= readLimit) {
+                    // Truncated: the tiles would lack features
+                    return read;
+                }
+                if (generation != loadGeneration) {
+                    // Edited during the read: the next query will read again
+                    return null;
+                }
+                install(missing, read);
+                evict();
+                return null;
+            }
+        }
+    }
+
+    private List read(Envelope envelope) {
+        synchronized (loadLock) {
+            List read = new ArrayList();
+            for (Iterator i = featureCollection.query(envelope).iterator(); i.hasNext();) {
+                read.add(i.next());
+            }
+            return read;
+        }
+    }
+
+    private void install(List<TileKey> keys, List read) {
+        List<Tile> newTiles = new ArrayList<Tile>(keys.size());
+        for (Iterator<TileKey> i = keys.iterator(); i.hasNext();) {
+            Tile tile = new Tile(i.next());
+            newTiles.add(tile);
+            tiles.put(tile.key, tile);
+        }
+        for (Iterator i = read.iterator(); i.hasNext();) {
+            Feature feature = (Feature) i.next();
+            if (feature.getGeometry() == null) {
+                continue;
+            }
+            Envelope featureEnvelope = feature.getGeometry().getEnvelopeInternal();
+            CachedFeature cached = null;
+            for (Iterator<Tile> j = newTiles.iterator(); j.hasNext();) {
+                Tile tile = j.next();
+                if (!tile.envelope.intersects(featureEnvelope)) {
+                    continue;
+                }
+                if (cached == null) {
+                    cached = canonicalize(feature);
+                }
+                cached.tileCount++;
+                tile.features.add(cached);
+                tile.coordinates += 1 + cached.feature.getGeometry().getNumPoints();
+            }
+        }
+        for (Iterator<Tile> i = newTiles.iterator(); i.hasNext();) {
+            coordinates += i.next().coordinates;
+        }
+    }
+
+    /**
+     * Returns the cached instance of a feature read from the database,
+     * caching it if it is new.
+     */
+    private CachedFeature canonicalize(Feature feature) {
+        Object key = key(feature);
+        CachedFeature cached = features.get(key);
+        if (cached == null) {
+            cached = new CachedFeature(key, feature);
+            features.put(key, cached);
+            getCachedFeatureCollection().add(feature);
+        }
+        return cached;
+    }
+
+    private Object key(Feature feature) {
+        if (keyIndices == null) {
+            keyIndices = keyIndices(feature.getSchema());
+        }
+        if (keyIndices.length > 0) {
+            List key = new ArrayList(keyIndices.length);
+            for (int i = 0; i < keyIndices.length; i++) {
+                Object value = feature.getAttribute(keyIndices[i]);
+                if (value == null) {
+                    return valueKey(feature);
+                }
+                key.add(value);
+            }
+            return key;
+        }
+        return valueKey(feature);
+    }
+
+    private Object valueKey(Feature feature) {
+        Object[] attributes = feature.getAttributes();
+        List key = new ArrayList(attributes.length);
+        for (int i = 0; i < attributes.length; i++) {
+            if (attributes[i] instanceof Geometry) {
+                key.add(new GeometryKey((Geometry) attributes[i]));
+            } else {
+                key.add(attributes[i]);
+            }
+        }
+        return key;
+    }
+
+    private int[] keyIndices(FeatureSchema schema) {
+        if (keyAttributeNames == null) {
+            return new int[0];
+        }
+        int[] indices = new int[keyAttributeNames.length];
+        for (int i = 0; i < keyAttributeNames.length; i++) {
+            indices[i] = -1;
+            for (int j = 0; j < schema.getAttributeCount(); j++) {
+                if (schema.getAttributeName(j).equalsIgnoreCase(keyAttributeNames[i])) {
+                    indices[i] = j;
+                    break;
+                }
+            }
+            if (indices[i] == -1) {
+                // Key not read by the query
+                return new int[0];
+            }
+        }
+        return indices;
+    }
+
+    private void evict() {
+        for (Iterator<Map.Entry<TileKey,Tile>> i = tiles.entrySet().iterator();
+                coordinates > maxCoordinates && i.hasNext();) {
+            Map.Entry<TileKey,Tile> entry = i.next();
+            if (protectedTiles.contains(entry.getKey())) {
+                continue;
+            }
+            i.remove();
+            release(Collections.singletonList(entry.getValue()));
+        }
+    }
+
+    /**
+     * Releases the features of dropped tiles, removing those which are no
+     * longer in any tile.
+     */
+    private void release(Collection<Tile> droppedTiles) {
+        List removed = new ArrayList();
+        for (Iterator<Tile> i = droppedTiles.iterator(); i.hasNext();) {
+            Tile tile = i.next();
+            coordinates -= tile.coordinates;
+            for (Iterator<CachedFeature> j = tile.features.iterator(); j.hasNext();) {
+                CachedFeature cached = j.next();
+                if (--cached.tileCount == 0) {
+                    features.remove(cached.key);
+                    removed.add(cached.feature);
+                }
+            }
+        }
+        if (!removed.isEmpty()) {
+            getCachedFeatureCollection().removeAll(removed);
+        }
+    }
+
+    /**
+     * Returns the loaded tile serving a key: its own tile or a coarser one
+     * containing it, or null if there is none.
+     */
+    private Tile find(TileKey key) {
+        for (int i = 0; i <= MAX_ANCESTOR_LEVELS; i++) {
+            Tile tile = tiles.get(key.ancestor(i));
+            if (tile != null) {
+                return tile;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the features of the loaded tiles serving keys, then those of
+     * an uncached read which are not in these tiles, then the features
+     * added, intersecting envelope.
+     */
+    private synchronized List collect(List<TileKey> keys, Envelope envelope, List uncached) {
+        Map<Tile,Tile> servingTiles = new IdentityHashMap<Tile,Tile>();
+        for (Iterator<TileKey> i = keys.iterator(); i.hasNext();) {
+            Tile tile = find(i.next());
+            if (tile != null) {
+                servingTiles.put(tile, tile);
+            }
+        }
+        Map<Feature,Feature> collected = new IdentityHashMap<Feature,Feature>();
+        Set<Object> collectedKeys = new HashSet<Object>();
+        List result = new ArrayList();
+        for (Iterator<Tile> i = servingTiles.keySet().iterator(); i.hasNext();) {
+            for (Iterator<CachedFeature> j = i.next().features.iterator(); j.hasNext();) {
+                CachedFeature cached = j.next();
+                Feature feature = cached.feature;
+                if (envelope.intersects(feature.getGeometry().getEnvelopeInternal())
+                        && collected.put(feature, feature) == null) {
+                    result.add(feature);
+                    if (!uncached.isEmpty()) {
+                        collectedKeys.add(cached.key);
+                    }
+                }
+            }
+        }
+        for (Iterator i = uncached.iterator(); i.hasNext();) {
+            Feature feature = (Feature) i.next();
+            if (feature.getGeometry() != null
+                    && envelope.intersects(feature.getGeometry().getEnvelopeInternal())
+                    && collectedKeys.add(key(feature))) {
+                result.add(feature);
+            }
+        }
+        for (Iterator<Feature> i = addedFeatures.keySet().iterator(); i.hasNext();) {
+            Feature feature = i.next();
+            if (feature.getGeometry() != null
+                    && envelope.intersects(feature.getGeometry().getEnvelopeInternal())
+                    && collected.put(feature, feature) == null) {
+                result.add(feature);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads in the background the ring of tiles around a query, one side at
+     * a time, unless another query is made in the meantime.
+     */
+    private void prefetchAround(int level, Envelope envelope, final int query) {
+        Envelope ring = new Envelope(envelope);
+        double size = Math.scalb(1.0, level);
+        ring.expandBy(size);
+        List<TileKey> keys = TileKey.cover(level, ring);
+        Set<TileKey> inner = new HashSet<TileKey>(TileKey.cover(level, envelope));
+        final List<TileKey> bottom = new ArrayList<TileKey>();
+        final List<TileKey> top = new ArrayList<TileKey>();
+        final List<TileKey> left = new ArrayList<TileKey>();
+        final List<TileKey> right = new ArrayList<TileKey>();
+        TileKey first = keys.get(0);
+        TileKey last = keys.get(keys.size() - 1);
+        for (Iterator<TileKey> i = keys.iterator(); i.hasNext();) {
+            TileKey key = i.next();
+            if (inner.contains(key)) {
+                continue;
+            }
+            if (key.row == first.row) {
+                bottom.add(key);
+            } else if (key.row == last.row) {
+                top.add(key);
+            } else if (key.col == first.col) {
+                left.add(key);
+            } else {
+                right.add(key);
+            }
+        }
+        prefetchQueue.add(new Runnable() {
+            public void run() {
+                List[] sides = new List[] { left, right, bottom, top };
+                for (int i = 0; i < sides.length; i++) {
+                    synchronized (TileCachingFeatureCollection.this) {
+                        if (query != queryCount) {
+                            return;
+                        }
+                    }
+                    try {
+                        load(sides[i]);
+                    } catch (RuntimeException e) {
+                        // A failed prefetch only means the tiles will be
+                        // read when they are viewed
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the tiles intersecting an envelope, to be read again from the
+     * database by the next query.
+     */
+    public synchronized void invalidate(Envelope envelope) {
+        generation++;
+        List<Tile> dropped = new ArrayList<Tile>();
+        for (Iterator<Tile> i = tiles.values().iterator(); i.hasNext();) {
+            Tile tile = i.next();
+            if (tile.envelope.intersects(envelope)) {
+                i.remove();
+                dropped.add(tile);
+            }
+        }
+        release(dropped);
+    }
+
+    /**
+     * Drops the tiles touched by features, e.g. when they are edited.
+     */
+    public void invalidate(Collection features) {
+        Envelope envelope = new Envelope();
+        for (Iterator i = features.iterator(); i.hasNext();) {
+            Geometry geometry = ((Feature) i.next()).getGeometry();
+            if (geometry != null) {
+                envelope.expandToInclude(geometry.getEnvelopeInternal());
+            }
+        }
+        if (!envelope.isNull()) {
+            invalidate(envelope);
+        }
+    }
+
+    public synchronized void emptyCache() {
+        generation++;
+        tiles.clear();
+        features.clear();
+        coordinates = 0;
+        addedFeatures.clear();
+        getCachedFeatureCollection().clear();
+    }
+
+    public void add(Feature feature) {
+        addAll(Collections.singletonList(feature));
+    }
+
+    public void addAll(Collection features) {
+        synchronized (this) {
+            for (Iterator i = features.iterator(); i.hasNext();) {
+                Feature feature = (Feature) i.next();
+                addedFeatures.put(feature, feature);
+            }
+            super.addAll(features);
+        }
+        invalidate(features);
+    }
+
+    public void remove(Feature feature) {
+        removeAll(Collections.singletonList(feature));
+    }
+
+    public void removeAll(Collection features) {
+        invalidate(features);
+        synchronized (this) {
+            for (Iterator i = features.iterator(); i.hasNext();) {
+                addedFeatures.remove(i.next());
+            }
+            super.removeAll(features);
+        }
+    }
+
+    public Collection remove(Envelope envelope) {
+        invalidate(envelope);
+        synchronized (this) {
+            Collection removed = super.remove(envelope);
+            for (Iterator i = removed.iterator(); i.hasNext();) {
+                addedFeatures.remove(i.next());
+            }
+            return removed;
+        }
+    }
+
+    public void clear() {
+        emptyCache();
+    }
+
+    private void initializeCacheIfNecessary() {
+        // The FeatureSchema of a DynamicFeatureCollection is only known
+        // once it has been queried
+        if (initialized) {
+            return;
+        }
+        setCachedFeatureCollection(new ThreadSafeFeatureCollectionWrapper(
+                new FeatureDataset(featureCollection.getFeatureSchema())));
+        getCachedFeatureCollection().addAll(addedFeatures.keySet());
+        initialized = true;
+    }
+
+    private FeatureCollection getCachedFeatureCollection() {
+        return getFeatureCollection();
+    }
+
+    private void setCachedFeatureCollection(
+            FeatureCollection cachedFeatureCollection) {
+        setFeatureCollection(cachedFeatureCollection);
+    }
+
+    private static class TileKey {
+
+        private final int level;
+
+        private final long col;
+
+        private final long row;
+
+        TileKey(int level, long col, long row) {
+            this.level = level;
+            this.col = col;
+            this.row = row;
+        }
+
+        /**
+         * Returns the keys of the tiles of a level covering an envelope, row
+         * by row from the bottom left tile.
+         */
+        static List<TileKey> cover(int level, Envelope envelope) {
+            double size = Math.scalb(1.0, level);
+            long minCol = (long) Math.floor(envelope.getMinX() / size);
+            long maxCol = (long) Math.floor(envelope.getMaxX() / size);
+            long minRow = (long) Math.floor(envelope.getMinY() / size);
+            long maxRow = (long) Math.floor(envelope.getMaxY() / size);
+            List<TileKey> keys = new ArrayList<TileKey>();
+            for (long row = minRow; row <= maxRow; row++) {
+                for (long col = minCol; col <= maxCol; col++) {
+                    keys.add(new TileKey(level, col, row));
+                }
+            }
+            return keys;
+        }
+
+        TileKey ancestor(int levels) {
+            return levels == 0 ? this : new TileKey(level + levels, col >> levels, row >> levels);
+        }
+
+        Envelope getEnvelope() {
+            double size = Math.scalb(1.0, level);
+            return new Envelope(col * size, (col + 1) * size, row * size, (row + 1) * size);
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) o;
+            return level == other.level && col == other.col && row == other.row;
+        }
+
+        public int hashCode() {
+            int result = level;
+            result = 31 * result + (int) (col ^ (col >>> 32));
+            result = 31 * result + (int) (row ^ (row >>> 32));
+            return result;
+        }
+    }
+
+    /**
+     * Identifies a geometry by its envelope and a hash of its coordinates,
+     * comparing the coordinates only when these are equal.
+     */
+    private static class GeometryKey {
+
+        private final Geometry geometry;
+
+        private final Envelope envelope;
+
+        private final int hash;
+
+        GeometryKey(Geometry geometry) {
+            this.geometry = geometry;
+            this.envelope = geometry.getEnvelopeInternal();
+            final int[] hash = new int[] { envelope.hashCode() };
+            geometry.apply(new CoordinateFilter() {
+                public void filter(Coordinate coord) {
+                    long bits = Double.doubleToLongBits(coord.x)
+                            + 31 * Double.doubleToLongBits(coord.y);
+                    hash[0] = 31 * hash[0] + (int) (bits ^ (bits >>> 32));
+                }
+            });
+            this.hash = hash[0];
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof GeometryKey)) {
+                return false;
+            }
+            GeometryKey other = (GeometryKey) o;
+            return hash == other.hash && envelope.equals(other.envelope)
+                    && geometry.equalsExact(other.geometry);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class Tile {
+
+        private final TileKey key;
+
+        private final Envelope envelope;
+
+        private final List<CachedFeature> features = new ArrayList<CachedFeature>();
+
+        private long coordinates = 0;
+
+        Tile(TileKey key) {
+            this.key = key;
+            this.envelope = key.getEnvelope();
+        }
+    }
+
+    private static class CachedFeature {
+
+        private final Object key;
+
+        private final Feature feature;
+
+        /**
+         * Number of loaded tiles holding the feature.
+         */
+        private int tileCount = 0;
+
+        CachedFeature(Object key, Feature feature) {
+            this.key = key;
+            this.feature = feature;
+        }
+    }
+}
@@ -81,6 +81,19 @@ public class Viewport implements Java2DConverter.PointConverter {
         });
     }
 
+    /**
+     * Creates a viewport with a fixed scale and origin, which does not follow
+     * the size of the panel. Used by subclasses rendering a part of the view
+     * (such as a tile) off-screen.
+     */
+    protected Viewport(LayerViewPanel panel, double scale, Point2D viewOriginAsPerceivedByModel) {
+        this.panel = panel;
+        zoomHistory = new ZoomHistory(panel);
+        java2DConverter = new Java2DConverter(this);
+        this.scale = scale;
+        this.viewOriginAsPerceivedByModel = viewOriginAsPerceivedByModel;
+    }
+
     public LayerViewPanel getPanel() {
         return panel;
     }
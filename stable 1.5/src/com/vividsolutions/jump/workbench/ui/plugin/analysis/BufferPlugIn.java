@@ -50,10 +50,10 @@ import com.vividsolutions.jts.geom.*;
 import com.vividsolutions.jump.I18N;
 import com.vividsolutions.jts.operation.buffer.BufferOp;
 import com.vividsolutions.jts.operation.buffer.BufferParameters;
-import com.vividsolutions.jts.operation.union.UnaryUnionOp;
 import com.vividsolutions.jts.simplify.DouglasPeuckerSimplifier;
 import com.vividsolutions.jump.feature.*;
 import com.vividsolutions.jump.task.*;
+import com.vividsolutions.jump.tools.DissolveEngine;
 import com.vividsolutions.jump.workbench.WorkbenchContext;
 import com.vividsolutions.jump.workbench.model.*;
 import com.vividsolutions.jump.workbench.plugin.*;
@@ -279,7 +279,13 @@ public class BufferPlugIn extends AbstractThreadedUiPlugIn {
 	    if (unionResult) {
 	        monitor.report(I18N.get("ui.plugin.analysis.BufferPlugIn.union-buffered-features"));
 	    	Collection geoms = FeatureUtil.toGeometries(resultFC.getFeatures());
-	    	Geometry g = UnaryUnionOp.union(geoms);
+	    	DissolveEngine engine = new DissolveEngine();
+	    	Geometry g;
+	    	try {
+	    	    g = engine.union(geoms);
+	    	} finally {
+	    	    engine.shutdown();
+	    	}
 	    	geoms.clear();
 	    	if (!(g == null || g.isEmpty())) geoms.add(g);
 	    	resultFC = FeatureDatasetFactory.createFromGeometry(geoms);
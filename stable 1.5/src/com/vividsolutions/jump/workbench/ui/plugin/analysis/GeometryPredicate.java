@@ -36,6 +36,7 @@ package com.vividsolutions.jump.workbench.ui.plugin.analysis;
 import java.util.*;
 import com.vividsolutions.jts.algorithm.*;
 import com.vividsolutions.jts.geom.*;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
 import com.vividsolutions.jts.simplify.*;
 import com.vividsolutions.jump.qa.diff.BufferGeometryMatcher;
 import com.vividsolutions.jump.workbench.ui.GenericNames;
@@ -73,7 +74,7 @@ public abstract class GeometryPredicate
     return names;
   }
 
-  static GeometryPredicate getPredicate(String name)
+  public static GeometryPredicate getPredicate(String name)
   {
     for (int i = 0; i < method.length; i++) {
       if (method[i].name.equals(name))
@@ -116,10 +117,28 @@ public abstract class GeometryPredicate
 
   public abstract boolean isTrue(Geometry geom0, Geometry geom1, double[] param);
 
+  /**
+   * Returns true if {@link #isTrue(Geometry, PreparedGeometry, double[])}
+   * is faster than {@link #isTrue(Geometry, Geometry, double[])} when geom1
+   * is tested against several geometries.
+   */
+  public boolean isPreparable() { return false; }
+
+  /**
+   * Evaluates the predicate with a prepared second geometry.
+   * The default implementation evaluates it with the raw geometry.
+   */
+  public boolean isTrue(Geometry geom0, PreparedGeometry prep1, double[] param) {
+    return isTrue(geom0, prep1.getGeometry(), param);
+  }
+
   private static class IntersectsPredicate extends GeometryPredicate {
     public IntersectsPredicate() {  super(GenericNames.INTERSECTS);  }
     public boolean isTrue(Geometry geom0, Geometry geom1, double[] param) {
       return geom0.intersects(geom1);   }
+    public boolean isPreparable() { return true; }
+    public boolean isTrue(Geometry geom0, PreparedGeometry prep1, double[] param) {
+      return prep1.intersects(geom0);   }
   }
   private static class ContainsPredicate extends GeometryPredicate {
     public ContainsPredicate() {  super(GenericNames.CONTAINS);  }
@@ -135,6 +154,9 @@ public abstract class GeometryPredicate
     public CoveredByPredicate() {  super(GenericNames.COVEREDBY);  }
     public boolean isTrue(Geometry geom0, Geometry geom1, double[] param) {
       return geom0.coveredBy(geom1);   }
+    public boolean isPreparable() { return true; }
+    public boolean isTrue(Geometry geom0, PreparedGeometry prep1, double[] param) {
+      return prep1.covers(geom0);   }
   }
   private static class CrossesPredicate extends GeometryPredicate {
     public CrossesPredicate() {  super(GenericNames.CROSSES);  }
@@ -145,6 +167,9 @@ public abstract class GeometryPredicate
     public DisjointPredicate() {  super(GenericNames.DISJOINT);  }
     public boolean isTrue(Geometry geom0, Geometry geom1, double[] param) {
       return geom0.disjoint(geom1);   }
+    public boolean isPreparable() { return true; }
+    public boolean isTrue(Geometry geom0, PreparedGeometry prep1, double[] param) {
+      return prep1.disjoint(geom0);   }
   }
   private static class EqualsPredicate extends GeometryPredicate {
     public EqualsPredicate() {  super(GenericNames.EQUALS);  }
@@ -165,11 +190,18 @@ public abstract class GeometryPredicate
     public WithinPredicate() {  super(GenericNames.WITHIN);  }
     public boolean isTrue(Geometry geom0, Geometry geom1, double[] param) {
       return geom0.within(geom1);   }
+    public boolean isPreparable() { return true; }
+    public boolean isTrue(Geometry geom0, PreparedGeometry prep1, double[] param) {
+      return prep1.contains(geom0);   }
   }
   public static class WithinDistancePredicate extends GeometryPredicate {
     public WithinDistancePredicate() {  super(GenericNames.WITHIN_DISTANCE, 1);  }
     public boolean isTrue(Geometry geom0, Geometry geom1, double[] param) {
       return geom0.isWithinDistance(geom1, param[0]);   }
+    public boolean isPreparable() { return true; }
+    // geometries which intersect are within any distance of each other
+    public boolean isTrue(Geometry geom0, PreparedGeometry prep1, double[] param) {
+      return prep1.intersects(geom0) || geom0.isWithinDistance(prep1.getGeometry(), param[0]);   }
   }
   public static class SimilarPredicate extends GeometryPredicate {
 	    public SimilarPredicate() {  super(GenericNames.SIMILAR, 1);  }
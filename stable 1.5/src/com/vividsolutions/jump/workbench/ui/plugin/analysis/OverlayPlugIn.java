@@ -125,6 +125,7 @@ public class OverlayPlugIn extends AbstractPlugIn implements ThreadedPlugIn {
         OverlayEngine e = new OverlayEngine();
         e.setAllowingPolygonsOnly(dialog.getBoolean(POLYGON_OUTPUT));
         e.setSplittingGeometryCollections(dialog.getBoolean(POLYGON_OUTPUT));
+        e.setParallel(true);
 
         return e;
     }
@@ -23,6 +23,7 @@ public class SpatialJoinExecuter
   private FeatureCollection queryFC;
 
   private boolean isExceptionThrown = false;
+  private boolean parallel = false;
 
   private Geometry geoms[] = new Geometry[2];
   private Set resultSet = new HashSet();
@@ -33,6 +34,19 @@ public class SpatialJoinExecuter
     this.srcBFC = srcBFC;
   }
 
+  /**
+   * Sets whether the join is executed by several threads.
+   * In parallel mode, the larger collection is always indexed and the
+   * geometries of A are prepared. If B is the smaller collection, the
+   * joined features are ordered by B instead of A.
+   *
+   * @param parallel true if the join should be executed in parallel
+   */
+  public void setParallel(boolean parallel)
+  {
+    this.parallel = parallel;
+  }
+
   /**
    * Gets the feature collection to query.
    * A spatial index may be created if this would improve performance.
@@ -125,6 +139,11 @@ public class SpatialJoinExecuter
                                      FeatureCollection resultFC
                                      )
   {
+    if (parallel) {
+      executeParallel(monitor, func, params, resultFC);
+      return;
+    }
+
     createQueryFeatureCollection(func);
 
     int total = srcAFC.size();
@@ -157,6 +176,24 @@ public class SpatialJoinExecuter
     }
   }
 
+  private void executeParallel(TaskMonitor monitor,
+                               GeometryPredicate func,
+                               double[] params,
+                               final FeatureCollection resultFC)
+  {
+    SpatialPredicateMatcher matcher = new SpatialPredicateMatcher(srcBFC, srcAFC, func, params) {
+      protected void found(List<Feature[]> pairs)
+      {
+        for (Iterator<Feature[]> i = pairs.iterator(); i.hasNext(); ) {
+          Feature[] pair = i.next();
+          addToResult(pair[0], pair[1], resultFC);
+        }
+      }
+    };
+    matcher.execute(monitor);
+    if (matcher.isExceptionThrown()) isExceptionThrown = true;
+  }
+
   private void addToResult(Feature fA, Feature fB, FeatureCollection resultFC)
   {
 	Feature fResult = new BasicFeature(resultFC.getFeatureSchema());
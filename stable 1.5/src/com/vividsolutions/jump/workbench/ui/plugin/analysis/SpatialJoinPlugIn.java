@@ -123,6 +123,7 @@ public class SpatialJoinPlugIn extends AbstractPlugIn implements ThreadedPlugIn
         //[sstein 28.Mar.2008] reversed order of input
         //(to be able to read from top to down the spatial relations) 
         SpatialJoinExecuter executer = new SpatialJoinExecuter(srcBFC, srcAFC);
+        executer.setParallel(true);
         FeatureCollection resultFC = executer.getResultFC();
         executer.execute(monitor, functionToRun, params, resultFC);
 
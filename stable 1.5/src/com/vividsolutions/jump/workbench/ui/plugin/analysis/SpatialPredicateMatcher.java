@@ -0,0 +1,236 @@
+package com.vividsolutions.jump.workbench.ui.plugin.analysis;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.vividsolutions.jump.task.*;
+import com.vividsolutions.jump.workbench.ui.GenericNames;
+
+
+import com.vividsolutions.jts.geom.*;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jump.feature.*;
+
+/**
+ * Finds the pairs of source and mask features for which a
+ * {@link GeometryPredicate} is true, using several threads.
+ * Used by the parallel mode of {@link SpatialQueryExecuter} and
+ * {@link SpatialJoinExecuter}.
+ * <p>
+ * The larger collection is indexed, and the features of the other one are
+ * split into contiguous partitions, each one tested by a worker thread into
+ * its own list of pairs. Mask geometries are prepared when the predicate
+ * can use a PreparedGeometry.
+ * The pairs of each partition are passed to {@link #found} on the calling
+ * thread, in the order of the partitions, as soon as they are available,
+ * until the task is cancelled.
+ */
+abstract class SpatialPredicateMatcher
+{
+  private static final int PARTITIONS_PER_THREAD = 4;
+
+  // delay between two progress reports, in milliseconds
+  private static final long PROGRESS_INTERVAL = 200;
+
+  private FeatureCollection sourceFC;
+  private FeatureCollection maskFC;
+  private GeometryPredicate pred;
+  private double[] params;
+
+  private boolean firstMatchOnly = false;
+  private boolean keepMaskOrder = false;
+
+  private volatile boolean isExceptionThrown = false;
+  private volatile boolean isCancelled = false;
+
+  SpatialPredicateMatcher(FeatureCollection sourceFC, FeatureCollection maskFC,
+                          GeometryPredicate pred, double[] params)
+  {
+    this.sourceFC = sourceFC;
+    this.maskFC = maskFC;
+    this.pred = pred;
+    this.params = params;
+  }
+
+  /**
+   * Sets whether the search stops at the first mask found for a source
+   * feature. The same source may still be found by several partitions.
+   */
+  void setFirstMatchOnly(boolean firstMatchOnly)
+  {
+    this.firstMatchOnly = firstMatchOnly;
+  }
+
+  /**
+   * Sets whether the pairs must be found in the order of the mask features,
+   * even if the source collection is the smaller one.
+   */
+  void setKeepMaskOrder(boolean keepMaskOrder)
+  {
+    this.keepMaskOrder = keepMaskOrder;
+  }
+
+  boolean isExceptionThrown() { return isExceptionThrown; }
+
+  /**
+   * Receives the pairs found in a partition, as {source, mask} arrays.
+   */
+  protected abstract void found(List<Feature[]> pairs);
+
+  void execute(TaskMonitor monitor)
+  {
+    boolean isDisjoint = pred instanceof GeometryPredicate.DisjointPredicate;
+    final boolean byMask = keepMaskOrder || isDisjoint || maskFC.size() <= sourceFC.size();
+    final List iterated = new ArrayList(byMask ? maskFC.getFeatures() : sourceFC.getFeatures());
+    final FeatureCollection queryFC;
+    final List all;
+    if (isDisjoint) {
+      // every pair must be tested
+      queryFC = null;
+      all = new ArrayList(byMask ? sourceFC.getFeatures() : maskFC.getFeatures());
+    }
+    else {
+      queryFC = new IndexedFeatureCollection(byMask ? sourceFC : maskFC);
+      // the index is built by its first query, which must not be concurrent
+      queryFC.query(new Envelope());
+      all = null;
+    }
+
+    final AtomicInteger done = new AtomicInteger();
+    int threadCount = Runtime.getRuntime().availableProcessors();
+    int partitionCount = Math.max(1, Math.min(iterated.size(), threadCount * PARTITIONS_PER_THREAD));
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    try {
+      List<Future<List<Feature[]>>> futures = new ArrayList<Future<List<Feature[]>>>(partitionCount);
+      for (int p = 0; p < partitionCount; p++) {
+        final int from = (int) ((long) iterated.size() * p / partitionCount);
+        final int to = (int) ((long) iterated.size() * (p + 1) / partitionCount);
+        futures.add(executor.submit(new Callable<List<Feature[]>>() {
+          public List<Feature[]> call()
+          {
+            List<Feature[]> pairs = new ArrayList<Feature[]>();
+            if (byMask) {
+              matchMasks(iterated.subList(from, to), queryFC, all, pairs, done);
+            }
+            else {
+              matchSources(iterated.subList(from, to), queryFC, pairs, done);
+            }
+            return pairs;
+          }
+        }));
+      }
+      for (Iterator<Future<List<Feature[]>>> i = futures.iterator(); i.hasNext(); ) {
+        Future<List<Feature[]>> future = i.next();
+        while (true) {
+          // the pairs of the remaining partitions are dropped once cancelled
+          if (monitor.isCancelRequested()) {
+            isCancelled = true;
+            return;
+          }
+          try {
+            found(future.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS));
+            break;
+          }
+          catch (TimeoutException ex) {
+            monitor.report(done.get(), iterated.size(), GenericNames.FEATURES);
+          }
+        }
+      }
+      monitor.report(done.get(), iterated.size(), GenericNames.FEATURES);
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    catch (ExecutionException ex) {
+      if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+      throw new RuntimeException(ex.getCause());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Iterator query(FeatureCollection queryFC, List all, Geometry g)
+  {
+    if (queryFC == null) return all.iterator();
+    Envelope queryEnv = new Envelope(g.getEnvelopeInternal());
+    // special hack for withinDistance
+    if (pred instanceof GeometryPredicate.WithinDistancePredicate) {
+      queryEnv.expandBy(params[0]);
+    }
+    return queryFC.query(queryEnv).iterator();
+  }
+
+  /**
+   * Tests each mask against its candidate sources. Sources already found by
+   * this partition are not tested again if only the first match is needed.
+   */
+  private void matchMasks(List masks, FeatureCollection queryFC, List all,
+                          List<Feature[]> pairs, AtomicInteger done)
+  {
+    Set found = firstMatchOnly ? new HashSet() : null;
+    for (Iterator iMask = masks.iterator(); iMask.hasNext() && ! isCancelled; ) {
+      Feature fMask = (Feature) iMask.next();
+      Geometry gMask = fMask.getGeometry();
+      PreparedGeometry pMask = null;
+      for (Iterator queryIt = query(queryFC, all, gMask); queryIt.hasNext(); ) {
+        Feature fSrc = (Feature) queryIt.next();
+        if (found != null && found.contains(fSrc)) continue;
+        // a mask is prepared once it is tested against a second source
+        if (pMask == null && pred.isPreparable() && ! gMask.isEmpty() && queryIt.hasNext()) {
+          pMask = PreparedGeometryFactory.prepare(gMask);
+        }
+        if (isTrue(fSrc.getGeometry(), gMask, pMask)) {
+          pairs.add(new Feature[] {fSrc, fMask});
+          if (found != null) found.add(fSrc);
+        }
+      }
+      done.incrementAndGet();
+    }
+  }
+
+  /**
+   * Tests each source against its candidate masks. The masks prepared by
+   * this partition are kept for the next sources.
+   */
+  private void matchSources(List sources, FeatureCollection queryFC,
+                            List<Feature[]> pairs, AtomicInteger done)
+  {
+    Map<Geometry,PreparedGeometry> prepared = new IdentityHashMap<Geometry,PreparedGeometry>();
+    for (Iterator iSrc = sources.iterator(); iSrc.hasNext() && ! isCancelled; ) {
+      Feature fSrc = (Feature) iSrc.next();
+      Geometry gSrc = fSrc.getGeometry();
+      for (Iterator queryIt = query(queryFC, null, gSrc); queryIt.hasNext(); ) {
+        Feature fMask = (Feature) queryIt.next();
+        Geometry gMask = fMask.getGeometry();
+        PreparedGeometry pMask = null;
+        if (pred.isPreparable() && ! gMask.isEmpty()) {
+          pMask = prepared.get(gMask);
+          if (pMask == null) {
+            pMask = PreparedGeometryFactory.prepare(gMask);
+            prepared.put(gMask, pMask);
+          }
+        }
+        if (isTrue(gSrc, gMask, pMask)) {
+          pairs.add(new Feature[] {fSrc, fMask});
+          if (firstMatchOnly) break;
+        }
+      }
+      done.incrementAndGet();
+    }
+  }
+
+  private boolean isTrue(Geometry gSrc, Geometry gMask, PreparedGeometry pMask)
+  {
+    try {
+      if (pMask != null) return pred.isTrue(gSrc, pMask, params);
+      return pred.isTrue(gSrc, gMask, params);
+    }
+    catch (RuntimeException ex) {
+      // simply eat exceptions and report them by returning false
+      isExceptionThrown = true;
+    }
+    return false;
+  }
+}
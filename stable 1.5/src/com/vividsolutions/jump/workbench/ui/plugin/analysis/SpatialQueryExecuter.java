@@ -27,6 +27,7 @@ public class SpatialQueryExecuter
   private boolean complementResult = false;
   private boolean allowDuplicatesInResult = false;
   private boolean isExceptionThrown = false;
+  private boolean parallel = false;
 
 
   private Geometry geoms[] = new Geometry[2];
@@ -60,6 +61,18 @@ public class SpatialQueryExecuter
     this.complementResult = complementResult;
   }
 
+  /**
+   * Sets whether the query is executed by several threads.
+   * In parallel mode, the larger collection is always indexed and the mask
+   * geometries are prepared.
+   *
+   * @param parallel true if the query should be executed in parallel
+   */
+  public void setParallel(boolean parallel)
+  {
+    this.parallel = parallel;
+  }
+
   /**
    * Gets the featurec collection to query.
    * This may be indexed if this would improve performance.
@@ -131,6 +144,10 @@ public class SpatialQueryExecuter
                                      FeatureCollection resultFC
                                      )
   {
+    if (parallel) {
+      executeParallel(monitor, func, params, resultFC);
+      return;
+    }
 
     createQueryFeatureCollection(func);
 
@@ -178,6 +195,42 @@ public class SpatialQueryExecuter
     }
   }
 
+  private void executeParallel(TaskMonitor monitor,
+                               GeometryPredicate func,
+                               double[] params,
+                               final FeatureCollection resultFC)
+  {
+    SpatialPredicateMatcher matcher = new SpatialPredicateMatcher(sourceFC, maskFC, func, params) {
+      protected void found(List<Feature[]> pairs)
+      {
+        for (Iterator<Feature[]> i = pairs.iterator(); i.hasNext(); ) {
+          Feature fSrc = i.next()[0];
+          if (allowDuplicatesInResult) {
+            addToResult(fSrc, resultFC);
+          }
+          else {
+            resultSet.add(fSrc);
+          }
+        }
+      }
+    };
+    // duplicates are added in the order of the masks, as in serial mode
+    matcher.setKeepMaskOrder(allowDuplicatesInResult);
+    matcher.setFirstMatchOnly(! allowDuplicatesInResult);
+    matcher.execute(monitor);
+    if (matcher.isExceptionThrown()) isExceptionThrown = true;
+    if (monitor.isCancelRequested()) return;
+
+    if (! allowDuplicatesInResult) {
+      if (complementResult) {
+        loadComplement(resultFC);
+      }
+      else {
+        loadResult(resultFC);
+      }
+    }
+  }
+
   private void loadComplement(FeatureCollection resultFC)
   {
     for (Iterator i = sourceFC.iterator(); i.hasNext(); ) {
@@ -149,6 +149,7 @@ public class SpatialQueryPlugIn extends AbstractPlugIn implements ThreadedPlugIn
     SpatialQueryExecuter executer = new SpatialQueryExecuter(maskFC, sourceFC);
     executer.setAllowDuplicates(allowDups);
     executer.setComplementResult(complementResult);
+    executer.setParallel(true);
     
     // Code added by the Sunburned Surveyor to allow
     // the creation of "normal" selections if a new
@@ -3,7 +3,9 @@ package com.vividsolutions.jump.workbench.ui.plugin.datastore;
 import java.util.ArrayList;
 import java.util.Collection;
 
+import com.vividsolutions.jump.datastore.DataStoreMetadata;
 import com.vividsolutions.jump.datastore.FilterQuery;
+import com.vividsolutions.jump.datastore.postgis.PostgisDSMetadata;
 import com.vividsolutions.jump.feature.FeatureCollection;
 import com.vividsolutions.jump.io.datasource.Connection;
 import com.vividsolutions.jump.io.datasource.DataSource;
@@ -15,6 +17,7 @@ import com.vividsolutions.jump.workbench.datastore.ConnectionDescriptor;
 import com.vividsolutions.jump.workbench.datastore.ConnectionManager;
 import com.vividsolutions.jump.workbench.model.cache.CachingFeatureCollection;
 import com.vividsolutions.jump.workbench.model.cache.DynamicFeatureCollection;
+import com.vividsolutions.jump.workbench.model.cache.TileCachingFeatureCollection;
 import com.vividsolutions.jump.workbench.ui.plugin.WorkbenchContextReference;
 
 /**
@@ -123,13 +126,38 @@ public class DataStoreDataSource extends DataSource implements
         if (getProperties().get(MAX_FEATURES_KEY) != null) {
             query.setLimit((Integer)getProperties().get(MAX_FEATURES_KEY));
         }
-        return new CachingFeatureCollection(new DynamicFeatureCollection(
+        DynamicFeatureCollection featureCollection = new DynamicFeatureCollection(
                 (ConnectionDescriptor) getProperties().get(
                         CONNECTION_DESCRIPTOR_KEY), ConnectionManager
-                        .instance(context), query))
-                .setCachingByEnvelope(((Boolean) LangUtil.ifNull(
-                        getProperties().get(CACHING_KEY), Boolean.TRUE))
-                        .booleanValue());
+                        .instance(context), query);
+        if (((Boolean) LangUtil.ifNull(getProperties().get(CACHING_KEY),
+                Boolean.TRUE)).booleanValue()) {
+            return new TileCachingFeatureCollection(featureCollection)
+                    .setReadLimit(query.getLimit())
+                    .setKeyAttributeNames(getPrimaryKeyColumnNames(query
+                            .getDatasetName()));
+        }
+        return new CachingFeatureCollection(featureCollection)
+                .setCachingByEnvelope(false);
+    }
+
+    /**
+     * @return the primary key of the dataset, or null if it is unknown
+     */
+    private String[] getPrimaryKeyColumnNames(String datasetName) {
+        try {
+            DataStoreMetadata metadata = ConnectionManager.instance(context)
+                    .getOpenConnection((ConnectionDescriptor) getProperties()
+                            .get(CONNECTION_DESCRIPTOR_KEY)).getMetadata();
+            if (metadata instanceof PostgisDSMetadata) {
+                String[] names = ((PostgisDSMetadata) metadata)
+                        .getPrimaryKeyColumnNames(datasetName);
+                return names.length > 0 ? names : null;
+            }
+        } catch (Exception e) {
+            // Features are then identified by all their values
+        }
+        return null;
     }
 
     public void setWorkbenchContext(WorkbenchContext context) {
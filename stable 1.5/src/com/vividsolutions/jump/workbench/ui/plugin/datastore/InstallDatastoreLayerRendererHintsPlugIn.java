@@ -9,13 +9,17 @@ import javax.swing.JInternalFrame;
 import javax.swing.event.InternalFrameAdapter;
 import javax.swing.event.InternalFrameEvent;
 
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureCollectionWrapper;
 import com.vividsolutions.jump.workbench.model.CategoryEvent;
 import com.vividsolutions.jump.workbench.model.FeatureEvent;
+import com.vividsolutions.jump.workbench.model.FeatureEventType;
 import com.vividsolutions.jump.workbench.model.Layer;
 import com.vividsolutions.jump.workbench.model.LayerEvent;
 import com.vividsolutions.jump.workbench.model.LayerListener;
 import com.vividsolutions.jump.workbench.model.LayerManager;
 import com.vividsolutions.jump.workbench.model.LayerManagerProxy;
+import com.vividsolutions.jump.workbench.model.cache.TileCachingFeatureCollection;
 import com.vividsolutions.jump.workbench.plugin.AbstractPlugIn;
 import com.vividsolutions.jump.workbench.plugin.PlugInContext;
 import com.vividsolutions.jump.workbench.ui.GUIUtil;
@@ -63,6 +67,20 @@ public class InstallDatastoreLayerRendererHintsPlugIn extends AbstractPlugIn {
         layerManager.addLayerListener(new LayerListener() {
 
             public void featuresChanged(FeatureEvent e) {
+                // Edited features are read again from the database by the
+                // next query of a tile cache
+                FeatureCollection fc = e.getLayer().getFeatureCollectionWrapper();
+                while (fc instanceof FeatureCollectionWrapper
+                        && !(fc instanceof TileCachingFeatureCollection)) {
+                    fc = ((FeatureCollectionWrapper) fc).getWrappee();
+                }
+                if (fc instanceof TileCachingFeatureCollection) {
+                    ((TileCachingFeatureCollection) fc).invalidate(e.getFeatures());
+                    if (e.getType() == FeatureEventType.GEOMETRY_MODIFIED) {
+                        ((TileCachingFeatureCollection) fc).invalidate(e
+                                .getOldFeatureClones());
+                    }
+                }
             }
 
             public void layerChanged(LayerEvent e) {
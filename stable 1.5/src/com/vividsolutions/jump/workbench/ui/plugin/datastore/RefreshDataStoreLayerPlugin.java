@@ -5,6 +5,7 @@ import com.vividsolutions.jump.feature.FeatureCollectionWrapper;
 import com.vividsolutions.jump.I18N;
 import com.vividsolutions.jump.io.datasource.DataSourceQuery;
 import com.vividsolutions.jump.workbench.model.cache.CachingFeatureCollection;
+import com.vividsolutions.jump.workbench.model.cache.TileCachingFeatureCollection;
 import com.vividsolutions.jump.workbench.model.Layer;
 import com.vividsolutions.jump.workbench.model.LayerEventType;
 import com.vividsolutions.jump.workbench.plugin.AbstractPlugIn;
@@ -50,7 +51,8 @@ public class RefreshDataStoreLayerPlugin extends AbstractPlugIn {
     	Layer layer = context.getLayerNamePanel().getSelectedLayers()[0];
     	FeatureCollectionWrapper fcw =  layer.getFeatureCollectionWrapper();
     	
-    	while (fcw != null && !(fcw instanceof CachingFeatureCollection)){
+    	while (fcw != null && !(fcw instanceof CachingFeatureCollection)
+    			&& !(fcw instanceof TileCachingFeatureCollection)){
     		FeatureCollection fc = fcw.getWrappee();
     		fcw = null;
     		if(fc instanceof FeatureCollectionWrapper)
@@ -59,8 +61,10 @@ public class RefreshDataStoreLayerPlugin extends AbstractPlugIn {
     	
     	if(fcw != null){
     		// must be a cache
-    		CachingFeatureCollection cfc = (CachingFeatureCollection)fcw;
-    		cfc.emptyCache();
+    		if(fcw instanceof TileCachingFeatureCollection)
+    			((TileCachingFeatureCollection)fcw).emptyCache();
+    		else
+    			((CachingFeatureCollection)fcw).emptyCache();
     		context.getLayerManager().fireLayerChanged(layer,LayerEventType.APPEARANCE_CHANGED);
     	}
     	
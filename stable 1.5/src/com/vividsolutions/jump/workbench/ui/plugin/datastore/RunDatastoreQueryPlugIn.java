@@ -5,6 +5,7 @@ import com.vividsolutions.jts.geom.Geometry;
 
 import com.vividsolutions.jump.I18N;
 import com.vividsolutions.jump.datastore.AdhocQuery;
+import com.vividsolutions.jump.datastore.postgis.PostgisFeatureInputStream;
 import com.vividsolutions.jump.feature.FeatureDataset;
 import com.vividsolutions.jump.io.FeatureInputStream;
 import com.vividsolutions.jump.task.TaskMonitor;
@@ -76,10 +77,21 @@ public class RunDatastoreQueryPlugIn extends AbstractAddDatastoreLayerPlugIn {
         try {
             FeatureDataset featureDataset = new FeatureDataset(
                 featureInputStream.getFeatureSchema());
+            // A PostGIS stream reading through a cursor reports its progress
+            // once per fetched batch
+            boolean reportFeatures = true;
+            if (featureInputStream instanceof PostgisFeatureInputStream
+                    && ((PostgisFeatureInputStream)featureInputStream).getFetchSize() > 0) {
+                ((PostgisFeatureInputStream)featureInputStream).setTaskMonitor(monitor);
+                reportFeatures = false;
+            }
             int i = 0;
             while (featureInputStream.hasNext() && !monitor.isCancelRequested()) {
                 featureDataset.add(featureInputStream.next());
-                monitor.report( ++i, -1, I18N.get("jump.workbench.ui.plugin.datastore.RunDatastoreQueryPlugIn.features"));
+                ++i;
+                if (reportFeatures) {
+                    monitor.report( i, -1, I18N.get("jump.workbench.ui.plugin.datastore.RunDatastoreQueryPlugIn.features"));
+                }
             }
             String name = panel.getLayerName();
             Layer layer = new Layer(name,
@@ -0,0 +1,293 @@
+package com.vividsolutions.jump.workbench.ui.renderer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.swing.SwingUtilities;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.simplify.TopologyPreservingSimplifier;
+import com.vividsolutions.jump.feature.AbstractBasicFeature;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.workbench.model.Layer;
+import com.vividsolutions.jump.workbench.ui.LayerViewPanel;
+
+/**
+ * Simplified versions of the geometries of a layer, used to render the layer
+ * when the view is zoomed out.<p>
+ * Level k holds the geometries simplified (preserving their topology) with
+ * a distance tolerance of 2^k model units. When the layer is rendered, the
+ * coarsest level whose tolerance is under half a pixel is used, so the
+ * simplification cannot be seen. Levels are built in the background the
+ * first time they are needed; the layer is rendered at full resolution
+ * until then, and rendered again once the level is ready.<p>
+ * The pyramid is enabled by setting {@link #LEVEL_OF_DETAIL_KEY} to true on
+ * the layer blackboard. Features whose geometry has been replaced since the
+ * level was built are rendered with their current geometry.
+ */
+public class GeometryPyramid {
+
+    public static final String LEVEL_OF_DETAIL_KEY = GeometryPyramid.class.getName()
+            + " - LEVEL OF DETAIL";
+
+    /**
+     * A level removing less than this fraction of the vertices is not worth
+     * using, nor are the finer levels.
+     */
+    private static final double MIN_VERTEX_REDUCTION = 0.2;
+
+    /**
+     * Number of levels kept in memory for a layer.
+     */
+    private static final int MAX_LEVELS = 4;
+
+    private static final ThreadQueue buildQueue = new ThreadQueue(1);
+
+    // pyramids must not reference their layer, which would never be collected
+    private static final Map<Layer,GeometryPyramid> pyramids = new WeakHashMap<Layer,GeometryPyramid>();
+
+    private final FeatureCollection featureCollection;
+
+    private final Map<Integer,Map<Feature,Feature>> levels = new LinkedHashMap<Integer,Map<Feature,Feature>>(
+            MAX_LEVELS, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry eldest) {
+            return size() > MAX_LEVELS;
+        }
+    };
+
+    private final Set<Integer> building = new HashSet<Integer>();
+
+    /**
+     * Levels up to this one do not simplify the layer enough to be used.
+     */
+    private int finestUselessLevel = Integer.MIN_VALUE;
+
+    private GeometryPyramid(FeatureCollection featureCollection) {
+        this.featureCollection = featureCollection;
+    }
+
+    /**
+     * Returns the pyramid of a layer, creating a new one if the layer has
+     * none or if its feature collection has been replaced.
+     */
+    public static synchronized GeometryPyramid get(Layer layer) {
+        FeatureCollection featureCollection = layer.getFeatureCollectionWrapper().getUltimateWrappee();
+        GeometryPyramid pyramid = pyramids.get(layer);
+        if (pyramid == null || pyramid.featureCollection != featureCollection) {
+            pyramid = new GeometryPyramid(featureCollection);
+            pyramids.put(layer, pyramid);
+        }
+        return pyramid;
+    }
+
+    /**
+     * Returns the level whose tolerance is the largest power of two under
+     * half a pixel.
+     * @param scale the scale of the viewport, in pixels per model unit
+     */
+    public static int level(double scale) {
+        double halfPixel = 0.5 / scale;
+        int level = Math.getExponent(halfPixel);
+        if (Math.scalb(1.0, level) == halfPixel) {
+            level--;
+        }
+        return level;
+    }
+
+    /**
+     * Returns the features of the layer to render at the scale of the panel:
+     * the simplified features of the matching level if it is built, otherwise
+     * the given features, in which case the level is built in the background
+     * and the layer is rendered again in the panel when it is ready.
+     */
+    public Collection toLevelOfDetail(final Layer layer, Collection features, final LayerViewPanel panel) {
+        final int level = level(panel.getViewport().getScale());
+        return toLevelOfDetail(features, panel.getViewport().getScale(), new Runnable() {
+            public void run() {
+                if (!isBuilt(level)) {
+                    //The level is not worth using: the rendering would not change
+                    return;
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if (LayerRenderer.render(layer, panel)) {
+                            panel.getRenderingManager().render(layer, true);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Returns the features to render at a scale: the simplified features of
+     * the matching level if it is built, otherwise the given features, in
+     * which case the level is built in the background.
+     * @param whenBuilt run by the build thread once the level is built or
+     * found not worth using
+     */
+    public Collection toLevelOfDetail(Collection features, double scale, Runnable whenBuilt) {
+        int level = level(scale);
+        Map<Feature,Feature> simplified;
+        synchronized (this) {
+            if (level <= finestUselessLevel) {
+                return features;
+            }
+            simplified = levels.get(Integer.valueOf(level));
+            if (simplified == null) {
+                if (building.add(Integer.valueOf(level))) {
+                    buildQueue.add(createBuildRunnable(level, whenBuilt));
+                }
+                return features;
+            }
+        }
+        List result = new ArrayList(features.size());
+        for (Iterator i = features.iterator(); i.hasNext();) {
+            Feature feature = (Feature) i.next();
+            Feature simplifiedFeature = simplified.get(feature);
+            result.add(simplifiedFeature != null ? simplifiedFeature : feature);
+        }
+        return result;
+    }
+
+    private synchronized boolean isBuilt(int level) {
+        return levels.containsKey(Integer.valueOf(level));
+    }
+
+    private Runnable createBuildRunnable(final int level, final Runnable whenBuilt) {
+        return new Runnable() {
+            public void run() {
+                Map<Feature,Feature> simplified = null;
+                try {
+                    simplified = build(level);
+                } finally {
+                    synchronized (GeometryPyramid.this) {
+                        building.remove(Integer.valueOf(level));
+                        if (simplified != null) {
+                            levels.put(Integer.valueOf(level), simplified);
+                        } else {
+                            finestUselessLevel = Math.max(finestUselessLevel, level);
+                        }
+                    }
+                }
+                whenBuilt.run();
+            }
+        };
+    }
+
+    /**
+     * Simplifies the geometries of the layer.
+     * @return the simplified features, or null if the level would not remove
+     * enough vertices to be worth using
+     */
+    private Map<Feature,Feature> build(int level) {
+        double tolerance = Math.scalb(1.0, level);
+        List features = copyFeatures();
+        Map<Feature,Feature> simplified = new IdentityHashMap<Feature,Feature>();
+        long vertices = 0;
+        long removedVertices = 0;
+        for (Iterator i = features.iterator(); i.hasNext();) {
+            Feature feature = (Feature) i.next();
+            if (feature == null) {
+                //Added while the features were copied
+                continue;
+            }
+            Geometry geometry = feature.getGeometry();
+            int numPoints = geometry.getNumPoints();
+            vertices += numPoints;
+            if (geometry.getDimension() == 0 || numPoints <= 4) {
+                continue;
+            }
+            Geometry simplifiedGeometry;
+            try {
+                simplifiedGeometry = TopologyPreservingSimplifier.simplify(geometry, tolerance);
+            } catch (RuntimeException e) {
+                //Invalid geometries may not be simplified; render them as they are
+                continue;
+            }
+            if (simplifiedGeometry.isEmpty() || simplifiedGeometry.getNumPoints() >= numPoints) {
+                continue;
+            }
+            removedVertices += numPoints - simplifiedGeometry.getNumPoints();
+            simplified.put(feature, new SimplifiedFeature(feature, geometry, simplifiedGeometry));
+        }
+        return removedVertices < MIN_VERTEX_REDUCTION * vertices ? null : simplified;
+    }
+
+    /**
+     * Copies the features of the layer. Only some feature collections lock on
+     * themselves while they are modified (a FeatureDataset does not), so the
+     * copy is tried again if the layer is edited meanwhile.
+     */
+    private List copyFeatures() {
+        while (true) {
+            try {
+                synchronized (featureCollection) {
+                    return new ArrayList(featureCollection.getFeatures());
+                }
+            } catch (ConcurrentModificationException e) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * A view of a feature with a simplified geometry, as long as the feature
+     * keeps the geometry which was simplified.
+     */
+    private static class SimplifiedFeature extends AbstractBasicFeature {
+
+        private static final long serialVersionUID = 7037789965733969924L;
+
+        private final Feature feature;
+
+        private final Geometry geometry;
+
+        private final Geometry simplifiedGeometry;
+
+        SimplifiedFeature(Feature feature, Geometry geometry, Geometry simplifiedGeometry) {
+            super(feature.getSchema());
+            this.feature = feature;
+            this.geometry = geometry;
+            this.simplifiedGeometry = simplifiedGeometry;
+        }
+
+        public int getID() {
+            return feature.getID();
+        }
+
+        public Geometry getGeometry() {
+            Geometry current = feature.getGeometry();
+            return current == geometry ? simplifiedGeometry : current;
+        }
+
+        public Object getAttribute(int i) {
+            if (i == getSchema().getGeometryIndex()) {
+                return getGeometry();
+            }
+            return feature.getAttribute(i);
+        }
+
+        public void setAttribute(int i, Object attribute) {
+            feature.setAttribute(i, attribute);
+        }
+
+        public Object[] getAttributes() {
+            return feature.getAttributes();
+        }
+
+        public void setAttributes(Object[] attributes) {
+            feature.setAttributes(attributes);
+        }
+    }
+}
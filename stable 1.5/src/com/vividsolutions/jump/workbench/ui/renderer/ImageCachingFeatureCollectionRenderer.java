@@ -10,6 +10,7 @@ import java.util.Map;
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.workbench.model.Layer;
 import com.vividsolutions.jump.workbench.ui.LayerViewPanel;
+import com.vividsolutions.jump.workbench.ui.renderer.style.LabelPlacement;
 import com.vividsolutions.jump.workbench.ui.renderer.style.Style;
 
 /**
@@ -69,14 +70,25 @@ public class ImageCachingFeatureCollectionRenderer extends ImageCachingRenderer
 	}
 
 	protected void renderHook(ThreadSafeImage image) throws Exception {
-		for (Iterator i = styles.iterator(); i.hasNext();) {
-			Style style = (Style) i.next();
-			for (Iterator j = layerToFeaturesMap.keySet().iterator(); j
-					.hasNext();) {
-				Layer layer = (Layer) j.next();
-				Collection features = (Collection) layerToFeaturesMap
-						.get(layer);
-				renderHook(image, features, layer, style);
+		// Labels of several layers rendered together must avoid each other
+		boolean sharingLabels = layerToFeaturesMap.size() > 1;
+		if (sharingLabels) {
+			LabelPlacement.begin();
+		}
+		try {
+			for (Iterator i = styles.iterator(); i.hasNext();) {
+				Style style = (Style) i.next();
+				for (Iterator j = layerToFeaturesMap.keySet().iterator(); j
+						.hasNext();) {
+					Layer layer = (Layer) j.next();
+					Collection features = (Collection) layerToFeaturesMap
+							.get(layer);
+					renderHook(image, features, layer, style);
+				}
+			}
+		} finally {
+			if (sharingLabels) {
+				LabelPlacement.end();
 			}
 		}
 	}
@@ -159,8 +159,12 @@ public class LayerRenderer extends FeatureCollectionRenderer {
         Envelope viewportEnvelope = panel.getViewport()
                 .getEnvelopeInModelCoordinates();
 
-        return Collections.singletonMap(layer, layer
-                .getFeatureCollectionWrapper().query(viewportEnvelope));
+        Collection features = layer.getFeatureCollectionWrapper().query(
+                viewportEnvelope);
+        if (layer.getBlackboard().get(GeometryPyramid.LEVEL_OF_DETAIL_KEY, false)) {
+            features = GeometryPyramid.get(layer).toLevelOfDetail(layer, features, panel);
+        }
+        return Collections.singletonMap(layer, features);
     }
     
 	/**
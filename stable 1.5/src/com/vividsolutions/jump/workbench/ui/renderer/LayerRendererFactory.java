@@ -6,6 +6,11 @@ import com.vividsolutions.jump.workbench.ui.LayerViewPanel;
 public class LayerRendererFactory implements RendererFactory<Layer> {
   public Renderer create(final Layer layer, final LayerViewPanel panel,
     final int maxFeatures) {
+    if (layer.getBlackboard().get(TiledLayerRenderer.TILED_RENDERING_KEY, false)) {
+      // maxFeatures is the number of features over which a layer is rendered
+      // to an image instead of directly: tiles are always images
+      return new TiledLayerRenderer(layer, panel);
+    }
     LayerRenderer renderer = new LayerRenderer(layer, panel);
     renderer.setMaxFeatures(maxFeatures);
     return renderer;
@@ -10,6 +10,8 @@ import java.util.Map;
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.workbench.model.Layer;
 import com.vividsolutions.jump.workbench.ui.LayerViewPanel;
+import com.vividsolutions.jump.workbench.ui.renderer.style.LabelPlacement;
+import com.vividsolutions.jump.workbench.ui.renderer.style.ShapeCache;
 import com.vividsolutions.jump.workbench.ui.renderer.style.Style;
 
 /**
@@ -46,6 +48,40 @@ public class SimpleFeatureCollectionRenderer extends SimpleRenderer {
 	}
 
 	protected void paint(Graphics2D g) throws Exception {
+		// Share the view shapes of the geometries between the styles
+		// painting them (the cache is useless with a single style)
+		boolean caching = countEnabledStyles() > 1;
+		if (caching) {
+			ShapeCache.begin(panel.getViewport());
+		}
+		// Labels of several layers painted together must avoid each other
+		boolean sharingLabels = layerToFeaturesMap.size() > 1;
+		if (sharingLabels) {
+			LabelPlacement.begin();
+		}
+		try {
+			paintStyles(g);
+		} finally {
+			if (caching) {
+				ShapeCache.end();
+			}
+			if (sharingLabels) {
+				LabelPlacement.end();
+			}
+		}
+	}
+
+	private int countEnabledStyles() {
+		int count = 0;
+		for (Iterator i = styles.iterator(); i.hasNext();) {
+			if (((Style) i.next()).isEnabled()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void paintStyles(Graphics2D g) throws Exception {
 		for (Iterator i = styles.iterator(); i.hasNext();) {
 			Style style = (Style) i.next();
 			if (cancelled) {
@@ -0,0 +1,503 @@
+package com.vividsolutions.jump.workbench.ui.renderer;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import javax.swing.SwingUtilities;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.workbench.model.CategoryEvent;
+import com.vividsolutions.jump.workbench.model.FeatureEvent;
+import com.vividsolutions.jump.workbench.model.Layer;
+import com.vividsolutions.jump.workbench.model.LayerEvent;
+import com.vividsolutions.jump.workbench.model.LayerEventType;
+import com.vividsolutions.jump.workbench.model.LayerListener;
+import com.vividsolutions.jump.workbench.model.LayerManager;
+import com.vividsolutions.jump.workbench.ui.LayerViewPanel;
+import com.vividsolutions.jump.workbench.ui.Viewport;
+import com.vividsolutions.jump.workbench.ui.WorkbenchFrame;
+import com.vividsolutions.jump.workbench.ui.renderer.style.ShapeCache;
+import com.vividsolutions.jump.workbench.ui.renderer.style.Style;
+
+/**
+ * Renders a layer as square tiles of {@link #TILE_SIZE} pixels, in parallel,
+ * and keeps the tiles in a cache shared by all the layers, so that a pan only
+ * renders the tiles which were not visible before.<p>
+ * Tiles are aligned on a grid anchored to the model origin (up to 1/16 of a
+ * pixel), and are keyed by layer, scale, grid position and layer version.
+ * Each tile is rendered off-screen with a viewport of its own, with clones
+ * of the layer styles. The label style, whose placement depends on the whole
+ * view, is rendered over the tiles in a single image as by
+ * {@link ImageCachingRenderer}.<p>
+ * RenderingManager asks renderers to clear their image cache on every
+ * pan or zoom, so the tiles of a layer are instead dropped when the layer
+ * fires a feature or appearance change, after which the layer is rendered
+ * again.<p>
+ * Enabled by setting {@link #TILED_RENDERING_KEY} to true on the layer
+ * blackboard before the layer is first rendered. Tiles are images whatever
+ * the number of features, so the maximum number of features rendered as
+ * vector graphics ({@link LayerRenderer#setMaxFeatures}) does not apply.
+ */
+public class TiledLayerRenderer implements Renderer {
+
+    public static final String TILED_RENDERING_KEY = TiledLayerRenderer.class.getName()
+            + " - TILED RENDERING";
+
+    public static final int TILE_SIZE = 256;
+
+    /**
+     * Maximum number of tiles kept for all layers (64 MB of ARGB pixels).
+     */
+    private static final int MAX_TILES = 256;
+
+    /**
+     * Features this far from a tile (in pixels) are painted too, so that
+     * wide lines and vertex symbols are not cut at the tile edges.
+     */
+    private static final int MARGIN = 32;
+
+    /**
+     * Subdivisions of a pixel used to align the tile grid with the view.
+     */
+    private static final int PHASES = 16;
+
+    private static final ThreadQueue tileQueue = new ThreadQueue(
+            Runtime.getRuntime().availableProcessors());
+
+    private static final Map<TileKey,BufferedImage> tiles = new LinkedHashMap<TileKey,BufferedImage>(
+            MAX_TILES, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry eldest) {
+            return size() > MAX_TILES;
+        }
+    };
+
+    private static final Map<Layer,Integer> versions = new WeakHashMap<Layer,Integer>();
+
+    private static final Map<LayerManager,Boolean> listenedLayerManagers = new WeakHashMap<LayerManager,Boolean>();
+
+    private final Layer layer;
+
+    private final LayerViewPanel panel;
+
+    private volatile boolean cancelled = false;
+
+    private volatile boolean rendering = false;
+
+    private volatile ThreadSafeImage labelImage = null;
+
+    private volatile AffineTransform labelTransform = null;
+
+    public TiledLayerRenderer(Layer layer, LayerViewPanel panel) {
+        this.layer = layer;
+        this.panel = panel;
+        listenTo(panel);
+    }
+
+    /**
+     * Drops the tiles of the layers of the panel when they change, and
+     * renders them again.
+     */
+    private static void listenTo(final LayerViewPanel panel) {
+        synchronized (listenedLayerManagers) {
+            if (listenedLayerManagers.containsKey(panel.getLayerManager())) {
+                return;
+            }
+            listenedLayerManagers.put(panel.getLayerManager(), Boolean.TRUE);
+        }
+        panel.getLayerManager().addLayerListener(new LayerListener() {
+            public void featuresChanged(FeatureEvent e) {
+                if (invalidate(e.getLayer()) && LayerRenderer.render(e.getLayer(), panel)) {
+                    panel.getRenderingManager().render(e.getLayer(), true);
+                }
+            }
+
+            public void layerChanged(LayerEvent e) {
+                if (!(e.getLayerable() instanceof Layer)) {
+                    return;
+                }
+                Layer layer = (Layer) e.getLayerable();
+                if (e.getType() == LayerEventType.REMOVED) {
+                    invalidate(layer);
+                } else if (e.getType() == LayerEventType.APPEARANCE_CHANGED
+                        && invalidate(layer) && LayerRenderer.render(layer, panel)) {
+                    panel.getRenderingManager().render(layer, true);
+                }
+            }
+
+            public void categoryChanged(CategoryEvent e) {
+            }
+        });
+    }
+
+    /**
+     * Drops the tiles of a layer.
+     * @return false if the layer is not rendered as tiles
+     */
+    private static boolean invalidate(Layer layer) {
+        synchronized (tiles) {
+            Integer version = versions.get(layer);
+            if (version == null) {
+                return false;
+            }
+            versions.put(layer, Integer.valueOf(version.intValue() + 1));
+            for (Iterator i = tiles.keySet().iterator(); i.hasNext();) {
+                if (((TileKey) i.next()).layer == layer) {
+                    i.remove();
+                }
+            }
+            return true;
+        }
+    }
+
+    private static int version(Layer layer) {
+        synchronized (tiles) {
+            Integer version = versions.get(layer);
+            if (version == null) {
+                version = Integer.valueOf(0);
+                versions.put(layer, version);
+            }
+            return version.intValue();
+        }
+    }
+
+    public Object getContentID() {
+        return layer;
+    }
+
+    public boolean isRendering() {
+        return rendering;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public void clearImageCache() {
+        // Tiles stay valid when the view moves, only the labels depend on it
+        labelImage = null;
+    }
+
+    public void copyTo(Graphics2D graphics) {
+        if (!LayerRenderer.render(layer, panel)) {
+            return;
+        }
+        for (Iterator i = visibleTiles().iterator(); i.hasNext();) {
+            Tile tile = (Tile) i.next();
+            BufferedImage image;
+            synchronized (tiles) {
+                image = tiles.get(tile.key);
+            }
+            if (image != null) {
+                graphics.drawImage(image, tile.viewX, tile.viewY, null);
+            }
+        }
+        ThreadSafeImage labels = labelImage;
+        try {
+            if (labels != null
+                    && labelTransform == panel.getViewport().getModelToViewTransform()) {
+                labels.copyTo(graphics, null);
+            }
+        } catch (NoninvertibleTransformException e) {
+            // The view is not initialized yet, there are no labels to show
+        }
+    }
+
+    public Runnable createRunnable() {
+        if (!LayerRenderer.render(layer, panel)) {
+            return null;
+        }
+        final List<Tile> missingTiles = new ArrayList<Tile>();
+        synchronized (tiles) {
+            for (Iterator i = visibleTiles().iterator(); i.hasNext();) {
+                Tile tile = (Tile) i.next();
+                if (!tiles.containsKey(tile.key)) {
+                    missingTiles.add(tile);
+                }
+            }
+        }
+        final boolean renderingLabels = layer.getLabelStyle().isEnabled();
+        if (missingTiles.isEmpty() && !renderingLabels) {
+            return null;
+        }
+        rendering = true;
+        cancelled = false;
+        return new Runnable() {
+            public void run() {
+                try {
+                    if (cancelled) {
+                        return;
+                    }
+                    renderTiles(missingTiles);
+                    if (renderingLabels && !cancelled) {
+                        renderLabels();
+                    }
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            panel.superRepaint();
+                        }
+                    });
+                } catch (Throwable t) {
+                    panel.getContext().warnUser(WorkbenchFrame.toMessage(t));
+                    t.printStackTrace(System.err);
+                } finally {
+                    rendering = false;
+                }
+            }
+        };
+    }
+
+    private void renderTiles(List<Tile> missingTiles) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(missingTiles.size());
+        final Throwable[] error = new Throwable[1];
+        for (Iterator<Tile> i = missingTiles.iterator(); i.hasNext();) {
+            final Tile tile = i.next();
+            tileQueue.add(new Runnable() {
+                public void run() {
+                    try {
+                        if (!cancelled) {
+                            renderTile(tile);
+                        }
+                    } catch (Throwable t) {
+                        synchronized (error) {
+                            error[0] = t;
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+        if (error[0] != null) {
+            panel.getContext().warnUser(WorkbenchFrame.toMessage(error[0]));
+            error[0].printStackTrace(System.err);
+        }
+    }
+
+    private void renderTile(Tile tile) throws Exception {
+        TileViewport viewport = new TileViewport(panel, tile);
+        Collection features = layer.getFeatureCollectionWrapper().query(
+                viewport.getEnvelopeInModelCoordinates());
+        if (layer.getBlackboard().get(GeometryPyramid.LEVEL_OF_DETAIL_KEY, false)) {
+            features = GeometryPyramid.get(layer).toLevelOfDetail(layer, features, panel);
+        }
+        // Styles keep state while painting (see VertexStyle), so each tile
+        // paints with its own copies
+        List<Style> styles = new ArrayList<Style>();
+        for (Iterator i = layer.getStyles().iterator(); i.hasNext();) {
+            Style style = (Style) i.next();
+            if (style.isEnabled() && style != layer.getLabelStyle()
+                    && style != layer.getVertexStyle()) {
+                styles.add((Style) style.clone());
+            }
+        }
+        // Vertices are painted over the other styles, as in LayerRenderer
+        if (layer.getVertexStyle().isEnabled()) {
+            styles.add((Style) layer.getVertexStyle().clone());
+        }
+        BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        boolean caching = styles.size() > 1;
+        if (caching) {
+            ShapeCache.begin(viewport);
+        }
+        try {
+            for (Iterator<Style> i = styles.iterator(); i.hasNext();) {
+                Style style = i.next();
+                style.initialize(layer);
+                for (Iterator j = features.iterator(); j.hasNext();) {
+                    Feature feature = (Feature) j.next();
+                    if (cancelled) {
+                        return;
+                    }
+                    if (feature.getGeometry() == null || feature.getGeometry().isEmpty()) {
+                        continue;
+                    }
+                    style.paint(feature, g, viewport);
+                }
+            }
+        } finally {
+            if (caching) {
+                ShapeCache.end();
+            }
+            g.dispose();
+        }
+        synchronized (tiles) {
+            if (version(layer) == tile.key.version) {
+                tiles.put(tile.key, image);
+            }
+        }
+    }
+
+    private void renderLabels() throws Exception {
+        Viewport viewport = panel.getViewport();
+        AffineTransform transform = viewport.getModelToViewTransform();
+        Collection features = layer.getFeatureCollectionWrapper().query(
+                viewport.getEnvelopeInModelCoordinates());
+        final Style style = layer.getLabelStyle();
+        style.initialize(layer);
+        ThreadSafeImage image = new ThreadSafeImage(panel);
+        for (Iterator i = features.iterator(); i.hasNext();) {
+            final Feature feature = (Feature) i.next();
+            if (cancelled) {
+                return;
+            }
+            if (feature.getGeometry() == null || feature.getGeometry().isEmpty()) {
+                continue;
+            }
+            image.draw(new ThreadSafeImage.Drawer() {
+                public void draw(Graphics2D g) throws Exception {
+                    style.paint(feature, g, panel.getViewport());
+                }
+            });
+        }
+        labelTransform = transform;
+        labelImage = image;
+    }
+
+    /**
+     * Returns the tiles covering the view, with their position in the view.
+     */
+    private List visibleTiles() {
+        List visibleTiles = new ArrayList();
+        Viewport viewport = panel.getViewport();
+        double scale = viewport.getScale();
+        Point2D origin = viewport.getOriginInModelCoordinates();
+        int width = panel.getWidth();
+        int height = panel.getHeight();
+        if (width <= 0 || height <= 0) {
+            return visibleTiles;
+        }
+        // Position of the view in the pixel grid of the scale, split into
+        // whole pixels and a phase in 1/PHASES of a pixel
+        long x = Math.round(origin.getX() * scale * PHASES);
+        long y = Math.round(origin.getY() * scale * PHASES);
+        long viewX = floorDiv(x, PHASES);
+        long viewY = floorDiv(y, PHASES);
+        int phaseX = (int) (x - viewX * PHASES);
+        int phaseY = (int) (y - viewY * PHASES);
+        int version = version(layer);
+        for (long i = floorDiv(viewX, TILE_SIZE); i * TILE_SIZE - viewX < width; i++) {
+            for (long j = floorDiv(viewY, TILE_SIZE); j * TILE_SIZE - viewY < height; j++) {
+                TileKey key = new TileKey(layer, scale, phaseX, phaseY, i, j, version);
+                // Tiles are numbered upwards, like model coordinates
+                visibleTiles.add(new Tile(key, (int) (i * TILE_SIZE - viewX),
+                        (int) (height - (j + 1) * TILE_SIZE + viewY)));
+            }
+        }
+        return visibleTiles;
+    }
+
+    private static long floorDiv(long a, long b) {
+        long q = a / b;
+        return (a % b != 0 && (a < 0) != (b < 0)) ? q - 1 : q;
+    }
+
+    private static class TileKey {
+
+        private final Layer layer;
+
+        private final double scale;
+
+        private final int phaseX;
+
+        private final int phaseY;
+
+        private final long x;
+
+        private final long y;
+
+        private final int version;
+
+        TileKey(Layer layer, double scale, int phaseX, int phaseY, long x, long y, int version) {
+            this.layer = layer;
+            this.scale = scale;
+            this.phaseX = phaseX;
+            this.phaseY = phaseY;
+            this.x = x;
+            this.y = y;
+            this.version = version;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) o;
+            return layer == other.layer && scale == other.scale
+                    && phaseX == other.phaseX && phaseY == other.phaseY
+                    && x == other.x && y == other.y && version == other.version;
+        }
+
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(scale);
+            int h = System.identityHashCode(layer);
+            h = 31 * h + (int) (bits ^ (bits >>> 32));
+            h = 31 * h + phaseX * PHASES + phaseY;
+            h = 31 * h + (int) (x ^ (x >>> 32));
+            h = 31 * h + (int) (y ^ (y >>> 32));
+            return 31 * h + version;
+        }
+    }
+
+    private static class Tile {
+
+        private final TileKey key;
+
+        private final int viewX;
+
+        private final int viewY;
+
+        Tile(TileKey key, int viewX, int viewY) {
+            this.key = key;
+            this.viewX = viewX;
+            this.viewY = viewY;
+        }
+    }
+
+    /**
+     * The viewport of a tile: the scale of the view, with the tile and its
+     * margin as the visible area.
+     */
+    private static class TileViewport extends Viewport {
+
+        private final AffineTransform modelToViewTransform;
+
+        private final Envelope envelope;
+
+        TileViewport(LayerViewPanel panel, Tile tile) {
+            super(panel, tile.key.scale, new Point2D.Double(
+                    (tile.key.x * TILE_SIZE + (double) tile.key.phaseX / PHASES) / tile.key.scale,
+                    (tile.key.y * TILE_SIZE + (double) tile.key.phaseY / PHASES) / tile.key.scale));
+            Point2D origin = getOriginInModelCoordinates();
+            modelToViewTransform = modelToViewTransform(tile.key.scale, origin, TILE_SIZE);
+            envelope = new Envelope(origin.getX(), origin.getX() + TILE_SIZE / tile.key.scale,
+                    origin.getY(), origin.getY() + TILE_SIZE / tile.key.scale);
+            envelope.expandBy(MARGIN / tile.key.scale);
+        }
+
+        public AffineTransform getModelToViewTransform() {
+            return modelToViewTransform;
+        }
+
+        public Envelope getEnvelopeInModelCoordinates() {
+            return new Envelope(envelope);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.vividsolutions.jump.workbench.ui.renderer.style;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.Iterator;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.quadtree.Quadtree;
+
+/**
+ * Keeps the areas of the labels drawn in a view, so that overlapping labels
+ * can be hidden.<p>
+ * A label area is the bounds of its text transformed to the view, which is a
+ * rectangle rotated with the label. Candidates are found by envelope in a
+ * Quadtree, then tested with the separating axis theorem, which gives the
+ * same result as intersecting the areas: labels which only touch do not
+ * overlap.<p>
+ * Each {@link LabelStyle} places its labels in a placement of its own, reset
+ * when the style is initialized. The labels of several layers painted in one
+ * pass can avoid each other by sharing a placement between {@link #begin()}
+ * and {@link #end()}, on the thread painting them.
+ */
+public class LabelPlacement {
+
+    private static final ThreadLocal<LabelPlacement> shared = new ThreadLocal<LabelPlacement>();
+
+    private final Quadtree labels = new Quadtree();
+
+    /**
+     * Makes the label styles painting on this thread share a single
+     * placement, until {@link #end()} is called.
+     */
+    public static void begin() {
+        shared.set(new LabelPlacement());
+    }
+
+    public static void end() {
+        shared.remove();
+    }
+
+    /**
+     * Returns the placement shared by the label styles painting on this
+     * thread, or null if there is none.
+     */
+    public static LabelPlacement getShared() {
+        return shared.get();
+    }
+
+    /**
+     * Reserves the area of a label, unless it overlaps a label placed before.
+     * @param bounds the bounds of the label text
+     * @param transform the transformation of the text to the view
+     * @return true if the label was placed, false if it overlaps another label
+     */
+    public boolean place(Rectangle2D bounds, AffineTransform transform) {
+        LabelArea area = new LabelArea(bounds, transform);
+        List candidates = labels.query(area.envelope);
+        for (Iterator i = candidates.iterator(); i.hasNext();) {
+            LabelArea other = (LabelArea) i.next();
+            if (area.envelope.intersects(other.envelope) && area.overlaps(other)) {
+                return false;
+            }
+        }
+        labels.insert(area.envelope, area);
+        return true;
+    }
+
+    /**
+     * A label rectangle in view coordinates, as its four corners in order.
+     */
+    private static class LabelArea {
+
+        private final double[] corners = new double[8];
+
+        private final Envelope envelope;
+
+        LabelArea(Rectangle2D bounds, AffineTransform transform) {
+            corners[0] = bounds.getMinX();
+            corners[1] = bounds.getMinY();
+            corners[2] = bounds.getMaxX();
+            corners[3] = bounds.getMinY();
+            corners[4] = bounds.getMaxX();
+            corners[5] = bounds.getMaxY();
+            corners[6] = bounds.getMinX();
+            corners[7] = bounds.getMaxY();
+            transform.transform(corners, 0, corners, 0, 4);
+            envelope = new Envelope(corners[0], corners[2], corners[1], corners[3]);
+            envelope.expandToInclude(corners[4], corners[5]);
+            envelope.expandToInclude(corners[6], corners[7]);
+        }
+
+        boolean overlaps(LabelArea other) {
+            // Both areas are parallelograms: two edge directions each
+            return !separates(corners[2] - corners[0], corners[3] - corners[1], other)
+                && !separates(corners[6] - corners[0], corners[7] - corners[1], other)
+                && !separates(other.corners[2] - other.corners[0], other.corners[3] - other.corners[1], other)
+                && !separates(other.corners[6] - other.corners[0], other.corners[7] - other.corners[1], other);
+        }
+
+        /**
+         * Returns true if the projections of the two areas on the normal of
+         * the edge direction (dx, dy) are disjoint or only touch.
+         */
+        private boolean separates(double dx, double dy, LabelArea other) {
+            double nx = -dy;
+            double ny = dx;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            double otherMin = Double.POSITIVE_INFINITY;
+            double otherMax = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < 8; i += 2) {
+                double p = nx * corners[i] + ny * corners[i + 1];
+                min = Math.min(min, p);
+                max = Math.max(max, p);
+                double q = nx * other.corners[i] + ny * other.corners[i + 1];
+                otherMin = Math.min(otherMin, q);
+                otherMax = Math.max(otherMax, q);
+            }
+            return max <= otherMin || otherMax <= min;
+        }
+    }
+}
@@ -33,11 +33,12 @@ package com.vividsolutions.jump.workbench.ui.renderer.style;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
-import java.awt.Shape;
 import java.awt.font.TextLayout;
 import java.awt.geom.*;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import java.awt.BasicStroke;
 import java.awt.Stroke;
@@ -45,7 +46,6 @@ import java.awt.Stroke;
 import org.openjump.core.ui.util.ScreenScale;
 
 import com.vividsolutions.jts.geom.*;
-import com.vividsolutions.jts.index.quadtree.Quadtree;
 import com.vividsolutions.jts.util.Assert;
 import com.vividsolutions.jump.I18N;
 import com.vividsolutions.jump.feature.Feature;
@@ -100,8 +100,16 @@ public class LabelStyle implements Style {
     private AffineTransform originalTransform;
     private Layer layer;
     private Geometry viewportRectangle = null;
+    private Envelope viewportEnvelope = null;
     private InteriorPointFinder interiorPointFinder = new InteriorPointFinder();
-    private Quadtree labelsDrawn = null;
+    private LabelPlacement labelsDrawn = null;
+    // Label anchors of the features lying inside the view, which do not need
+    // to be clipped, for the scale they were computed at. Only the anchors of
+    // the features painted since the last initialization and the one before
+    // are kept. The scale is reset to NaN when the alignment changes.
+    private Map<Feature,Anchor> anchors = null;
+    private Map<Feature,Anchor> previousAnchors = null;
+    private volatile double anchorScale = Double.NaN;
     private String attribute = LabelStyle.FID_COLUMN;
     private String angleAttribute = ""; //"" means no angle attribute [Jon Aquino]
     private String heightAttribute = ""; //"" means no height attribute [Jon Aquino]
@@ -125,8 +133,14 @@ public class LabelStyle implements Style {
     public LabelStyle() {}
     
     public void initialize(Layer layer) {
-        labelsDrawn = new Quadtree();
+        labelsDrawn = LabelPlacement.getShared();
+        if (labelsDrawn == null) {
+            labelsDrawn = new LabelPlacement();
+        }
         viewportRectangle = null;
+        viewportEnvelope = null;
+        previousAnchors = layer == this.layer ? anchors : null;
+        anchors = new IdentityHashMap<Feature,Anchor>();
         this.layer = layer;
     }
     
@@ -162,11 +176,10 @@ public class LabelStyle implements Style {
         	if (realScale > scaleToHideAt)
             return;
         }
-        Geometry viewportIntersection = intersection(f.getGeometry(), viewport);
-        if (viewportIntersection == null) {
+        ModelSpaceLabelSpec spec = modelSpaceLabelSpec(f, viewport);
+        if (spec == null) {
             return;
         }
-        ModelSpaceLabelSpec spec = modelSpaceLabelSpec(viewportIntersection);
         Point2D labelCentreInViewSpace =
             viewport.toViewPoint(new Point2D.Double(spec.location.x, spec.location.y));
         paint(
@@ -212,6 +225,42 @@ public class LabelStyle implements Style {
         }
     }
     
+    /**
+     * Returns where to put the label of a feature, or null if the feature
+     * does not intersect the viewport. Features inside the viewport are not
+     * clipped, and their label anchor is reused until the scale changes or
+     * the geometry is replaced.
+     */
+    private ModelSpaceLabelSpec modelSpaceLabelSpec(Feature f, Viewport viewport)
+                                        throws NoninvertibleTransformException {
+        Geometry geometry = f.getGeometry();
+        Envelope envelope = viewportEnvelope(viewport);
+        if (!envelope.intersects(geometry.getEnvelopeInternal())) {
+            return null;
+        }
+        if (!envelope.contains(geometry.getEnvelopeInternal())) {
+            Geometry viewportIntersection = intersection(geometry, viewport);
+            if (viewportIntersection == null) {
+                return null;
+            }
+            return modelSpaceLabelSpec(viewportIntersection);
+        }
+        if (viewport.getScale() != anchorScale) {
+            anchors.clear();
+            previousAnchors = null;
+            anchorScale = viewport.getScale();
+        }
+        Anchor anchor = anchors.get(f);
+        if (anchor == null && previousAnchors != null) {
+            anchor = previousAnchors.get(f);
+        }
+        if (anchor == null || anchor.geometry != geometry) {
+            anchor = new Anchor(geometry, modelSpaceLabelSpec(geometry));
+        }
+        anchors.put(f, anchor);
+        return anchor.spec;
+    }
+
     private ModelSpaceLabelSpec modelSpaceLabelSpec(Geometry geometry)
                                         throws NoninvertibleTransformException {
         if (geometry.getDimension() == 1) {
@@ -372,18 +421,9 @@ public class LabelStyle implements Style {
             AffineTransform transform = g.getTransform();
             configureTransform(transform, viewCentre, scale, layout, angle, dim);
             g.setTransform(transform);
-            if (isHidingOverlappingLabels()) {
-                Area transformedLabelBounds =
-                    new Area(layout.getBounds()).createTransformedArea(transform);
-                Envelope transformedLabelBoundsEnvelope =
-                    envelope(transformedLabelBounds);
-                if (collidesWithExistingLabel(transformedLabelBounds,
-                    transformedLabelBoundsEnvelope)) {
-                    return;
-                }
-                labelsDrawn.insert(
-                    transformedLabelBoundsEnvelope,
-                    transformedLabelBounds);
+            if (isHidingOverlappingLabels()
+                    && !labelsDrawn.place(layout.getBounds(), transform)) {
+                return;
             }
             if (outlineShowing) {
 	            g.setColor(outlineColor);
@@ -397,27 +437,6 @@ public class LabelStyle implements Style {
         }
     }
     
-    private Envelope envelope(Shape shape) {
-        Rectangle2D bounds = shape.getBounds2D();
-        return new Envelope(bounds.getMinX(), bounds.getMaxX(),
-                            bounds.getMinY(), bounds.getMaxY());
-    }
-    
-    private boolean collidesWithExistingLabel(
-        Area transformedLabelBounds,
-        Envelope transformedLabelBoundsEnvelope) {
-        List potentialCollisions = labelsDrawn.query(transformedLabelBoundsEnvelope);
-        for (Iterator i = potentialCollisions.iterator(); i.hasNext();) {
-            Area potentialCollision = (Area) i.next();
-            Area intersection = new Area(potentialCollision);
-            intersection.intersect(transformedLabelBounds);
-            if (!intersection.isEmpty()) {
-                return true;
-            }
-        }
-        return false;
-    }
-    
     private void setup(Graphics2D g) {
         originalTransform = g.getTransform();
         originalColor = g.getColor();
@@ -447,15 +466,23 @@ public class LabelStyle implements Style {
         return geo;
     }
     
-    private Geometry viewportRectangle(Viewport viewport)
+    private Envelope viewportEnvelope(Viewport viewport)
         throws NoninvertibleTransformException {
-        if (viewportRectangle == null) {
-            Envelope e =
+        if (viewportEnvelope == null) {
+            viewportEnvelope =
                 viewport.toModelEnvelope(
                     0,
                     viewport.getPanel().getWidth(),
                     0,
                     viewport.getPanel().getHeight());
+        }
+        return viewportEnvelope;
+    }
+
+    private Geometry viewportRectangle(Viewport viewport)
+        throws NoninvertibleTransformException {
+        if (viewportRectangle == null) {
+            Envelope e = viewportEnvelope(viewport);
             viewportRectangle =
                 factory.createPolygon(
                     factory.createLinearRing(
@@ -618,12 +645,15 @@ public class LabelStyle implements Style {
     }    
     public void setVerticalAlignment(String verticalAlignment) {
         this.verticalAlignment = verticalAlignment;
+        anchorScale = Double.NaN;
     }
     public void setHorizontalPosition(String horizontalPosition) {
         this.horizontalPosition = horizontalPosition;
+        anchorScale = Double.NaN;
     }
     public void setHorizontalAlignment(int horizontalAlignment) {
         this.horizontalAlignment = horizontalAlignment;
+        anchorScale = Double.NaN;
     }
     public void setAttribute(String attribute) {
         this.attribute = attribute;
@@ -680,12 +710,23 @@ public class LabelStyle implements Style {
     }
     public Object clone() {
         try {
-            return super.clone();
+            LabelStyle clone = (LabelStyle) super.clone();
+            clone.anchors = null;
+            clone.previousAnchors = null;
+            return clone;
         } catch (CloneNotSupportedException e) {
             Assert.shouldNeverReachHere();
             return null;
         }
     }
+    private static class Anchor {
+        private final Geometry geometry;
+        private final ModelSpaceLabelSpec spec;
+        Anchor(Geometry geometry, ModelSpaceLabelSpec spec) {
+            this.geometry = geometry;
+            this.spec = spec;
+        }
+    }
     private class ModelSpaceLabelSpec {
         public double angle;
         public Coordinate location;
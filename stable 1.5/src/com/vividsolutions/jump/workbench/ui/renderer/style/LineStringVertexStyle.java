@@ -37,7 +37,6 @@ import java.awt.geom.Point2D;
 
 import javax.swing.Icon;
 
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jump.workbench.ui.Viewport;
 
@@ -66,9 +65,9 @@ public abstract class LineStringVertexStyle extends LineStringStyle implements C
       // don't paint end vertex twice
       if (lineString.isClosed())
         numPtsToRender--;
+      double[] coordinates = ShapeCache.toViewCoordinates(lineString, viewport);
       for (int i = 0; i < numPtsToRender; i++) {
-        Coordinate p = lineString.getCoordinateN(i);
-        paint(viewport.toViewPoint(new Point2D.Double(p.x, p.y)),
+        paint(new Point2D.Double(coordinates[2 * i], coordinates[2 * i + 1]),
               lineString, i,
               viewport, graphics);
       }
@@ -0,0 +1,120 @@
+package com.vividsolutions.jump.workbench.ui.renderer.style;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jump.workbench.ui.Viewport;
+import com.vividsolutions.jump.workbench.ui.renderer.java2D.Java2DConverter;
+
+/**
+ * Keeps, for the duration of a rendering pass, the view-space Shape and
+ * coordinates of the geometries painted, so that the styles of a layer
+ * (fill and line, vertices, vertex decorations) convert each geometry once
+ * instead of once per style.<p>
+ * A pass is bound to the thread which renders it, between {@link #begin(Viewport)}
+ * and {@link #end()}. Geometries are compared by identity, so a feature whose
+ * geometry is replaced is converted again. The cached values are dropped
+ * as soon as the viewport transform, its size or its converter change.
+ */
+public class ShapeCache {
+
+    private static final ThreadLocal<ShapeCache> currentPass = new ThreadLocal<ShapeCache>();
+
+    private final Viewport viewport;
+
+    private AffineTransform transform;
+
+    private Java2DConverter converter;
+
+    private int width;
+
+    private int height;
+
+    private final Map<Geometry,Shape> shapes = new IdentityHashMap<Geometry,Shape>();
+
+    private final Map<Geometry,double[]> viewCoordinates = new IdentityHashMap<Geometry,double[]>();
+
+    private ShapeCache(Viewport viewport) {
+        this.viewport = viewport;
+    }
+
+    /**
+     * Starts a rendering pass on this thread for the given viewport.
+     */
+    public static void begin(Viewport viewport) {
+        currentPass.set(new ShapeCache(viewport));
+    }
+
+    /**
+     * Ends the rendering pass of this thread and releases its cached values.
+     */
+    public static void end() {
+        currentPass.remove();
+    }
+
+    /**
+     * Returns the cache of the pass rendered by this thread for viewport,
+     * or null if there is none.
+     */
+    static ShapeCache get(Viewport viewport) throws NoninvertibleTransformException {
+        ShapeCache cache = currentPass.get();
+        if (cache == null || cache.viewport != viewport) {
+            return null;
+        }
+        cache.validate();
+        return cache;
+    }
+
+    private void validate() throws NoninvertibleTransformException {
+        AffineTransform t = viewport.getModelToViewTransform();
+        int w = viewport.getPanel().getWidth();
+        int h = viewport.getPanel().getHeight();
+        if (t != transform || viewport.getJava2DConverter() != converter || w != width || h != height) {
+            shapes.clear();
+            viewCoordinates.clear();
+            transform = t;
+            converter = viewport.getJava2DConverter();
+            width = w;
+            height = h;
+        }
+    }
+
+    Shape getShape(Geometry geometry) {
+        return shapes.get(geometry);
+    }
+
+    void putShape(Geometry geometry, Shape shape) {
+        shapes.put(geometry, shape);
+    }
+
+    /**
+     * Returns the view coordinates of the vertices of a geometry, in the
+     * order of {@link Geometry#getCoordinates()}, as x0, y0, x1, y1...
+     * The array is shared by all the styles of the pass and must not be
+     * modified.
+     */
+    public static double[] toViewCoordinates(Geometry geometry, Viewport viewport)
+        throws NoninvertibleTransformException {
+        ShapeCache cache = get(viewport);
+        double[] coordinates = cache == null ? null : cache.viewCoordinates.get(geometry);
+        if (coordinates == null) {
+            Coordinate[] modelCoordinates = geometry.getCoordinates();
+            coordinates = new double[2 * modelCoordinates.length];
+            for (int i = 0; i < modelCoordinates.length; i++) {
+                coordinates[2 * i] = modelCoordinates[i].x;
+                coordinates[2 * i + 1] = modelCoordinates[i].y;
+            }
+            viewport.getModelToViewTransform().transform(coordinates, 0,
+                coordinates, 0, modelCoordinates.length);
+            if (cache != null) {
+                cache.viewCoordinates.put(geometry, coordinates);
+            }
+        }
+        return coordinates;
+    }
+}
@@ -92,6 +92,19 @@ public class StyleUtil {
     }
 
     private static Shape toShape(Geometry geometry, Viewport viewport)
+        throws NoninvertibleTransformException {
+        ShapeCache cache = ShapeCache.get(viewport);
+        Shape shape = cache == null ? null : cache.getShape(geometry);
+        if (shape == null) {
+            shape = createShape(geometry, viewport);
+            if (cache != null) {
+                cache.putShape(geometry, shape);
+            }
+        }
+        return shape;
+    }
+
+    private static Shape createShape(Geometry geometry, Viewport viewport)
         throws NoninvertibleTransformException {
         //At high magnifications, Java rendering can be sped up by clipping
         //the Geometry to only that portion visible inside the viewport.
@@ -34,13 +34,14 @@ package com.vividsolutions.jump.workbench.ui.renderer.style;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Polygon;
 import java.awt.Shape;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.geom.RectangularShape;
 
 import org.openjump.util.SLDImporter.SizedStrokeFillStyle;
 
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.util.Assert;
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.workbench.model.Layer;
@@ -138,16 +139,19 @@ public abstract class VertexStyle implements Style, SizedStrokeFillStyle {
     }
 
     public void paint(Feature f, Graphics2D g, Viewport viewport) throws Exception {
-        Coordinate[] coordinates = f.getGeometry().getCoordinates();
+        double[] coordinates = ShapeCache.toViewCoordinates(f.getGeometry(), viewport);
+        Rectangle2D view = viewport.toViewRectangle(viewport.getEnvelopeInModelCoordinates());
         g.setColor(fillColor);
 
-        for (int i = 0; i < coordinates.length; i++) {
-            if (!viewport.getEnvelopeInModelCoordinates().contains(coordinates[i])) {
+        for (int i = 0; i < coordinates.length; i += 2) {
+            double x = coordinates[i];
+            double y = coordinates[i + 1];
+            if (x < view.getMinX() || x > view.getMaxX() || y < view.getMinY() || y > view.getMaxY()) {
                 // Otherwise get "sun.dc.pr.PRException: endPath: bad path"
                 // exception [Jon Aquino 10/22/2003]
                 continue;
             }
-            paint(g, viewport.toViewPoint(new Point2D.Double(coordinates[i].x, coordinates[i].y)));
+            paint(g, new Point2D.Double(x, y));
         }
     }
 
@@ -196,7 +200,16 @@ public abstract class VertexStyle implements Style, SizedStrokeFillStyle {
 
     public Object clone() {
         try {
-            return super.clone();
+            VertexStyle clone = (VertexStyle) super.clone();
+            // The shape is moved to each vertex while painting, so clones
+            // painting on other threads need their own
+            if (shape instanceof RectangularShape) {
+                clone.shape = (Shape) ((RectangularShape) shape).clone();
+            } else if (shape instanceof Polygon) {
+                Polygon polygon = (Polygon) shape;
+                clone.shape = new Polygon(polygon.xpoints, polygon.ypoints, polygon.npoints);
+            }
+            return clone;
         } catch (CloneNotSupportedException e) {
             Assert.shouldNeverReachHere();
 
@@ -21,21 +21,37 @@ public class AllTestCases extends TestCase {
     result.addTest(new TestSuite(AttributeTypeTestCase.class));
     result.addTest(new TestSuite(CollectionUtilTestCase.class));
     result.addTest(new TestSuite(CoordinateArraysTestCase.class));
+    result.addTest(new TestSuite(DbfColumnTestCase.class));
     result.addTest(new TestSuite(DbfFileTestCase.class));
+    result.addTest(new TestSuite(DissolveEngineTestCase.class));
     result.addTest(new TestSuite(EnvelopeIntersectorTestCase.class));
+    result.addTest(new TestSuite(FeatureCollectionMatcherTestCase.class));
     result.addTest(new TestSuite(FeatureCollectionMetaDataTestCase.class));
     result.addTest(new TestSuite(FeatureTestCase.class));
+    result.addTest(new TestSuite(FeatureTesterTestCase.class));
     result.addTest(new TestSuite(FlexibleDateParserTestCase.class));    
+    result.addTest(new TestSuite(FuzzyStringIndexTestCase.class));
     result.addTest(new TestSuite(GMLWriterTestCase.class));
     result.addTest(new TestSuite(GUIUtilTestCase.class));
+    result.addTest(new TestSuite(GeometryPyramidTestCase.class));
+    result.addTest(new TestSuite(IndexedFeatureDatasetTestCase.class));
     result.addTest(new TestSuite(InteriorPointFinderTestCase.class));
+    result.addTest(new TestSuite(LabelPlacementTestCase.class));
+    result.addTest(new TestSuite(LabelStyleTestCase.class));
+    result.addTest(new TestSuite(MatchListTestCase.class));
+    result.addTest(new TestSuite(MatchMapTestCase.class));
     result.addTest(new TestSuite(OverlayEngineTestCase.class));
     result.addTest(new TestSuite(PanelTestCase.class));
     result.addTest(new TestSuite(RangeTestCase.class));
     result.addTest(new TestSuite(ShapeCollectionPathIteratorTestCase.class));
+    result.addTest(new TestSuite(ShapefileReaderTestCase.class));
     result.addTest(new TestSuite(SimpleGMLReaderTestCase.class));
+    result.addTest(new TestSuite(SpatialQueryExecuterTestCase.class));
     result.addTest(new TestSuite(StringUtilTestCase.class));
+    result.addTest(new TestSuite(TileCachingFeatureCollectionTestCase.class));
+    result.addTest(new TestSuite(TiledLayerRendererTestCase.class));
     result.addTest(new TestSuite(TriangulatorTestCase.class));
+    result.addTest(new TestSuite(ValidatePlugInTestCase.class));
     result.addTest(new TestSuite(ValidatorTestCase.class));
     result.addTest(new TestSuite(VerticesInFencePlugInTestCase.class));
     return result;
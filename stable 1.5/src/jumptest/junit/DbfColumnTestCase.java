@@ -0,0 +1,192 @@
+package jumptest.junit;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.dbffile.DbfColumn;
+import org.geotools.dbffile.DbfFile;
+
+/**
+ * Checks that the values decoded by {@link DbfColumn} are the values
+ * returned by the record parser of {@link DbfFile}.
+ */
+public class DbfColumnTestCase extends TestCase {
+
+  public DbfColumnTestCase(String Name_) {
+    super(Name_);
+  }
+
+  public static void main(String[] args) {
+    String[] testCaseName = {DbfColumnTestCase.class.getName()};
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+  // name, type, length, decimals
+  private static final Object[][] FIELDS = {
+    {"NAME", "C", 12, 0},
+    {"SMALL", "N", 6, 0},
+    {"BIG", "N", 12, 0},
+    {"VALUE", "N", 12, 3},
+    {"RATIO", "F", 8, 2},
+    {"DAY", "D", 8, 0},
+    {"FLAG", "L", 1, 0}
+  };
+
+  // fields which do not hold a regular value
+  private static final String[][] SPECIAL_VALUES = {
+    {"", " ", "\u00e9t\u00e9"},
+    {"", "-12345", "999999", "+42", "1.5", "abc"},
+    {"", "-99999999999", "2147483647", "2147483648", "99999999999", "-2147483648"},
+    {"", "************", "-0.001", "1e10", "12345678.123", "NaN"},
+    {"", "********", "-9999.99", ".5"},
+    {"", "00000000", "20111231"},
+    {"", "T", "F", "?"}
+  };
+
+  private File file;
+
+  private List<String[]> records = new ArrayList<String[]>();
+
+  /**
+   * Writes random records, where about one field out of five has a
+   * special value (blank, overflow, out of the int range...).
+   */
+  protected void setUp() throws Exception {
+    Random random = new Random(11);
+    for (int i = 0; i < 2000; i++) {
+      String[] record = new String[FIELDS.length];
+      for (int j = 0; j < FIELDS.length; j++) {
+        if (random.nextInt(5) == 0) {
+          String[] special = SPECIAL_VALUES[j];
+          record[j] = special[random.nextInt(special.length)];
+        } else {
+          record[j] = randomValue(j, i, random);
+        }
+      }
+      records.add(record);
+    }
+    file = File.createTempFile("dbfcolumn", ".dbf");
+    write(file);
+  }
+
+  protected void tearDown() {
+    file.delete();
+  }
+
+  private String randomValue(int field, int row, Random random) {
+    switch (field) {
+    case 0:
+      // few distinct values first, then enough to stop the dictionary encoding
+      return "name " + (row < 1000 ? random.nextInt(20) : random.nextInt(100000));
+    case 1:
+      return Integer.toString(random.nextInt(200000) - 100000);
+    case 2:
+      return Long.toString(random.nextLong() % 100000000000L);
+    case 3:
+      return String.format("%.3f", Double.valueOf((random.nextDouble() - 0.5) * 1e6)).replace(',', '.');
+    case 4:
+      return String.format("%.2f", Double.valueOf(random.nextDouble() * 1000)).replace(',', '.');
+    case 5:
+      return String.format("%04d%02d%02d", Integer.valueOf(1900 + random.nextInt(200)),
+          Integer.valueOf(1 + random.nextInt(12)), Integer.valueOf(1 + random.nextInt(28)));
+    default:
+      return random.nextBoolean() ? "T" : "F";
+    }
+  }
+
+  private void write(File file) throws IOException {
+    int recordLength = 1;
+    for (Object[] field : FIELDS) {
+      recordLength += ((Integer) field[2]).intValue();
+    }
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(new byte[] {3, 111, 12, 1});
+      writeInt(out, records.size(), 4);
+      writeInt(out, 32 * FIELDS.length + 33, 2);
+      writeInt(out, recordLength, 2);
+      out.write(new byte[20]);
+      for (Object[] field : FIELDS) {
+        byte[] name = new byte[11];
+        byte[] b = ((String) field[0]).getBytes(CHARSET);
+        System.arraycopy(b, 0, name, 0, b.length);
+        out.write(name);
+        out.write(((String) field[1]).charAt(0));
+        out.write(new byte[4]);
+        out.write(((Integer) field[2]).intValue());
+        out.write(((Integer) field[3]).intValue());
+        out.write(new byte[14]);
+      }
+      out.write(0x0d);
+      for (String[] record : records) {
+        out.write(' ');
+        for (int j = 0; j < FIELDS.length; j++) {
+          int length = ((Integer) FIELDS[j][2]).intValue();
+          StringBuffer sb = new StringBuffer();
+          // character fields are left aligned, the other ones right aligned
+          if (!FIELDS[j][1].equals("C")) {
+            while (sb.length() + record[j].length() < length) sb.append(' ');
+          }
+          sb.append(record[j]);
+          while (sb.length() < length) sb.append(' ');
+          out.write(sb.toString().getBytes(CHARSET));
+        }
+      }
+      out.write(0x1a);
+    } finally {
+      out.close();
+    }
+  }
+
+  private void writeInt(OutputStream out, int value, int bytes) throws IOException {
+    for (int i = 0; i < bytes; i++) {
+      out.write((value >> (8 * i)) & 0xff);
+    }
+  }
+
+  private void doTest(boolean memoryMapped) throws Exception {
+    DbfFile legacy = new DbfFile(file.getPath(), CHARSET);
+    DbfFile dbf = new DbfFile(file.getPath(), CHARSET, memoryMapped);
+    try {
+      assertEquals(records.size(), dbf.getLastRec());
+      DbfColumn[] columns = dbf.readColumns();
+      assertEquals(FIELDS.length, columns.length);
+      assertTrue(columns[1] instanceof DbfColumn.IntColumn);
+      assertTrue(columns[2] instanceof DbfColumn.LongColumn);
+      assertTrue(columns[3] instanceof DbfColumn.DoubleColumn);
+      assertTrue(columns[4] instanceof DbfColumn.DoubleColumn);
+      assertFalse(((DbfColumn.StringColumn) columns[0]).isDictionaryEncoded());
+      // records of a file which is not mapped must be read in sequence
+      for (int i = 0; i < records.size(); i++) {
+        byte[] rec = legacy.GetDbfRec(i);
+        for (int j = 0; j < FIELDS.length; j++) {
+          String message = "record " + i + " field " + FIELDS[j][0] + " '" + records.get(i)[j] + "'";
+          assertEquals(message, legacy.ParseRecordColumn(rec, j), columns[j].getValue(i));
+          assertEquals(message, legacy.ParseRecordColumn(rec, j), dbf.getFieldValue(i, j));
+        }
+      }
+      assertEquals(columns[1].getValue(0), dbf.readColumn(1).getValue(0));
+    } finally {
+      legacy.close();
+      dbf.close();
+    }
+  }
+
+  public void testColumnsAreParsedRecords() throws Exception {
+    doTest(false);
+  }
+
+  public void testMappedColumnsAreParsedRecords() throws Exception {
+    doTest(true);
+  }
+
+}
@@ -0,0 +1,133 @@
+package jumptest.junit;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.openjump.core.ui.plugin.tools.UnionByAttributePlugIn;
+import org.openjump.test.TestTools;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.operation.union.UnaryUnionOp;
+import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.FeatureSchema;
+import com.vividsolutions.jump.task.DummyTaskMonitor;
+import com.vividsolutions.jump.tools.DissolveEngine;
+
+public class DissolveEngineTestCase extends TestCase {
+
+  public DissolveEngineTestCase(String Name_) {
+    super(Name_);
+  }
+
+  public static void main(String[] args) {
+    String[] testCaseName = {DissolveEngineTestCase.class.getName()};
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  private GeometryFactory factory = new GeometryFactory();
+
+  /**
+   * The union of more geometries than a partition holds is the union
+   * computed by UnaryUnionOp.
+   */
+  public void testUnionOfPartitionedPolygons() {
+    Random random = new Random(17);
+    List polygons = new ArrayList();
+    for (int i = 0; i < DissolveEngine.PARTITION_SIZE + 500; i++) {
+      polygons.add(factory.createPoint(new Coordinate(
+          random.nextDouble() * 2000, random.nextDouble() * 2000)).buffer(6, 1));
+    }
+    DissolveEngine engine = new DissolveEngine(4);
+    try {
+      Geometry union = engine.union(polygons);
+      Geometry expected = UnaryUnionOp.union(polygons);
+      assertEquals(expected.getArea(), union.getArea(), 1E-6 * expected.getArea());
+      assertEquals(expected.getNumGeometries(), union.getNumGeometries());
+      assertEquals(expected.getNumPoints(), union.getNumPoints());
+    } finally {
+      engine.shutdown();
+    }
+  }
+
+  public void testUnionOfPartitionedLines() {
+    Random random = new Random(19);
+    List lines = new ArrayList();
+    for (int i = 0; i < DissolveEngine.PARTITION_SIZE + 100; i++) {
+      double x = random.nextDouble() * 2000;
+      double y = random.nextDouble() * 2000;
+      lines.add(factory.createLineString(new Coordinate[] {
+          new Coordinate(x, y), new Coordinate(x + 10, y + random.nextDouble() * 10)}));
+    }
+    DissolveEngine engine = new DissolveEngine(4);
+    try {
+      Geometry union = engine.union(lines);
+      Geometry expected = UnaryUnionOp.union(lines);
+      assertEquals(expected.getLength(), union.getLength(), 1E-6 * expected.getLength());
+      assertEquals(expected.getNumGeometries(), union.getNumGeometries());
+    } finally {
+      engine.shutdown();
+    }
+  }
+
+  /**
+   * The dissolved features are in the order in which their attribute
+   * values are found, whichever group takes the longest to union.
+   */
+  public void testDissolvedFeaturesKeepTheInputOrder() throws Exception {
+    FeatureSchema schema = new FeatureSchema();
+    schema.addAttribute("GEOMETRY", AttributeType.GEOMETRY);
+    schema.addAttribute("LABEL", AttributeType.STRING);
+    FeatureCollection input = new FeatureDataset(schema);
+    Random random = new Random(23);
+    List<String> labels = new ArrayList<String>();
+    Map<String,List<Geometry>> groups = new HashMap<String,List<Geometry>>();
+    for (int i = 0; i < 6000; i++) {
+      // the first groups are the largest ones
+      String label = "group" + (int) (40 * Math.pow(random.nextDouble(), 3));
+      if (!groups.containsKey(label)) {
+        labels.add(label);
+        groups.put(label, new ArrayList<Geometry>());
+      }
+      Geometry g = factory.createPoint(new Coordinate(
+          random.nextDouble() * 1000, random.nextDouble() * 1000)).buffer(5, 2);
+      groups.get(label).add(g);
+      Feature feature = new BasicFeature(schema);
+      feature.setGeometry(g);
+      feature.setAttribute("LABEL", label);
+      input.add(feature);
+    }
+    FeatureSchema newSchema = new FeatureSchema();
+    newSchema.addAttribute("GEOMETRY", AttributeType.GEOMETRY);
+    newSchema.addAttribute("LABEL", AttributeType.STRING);
+
+    UnionByAttributePlugIn plugin = new UnionByAttributePlugIn();
+    Map<String,Object> parameters = new HashMap<String,Object>();
+    parameters.put("use_attribute", true);
+    parameters.put("attribute", "LABEL");
+    parameters.put("factory", factory);
+    TestTools.configurePlugIn(plugin, parameters);
+    FeatureCollection result = plugin.dissolve(null, new DummyTaskMonitor(), input, newSchema);
+
+    assertEquals(labels.size(), result.size());
+    Iterator<String> i = labels.iterator();
+    for (Iterator j = result.iterator(); j.hasNext();) {
+      Feature feature = (Feature) j.next();
+      String label = i.next();
+      assertEquals(label, feature.getAttribute("LABEL"));
+      double area = UnaryUnionOp.union(groups.get(label)).getArea();
+      assertEquals(area, feature.getGeometry().getArea(), 1E-6 * area);
+    }
+  }
+
+}
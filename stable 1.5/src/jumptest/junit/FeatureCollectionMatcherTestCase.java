@@ -0,0 +1,129 @@
+package jumptest.junit;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.openjump.core.ui.plugin.match.FeatureCollectionMatcher;
+import org.openjump.core.ui.plugin.match.Match;
+import org.openjump.core.ui.plugin.match.MatchSink;
+import org.openjump.core.ui.plugin.match.matcher.GeometryMatcher;
+import org.openjump.core.ui.plugin.match.matcher.MatchAllStringsMatcher;
+import org.openjump.core.ui.plugin.match.matcher.MinimumDistanceMatcher;
+import org.openjump.core.ui.plugin.match.matcher.OverlapsMatcher;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.FeatureSchema;
+import com.vividsolutions.jump.feature.IndexedFeatureDataset;
+
+public class FeatureCollectionMatcherTestCase extends TestCase {
+
+  public FeatureCollectionMatcherTestCase(String Name_) {
+    super(Name_);
+  }
+
+  public static void main(String[] args) {
+    String[] testCaseName = {FeatureCollectionMatcherTestCase.class.getName()};
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  private GeometryFactory factory = new GeometryFactory();
+
+  private List<Feature> sources = new ArrayList<Feature>();
+  private List<Feature> targets = new ArrayList<Feature>();
+
+  /**
+   * Random rectangles of various sizes, so that some features extend over
+   * several cells of the streaming matching.
+   */
+  protected void setUp() {
+    FeatureSchema fs = new FeatureSchema();
+    fs.addAttribute("geometry", AttributeType.GEOMETRY);
+    Random random = new Random(3);
+    for (int i = 0; i < 400; i++) {
+      sources.add(rectangle(fs, random));
+      targets.add(rectangle(fs, random));
+    }
+  }
+
+  private Feature rectangle(FeatureSchema fs, Random random) {
+    double x = random.nextDouble() * 100;
+    double y = random.nextDouble() * 100;
+    double size = random.nextInt(10) == 0 ? 20 : 3;
+    Feature f = new BasicFeature(fs);
+    f.setGeometry(factory.toGeometry(new Envelope(
+        x, x + random.nextDouble() * size, y, y + random.nextDouble() * size)));
+    return f;
+  }
+
+  private List<String> inMemory(GeometryMatcher matcher, boolean singleTarget) throws Exception {
+    FeatureCollectionMatcher fcm = new FeatureCollectionMatcher(
+        sources, targets, matcher, MatchAllStringsMatcher.MATCH_ALL);
+    fcm.matchAll(false, singleTarget);
+    List<String> matches = new ArrayList<String>();
+    for (Match m : fcm.getMatchMap().getAllMatches()) {
+      matches.add(toString(m));
+    }
+    Collections.sort(matches);
+    return matches;
+  }
+
+  private List<String> streamed(GeometryMatcher matcher, boolean singleTarget,
+                                double cellSize, boolean collections) throws Exception {
+    FeatureCollectionMatcher fcm;
+    if (collections) {
+      FeatureSchema fs = sources.get(0).getSchema();
+      fcm = new FeatureCollectionMatcher(
+          new FeatureDataset(sources, fs), new IndexedFeatureDataset(targets, fs),
+          matcher, MatchAllStringsMatcher.MATCH_ALL);
+    } else {
+      fcm = new FeatureCollectionMatcher(
+          sources, targets, matcher, MatchAllStringsMatcher.MATCH_ALL);
+    }
+    final List<String> matches = new ArrayList<String>();
+    final boolean[] closed = new boolean[1];
+    long count = fcm.geometryMatching(new MatchSink() {
+      public void write(Match match) {
+        matches.add(FeatureCollectionMatcherTestCase.toString(match));
+      }
+      public void close() {
+        closed[0] = true;
+      }
+    }, singleTarget, cellSize);
+    assertTrue(closed[0]);
+    assertEquals(count, matches.size());
+    Collections.sort(matches);
+    return matches;
+  }
+
+  private static String toString(Match m) {
+    return m.getSource().getID() + "-" + m.getTarget().getID() + ":" + m.getScore();
+  }
+
+  private void doTest(GeometryMatcher matcher) throws Exception {
+    for (boolean singleTarget : new boolean[] {false, true}) {
+      List<String> expected = inMemory(matcher, singleTarget);
+      assertFalse(expected.isEmpty());
+      for (boolean collections : new boolean[] {false, true}) {
+        assertEquals(expected, streamed(matcher, singleTarget, 7.0, collections));
+        assertEquals(expected, streamed(matcher, singleTarget, 1000.0, collections));
+      }
+    }
+  }
+
+  public void testStreamedDistanceMatching() throws Exception {
+    doTest(MinimumDistanceMatcher.instance());
+  }
+
+  public void testStreamedOverlapsMatching() throws Exception {
+    doTest(new OverlapsMatcher(30.0));
+  }
+
+}
@@ -0,0 +1,128 @@
+package jumptest.junit;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjump.core.ui.plugin.queries.FeatureTester;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureSchema;
+
+public class FeatureTesterTestCase extends TestCase {
+
+  public FeatureTesterTestCase(String Name_) {
+    super(Name_);
+  }
+
+  public static void main(String[] args) {
+    String[] testCaseName = {FeatureTesterTestCase.class.getName()};
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  private GeometryFactory factory = new GeometryFactory();
+
+  /**
+   * Tests whether features intersect one of a few buffers, prepared once
+   * per context, as the spatial conditions do.
+   */
+  private class IntersectsTest implements FeatureTester.Test {
+    private final List<Geometry> targets = new ArrayList<Geometry>();
+    private final AtomicInteger contexts = new AtomicInteger();
+
+    IntersectsTest() {
+      for (int i = 0; i < 5; i++) {
+        targets.add(factory.createPoint(new Coordinate(i * 200, i * 150)).buffer(80));
+      }
+    }
+
+    public Object createContext() {
+      contexts.incrementAndGet();
+      return new IdentityHashMap<Geometry,PreparedGeometry>();
+    }
+
+    public boolean test(Feature feature, Object context) {
+      Map<Geometry,PreparedGeometry> prepared = (Map<Geometry,PreparedGeometry>) context;
+      for (Geometry target : targets) {
+        PreparedGeometry p = prepared.get(target);
+        if (p == null) {
+          p = PreparedGeometryFactory.prepare(target);
+          prepared.put(target, p);
+        }
+        if (p.intersects(feature.getGeometry())) return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * The parallel test finds the same features as a serial one, in the same
+   * order, with one context per thread.
+   */
+  public void testSameResultAsSerialTest() throws Exception {
+    List features = features(5000);
+    IntersectsTest serialTest = new IntersectsTest();
+    AtomicInteger serialCount = new AtomicInteger();
+    List serial = new FeatureTester(serialTest).test(features, 1, serialCount);
+    assertEquals(1, serialTest.contexts.get());
+    assertEquals(features.size(), serialCount.get());
+    assertTrue(serial.size() > 100);
+    assertTrue(serial.size() < features.size() - 100);
+
+    for (int threadCount = 2; threadCount <= 8; threadCount *= 2) {
+      IntersectsTest parallelTest = new IntersectsTest();
+      AtomicInteger parallelCount = new AtomicInteger();
+      List parallel = new FeatureTester(parallelTest).test(features, threadCount, parallelCount);
+      assertEquals(serial, parallel);
+      assertEquals(features.size(), parallelCount.get());
+      // 4 partitions per thread share the contexts of the threads
+      assertTrue(parallelTest.contexts.get() <= threadCount);
+    }
+  }
+
+  public void testCancelledTest() throws Exception {
+    List features = features(1000);
+    FeatureTester tester = new FeatureTester(new IntersectsTest()) {
+      protected boolean isCancelled() {
+        return true;
+      }
+    };
+    AtomicInteger count = new AtomicInteger();
+    assertTrue(tester.test(features, 4, count).isEmpty());
+    assertEquals(0, count.get());
+  }
+
+  public void testNoFeatures() throws Exception {
+    AtomicInteger count = new AtomicInteger();
+    assertTrue(new FeatureTester(new IntersectsTest()).test(
+        new ArrayList(), 4, count).isEmpty());
+  }
+
+  private List features(int n) {
+    FeatureSchema schema = new FeatureSchema();
+    schema.addAttribute("GEOMETRY", AttributeType.GEOMETRY);
+    Random random = new Random(3);
+    List features = new ArrayList();
+    for (int i = 0; i < n; i++) {
+      Feature feature = new BasicFeature(schema);
+      double x = random.nextDouble() * 1000;
+      double y = random.nextDouble() * 800;
+      feature.setGeometry(factory.createLineString(new Coordinate[] {
+          new Coordinate(x, y), new Coordinate(x + 20, y + 10)}));
+      features.add(feature);
+    }
+    return features;
+  }
+
+}
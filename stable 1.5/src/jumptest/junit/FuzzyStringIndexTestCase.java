@@ -0,0 +1,118 @@
+package jumptest.junit;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.openjump.core.ui.plugin.match.ScoredIndex;
+import org.openjump.core.ui.plugin.match.matcher.DamarauLevenshteinDistanceMatcher;
+import org.openjump.core.ui.plugin.match.matcher.LevenshteinDistanceMatcher;
+import org.openjump.core.ui.plugin.match.matcher.StringMatcher;
+import org.openjump.core.ui.plugin.match.util.text.algo.DamarauLevenshteinDistance;
+import org.openjump.core.ui.plugin.match.util.text.algo.EditDistance;
+import org.openjump.core.ui.plugin.match.util.text.algo.LevenshteinDistance;
+
+import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureSchema;
+
+/**
+ * Checks the index created by the Levenshtein matchers against a brute
+ * force comparison of the query with every feature.
+ */
+public class FuzzyStringIndexTestCase extends TestCase {
+
+  public FuzzyStringIndexTestCase(String Name_) {
+    super(Name_);
+  }
+
+  public static void main(String[] args) {
+    String[] testCaseName = {FuzzyStringIndexTestCase.class.getName()};
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  private static final String LETTERS = "abcde\u00e9";
+
+  private List<Feature> features = new ArrayList<Feature>();
+  private List<String> queries = new ArrayList<String>();
+
+  protected void setUp() {
+    FeatureSchema fs = new FeatureSchema();
+    fs.addAttribute("geometry", AttributeType.GEOMETRY);
+    fs.addAttribute("NAME", AttributeType.STRING);
+    Random random = new Random(7);
+    List<String> values = new ArrayList<String>();
+    for (int i = 0; i < 300; i++) {
+      values.add(randomString(random));
+    }
+    // duplicate values, and values only differing by accents or case
+    values.add(values.get(0));
+    values.add(values.get(1));
+    values.add("caf\u00e9");
+    values.add("cafe\u0301");
+    values.add("Caf\u00e9");
+    for (String value : values) {
+      Feature f = new BasicFeature(fs);
+      f.setAttribute("NAME", value);
+      features.add(f);
+    }
+    features.add(new BasicFeature(fs));
+    for (int i = 0; i < 100; i++) {
+      queries.add(randomString(random));
+    }
+    queries.add(values.get(0));
+    queries.add("caf\u00e9");
+    queries.add("cafe");
+  }
+
+  private String randomString(Random random) {
+    StringBuffer sb = new StringBuffer();
+    int length = 3 + random.nextInt(4);
+    for (int i = 0; i < length; i++) {
+      sb.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+    }
+    return sb.toString();
+  }
+
+  private void doTest(StringMatcher matcher, EditDistance distance) throws Exception {
+    double maxDistance = matcher.getMaximumDistance();
+    try {
+      // a distance of 2 must give a non null score
+      matcher.setMaximumDistance(2.5);
+      matcher.setAttributes("NAME", "NAME");
+      ScoredIndex index = (ScoredIndex) matcher.createIndex(features);
+      for (String query : queries) {
+        Map<Feature,Double> expected = new HashMap<Feature,Double>();
+        for (Feature f : features) {
+          String value = f.getString("NAME");
+          if (value == null) continue;
+          int d = distance.editDistance(query, value);
+          if (d <= 2.5) {
+            expected.put(f, 1.0 - d/2.5);
+          }
+        }
+        assertEquals(query, expected, index.queryWithScores(query));
+        assertEquals(query, expected.keySet(), index.query(query));
+      }
+    } finally {
+      matcher.setMaximumDistance(maxDistance);
+    }
+  }
+
+  public void testLevenshteinIndex() throws Exception {
+    doTest(LevenshteinDistanceMatcher.instance(), LevenshteinDistance.LEVENSHTEIN_DISTANCE);
+  }
+
+  public void testDamarauLevenshteinIndex() throws Exception {
+    doTest(DamarauLevenshteinDistanceMatcher.instance(), new EditDistance() {
+      public int editDistance(String s, String t) {
+        return DamarauLevenshteinDistance.damarauLevenshtein(s, t);
+      }
+    });
+  }
+
+}
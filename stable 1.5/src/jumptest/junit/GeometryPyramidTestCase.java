@@ -0,0 +1,150 @@
+package jumptest.junit;
+import junit.framework.TestCase;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.FeatureSchema;
+import com.vividsolutions.jump.workbench.model.Layer;
+import com.vividsolutions.jump.workbench.model.LayerManager;
+import com.vividsolutions.jump.workbench.ui.renderer.GeometryPyramid;
+
+public class GeometryPyramidTestCase extends TestCase {
+
+  public GeometryPyramidTestCase(String Name_) {
+    super(Name_);
+  }
+
+  public static void main(String[] args) {
+    String[] testCaseName = {GeometryPyramidTestCase.class.getName()};
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  private GeometryFactory factory = new GeometryFactory();
+
+  /**
+   * Counts the levels built, or found not worth using.
+   */
+  private static class BuildCounter implements Runnable {
+    private int count = 0;
+
+    public synchronized void run() {
+      count++;
+      notifyAll();
+    }
+
+    synchronized int waitFor(int expected) throws InterruptedException {
+      long end = System.currentTimeMillis() + 10000;
+      while (count < expected && System.currentTimeMillis() < end) {
+        wait(100);
+      }
+      return count;
+    }
+  }
+
+  public void testLevel() {
+    assertEquals(-2, GeometryPyramid.level(1.0));
+    assertEquals(0, GeometryPyramid.level(0.25));
+    assertEquals(0, GeometryPyramid.level(0.3));
+    assertEquals(8, GeometryPyramid.level(0.001));
+    double[] scales = {1E-6, 0.003, 0.25, 0.7, 1, 3, 1000, 123456};
+    for (int i = 0; i < scales.length; i++) {
+      // the largest power of two under half a pixel
+      double tolerance = Math.scalb(1.0, GeometryPyramid.level(scales[i]));
+      double halfPixel = 0.5 / scales[i];
+      assertTrue("scale " + scales[i], tolerance < halfPixel);
+      assertTrue("scale " + scales[i], 2 * tolerance >= halfPixel);
+    }
+  }
+
+  /**
+   * Levels removing too few vertices are not used, nor built again, nor are
+   * the finer levels; the coarser levels are still built.
+   */
+  public void testUselessLevelFallback() throws Exception {
+    Layer layer = layer();
+    Collection features = layer.getFeatureCollectionWrapper().getFeatures();
+    GeometryPyramid pyramid = GeometryPyramid.get(layer);
+    BuildCounter counter = new BuildCounter();
+    // 2^-12 is far under the noise of the lines
+    assertSame(features, pyramid.toLevelOfDetail(features, scale(-12), counter));
+    assertEquals(1, counter.waitFor(1));
+    assertSame(features, pyramid.toLevelOfDetail(features, scale(-12), counter));
+    assertSame(features, pyramid.toLevelOfDetail(features, scale(-14), counter));
+    // 2^0 is far over it
+    assertSame(features, pyramid.toLevelOfDetail(features, scale(0), counter));
+    // the builds are queued in a single thread: a build of the finer levels
+    // would have ended first
+    assertEquals(2, counter.waitFor(2));
+    Collection simplified = pyramid.toLevelOfDetail(features, scale(0), counter);
+    assertNotSame(features, simplified);
+    assertEquals(features.size(), simplified.size());
+    Iterator i = features.iterator();
+    for (Iterator j = simplified.iterator(); j.hasNext();) {
+      Feature feature = (Feature) i.next();
+      Feature simplifiedFeature = (Feature) j.next();
+      assertEquals(feature.getID(), simplifiedFeature.getID());
+      assertTrue(simplifiedFeature.getGeometry().getNumPoints()
+          < feature.getGeometry().getNumPoints());
+    }
+    assertEquals(2, counter.waitFor(2));
+  }
+
+  public void testEditedFeatureKeepsItsGeometry() throws Exception {
+    Layer layer = layer();
+    List features = layer.getFeatureCollectionWrapper().getFeatures();
+    GeometryPyramid pyramid = GeometryPyramid.get(layer);
+    BuildCounter counter = new BuildCounter();
+    pyramid.toLevelOfDetail(features, scale(0), counter);
+    assertEquals(1, counter.waitFor(1));
+    Feature feature = (Feature) features.get(0);
+    Geometry edited = line(new Random(1), 100);
+    feature.setGeometry(edited);
+    Feature simplifiedFeature = (Feature) ((List) pyramid.toLevelOfDetail(
+        features, scale(0), counter)).get(0);
+    assertSame(edited, simplifiedFeature.getGeometry());
+  }
+
+  /**
+   * Returns a scale at which the given level is used.
+   */
+  private double scale(int level) {
+    return 0.5 / (1.5 * Math.scalb(1.0, level));
+  }
+
+  /**
+   * A layer of noisy horizontal lines.
+   */
+  private Layer layer() {
+    FeatureSchema schema = new FeatureSchema();
+    schema.addAttribute("GEOMETRY", AttributeType.GEOMETRY);
+    FeatureDataset dataset = new FeatureDataset(schema);
+    Random random = new Random(5);
+    for (int i = 0; i < 20; i++) {
+      Feature feature = new BasicFeature(schema);
+      feature.setGeometry(line(random, i * 10));
+      dataset.add(feature);
+    }
+    LayerManager layerManager = new LayerManager();
+    layerManager.setFiringEvents(false);
+    return layerManager.addLayer("Working", "lines", dataset);
+  }
+
+  private Geometry line(Random random, double y) {
+    Coordinate[] coordinates = new Coordinate[500];
+    for (int i = 0; i < coordinates.length; i++) {
+      coordinates[i] = new Coordinate(i * 0.01, y + random.nextDouble() * 0.01);
+    }
+    return factory.createLineString(coordinates);
+  }
+
+}
@@ -0,0 +1,147 @@
+package jumptest.junit;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureSchema;
+import com.vividsolutions.jump.feature.IndexedFeatureDataset;
+import com.vividsolutions.jump.workbench.model.Layer;
+import com.vividsolutions.jump.workbench.model.LayerManager;
+
+public class IndexedFeatureDatasetTestCase extends TestCase {
+
+  public IndexedFeatureDatasetTestCase(String Name_) {
+    super(Name_);
+  }
+
+  public static void main(String[] args) {
+    String[] testCaseName = {IndexedFeatureDatasetTestCase.class.getName()};
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  private GeometryFactory factory = new GeometryFactory();
+
+  private FeatureSchema schema = new FeatureSchema();
+
+  private Random random = new Random(3);
+
+  protected void setUp() {
+    schema.addAttribute("GEOMETRY", AttributeType.GEOMETRY);
+  }
+
+  private Feature feature() {
+    Feature feature = new BasicFeature(schema);
+    move(feature);
+    return feature;
+  }
+
+  // gives the feature a random square geometry
+  private void move(Feature feature) {
+    double x = random.nextDouble() * 1000;
+    double y = random.nextDouble() * 1000;
+    feature.setGeometry(factory.toGeometry(new Envelope(x, x + 10, y, y + 10)));
+  }
+
+  /**
+   * Checks that the indexed queries return the features of a full scan,
+   * in the order of the collection.
+   */
+  private void assertConsistent(IndexedFeatureDataset dataset) {
+    for (int i = 0; i < 50; i++) {
+      double x = random.nextDouble() * 1000;
+      double y = random.nextDouble() * 1000;
+      // small queries use the index, large ones scan the collection
+      double size = i % 10 == 0 ? 800 : 50;
+      Envelope envelope = new Envelope(x, x + size, y, y + size);
+      List expected = new ArrayList();
+      for (Iterator j = dataset.iterator(); j.hasNext();) {
+        Feature feature = (Feature) j.next();
+        if (feature.getGeometry().getEnvelopeInternal().intersects(envelope)) {
+          expected.add(feature);
+        }
+      }
+      assertEquals(expected, dataset.query(envelope));
+    }
+  }
+
+  private IndexedFeatureDataset dataset(int size) {
+    List features = new ArrayList();
+    for (int i = 0; i < size; i++) {
+      features.add(feature());
+    }
+    IndexedFeatureDataset dataset = new IndexedFeatureDataset(features, schema);
+    // builds the index
+    dataset.query(new Envelope(0, 1, 0, 1));
+    return dataset;
+  }
+
+  public void testAddAndRemove() {
+    IndexedFeatureDataset dataset = dataset(500);
+    assertConsistent(dataset);
+    for (int i = 0; i < 100; i++) {
+      dataset.add(feature());
+    }
+    List features = new ArrayList();
+    for (int i = 0; i < 50; i++) {
+      features.add(feature());
+    }
+    dataset.addAll(features);
+    assertConsistent(dataset);
+    for (int i = 0; i < 100; i++) {
+      dataset.remove((Feature) dataset.getFeatures().get(random.nextInt(dataset.size())));
+    }
+    assertConsistent(dataset);
+    List removed = new ArrayList(dataset.getFeatures());
+    Collections.shuffle(removed, random);
+    dataset.removeAll(removed.subList(0, 200));
+    assertEquals(350, dataset.size());
+    assertConsistent(dataset);
+  }
+
+  public void testRemoveAllMatchesFIDs() {
+    IndexedFeatureDataset dataset = dataset(200);
+    List removed = new ArrayList();
+    for (int i = 0; i < 200; i += 2) {
+      final Feature feature = (Feature) dataset.getFeatures().get(i);
+      // a distinct feature having the same FID
+      Feature copy = new BasicFeature(schema) {
+        public int getID() {
+          return feature.getID();
+        }
+      };
+      copy.setGeometry(feature.getGeometry());
+      removed.add(copy);
+    }
+    dataset.removeAll(removed);
+    assertEquals(100, dataset.size());
+    assertConsistent(dataset);
+  }
+
+  public void testGeometryModifiedUpdatesTheIndex() {
+    IndexedFeatureDataset dataset = dataset(500);
+    LayerManager layerManager = new LayerManager();
+    // the index is updated even if no event is fired
+    layerManager.setFiringEvents(false);
+    Layer layer = layerManager.addLayer("Working", "indexed", dataset);
+    List modified = new ArrayList();
+    List clones = new ArrayList();
+    for (int i = 0; i < 500; i += 5) {
+      Feature feature = (Feature) dataset.getFeatures().get(i);
+      clones.add(feature.clone(true));
+      move(feature);
+      modified.add(feature);
+    }
+    layerManager.fireGeometryModified(modified, layer, clones);
+    assertConsistent(dataset);
+  }
+
+}
@@ -0,0 +1,88 @@
+package jumptest.junit;
+import junit.framework.TestCase;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Rectangle2D;
+import java.util.Random;
+
+import com.vividsolutions.jump.workbench.ui.renderer.style.LabelPlacement;
+
+public class LabelPlacementTestCase extends TestCase {
+
+  public LabelPlacementTestCase(String Name_) {
+    super(Name_);
+  }
+
+  public static void main(String[] args) {
+    String[] testCaseName = {LabelPlacementTestCase.class.getName()};
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  private Rectangle2D label = new Rectangle2D.Double(0, -10, 40, 12);
+
+  public void testOverlappingLabelIsNotPlaced() {
+    LabelPlacement placement = new LabelPlacement();
+    assertTrue(placement.place(label, translation(100, 100)));
+    assertFalse(placement.place(label, translation(130, 105)));
+    assertTrue(placement.place(label, translation(150, 100)));
+    // the label which was not placed does not hide the others
+    assertTrue(placement.place(label, translation(195, 110)));
+  }
+
+  public void testTouchingLabelsDoNotOverlap() {
+    LabelPlacement placement = new LabelPlacement();
+    assertTrue(placement.place(label, translation(100, 100)));
+    assertTrue(placement.place(label, translation(140, 100)));
+    assertTrue(placement.place(label, translation(100, 112)));
+  }
+
+  /**
+   * Rotated labels whose envelopes intersect are only separated along the
+   * edges of the labels.
+   */
+  public void testRotatedLabels() {
+    LabelPlacement placement = new LabelPlacement();
+    assertTrue(placement.place(label, rotation(100, 100, Math.PI / 4)));
+    // parallel to the first label, beside it
+    assertTrue(placement.place(label, rotation(115, 85, Math.PI / 4)));
+    // across the first label
+    assertFalse(placement.place(label, rotation(110, 120, -Math.PI / 4)));
+  }
+
+  /**
+   * Gives the same result as the intersection of the label areas.
+   */
+  public void testSameAsAreaIntersection() {
+    Random random = new Random(13);
+    int overlapping = 0;
+    for (int i = 0; i < 5000; i++) {
+      Rectangle2D bounds0 = new Rectangle2D.Double(0, -10, 5 + random.nextDouble() * 60, 12);
+      Rectangle2D bounds1 = new Rectangle2D.Double(0, -14, 5 + random.nextDouble() * 60, 16);
+      AffineTransform transform0 = rotation(random.nextDouble() * 100,
+          random.nextDouble() * 100, (random.nextDouble() - 0.5) * Math.PI);
+      AffineTransform transform1 = rotation(random.nextDouble() * 100,
+          random.nextDouble() * 100, (random.nextDouble() - 0.5) * Math.PI);
+      Area area = new Area(transform0.createTransformedShape(bounds0));
+      area.intersect(new Area(transform1.createTransformedShape(bounds1)));
+      LabelPlacement placement = new LabelPlacement();
+      assertTrue(placement.place(bounds0, transform0));
+      assertEquals("pair " + i, area.isEmpty(), placement.place(bounds1, transform1));
+      if (!area.isEmpty()) overlapping++;
+    }
+    // both cases are tested
+    assertTrue(overlapping > 500);
+    assertTrue(overlapping < 4500);
+  }
+
+  private AffineTransform translation(double x, double y) {
+    return AffineTransform.getTranslateInstance(x, y);
+  }
+
+  private AffineTransform rotation(double x, double y, double angle) {
+    AffineTransform transform = AffineTransform.getTranslateInstance(x, y);
+    transform.rotate(angle);
+    return transform;
+  }
+
+}
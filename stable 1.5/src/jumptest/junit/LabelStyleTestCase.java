@@ -0,0 +1,101 @@
+package jumptest.junit;
+import junit.framework.TestCase;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.FeatureSchema;
+import com.vividsolutions.jump.workbench.model.Layer;
+import com.vividsolutions.jump.workbench.model.LayerManager;
+import com.vividsolutions.jump.workbench.ui.LayerViewPanel;
+import com.vividsolutions.jump.workbench.ui.LayerViewPanelContext;
+import com.vividsolutions.jump.workbench.ui.renderer.style.LabelStyle;
+
+public class LabelStyleTestCase extends TestCase {
+
+  public LabelStyleTestCase(String Name_) {
+    super(Name_);
+  }
+
+  public static void main(String[] args) {
+    String[] testCaseName = {LabelStyleTestCase.class.getName()};
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  private static final int WIDTH = 512;
+  private static final int HEIGHT = 384;
+
+  private LayerViewPanel panel;
+  private Layer layer;
+  private Feature feature;
+
+  /**
+   * A horizontal line from (100,100) to (300,100), in a view at scale 1.
+   */
+  protected void setUp() throws Exception {
+    LayerManager layerManager = new LayerManager();
+    layerManager.setFiringEvents(false);
+    panel = new LayerViewPanel(layerManager, new LayerViewPanelContext() {
+      public void setStatusMessage(String message) {}
+      // the panel of the test has no rendering manager set up
+      public void handleThrowable(Throwable t) {}
+      public void warnUser(String warning) {}
+    });
+    panel.setSize(WIDTH, HEIGHT);
+    panel.getViewport().initialize(1, new Point2D.Double(0, 0));
+    panel.getViewport().update();
+    FeatureSchema schema = new FeatureSchema();
+    schema.addAttribute("GEOMETRY", AttributeType.GEOMETRY);
+    FeatureDataset dataset = new FeatureDataset(schema);
+    feature = new BasicFeature(schema);
+    feature.setGeometry(new GeometryFactory().createLineString(new Coordinate[] {
+        new Coordinate(100, 100), new Coordinate(300, 100)}));
+    dataset.add(feature);
+    layer = layerManager.addLayer("Working", "line", dataset);
+  }
+
+  /**
+   * The label anchors kept between two renderings at the same scale follow
+   * a change of the label position.
+   */
+  public void testPositionChangeMovesTheLabel() throws Exception {
+    LabelStyle style = new LabelStyle();
+    style.setEnabled(true);
+    style.setHorizontalPosition(LabelStyle.LEFT_SIDE);
+    int left = labelX(style);
+    assertTrue(left < 150);
+    // the style is changed in place, as MultiRingBufferSelectedPlugIn does
+    style.setHorizontalPosition(LabelStyle.RIGHT_SIDE);
+    int right = labelX(style);
+    assertTrue(right > 250);
+    style.setHorizontalPosition(LabelStyle.LEFT_SIDE);
+    assertEquals(left, labelX(style));
+  }
+
+  /**
+   * Renders the label of the feature, and returns the leftmost column of
+   * the label in the view.
+   */
+  private int labelX(LabelStyle style) throws Exception {
+    BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    style.initialize(layer);
+    style.paint(feature, g, panel.getViewport());
+    g.dispose();
+    for (int x = 0; x < WIDTH; x++) {
+      for (int y = 0; y < HEIGHT; y++) {
+        if (image.getRGB(x, y) != 0) return x;
+      }
+    }
+    fail("no label painted");
+    return -1;
+  }
+
+}
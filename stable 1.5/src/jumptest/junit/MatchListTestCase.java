@@ -0,0 +1,117 @@
+package jumptest.junit;
+import junit.framework.TestCase;
+
+import java.util.LinkedList;
+
+import org.openjump.core.ui.plugin.validate.pojo.MatchList;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureSchema;
+
+public class MatchListTestCase extends TestCase {
+
+  public MatchListTestCase(String Name_) {
+    super(Name_);
+  }
+
+  public static void main(String[] args) {
+    String[] testCaseName = {MatchListTestCase.class.getName()};
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  private GeometryFactory factory = new GeometryFactory();
+
+  private FeatureSchema schema() {
+    FeatureSchema fs = new FeatureSchema();
+    fs.addAttribute("geometry", AttributeType.GEOMETRY);
+    return fs;
+  }
+
+  private Feature feature(FeatureSchema fs, double x, double y) {
+    Feature f = new BasicFeature(fs);
+    f.setGeometry(factory.createPoint(new Coordinate(x, y)));
+    return f;
+  }
+
+  public void testStoreMatchIgnoresDuplicates() {
+    FeatureSchema fs = schema();
+    Feature s1 = feature(fs, 0, 0);
+    Feature s2 = feature(fs, 1, 0);
+    Feature t1 = feature(fs, 0, 1);
+    Feature t2 = feature(fs, 1, 1);
+    MatchList matchList = new MatchList();
+    matchList.storeMatch(s1, t1);
+    matchList.storeMatch(s1, t2);
+    matchList.storeMatch(s1, t1);
+    matchList.storeMatch(s2, t1);
+    matchList.storeMatch(s2, t1);
+    assertEquals(3, matchList.numberOfFeatures());
+    // a feature involved in several matches resolves to its first match
+    assertSame(t1, matchList.getMatchedTargetFeature(s1));
+    assertSame(s1, matchList.getMatchedSourceFeature(t1));
+    assertSame(s2, matchList.getSourceFeatureByID(s2.getID()));
+    assertSame(t2, matchList.getTargetFeatureByID(t2.getID()));
+    assertNull(matchList.getMatchedTargetFeature(t1));
+    assertEquals(-1, matchList.indexOfSource(t2));
+  }
+
+  public void testStatusesAndSimilarities() {
+    FeatureSchema fs = schema();
+    MatchList matchList = new MatchList();
+    Feature[] sources = new Feature[100];
+    for (int i = 0; i < sources.length; i++) {
+      sources[i] = feature(fs, i, 0);
+      matchList.storeMatch(sources[i], feature(fs, i, 1));
+    }
+    matchList.setContextWeight(0.5);
+    matchList.setContextSimilarity(sources[42], 0.6);
+    matchList.setObjectSimilarity(sources[42], 0.2);
+    assertEquals(0.6, matchList.getContextSimilarity(sources[42]), 1e-12);
+    assertEquals(0.4, matchList.getConfidenceLevel(sources[42]), 1e-12);
+    matchList.setBufferRadius(sources[99], 2.5);
+    assertEquals(2.5, matchList.getBufferRadius(sources[99]), 1e-12);
+
+    assertTrue(matchList.shouldBeQueued(sources[0]));
+    matchList.setAsInvalid(sources[0]);
+    assertFalse(matchList.shouldBeQueued(sources[0]));
+    assertFalse(matchList.isSuitableSupportingMatch(sources[0]));
+    assertTrue(matchList.isInvalid(sources[0]));
+    matchList.setAsValid(sources[1]);
+    assertTrue(matchList.isSuitableSupportingMatch(sources[1]));
+    assertFalse(matchList.isInvalid(sources[1]));
+
+    LinkedList<Feature> queue = new LinkedList<Feature>();
+    assertTrue(matchList.supplementSingleMatch(queue));
+    assertSame(sources[2], queue.poll());
+
+    matchList.clear();
+    assertEquals(1.0, matchList.getContextSimilarity(sources[42]), 1e-12);
+    assertTrue(matchList.shouldBeQueued(sources[0]));
+    assertTrue(matchList.supplementSingleMatch(queue));
+    assertSame(sources[0], queue.poll());
+  }
+
+  public void testUnmatchedFeatures() {
+    FeatureSchema fs = schema();
+    Feature s1 = feature(fs, 0, 0);
+    Feature s2 = feature(fs, 1, 0);
+    Feature t1 = feature(fs, 0, 1);
+    Feature t2 = feature(fs, 1, 1);
+    MatchList matchList = new MatchList();
+    matchList.storeMatch(s1, t1);
+    matchList.tryAddUnmatchedSourceFeature(s1);
+    matchList.tryAddUnmatchedSourceFeature(s2);
+    matchList.tryAddUnmatchedSourceFeature(s2);
+    matchList.tryAddUnmatchedTargetFeature(t1);
+    matchList.tryAddUnmatchedTargetFeature(t2);
+    assertEquals(1, matchList.getUnmatchedSourceFeatures().size());
+    assertSame(s2, matchList.getUnmatchedSourceFeatures().get(0));
+    assertEquals(1, matchList.getUnmatchedTargetFeatures().size());
+    assertSame(t2, matchList.getUnmatchedTargetFeatures().get(0));
+  }
+
+}
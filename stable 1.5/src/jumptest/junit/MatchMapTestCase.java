@@ -0,0 +1,164 @@
+package jumptest.junit;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.openjump.core.ui.plugin.match.Match;
+import org.openjump.core.ui.plugin.match.MatchMap;
+
+import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureSchema;
+
+public class MatchMapTestCase extends TestCase {
+
+  public MatchMapTestCase(String Name_) {
+    super(Name_);
+  }
+
+  public static void main(String[] args) {
+    String[] testCaseName = {MatchMapTestCase.class.getName()};
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  private List<Feature> sources = new ArrayList<Feature>();
+  private List<Feature> targets = new ArrayList<Feature>();
+
+  protected void setUp() {
+    FeatureSchema fs = new FeatureSchema();
+    fs.addAttribute("geometry", AttributeType.GEOMETRY);
+    for (int i = 0; i < 30; i++) {
+      sources.add(new BasicFeature(fs));
+      targets.add(new BasicFeature(fs));
+    }
+  }
+
+  public void testFilter() {
+    Feature s1 = sources.get(0), s2 = sources.get(1);
+    Feature t1 = targets.get(0), t2 = targets.get(1);
+    MatchMap map = new MatchMap();
+    map.add(new Match(s1, t1, 0.9));
+    map.add(new Match(s1, t2, 0.8));
+    map.add(new Match(s2, t1, 0.85));
+    map.add(new Match(s2, t2, 0.5));
+    assertEquals("[" + s1.getID() + "-" + t1.getID() + ", " + s2.getID() + "-" + t1.getID() + "]",
+        toString(map.filter(false, true).getAllMatches()));
+    assertEquals("[" + s1.getID() + "-" + t1.getID() + ", " + s1.getID() + "-" + t2.getID() + "]",
+        toString(map.filter(true, false).getAllMatches()));
+    assertEquals("[" + s1.getID() + "-" + t1.getID() + ", " + s2.getID() + "-" + t2.getID() + "]",
+        toString(map.filter(true, true).getAllMatches()));
+    assertSame(map, map.filter(false, false));
+    // filter returns a new MatchMap and leaves this one unchanged
+    assertEquals(4, map.size());
+  }
+
+  /**
+   * Compares the MatchMap with the TreeSet based implementation it replaced,
+   * on random matches with repeated couples of features and equal scores.
+   */
+  public void testSameOrderAsTreeSetImplementation() {
+    Random random = new Random(7);
+    for (int run = 0; run < 20; run++) {
+      List<Match> added = new ArrayList<Match>();
+      for (int i = 0; i < 300; i++) {
+        added.add(new Match(
+            sources.get(random.nextInt(sources.size())),
+            targets.get(random.nextInt(targets.size())),
+            random.nextInt(10) / 10.0));
+      }
+      MatchMap map = new MatchMap();
+      for (Match m : added) map.add(m);
+      TreeSet<Match> expected = treeSetAdd(added);
+      assertEquals(toString(expected), toString(map.getAllMatches()));
+      assertEquals(expected.size(), map.size());
+      for (boolean singleSource : new boolean[] {false, true}) {
+        for (boolean singleTarget : new boolean[] {false, true}) {
+          if (!singleSource && !singleTarget) continue;
+          assertEquals(toString(treeSetFilter(expected, singleSource, singleTarget)),
+              toString(map.filter(singleSource, singleTarget).getAllMatches()));
+        }
+      }
+      assertEquals(toString(expected), toString(map.getAllMatches()));
+    }
+  }
+
+  public void testRemoveMatch() {
+    Random random = new Random(11);
+    List<Match> added = new ArrayList<Match>();
+    for (int i = 0; i < 200; i++) {
+      added.add(new Match(
+          sources.get(random.nextInt(sources.size())),
+          targets.get(random.nextInt(targets.size())),
+          random.nextInt(10) / 10.0));
+    }
+    MatchMap map = new MatchMap();
+    for (Match m : added) map.add(m);
+    TreeSet<Match> expected = treeSetAdd(added);
+    for (Iterator<Match> i = expected.iterator(); i.hasNext(); ) {
+      Match m = i.next();
+      if (random.nextBoolean()) {
+        map.removeMatch(m);
+        i.remove();
+      }
+    }
+    assertEquals(toString(expected), toString(map.getAllMatches()));
+    assertEquals(toString(treeSetFilter(expected, true, true)),
+        toString(map.filter(true, true).getAllMatches()));
+  }
+
+  /**
+   * Keeps the best match of each couple of features, as MatchMap.add did.
+   */
+  private TreeSet<Match> treeSetAdd(List<Match> added) {
+    TreeSet<Match> matches = new TreeSet<Match>();
+    for (Match m : added) {
+      Match previous = null;
+      for (Match p : matches) {
+        if (p.getSource() == m.getSource() && p.getTarget() == m.getTarget()) previous = p;
+      }
+      if (previous != null) {
+        if (previous.getScore() < m.getScore()) matches.remove(previous);
+        else continue;
+      }
+      matches.add(m);
+    }
+    return matches;
+  }
+
+  /**
+   * Takes the best remaining match and removes the matches sharing its
+   * source and/or target, as MatchMap.filter did.
+   */
+  private TreeSet<Match> treeSetFilter(TreeSet<Match> set,
+        boolean singleSource, boolean singleTarget) {
+    TreeSet<Match> matches = new TreeSet<Match>(set);
+    TreeSet<Match> filtered = new TreeSet<Match>();
+    while (matches.size() > 0) {
+      Match m = matches.first();
+      filtered.add(m);
+      for (Iterator<Match> i = matches.iterator(); i.hasNext(); ) {
+        Match other = i.next();
+        if ((singleTarget && other.getSource() == m.getSource()) ||
+            (singleSource && other.getTarget() == m.getTarget())) {
+          i.remove();
+        }
+      }
+    }
+    return filtered;
+  }
+
+  private String toString(Iterable<Match> matches) {
+    StringBuffer sb = new StringBuffer("[");
+    for (Match m : matches) {
+      if (sb.length() > 1) sb.append(", ");
+      sb.append(m.getSource().getID()).append("-").append(m.getTarget().getID());
+    }
+    return sb.append("]").toString();
+  }
+
+}
@@ -1,6 +1,9 @@
 package jumptest.junit;
 import junit.framework.TestCase;
 
+import java.util.Random;
+
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.io.ParseException;
 import com.vividsolutions.jts.io.WKTReader;
@@ -33,18 +36,67 @@ public class OverlayEngineTestCase extends TestCase {
           + "((0 5, 10 5, 10 15, 0 15, 0 5), (1 10, 2 10, 2 11, 1 11, 1 10)),"
           + "((25 5, 35 5, 35 15, 25 15, 25 5), (32 10, 33 10, 33 11, 32 11, 32 10)),"
           + "((30 0, 35 0, 35 -5, 30 -5, 30 0), (32 -1, 33 -1, 33 -2, 32 -2, 32 -1)) )";
-    assertEquals(2, doTest(a, b, true, true));
-    assertEquals(3, doTest(a, b, true, false));
-    assertEquals(0, doTest(a, b, false, true));
-    assertEquals(1, doTest(a, b, false, false));
+    for (boolean parallel : new boolean[] {false, true}) {
+      assertEquals(2, doTest(a, b, true, true, parallel));
+      assertEquals(3, doTest(a, b, true, false, parallel));
+      assertEquals(0, doTest(a, b, false, true, parallel));
+      assertEquals(1, doTest(a, b, false, false, parallel));
+    }
+  }
+
+  /**
+   * Overlays random rectangles, enough of them to be split into several
+   * chunks by the parallel mode.
+   */
+  public void testParallelOverlayIsSerialOverlay() throws Exception {
+    FeatureSchema schema = new FeatureSchema();
+    schema.addAttribute("GEOMETRY", AttributeType.GEOMETRY);
+    schema.addAttribute("ID", AttributeType.INTEGER);
+    Random random = new Random(9);
+    FeatureCollection a = new FeatureDataset(schema);
+    FeatureCollection b = new FeatureDataset(schema);
+    for (int i = 0; i < 3000; i++) {
+      a.add(rectangle(schema, i, random));
+      b.add(rectangle(schema, i, random));
+    }
+    TestEngine serialEngine = new TestEngine();
+    FeatureCollection serial = serialEngine.overlay(a, b, new DummyTaskMonitor());
+    TestEngine parallelEngine = new TestEngine();
+    parallelEngine.setParallel(true);
+    FeatureCollection parallel = parallelEngine.overlay(a, b, new DummyTaskMonitor());
+    assertTrue(serial.size() > 3000);
+    assertEquals(serial.size(), parallel.size());
+    int previousID = Integer.MIN_VALUE;
+    for (int i = 0; i < serial.size(); i++) {
+      Feature s = (Feature) serial.getFeatures().get(i);
+      Feature p = (Feature) parallel.getFeatures().get(i);
+      assertTrue(s.getGeometry().equalsExact(p.getGeometry()));
+      // the IDs are unique, given in the order of the overlay
+      assertTrue(p.getID() > previousID);
+      previousID = p.getID();
+      for (int j = 1; j < s.getSchema().getAttributeCount(); j++) {
+        assertEquals(s.getAttribute(j), p.getAttribute(j));
+      }
+    }
+  }
+
+  private Feature rectangle(FeatureSchema schema, int id, Random random) {
+    double x = random.nextDouble() * 1000;
+    double y = random.nextDouble() * 1000;
+    Feature f = new BasicFeature(schema);
+    f.setGeometry(new GeometryFactory().toGeometry(new Envelope(
+        x, x + random.nextDouble() * 40, y, y + random.nextDouble() * 40)));
+    f.setAttribute("ID", Integer.valueOf(id));
+    return f;
   }
 
   private WKTReader reader = new WKTReader(new GeometryFactory());
 
   private int doTest(String wktA, String wktB,
-        boolean splittingGeometryCollections, boolean allowingPolygonsOnly)
-        throws ParseException {
+        boolean splittingGeometryCollections, boolean allowingPolygonsOnly,
+        boolean parallel) throws ParseException {
     TestEngine te = new TestEngine();
+    te.setParallel(parallel);
     te.setSplittingGeometryCollections(splittingGeometryCollections);
     te.setAllowingPolygonsOnly(allowingPolygonsOnly);
     FeatureSchema schema = new FeatureSchema();
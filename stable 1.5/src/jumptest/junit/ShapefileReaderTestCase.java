@@ -0,0 +1,204 @@
+package jumptest.junit;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.GregorianCalendar;
+import java.util.Random;
+
+import org.geotools.shapefile.Shapefile;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.FeatureSchema;
+import com.vividsolutions.jump.io.DriverProperties;
+import com.vividsolutions.jump.io.MappedFile;
+import com.vividsolutions.jump.io.ShapefileReader;
+import com.vividsolutions.jump.io.ShapefileWriter;
+
+public class ShapefileReaderTestCase extends TestCase {
+
+  public ShapefileReaderTestCase(String Name_) {
+    super(Name_);
+  }
+
+  public static void main(String[] args) {
+    String[] testCaseName = {ShapefileReaderTestCase.class.getName()};
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  private GeometryFactory factory = new GeometryFactory();
+
+  private File dir;
+
+  protected void setUp() throws Exception {
+    dir = File.createTempFile("shapefile", "");
+    dir.delete();
+    dir.mkdir();
+  }
+
+  protected void tearDown() {
+    File[] files = dir.listFiles();
+    for (int i = 0; i < files.length; i++) {
+      files[i].delete();
+    }
+    dir.delete();
+  }
+
+  /**
+   * Writes random polygons with a string, an integer, a double and a date
+   * attribute, some of them being null.
+   */
+  private String write(String name, int size) throws Exception {
+    return write(name, size, true);
+  }
+
+  /**
+   * Writes random polygons with an integer and a double attribute, plus a
+   * string and a date attribute if text is true.
+   */
+  private String write(String name, int size, boolean text) throws Exception {
+    FeatureSchema fs = new FeatureSchema();
+    fs.addAttribute("GEOMETRY", AttributeType.GEOMETRY);
+    if (text) fs.addAttribute("NAME", AttributeType.STRING);
+    fs.addAttribute("COUNT", AttributeType.INTEGER);
+    fs.addAttribute("AREA", AttributeType.DOUBLE);
+    if (text) fs.addAttribute("CREATED", AttributeType.DATE);
+    FeatureCollection fc = new FeatureDataset(fs);
+    Random random = new Random(5);
+    for (int i = 0; i < size; i++) {
+      double x = random.nextDouble() * 1000;
+      double y = random.nextDouble() * 1000;
+      Feature f = new BasicFeature(fs);
+      f.setGeometry(factory.toGeometry(new Envelope(
+          x, x + random.nextDouble() * 10, y, y + random.nextDouble() * 10)));
+      if (random.nextInt(10) > 0) {
+        if (text) f.setAttribute("NAME", "feature " + i);
+        f.setAttribute("COUNT", Integer.valueOf(random.nextInt(100000)));
+        f.setAttribute("AREA", Double.valueOf(random.nextDouble() * 100));
+        if (text) f.setAttribute("CREATED", new GregorianCalendar(
+            1950 + random.nextInt(60), random.nextInt(12), 1 + random.nextInt(28)).getTime());
+      }
+      fc.add(f);
+    }
+    String fileName = new File(dir, name + ".shp").getPath();
+    save(fc, fileName);
+    return fileName;
+  }
+
+  private void save(FeatureCollection fc, String fileName) throws Exception {
+    DriverProperties dp = new DriverProperties();
+    dp.set(ShapefileWriter.FILE_PROPERTY_KEY, fileName);
+    new ShapefileWriter().write(fc, dp);
+  }
+
+  private FeatureCollection read(String fileName, boolean memoryMapped) throws Exception {
+    DriverProperties dp = new DriverProperties();
+    dp.set(ShapefileReader.FILE_PROPERTY_KEY, fileName);
+    if (memoryMapped) {
+      // as set by the open file wizard
+      dp.put(ShapefileReader.MEMORY_MAPPED_PROPERTY_KEY, Boolean.TRUE);
+    }
+    return new ShapefileReader().read(dp);
+  }
+
+  private void assertSameFeatures(FeatureCollection expected, FeatureCollection actual) {
+    assertEquals(expected.getFeatureSchema().getAttributeCount(),
+                 actual.getFeatureSchema().getAttributeCount());
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Feature e = (Feature) expected.getFeatures().get(i);
+      Feature a = (Feature) actual.getFeatures().get(i);
+      assertTrue("feature " + i, e.getGeometry().equalsExact(a.getGeometry()));
+      for (int j = 1; j < e.getSchema().getAttributeCount(); j++) {
+        assertEquals("feature " + i, e.getAttribute(j), a.getAttribute(j));
+      }
+    }
+  }
+
+  public void testMemoryMappedReadIsStreamRead() throws Exception {
+    String fileName = write("polygons", 500);
+    FeatureCollection stream = read(fileName, false);
+    FeatureCollection mapped = read(fileName, true);
+    assertEquals(500, stream.size());
+    // mapped features decode their attributes lazily
+    assertNotSame(BasicFeature.class, mapped.getFeatures().get(0).getClass());
+    assertSameFeatures(stream, mapped);
+  }
+
+  private GeometryCollection decode(String fileName, int threadCount) throws Exception {
+    Shapefile shapefile = new Shapefile(new File(fileName));
+    shapefile.setThreadCount(threadCount);
+    try {
+      return shapefile.read(factory);
+    } finally {
+      shapefile.close();
+    }
+  }
+
+  public void testParallelDecodingIsSerialDecoding() throws Exception {
+    // enough records for the memory-mapped reader to decode them in parallel
+    String fileName = write("parallel", 5000);
+    GeometryCollection serial = decode(fileName, 1);
+    GeometryCollection parallel = decode(fileName, 4);
+    assertEquals(5000, serial.getNumGeometries());
+    assertTrue(serial.equalsExact(parallel));
+    // the reader decodes mapped files with all the processors
+    assertSameFeatures(read(fileName, false), read(fileName, true));
+  }
+
+  private void assertCanOverwriteMappedFile(boolean text) throws Exception {
+    String fileName = write(text ? "overwritten" : "numeric", 500, text);
+    FeatureCollection stream = read(fileName, false);
+    FeatureCollection mapped = read(fileName, true);
+    // the attributes of the mapped features are read while the dbf file
+    // they come from is rewritten
+    save(mapped, fileName);
+    assertSameFeatures(stream, mapped);
+    assertSameFeatures(stream, read(fileName, false));
+    assertSameFeatures(stream, read(fileName, true));
+  }
+
+  public void testMappedFeaturesCanOverwriteTheirFile() throws Exception {
+    assertCanOverwriteMappedFile(true);
+    // without string attributes, the writer reads no attribute before
+    // truncating the dbf file
+    assertCanOverwriteMappedFile(false);
+  }
+
+  public void testSegmentedMappingIsFileContent() throws Exception {
+    byte[] content = new byte[1000];
+    new Random(7).nextBytes(content);
+    File file = new File(dir, "segmented.bin");
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.write(content);
+    } finally {
+      raf.close();
+    }
+    // segments of 64 bytes, so that reads lie across segment boundaries
+    MappedFile mapped = new MappedFile(file, 64);
+    assertEquals(content.length, mapped.size());
+    for (int position = 0; position + 70 <= content.length; position += 13) {
+      byte[] bytes = new byte[70];
+      mapped.get(position, bytes, 0, bytes.length);
+      ByteBuffer expected = ByteBuffer.wrap(content, position, 70).slice();
+      assertEquals(expected, ByteBuffer.wrap(bytes));
+      assertEquals(expected, mapped.slice(position, 70));
+      assertEquals(expected.getInt(0), mapped.getInt(position));
+    }
+    try {
+      mapped.getInt(content.length - 2);
+      fail("read past the end of the file");
+    } catch (IndexOutOfBoundsException e) {
+    }
+  }
+
+}
@@ -0,0 +1,179 @@
+package jumptest.junit;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jump.feature.*;
+import com.vividsolutions.jump.task.DummyTaskMonitor;
+import com.vividsolutions.jump.task.TaskMonitor;
+import com.vividsolutions.jump.workbench.ui.GenericNames;
+import com.vividsolutions.jump.workbench.ui.plugin.analysis.GeometryPredicate;
+import com.vividsolutions.jump.workbench.ui.plugin.analysis.SpatialJoinExecuter;
+import com.vividsolutions.jump.workbench.ui.plugin.analysis.SpatialQueryExecuter;
+
+public class SpatialQueryExecuterTestCase extends TestCase {
+
+  public SpatialQueryExecuterTestCase(String Name_) {
+    super(Name_);
+  }
+
+  public static void main(String[] args) {
+    String[] testCaseName = {SpatialQueryExecuterTestCase.class.getName()};
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  private static final String[] PREDICATES = {
+    GenericNames.INTERSECTS,
+    GenericNames.WITHIN,
+    GenericNames.COVEREDBY,
+    GenericNames.DISJOINT,
+    GenericNames.WITHIN_DISTANCE
+  };
+
+  private static final double[] PARAMS = {10};
+
+  private GeometryFactory factory = new GeometryFactory();
+
+  public void testParallelQueryIsSerialQuery() throws Exception {
+    for (int i = 0; i < PREDICATES.length; i++) {
+      GeometryPredicate pred = GeometryPredicate.getPredicate(PREDICATES[i]);
+      assertNotNull(PREDICATES[i], pred);
+      for (boolean allowDuplicates : new boolean[] {false, true}) {
+        for (boolean complement : new boolean[] {false, true}) {
+          String message = PREDICATES[i] + ", duplicates " + allowDuplicates
+                + ", complement " + complement;
+          List serial = query(pred, allowDuplicates, complement, false, new DummyTaskMonitor());
+          List parallel = query(pred, allowDuplicates, complement, true, new DummyTaskMonitor());
+          // every source is disjoint from some mask : the complement is empty
+          if (! complement) assertFalse(message, serial.isEmpty());
+          assertEquals(message, serial, parallel);
+        }
+      }
+    }
+  }
+
+  public void testParallelJoinIsSerialJoin() throws Exception {
+    for (int i = 0; i < PREDICATES.length; i++) {
+      GeometryPredicate pred = GeometryPredicate.getPredicate(PREDICATES[i]);
+      List serial = join(pred, false);
+      List parallel = join(pred, true);
+      assertFalse(PREDICATES[i], serial.isEmpty());
+      assertEquals(PREDICATES[i], serial, parallel);
+    }
+  }
+
+  public void testCancelledParallelQueryFindsNothing() throws Exception {
+    TaskMonitor cancelled = new DummyTaskMonitor() {
+      public boolean isCancelRequested() {
+        return true;
+      }
+    };
+    GeometryPredicate pred = GeometryPredicate.getPredicate(GenericNames.INTERSECTS);
+    assertTrue(query(pred, true, false, true, cancelled).isEmpty());
+    assertTrue(query(pred, false, false, true, cancelled).isEmpty());
+  }
+
+  /**
+   * Returns the sorted IDs of the source features found by the query.
+   * The collections are created for each query, as the serial mode expands
+   * the envelope of the masks for the within distance predicate.
+   */
+  private List query(GeometryPredicate pred, boolean allowDuplicates,
+        boolean complement, boolean parallel, TaskMonitor monitor) {
+    SpatialQueryExecuter executer = new SpatialQueryExecuter(masks(), sources());
+    executer.setAllowDuplicates(allowDuplicates);
+    executer.setComplementResult(complement);
+    executer.setParallel(parallel);
+    FeatureCollection result = executer.getResultFC();
+    executer.execute(monitor, pred, PARAMS, result);
+    assertFalse(executer.isExceptionThrown());
+    List ids = new ArrayList();
+    for (Iterator i = result.iterator(); i.hasNext(); ) {
+      ids.add(((Feature) i.next()).getAttribute("ID"));
+    }
+    Collections.sort(ids);
+    return ids;
+  }
+
+  /**
+   * Returns the sorted ID pairs of the features joined.
+   */
+  private List join(GeometryPredicate pred, boolean parallel) {
+    SpatialJoinExecuter executer = new SpatialJoinExecuter(masks(), sources());
+    executer.setParallel(parallel);
+    FeatureCollection result = executer.getResultFC();
+    executer.execute(new DummyTaskMonitor(), pred, PARAMS, result);
+    assertFalse(executer.isExceptionThrown());
+    List pairs = new ArrayList();
+    for (Iterator i = result.iterator(); i.hasNext(); ) {
+      Feature f = (Feature) i.next();
+      pairs.add(f.getAttribute("A_ID") + " " + f.getAttribute("B_ID"));
+    }
+    Collections.sort(pairs);
+    return pairs;
+  }
+
+  private FeatureSchema schema() {
+    FeatureSchema schema = new FeatureSchema();
+    schema.addAttribute("GEOMETRY", AttributeType.GEOMETRY);
+    schema.addAttribute("ID", AttributeType.INTEGER);
+    return schema;
+  }
+
+  private FeatureCollection masks() {
+    FeatureSchema schema = schema();
+    Random random = new Random(3);
+    FeatureCollection fc = new FeatureDataset(schema);
+    for (int i = 0; i < 60; i++) {
+      fc.add(feature(schema, i, rectangle(random, 200)));
+    }
+    return fc;
+  }
+
+  /**
+   * Small random rectangles, plus halves and edges of the masks, which
+   * are covered by the masks but not always within them.
+   */
+  private FeatureCollection sources() {
+    FeatureSchema schema = schema();
+    Random random = new Random(5);
+    FeatureCollection fc = new FeatureDataset(schema);
+    int id = 0;
+    for (int i = 0; i < 400; i++) {
+      fc.add(feature(schema, id++, rectangle(random, 40)));
+    }
+    for (Iterator i = masks().iterator(); i.hasNext(); ) {
+      Envelope env = ((Feature) i.next()).getGeometry().getEnvelopeInternal();
+      double midX = (env.getMinX() + env.getMaxX()) / 2;
+      fc.add(feature(schema, id++, factory.toGeometry(new Envelope(
+            env.getMinX(), midX, env.getMinY(), env.getMaxY()))));
+      fc.add(feature(schema, id++, factory.createLineString(new Coordinate[] {
+            new Coordinate(env.getMinX(), env.getMinY()),
+            new Coordinate(env.getMinX(), env.getMaxY())})));
+    }
+    return fc;
+  }
+
+  private Geometry rectangle(Random random, double maxSize) {
+    double x = random.nextDouble() * 1000;
+    double y = random.nextDouble() * 1000;
+    return factory.toGeometry(new Envelope(
+        x, x + random.nextDouble() * maxSize, y, y + random.nextDouble() * maxSize));
+  }
+
+  private Feature feature(FeatureSchema schema, int id, Geometry geometry) {
+    Feature f = new BasicFeature(schema);
+    f.setGeometry(geometry);
+    f.setAttribute("ID", Integer.valueOf(id));
+    return f;
+  }
+
+}
@@ -0,0 +1,206 @@
+package jumptest.junit;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.FeatureSchema;
+import com.vividsolutions.jump.workbench.model.cache.TileCachingFeatureCollection;
+
+public class TileCachingFeatureCollectionTestCase extends TestCase {
+
+  public TileCachingFeatureCollectionTestCase(String Name_) {
+    super(Name_);
+  }
+
+  public static void main(String[] args) {
+    String[] testCaseName = {TileCachingFeatureCollectionTestCase.class.getName()};
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  private GeometryFactory factory = new GeometryFactory();
+
+  /**
+   * Stands for a database table: each query returns new instances of the
+   * features, and is counted.
+   */
+  private static class Table extends FeatureDataset {
+    private int reads = 0;
+
+    Table(FeatureSchema schema) {
+      super(schema);
+    }
+
+    public List query(Envelope envelope) {
+      reads++;
+      List result = new ArrayList();
+      for (Iterator i = super.query(envelope).iterator(); i.hasNext();) {
+        result.add(((Feature) i.next()).clone(true));
+      }
+      return result;
+    }
+
+    int reads() {
+      int reads = this.reads;
+      this.reads = 0;
+      return reads;
+    }
+  }
+
+  private Table table;
+  private TileCachingFeatureCollection cache;
+
+  /**
+   * A point every 10 units over (0,0)-(1000,1000).
+   */
+  protected void setUp() {
+    FeatureSchema schema = new FeatureSchema();
+    schema.addAttribute("GEOMETRY", AttributeType.GEOMETRY);
+    schema.addAttribute("NAME", AttributeType.STRING);
+    table = new Table(schema);
+    for (int x = 0; x <= 1000; x += 10) {
+      for (int y = 0; y <= 1000; y += 10) {
+        Feature feature = new BasicFeature(schema);
+        feature.setGeometry(factory.createPoint(new Coordinate(x, y)));
+        feature.setAttribute("NAME", "point");
+        table.add(feature);
+      }
+    }
+    cache = new TileCachingFeatureCollection(table).setPrefetching(false);
+  }
+
+  public void testTilesAreReadOnce() {
+    // 4 tiles of size 64 cover the envelope
+    assertEquals(121, query(0, 100, 0, 100).size());
+    assertEquals(1, table.reads());
+    assertEquals(121, query(0, 100, 0, 100).size());
+    assertEquals(36, query(10, 60, 10, 60).size());
+    assertEquals(0, table.reads());
+    // 2 tiles are read
+    assertEquals(66, query(50, 150, 50, 100).size());
+    assertEquals(1, table.reads());
+  }
+
+  /**
+   * The tiles of a smaller view are served by the coarser tiles of a larger
+   * one containing them.
+   */
+  public void testAncestorTilesServe() {
+    assertEquals(1681, query(0, 400, 0, 400).size());
+    assertEquals(1, table.reads());
+    assertEquals(121, query(0, 100, 0, 100).size());
+    assertEquals(36, query(300, 350, 300, 350).size());
+    assertEquals(0, table.reads());
+    // under the 512x512 tiles of the first query
+    assertEquals(121, query(480, 580, 0, 100).size());
+    assertEquals(1, table.reads());
+  }
+
+  /**
+   * The least recently used tiles are dropped when the cache is full, but
+   * never those of the last query.
+   */
+  public void testEviction() {
+    cache.setMaxCoordinates(700);
+    query(0, 100, 0, 100);
+    query(500, 600, 500, 600);
+    assertEquals(2, table.reads());
+    assertEquals(121, query(500, 600, 500, 600).size());
+    assertEquals(0, table.reads());
+    assertEquals(121, query(0, 100, 0, 100).size());
+    assertEquals(1, table.reads());
+    // whatever the bound
+    cache.setMaxCoordinates(0);
+    assertEquals(121, query(500, 600, 500, 600).size());
+    assertEquals(121, query(500, 600, 500, 600).size());
+    assertEquals(1, table.reads());
+    // the 9 tiles of size 64 read for the view
+    assertEquals(400, cache.size());
+  }
+
+  /**
+   * A feature read with several tiles is a single instance, identified by
+   * its values or by its key.
+   */
+  public void testFeaturesAreMerged() {
+    Feature square = new BasicFeature(table.getFeatureSchema());
+    square.setGeometry(factory.toGeometry(new Envelope(55, 75, 55, 75)));
+    table.add(square);
+    // the square is in the 4 tiles of size 32 around (64,64), read by 2
+    // queries
+    Feature squareInTable = feature(query(0, 60, 0, 60), square);
+    assertNotNull(squareInTable);
+    assertSame(squareInTable, feature(query(60, 120, 60, 120), square));
+    assertEquals(2, table.reads());
+    assertEquals(7 * 7 + 9 * 9 - 3 * 3 + 1, cache.size());
+
+    cache.setKeyAttributeNames(new String[] {"NAME"});
+    // all the points have the same name, the square has none
+    assertEquals(2, query(0, 100, 0, 100).size());
+  }
+
+  public void testAddedFeaturesAreReturned() {
+    query(0, 100, 0, 100);
+    Feature added = new BasicFeature(table.getFeatureSchema());
+    added.setGeometry(factory.createPoint(new Coordinate(15, 15)));
+    cache.add(added);
+    assertTrue(query(0, 100, 0, 100).contains(added));
+    assertTrue(cache.getFeatures().contains(added));
+    // the tile of the feature has been read again
+    assertEquals(2, table.reads());
+    assertFalse(query(200, 300, 200, 300).contains(added));
+    cache.remove(added);
+    assertFalse(query(0, 100, 0, 100).contains(added));
+    assertFalse(cache.getFeatures().contains(added));
+  }
+
+  /**
+   * The tiles of a read reaching the read limit are not cached.
+   */
+  public void testReadLimit() {
+    cache.setReadLimit(100);
+    // a real limit would have truncated the result
+    assertEquals(121, query(0, 100, 0, 100).size());
+    query(0, 100, 0, 100);
+    assertEquals(2, table.reads());
+    cache.setReadLimit(1000);
+    query(0, 100, 0, 100);
+    query(0, 100, 0, 100);
+    assertEquals(1, table.reads());
+  }
+
+  /**
+   * Queries the cache off the GUI thread, as the layer renderer does.
+   */
+  private List query(double minX, double maxX, double minY, double maxY) {
+    List result = new ArrayList();
+    for (Iterator i = cache.query(new Envelope(minX, maxX, minY, maxY)).iterator(); i.hasNext();) {
+      result.add(i.next());
+    }
+    return result;
+  }
+
+  /**
+   * Returns the feature of a query result with the geometry of feature.
+   */
+  private Feature feature(List result, Feature feature) {
+    Feature found = null;
+    for (Iterator i = result.iterator(); i.hasNext();) {
+      Feature f = (Feature) i.next();
+      if (f.getGeometry().equalsExact(feature.getGeometry())) {
+        assertNull(found);
+        found = f;
+      }
+    }
+    return found;
+  }
+
+}
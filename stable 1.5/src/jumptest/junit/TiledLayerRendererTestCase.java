@@ -0,0 +1,155 @@
+package jumptest.junit;
+import junit.framework.TestCase;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.FeatureSchema;
+import com.vividsolutions.jump.workbench.model.Layer;
+import com.vividsolutions.jump.workbench.model.LayerManager;
+import com.vividsolutions.jump.workbench.ui.LayerViewPanel;
+import com.vividsolutions.jump.workbench.ui.LayerViewPanelContext;
+import com.vividsolutions.jump.workbench.ui.renderer.LayerRendererFactory;
+import com.vividsolutions.jump.workbench.ui.renderer.Renderer;
+import com.vividsolutions.jump.workbench.ui.renderer.TiledLayerRenderer;
+
+public class TiledLayerRendererTestCase extends TestCase {
+
+  public TiledLayerRendererTestCase(String Name_) {
+    super(Name_);
+  }
+
+  public static void main(String[] args) {
+    String[] testCaseName = {TiledLayerRendererTestCase.class.getName()};
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  private static final int WIDTH = 512;
+  private static final int HEIGHT = 384;
+
+  private LayerViewPanel panel;
+  private Layer layer;
+  private Renderer renderer;
+
+  /**
+   * A layer with the square (100,100)-(200,200), rendered as tiles.
+   */
+  protected void setUp() {
+    LayerManager layerManager = new LayerManager();
+    layerManager.setFiringEvents(false);
+    panel = new LayerViewPanel(layerManager, new LayerViewPanelContext() {
+      public void setStatusMessage(String message) {}
+      // the panel of the test has no rendering manager set up
+      public void handleThrowable(Throwable t) {}
+      public void warnUser(String warning) { fail(warning); }
+    });
+    panel.setSize(WIDTH, HEIGHT);
+    FeatureSchema schema = new FeatureSchema();
+    schema.addAttribute("GEOMETRY", AttributeType.GEOMETRY);
+    FeatureDataset dataset = new FeatureDataset(schema);
+    Feature feature = new BasicFeature(schema);
+    feature.setGeometry(new GeometryFactory().toGeometry(new Envelope(100, 200, 100, 200)));
+    dataset.add(feature);
+    layer = layerManager.addLayer("Working", "square", dataset);
+    layer.getBasicStyle().setFillColor(Color.RED);
+    layer.getBasicStyle().setAlpha(255);
+    layer.getVertexStyle().setEnabled(false);
+    layer.getBlackboard().put(TiledLayerRenderer.TILED_RENDERING_KEY, true);
+    renderer = new LayerRendererFactory().create(layer, panel, 1);
+  }
+
+  public void testFactoryCreatesTiledRenderer() {
+    assertTrue(renderer instanceof TiledLayerRenderer);
+  }
+
+  /**
+   * The tiles are drawn where the layer renderer would draw the layer, for
+   * views whose origin is not on a pixel or tile boundary.
+   */
+  public void testTilesArePlacedInTheView() throws Exception {
+    view(1, 0, 0);
+    BufferedImage image = render();
+    assertPainted(image, 150, 150, true);
+    assertPainted(image, 101, 199, true);
+    assertPainted(image, 50, 150, false);
+    assertPainted(image, 150, 250, false);
+
+    view(2, 30.3, 10.7);
+    image = render();
+    assertPainted(image, 150, 150, true);
+    assertPainted(image, 195, 105, true);
+    assertPainted(image, 90, 150, false);
+    assertPainted(image, 150, 95, false);
+
+    view(0.75, -300.5, -120.25);
+    image = render();
+    assertPainted(image, 150, 150, true);
+    assertPainted(image, 105, 195, true);
+    assertPainted(image, 210, 150, false);
+    assertPainted(image, 150, 80, false);
+  }
+
+  /**
+   * Tiles already rendered are not rendered again, and the least recently
+   * drawn tiles are dropped first when the cache is full.
+   */
+  public void testTileCache() throws Exception {
+    view(1, 0, 0);
+    render();
+    assertNull(renderer.createRunnable());
+    view(0.5, 0, 0);
+    render();
+    assertNull(renderer.createRunnable());
+    // the cache holds 256 tiles, and each view is covered by 4 of them
+    for (int i = 0; i < 80; i++) {
+      view(2 + i * 0.01, 0, 0);
+      render();
+      view(1, 0, 0);
+      draw();
+    }
+    view(1, 0, 0);
+    assertNull(renderer.createRunnable());
+    view(0.5, 0, 0);
+    assertNotNull(renderer.createRunnable());
+  }
+
+  private void view(double scale, double x, double y) {
+    panel.getViewport().initialize(scale, new Point2D.Double(x, y));
+  }
+
+  private BufferedImage render() {
+    Runnable runnable = renderer.createRunnable();
+    if (runnable != null) {
+      runnable.run();
+    }
+    return draw();
+  }
+
+  private BufferedImage draw() {
+    BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    renderer.copyTo(g);
+    g.dispose();
+    return image;
+  }
+
+  /**
+   * Checks the pixel at the view position of a model point.
+   */
+  private void assertPainted(BufferedImage image, double x, double y, boolean painted) {
+    double scale = panel.getViewport().getScale();
+    Point2D origin = panel.getViewport().getOriginInModelCoordinates();
+    int argb = image.getRGB((int) ((x - origin.getX()) * scale),
+        (int) (HEIGHT - (y - origin.getY()) * scale));
+    assertEquals("(" + x + "," + y + ")", painted ? 0xFFFF0000 : 0, argb);
+  }
+
+}
@@ -0,0 +1,152 @@
+package jumptest.junit;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openjump.core.ui.plugin.validate.SharedSpace;
+import org.openjump.core.ui.plugin.validate.ValidatePlugIn;
+import org.openjump.core.ui.plugin.validate.pojo.MatchList;
+import org.openjump.core.ui.plugin.validate.pojo.SupportingRelations;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureSchema;
+
+public class ValidatePlugInTestCase extends TestCase {
+
+  public ValidatePlugInTestCase(String Name_) {
+    super(Name_);
+  }
+
+  public static void main(String[] args) {
+    String[] testCaseName = {ValidatePlugInTestCase.class.getName()};
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  private GeometryFactory factory = new GeometryFactory();
+
+  private List<Feature> sources = new ArrayList<Feature>();
+  private List<Feature> targets = new ArrayList<Feature>();
+  private List<Feature> matchedTargets = new ArrayList<Feature>();
+
+  /**
+   * A grid of source squares, matched with slightly shifted target squares,
+   * except a few sources matched with a wrong target and a few alone sources.
+   */
+  protected void setUp() {
+    createFixture(1);
+  }
+
+  /**
+   * @param aloneInTen the number of alone sources out of ten sources
+   */
+  private void createFixture(int aloneInTen) {
+    sources.clear();
+    targets.clear();
+    matchedTargets.clear();
+    FeatureSchema fs = new FeatureSchema();
+    fs.addAttribute("geometry", AttributeType.GEOMETRY);
+    Random random = new Random(1);
+    for (int i = 0; i < 15; i++) {
+      for (int j = 0; j < 15; j++) {
+        double x = i * 10 + random.nextDouble() * 2;
+        double y = j * 10 + random.nextDouble() * 2;
+        Feature s = new BasicFeature(fs);
+        s.setGeometry(factory.toGeometry(new Envelope(x, x + 7, y, y + 6)));
+        Feature t = new BasicFeature(fs);
+        t.setGeometry(factory.toGeometry(new Envelope(x + 0.5, x + 7.5, y + 0.3, y + 6.3)));
+        sources.add(s);
+        targets.add(t);
+      }
+    }
+    for (int i = 0; i < sources.size(); i++) {
+      int r = random.nextInt(10);
+      if (r < aloneInTen) {
+        matchedTargets.add(null);
+      } else if (r < aloneInTen + 2) {
+        matchedTargets.add(targets.get(random.nextInt(targets.size())));
+      } else {
+        matchedTargets.add(targets.get(i));
+      }
+    }
+  }
+
+  private MatchList validate(boolean parallel) throws Exception {
+    MatchList matchList = new MatchList();
+    for (int i = 0; i < sources.size(); i++) {
+      if (matchedTargets.get(i) != null) {
+        matchList.storeMatch(sources.get(i), matchedTargets.get(i));
+      }
+    }
+    for (Feature s : sources) {
+      matchList.tryAddUnmatchedSourceFeature(s);
+    }
+    for (Feature t : targets) {
+      matchList.tryAddUnmatchedTargetFeature(t);
+    }
+    SharedSpace.getInstance().storeMatchList(matchList);
+    ValidatePlugIn plugIn = new ValidatePlugIn();
+    plugIn.setParallel(parallel);
+    assertTrue(plugIn.validate(sources, targets));
+    return matchList;
+  }
+
+  public void testParallelValidationIsSequentialValidation() throws Exception {
+    assertParallelIsSequential();
+  }
+
+  /**
+   * With many alone sources, the missing matches found first support the ones found after them
+   * (the default "star" context calculator uses the new matches); the concurrent detection must 
+   * find the same missing matches.
+   */
+  public void testParallelMissingMatchesAreSequentialMissingMatches() throws Exception {
+    createFixture(4);
+    int inputMatches = 0;
+    for (Feature t : matchedTargets) {
+      if (t != null) {
+        inputMatches++;
+      }
+    }
+    MatchList sequential = validate(false);
+    SupportingRelations relations = SharedSpace.getInstance().getSupportingRelations();
+    int supportedByMissingMatch = 0;
+    for (int i = inputMatches; i < sequential.numberOfFeatures(); i++) {
+      for (Feature f : relations.getSupportingFeaturesOf(sequential.getSourceFeatureByIndex(i))) {
+        int j = sequential.indexOfSource(f);
+        if (j >= inputMatches && j < i) {
+          supportedByMissingMatch++;
+          break;
+        }
+      }
+    }
+    // the fixture must exercise the dependency between missing matches
+    assertTrue(supportedByMissingMatch > 0);
+    assertParallelIsSequential();
+  }
+
+  private void assertParallelIsSequential() throws Exception {
+    MatchList sequential = validate(false);
+    MatchList parallel = validate(true);
+    assertEquals(sequential.numberOfFeatures(), parallel.numberOfFeatures());
+    int invalid = 0;
+    for (int i = 0; i < sequential.numberOfFeatures(); i++) {
+      Feature s = sequential.getSourceFeatureByIndex(i);
+      assertSame(s, parallel.getSourceFeatureByIndex(i));
+      assertSame(sequential.getTargetFeatureByIndex(i), parallel.getTargetFeatureByIndex(i));
+      assertEquals(sequential.isInvalid(s), parallel.isInvalid(s));
+      assertEquals(sequential.getConfidenceLevel(s), parallel.getConfidenceLevel(s), 0.0);
+      if (sequential.isInvalid(s)) {
+        invalid++;
+      }
+    }
+    // the fixture must exercise the backtracking
+    assertTrue(invalid > 0);
+  }
+
+}
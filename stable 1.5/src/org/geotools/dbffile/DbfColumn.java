@@ -0,0 +1,411 @@
+package org.geotools.dbffile;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A column of a dbf file decoded in a single pass over the records.<p>
+ * Numeric fields are parsed directly from the record bytes into primitive
+ * arrays, without creating any String or boxed number, and character
+ * fields are dictionary-encoded as long as they have few distinct values.
+ * {@link #getValue(int)} returns the same value as
+ * {@link DbfFile#ParseRecordColumn(byte[], int)} for the same field.<p>
+ * Columns are created by {@link DbfFile#readColumns()} and
+ * {@link DbfFile#readColumn(int)}.
+ */
+public abstract class DbfColumn {
+
+    // 10^0 to 10^22 are exactly represented as doubles
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1] * 10.0;
+        }
+    }
+
+    final DbfFieldDef fieldDef;
+
+    DbfColumn(DbfFieldDef fieldDef) {
+        this.fieldDef = fieldDef;
+    }
+
+    /**
+     * Returns the definition of the field stored in this column.
+     */
+    public DbfFieldDef getFieldDef() {
+        return fieldDef;
+    }
+
+    /**
+     * Returns the number of values of this column.
+     */
+    public abstract int size();
+
+    /**
+     * Returns the value of this column for a record, as an Integer, a
+     * Double, a String or a Date.
+     */
+    public abstract Object getValue(int row);
+
+    /**
+     * Decodes the field of a record.
+     * @param rec a buffer holding the record
+     * @param start the index of the field in rec
+     * @param row the number of the record
+     */
+    abstract void decode(byte[] rec, int start, int row) throws Exception;
+
+    /**
+     * Called once all the records have been decoded.
+     */
+    void finish() {
+    }
+
+    /**
+     * A numeric field without decimals, small enough to hold in an int.
+     */
+    public static class IntColumn extends DbfColumn {
+
+        private final int[] values;
+
+        IntColumn(DbfFieldDef fieldDef, int size) {
+            super(fieldDef);
+            values = new int[size];
+        }
+
+        /**
+         * Returns the values of the column. Values which cannot be parsed
+         * are 0.
+         */
+        public int[] getValues() {
+            return values;
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        public Object getValue(int row) {
+            return Integer.valueOf(values[row]);
+        }
+
+        void decode(byte[] rec, int start, int row) {
+            long value = parseLong(rec, start, fieldDef.fieldlen);
+            if (value == Long.MIN_VALUE) {
+                try {
+                    value = Integer.parseInt(new String(rec, start, fieldDef.fieldlen).trim());
+                } catch (NumberFormatException e) {
+                    value = 0;
+                }
+            }
+            values[row] = (int)value;
+        }
+    }
+
+    /**
+     * A numeric field without decimals, too large to hold in an int.
+     * As for other numeric fields without decimals, {@link #getValue(int)}
+     * returns an Integer, which is 0 if the value does not fit in an int,
+     * but the whole value can be read from {@link #getValues()}.
+     */
+    public static class LongColumn extends DbfColumn {
+
+        private final long[] values;
+
+        LongColumn(DbfFieldDef fieldDef, int size) {
+            super(fieldDef);
+            values = new long[size];
+        }
+
+        /**
+         * Returns the values of the column. Values which cannot be parsed
+         * are 0.
+         */
+        public long[] getValues() {
+            return values;
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        public Object getValue(int row) {
+            long value = values[row];
+            return Integer.valueOf(value == (int)value ? (int)value : 0);
+        }
+
+        void decode(byte[] rec, int start, int row) {
+            long value = parseLong(rec, start, fieldDef.fieldlen);
+            if (value == Long.MIN_VALUE) {
+                try {
+                    value = Long.parseLong(new String(rec, start, fieldDef.fieldlen).trim());
+                } catch (NumberFormatException e) {
+                    value = 0;
+                }
+            }
+            values[row] = value;
+        }
+    }
+
+    /**
+     * A floating point field, or a numeric field with decimals.
+     */
+    public static class DoubleColumn extends DbfColumn {
+
+        private final double[] values;
+
+        DoubleColumn(DbfFieldDef fieldDef, int size) {
+            super(fieldDef);
+            values = new double[size];
+        }
+
+        /**
+         * Returns the values of the column. Values which cannot be parsed
+         * are NaN.
+         */
+        public double[] getValues() {
+            return values;
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        public Object getValue(int row) {
+            return Double.valueOf(values[row]);
+        }
+
+        void decode(byte[] rec, int start, int row) {
+            values[row] = parseDouble(rec, start, fieldDef.fieldlen);
+        }
+    }
+
+    /**
+     * A character field. Values are dictionary-encoded while the number of
+     * distinct values stays below a quarter of the number of records (or
+     * below 256), otherwise they are stored as plain Strings.
+     */
+    public static class StringColumn extends DbfColumn {
+
+        private final Charset charset;
+        private final int maxDictionarySize;
+        private int[] codes;
+        private Map<ByteKey,Integer> codeMap = new HashMap<ByteKey,Integer>();
+        private List<String> dictionaryList = new ArrayList<String>();
+        private String[] dictionary;
+        private String[] values;
+        private final ByteKey probe = new ByteKey();
+
+        StringColumn(DbfFieldDef fieldDef, int size, Charset charset) {
+            super(fieldDef);
+            this.charset = charset;
+            codes = new int[size];
+            maxDictionarySize = Math.max(256, size / 4);
+        }
+
+        /**
+         * Returns true if the values are dictionary-encoded.
+         */
+        public boolean isDictionaryEncoded() {
+            return codes != null;
+        }
+
+        /**
+         * Returns the code of each value in the dictionary, or null if the
+         * column is not dictionary-encoded.
+         */
+        public int[] getCodes() {
+            return codes;
+        }
+
+        /**
+         * Returns the distinct values of the column, in order of first
+         * occurrence, or null if the column is not dictionary-encoded.
+         */
+        public String[] getDictionary() {
+            return dictionary;
+        }
+
+        public int size() {
+            return codes != null ? codes.length : values.length;
+        }
+
+        public Object getValue(int row) {
+            return codes != null ? dictionary[codes[row]] : values[row];
+        }
+
+        void decode(byte[] rec, int start, int row) {
+            int end = start + fieldDef.fieldlen;
+            while ((start < end) && (rec[end-1] == ' ' || rec[end-1] == 0)) end--;
+            if (codes == null) {
+                values[row] = new String(rec, start, end - start, charset);
+                return;
+            }
+            Integer code = codeMap.get(probe.set(rec, start, end));
+            if (code == null) {
+                if (dictionaryList.size() == maxDictionarySize) {
+                    // too many distinct values, store plain values
+                    values = new String[codes.length];
+                    for (int i = 0; i < row; i++) values[i] = dictionaryList.get(codes[i]);
+                    codes = null;
+                    codeMap = null;
+                    dictionaryList = null;
+                    values[row] = new String(rec, start, end - start, charset);
+                    return;
+                }
+                code = Integer.valueOf(dictionaryList.size());
+                dictionaryList.add(new String(rec, start, end - start, charset));
+                codeMap.put(probe.copy(), code);
+            }
+            codes[row] = code.intValue();
+        }
+
+        void finish() {
+            if (codes != null) {
+                dictionary = dictionaryList.toArray(new String[dictionaryList.size()]);
+            }
+            codeMap = null;
+            dictionaryList = null;
+        }
+    }
+
+    /**
+     * A field of any other type (date, logical...), decoded by the dbf file.
+     */
+    public static class ObjectColumn extends DbfColumn {
+
+        private final DbfFile dbf;
+        private final int col;
+        private final Object[] values;
+
+        ObjectColumn(DbfFile dbf, int col, int size) {
+            super(dbf.fielddef[col]);
+            this.dbf = dbf;
+            this.col = col;
+            values = new Object[size];
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        public Object getValue(int row) {
+            return values[row];
+        }
+
+        void decode(byte[] rec, int start, int row) throws Exception {
+            values[row] = dbf.parseField(rec, start, col);
+        }
+    }
+
+    /**
+     * Parses an integer made of digits, surrounded by spaces and optionally
+     * preceded by a minus sign.
+     * @return the value, or Long.MIN_VALUE if the field has another form
+     */
+    static long parseLong(byte[] b, int start, int len) {
+        int end = start + len;
+        while (start < end && b[start] == ' ') start++;
+        while (end > start && b[end-1] == ' ') end--;
+        boolean negative = start < end && b[start] == '-';
+        if (negative) start++;
+        if (start == end || end - start > 18) return Long.MIN_VALUE;
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = b[i] - '0';
+            if (digit < 0 || digit > 9) return Long.MIN_VALUE;
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a decimal number, returning NaN if the field is not a number.
+     * Numbers with at most 15 significant digits and 22 decimals are
+     * computed exactly as Double.parseDouble would, from the bytes;
+     * other forms are parsed by Double.parseDouble.
+     */
+    static double parseDouble(byte[] b, int start, int len) {
+        int end = start + len;
+        int i = start;
+        while (i < end && b[i] == ' ') i++;
+        while (end > i && b[end-1] == ' ') end--;
+        boolean negative = i < end && b[i] == '-';
+        if (negative) i++;
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for ( ; i < end; i++) {
+            int digit = b[i] - '0';
+            if (digit >= 0 && digit <= 9) {
+                mantissa = mantissa * 10 + digit;
+                digits++;
+                if (decimals >= 0) decimals++;
+            } else if (b[i] == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                break;
+            }
+        }
+        if (i == end && digits > 0 && digits <= 15 && decimals < POWERS_OF_TEN.length) {
+            double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : (double)mantissa;
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(new String(b, start, len).trim());
+        } catch (NumberFormatException e) {
+            // dBase can have numbers that look like '********'
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * A byte range usable as a hash key, either pointing to a record buffer
+     * (for lookups) or owning a copy of the bytes.
+     */
+    private static class ByteKey {
+
+        private byte[] bytes;
+        private int start;
+        private int end;
+        private int hash;
+
+        ByteKey set(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+            int h = 1;
+            for (int i = start; i < end; i++) h = 31 * h + bytes[i];
+            hash = h;
+            return this;
+        }
+
+        ByteKey copy() {
+            byte[] copy = new byte[end - start];
+            System.arraycopy(bytes, start, copy, 0, copy.length);
+            ByteKey key = new ByteKey();
+            key.bytes = copy;
+            key.end = copy.length;
+            key.hash = hash;
+            return key;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            ByteKey other = (ByteKey)o;
+            if (hash != other.hash || end - start != other.end - other.start) return false;
+            for (int i = start, j = other.start; i < end; i++, j++) {
+                if (bytes[i] != other.bytes[j]) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package org.geotools.dbffile;
 
 import com.vividsolutions.jump.io.EndianDataInputStream;
+import com.vividsolutions.jump.io.MappedFile;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 
 import java.text.DateFormat;
@@ -11,10 +13,13 @@ import java.text.SimpleDateFormat;
 
 import java.util.Calendar;
 import java.util.Date;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Vector;
+import java.util.WeakHashMap;
 
 
 /**
@@ -39,6 +44,7 @@ public class DbfFile implements DbfConsts {
     boolean hasmemo;
     public EndianDataInputStream dFile;
     RandomAccessFile rFile;
+    volatile MappedFile mappedFile;
     int filesize;
     int numfields;
     Map<String,String> uniqueStrings;
@@ -52,6 +58,10 @@ public class DbfFile implements DbfConsts {
 
 	private Charset charset = Charset.defaultCharset();
 
+    // memory-mapped files which may still be read, with the canonical path
+    // of the file they map
+    private static final Map<DbfFile,String> MAPPED_FILES = new WeakHashMap<DbfFile,String>();
+
     protected DbfFile() {
         //for testing.
     }
@@ -75,15 +85,44 @@ public class DbfFile implements DbfConsts {
      * @exception DbfFileException If there is an error reading header.
      */
     public DbfFile(String file, Charset charset) throws java.io.IOException, DbfFileException {
+        this(file, charset, false);
+    }
+
+    /**
+     * Constructor, opens the file and reads the header infomation.
+     * If memoryMapped is true, the file is mapped in memory and records are
+     * read from the mapped buffer : no file handle is kept open, and
+     * {@link #getFieldValue(int, int)} can access any field at a low cost.
+     * Files larger than Integer.MAX_VALUE bytes are mapped in segments.
+     * Before overwriting a mapped file, {@link #releaseMappedFile(File)} must
+     * be called.
+     * @param file The file to be opened, includes path and .dbf
+     * @param charset The charset used to decode character fields
+     * @param memoryMapped whether the file is read through a memory-mapped buffer
+     * @exception java.io.IOException If the file can't be opened.
+     * @exception DbfFileException If there is an error reading header.
+     */
+    public DbfFile(String file, Charset charset, boolean memoryMapped)
+        throws java.io.IOException, DbfFileException {
 		this.charset = charset;
         if (DEBUG) {
             System.out.println(
                 "---->uk.ac.leeds.ccg.dbffile.DbfFile constructed. Will identify itself as DbFi>");
         }
 
-        InputStream in = new FileInputStream(file);
-        EndianDataInputStream sfile = new EndianDataInputStream(in);
-        rFile = new RandomAccessFile(new File(file), "r");
+        EndianDataInputStream sfile;
+        if (memoryMapped) {
+            mappedFile = new MappedFile(new File(file));
+            // the header (field definitions included) is at most 64 kb long
+            sfile = new EndianDataInputStream(mappedFile.slice(0, (int)Math.min(mappedFile.size(), 65536)));
+            synchronized (MAPPED_FILES) {
+                MAPPED_FILES.put(this, new File(file).getCanonicalPath());
+            }
+        } else {
+            InputStream in = new FileInputStream(file);
+            sfile = new EndianDataInputStream(in);
+            rFile = new RandomAccessFile(new File(file), "r");
+        }
 
         if (DEBUG) {
             System.out.println("Dbf file has initinalized");
@@ -222,7 +261,13 @@ public class DbfFile implements DbfConsts {
     //    StringBuffer record = new StringBuffer(rec_size + numfields);  //[sstein 9.Sept.08]
     public byte[] GetDbfRec(int row) throws java.io.IOException {  //[sstein 9.Sept.08]
     	
-        rFile.seek(data_offset + (rec_size * row));
+        if (mappedFile != null) {
+            byte[] strbuf = new byte[rec_size];
+            mappedFile.get(data_offset + ((long)rec_size * row), strbuf, 0, rec_size);
+            return strbuf;
+        }
+
+        rFile.seek(data_offset + ((long)rec_size * row));
 
         //Multi byte character modification thanks to Hisaji ONO
         byte[] strbuf = new byte[rec_size]; // <---- byte array buffer fo storing string's byte data
@@ -261,9 +306,31 @@ public class DbfFile implements DbfConsts {
     //public Object ParseRecordColumn(StringBuffer rec, int wantedCol)  //[sstein 9.Sept.08]
     public Object ParseRecordColumn(byte[] rec, int wantedCol)  		//[sstein 9.Sept.08]
         throws Exception {
-        int start;
+        return parseField(rec, fielddef[wantedCol].fieldstart, wantedCol);
+    }
+
+    /**
+     * Reads and parses a single field of the file, without reading the rest
+     * of the record. This method can be called from several threads.
+     * @param row - the record of the field
+     * @param wantedCol - the column of the field
+     * @return the field value, as returned by ParseRecordColumn
+     */
+    public synchronized Object getFieldValue(int row, int wantedCol) throws Exception {
+        byte[] field = new byte[fielddef[wantedCol].fieldlen];
+        long position = data_offset + ((long)rec_size * row) + fielddef[wantedCol].fieldstart;
+        if (mappedFile != null) {
+            mappedFile.get(position, field, 0, field.length);
+        } else {
+            rFile.seek(position);
+            rFile.readFully(field);
+        }
+        return parseField(field, 0, wantedCol);
+    }
+
+    // parses the field wantedCol, starting at index start of rec
+    Object parseField(byte[] rec, int start, int wantedCol) throws Exception {
         int end;
-        start = fielddef[wantedCol].fieldstart;
         int len = fielddef[wantedCol].fieldlen;		 //[sstein 9.Sept.08]
         end = start + fielddef[wantedCol].fieldlen;
         String s = null, masterString = null;
@@ -417,6 +484,81 @@ public class DbfFile implements DbfConsts {
         return record;
     }
 
+    /**
+     * Decodes all the columns of the file in a single pass over the records.
+     * Numeric columns are parsed into primitive arrays and character columns
+     * are dictionary-encoded when they have few distinct values.
+     * @return a DbfColumn for each field, in field order
+     * @exception java.io.IOException on read error.
+     */
+    public DbfColumn[] readColumns() throws Exception {
+        int[] cols = new int[numfields];
+        for (int i = 0; i < numfields; i++) cols[i] = i;
+        return readColumns(cols);
+    }
+
+    /**
+     * Decodes a single column of the file.
+     * @param col - the column to decode
+     * @exception java.io.IOException on read error.
+     * @exception DbfFileException - no such column in the file.
+     */
+    public DbfColumn readColumn(int col) throws Exception {
+        if (col < 0 || col >= numfields) {
+            throw new DbfFileException("DbFi>No Such Column in file: " + col);
+        }
+        return readColumns(new int[]{col})[0];
+    }
+
+    private synchronized DbfColumn[] readColumns(int[] cols) throws Exception {
+        DbfColumn[] columns = new DbfColumn[cols.length];
+        for (int i = 0; i < cols.length; i++) {
+            columns[i] = createColumn(cols[i]);
+        }
+        // records are read by blocks of about 64 kb
+        int blockSize = Math.max(1, 65536 / Math.max(1, rec_size));
+        byte[] block = new byte[blockSize * rec_size];
+        for (int row = 0; row < last_rec; row += blockSize) {
+            int count = Math.min(blockSize, last_rec - row);
+            long position = data_offset + ((long)rec_size * row);
+            if (mappedFile != null) {
+                mappedFile.get(position, block, 0, count * rec_size);
+            } else {
+                rFile.seek(position);
+                rFile.readFully(block, 0, count * rec_size);
+            }
+            for (int r = 0; r < count; r++) {
+                int offset = r * rec_size;
+                for (int i = 0; i < cols.length; i++) {
+                    columns[i].decode(block, offset + fielddef[cols[i]].fieldstart, row + r);
+                }
+            }
+        }
+        for (int i = 0; i < cols.length; i++) {
+            columns[i].finish();
+        }
+        return columns;
+    }
+
+    private DbfColumn createColumn(int col) {
+        DbfFieldDef def = fielddef[col];
+        switch (def.fieldtype) {
+        case 'C':
+            return new DbfColumn.StringColumn(def, last_rec, charset);
+        case 'N':
+            if (def.fieldnumdec == 0) {
+                // 9 digits always fit in an int
+                if (def.fieldlen <= 9) return new DbfColumn.IntColumn(def, last_rec);
+                return new DbfColumn.LongColumn(def, last_rec);
+            }
+            return new DbfColumn.DoubleColumn(def, last_rec);
+        case 'F':
+            return new DbfColumn.DoubleColumn(def, last_rec);
+        default:
+            return new DbfColumn.ObjectColumn(this, col, last_rec);
+        }
+    }
+
     /**
      * Fetches a column of Integers from the database file.
      * @param col - the column to fetch
@@ -637,9 +779,54 @@ public class DbfFile implements DbfConsts {
         return column;
     }
 
+    /**
+     * Closes the file. A memory-mapped file does not keep any file handle,
+     * its records can still be read until it is garbage collected.
+     */
     public void close() throws IOException {
         dFile.close();
-        rFile.close();
+        if (rFile != null) rFile.close();
+    }
+
+    /**
+     * Makes the memory-mapped DbfFiles still reading file independent from
+     * it, before it is overwritten : truncating a mapped file makes the next
+     * read of the mapping crash the virtual machine. Each of them is mapped
+     * again on a private temporary copy of the file, deleted on exit.
+     * @param file the dbf file about to be overwritten
+     */
+    public static void releaseMappedFile(File file) throws IOException {
+        if (!file.exists()) return;
+        String path = file.getCanonicalPath();
+        List<DbfFile> readers = new ArrayList<DbfFile>();
+        synchronized (MAPPED_FILES) {
+            for (Map.Entry<DbfFile,String> entry : MAPPED_FILES.entrySet()) {
+                if (path.equals(entry.getValue())) readers.add(entry.getKey());
+            }
+        }
+        if (readers.isEmpty()) return;
+        File copy = File.createTempFile("dbf", ".dbf");
+        copy.deleteOnExit();
+        FileInputStream in = new FileInputStream(file);
+        FileOutputStream out = new FileOutputStream(copy);
+        try {
+            FileChannel source = in.getChannel();
+            FileChannel target = out.getChannel();
+            long size = source.size();
+            for (long position = 0; position < size; ) {
+                position += source.transferTo(position, size - position, target);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+        String copyPath = copy.getCanonicalPath();
+        for (DbfFile dbf : readers) {
+            dbf.mappedFile = new MappedFile(copy);
+            synchronized (MAPPED_FILES) {
+                MAPPED_FILES.put(dbf, copyPath);
+            }
+        }
     }
 
     /**
@@ -4,10 +4,17 @@ import java.io.*;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.vividsolutions.jts.geom.*;
 import com.vividsolutions.jump.io.EndianDataInputStream;
 import com.vividsolutions.jump.io.EndianDataOutputStream;
+import com.vividsolutions.jump.io.MappedFile;
 
 /**
  * This class represents an ESRI Shape file.<p>
@@ -50,8 +57,15 @@ public class Shapefile  {
     public static final int UNDEFINED   = -1;
     //Types 2,4,6,7 and 9 were undefined at time or writeing
     
+    // number of record ranges given to each thread by a parallel read
+    private static final int PARTITIONS_PER_THREAD = 4;
+    // files with fewer records are always decoded by a single thread
+    private static final int MIN_PARALLEL_RECORDS = 1000;
+    
     private URL baseURL;
     private InputStream myInputStream;
+    private File mappedFile;
+    private int threadCount = 1;
     private int errors;
     
     /**
@@ -73,7 +87,29 @@ public class Shapefile  {
         myInputStream = IS;
     }
     
+    /**
+     * Creates a shapefile reading the file through a memory-mapped buffer.
+     * Records are located with the .shx index lying beside the .shp file if
+     * there is a valid one, and are decoded directly from the mapped buffer.
+     * Files larger than Integer.MAX_VALUE bytes are mapped in segments.
+     * @param file the .shp file
+     */
+    public Shapefile(File file) {
+        mappedFile = file;
+    }
+    
+    /**
+     * Sets the number of threads used to decode the records of a
+     * memory-mapped shapefile (default is 1). Records are split in ranges
+     * decoded independently, then reassembled in file order.
+     * Shapefiles read from a stream are always decoded sequentially.
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+    
     public void close() {
+        if (myInputStream == null) return;
         try {
     		myInputStream.close();
     	}
@@ -100,51 +136,144 @@ public class Shapefile  {
      */
     public GeometryCollection read(GeometryFactory geometryFactory) throws IOException, ShapefileException, Exception {
         
+        if (mappedFile != null) return readMapped(geometryFactory);
+        
         EndianDataInputStream file = getInputStream();
         if(file==null) throw new IOException("Failed connection or no content for " + baseURL);
         
         ShapefileHeader mainHeader = new ShapefileHeader(file);
-        if(mainHeader.getVersion() < VERSION){System.err.println("Sf-->Warning, Shapefile format ("+mainHeader.getVersion()+") older that supported ("+VERSION+"), attempting to read anyway");}
-        if(mainHeader.getVersion() > VERSION){System.err.println("Sf-->Warning, Shapefile format ("+mainHeader.getVersion()+") newer that supported ("+VERSION+"), attempting to read anyway");}
+        ShapeHandler handler = getShapeHandler(mainHeader);
         
-        Geometry body;
         ArrayList list = new ArrayList();
-        int type = mainHeader.getShapeType();
-        ShapeHandler handler = getShapeHandler(type);
-        if(handler==null) throw new ShapeTypeNotSupportedException("Unsuported shape type:" + type);
-        
+        RecordReader reader = new RecordReader(handler, null, geometryFactory);
         int recordNumber=0;
         int contentLength=0;
-        errors = 0;
         try{
             while(true){
                 recordNumber=file.readIntBE();
                 contentLength=file.readIntBE();
-                try{
-                    body = handler.read(file,geometryFactory,contentLength); 
-                    list.add(body);
-                    if (body.getUserData() != null) errors++;
-                    // System.out.println("Done record: " + recordNumber);
-                } catch(IllegalArgumentException r2d2) {
-                    System.err.println("Error processing record " +recordNumber + " : " + r2d2.getMessage());
-                    System.err.println("   an empty Geometry has been returned");
-                    r2d2.printStackTrace();
-                    list.add(handler.getEmptyGeometry(geometryFactory));
-                    errors++;
-                } catch(Exception c3p0) {
-                    System.err.println("Error processing record " +recordNumber + " : " + c3p0.getMessage());
-                    System.err.println("   an empty Geometry has been returned");
-                    c3p0.printStackTrace();
-                    list.add(handler.getEmptyGeometry(geometryFactory));
-                    errors++;
-                }
+                list.add(reader.read(file, recordNumber, contentLength));
                 // System.out.println("processing:" +recordNumber);
             }
         } catch(EOFException e) {}
+        errors = reader.errors;
         
         return geometryFactory.createGeometryCollection((Geometry[])list.toArray(new Geometry[]{}));
     }
     
+    /**
+     * Reads the whole memory-mapped file. Each record is decoded in place
+     * from the mapped file, the read being limited to the record, so that
+     * a corrupted record cannot shift the following ones.
+     * With several threads, ranges of records are decoded in parallel, each
+     * thread having its own ShapeHandler.
+     */
+    private GeometryCollection readMapped(final GeometryFactory geometryFactory) throws Exception {
+        final MappedFile shp = new MappedFile(mappedFile);
+        ShapefileHeader mainHeader = new ShapefileHeader(
+                new EndianDataInputStream(shp.slice(0, (int)Math.min(shp.size(), 100))));
+        ShapeHandler handler = getShapeHandler(mainHeader);
+        final int type = mainHeader.getShapeType();
+        
+        final long[] offsets = getRecordOffsets(shp);
+        final Geometry[] geometries = new Geometry[offsets.length];
+        if (threadCount == 1 || offsets.length < MIN_PARALLEL_RECORDS) {
+            errors = new RecordReader(handler, shp, geometryFactory).read(offsets, geometries, 0, offsets.length);
+            return geometryFactory.createGeometryCollection(geometries);
+        }
+        
+        int partitions = Math.min(offsets.length, threadCount * PARTITIONS_PER_THREAD);
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(partitions);
+        for (int p = 0 ; p < partitions ; p++) {
+            final int start = (int)((long)offsets.length * p / partitions);
+            final int end = (int)((long)offsets.length * (p+1) / partitions);
+            tasks.add(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    RecordReader reader = new RecordReader(getShapeHandler(type), shp, geometryFactory);
+                    return reader.read(offsets, geometries, start, end);
+                }
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, partitions));
+        try {
+            errors = 0;
+            for (Future<Integer> future : executor.invokeAll(tasks)) {
+                errors += future.get().intValue();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) throw (Exception)e.getCause();
+            throw (Error)e.getCause();
+        } finally {
+            executor.shutdown();
+        }
+        return geometryFactory.createGeometryCollection(geometries);
+    }
+    
+    private static ShapeHandler getShapeHandler(ShapefileHeader mainHeader) throws Exception {
+        if(mainHeader.getVersion() < VERSION){System.err.println("Sf-->Warning, Shapefile format ("+mainHeader.getVersion()+") older that supported ("+VERSION+"), attempting to read anyway");}
+        if(mainHeader.getVersion() > VERSION){System.err.println("Sf-->Warning, Shapefile format ("+mainHeader.getVersion()+") newer that supported ("+VERSION+"), attempting to read anyway");}
+        
+        int type = mainHeader.getShapeType();
+        ShapeHandler handler = getShapeHandler(type);
+        if(handler==null) throw new ShapeTypeNotSupportedException("Unsuported shape type:" + type);
+        return handler;
+    }
+    
+    /**
+     * Returns the byte offset of every record of the mapped .shp file.
+     * Offsets are taken from the .shx file if it exists and agrees with the
+     * .shp file, otherwise record headers are scanned one after the other.
+     * Offsets stored in the .shx file are counted in 16-bit words, they are
+     * read as unsigned ints so that files up to 8 GB can be located.
+     */
+    private long[] getRecordOffsets(MappedFile shp) throws IOException {
+        File indexFile = getIndexFile();
+        if (indexFile != null) {
+            MappedFile shx = new MappedFile(indexFile);
+            long count = (shx.size() - 100) / 8;
+            boolean valid = count >= 0 && count <= Integer.MAX_VALUE;
+            long[] offsets = new long[valid ? (int)count : 0];
+            for (int i = 0 ; valid && i < count ; i++) {
+                long offset = 2L * (shx.getInt(100 + 8L*i) & 0xFFFFFFFFL);
+                valid = offset >= 100 && offset + 8 <= shp.size() &&
+                        shp.getInt(offset + 4) == shx.getInt(100 + 8L*i + 4);
+                offsets[i] = offset;
+            }
+            if (valid) return offsets;
+            System.err.println("Sf-->Warning, " + indexFile + " does not match the shapefile, it is ignored");
+        }
+        long[] offsets = new long[1024];
+        int count = 0;
+        long offset = 100;
+        while (offset + 8 <= shp.size()) {
+            if (count == offsets.length) {
+                long[] tmp = new long[count*2];
+                System.arraycopy(offsets, 0, tmp, 0, count);
+                offsets = tmp;
+            }
+            int contentLength = shp.getInt(offset + 4);
+            if (contentLength < 0) break;
+            offsets[count++] = offset;
+            offset += 8 + 2L * contentLength;
+        }
+        long[] result = new long[count];
+        System.arraycopy(offsets, 0, result, 0, count);
+        return result;
+    }
+    
+    /**
+     * Returns the .shx file lying beside the mapped .shp file, or null.
+     */
+    private File getIndexFile() {
+        String path = mappedFile.getPath();
+        int dot = path.lastIndexOf('.');
+        if (dot < 0) return null;
+        String base = path.substring(0, dot);
+        File shx = new File(base + ".shx");
+        if (!shx.exists()) shx = new File(base + ".SHX");
+        return shx.exists() ? shx : null;
+    }
+    
     /**
      * Get the number of errors found after a read.
      */
@@ -339,5 +468,66 @@ public class Shapefile  {
         int pos=0, len=0;
         file.close();
     }
+    
+    /**
+     * Decodes records with a ShapeHandler, replacing the records which
+     * cannot be decoded by empty geometries and counting them.
+     */
+    private static class RecordReader {
+        
+        private final ShapeHandler handler;
+        private final MappedFile shp;
+        private final GeometryFactory geometryFactory;
+        private int errors = 0;
+        
+        // shp is the mapped file, or null if records are read from a stream
+        RecordReader(ShapeHandler handler, MappedFile shp, GeometryFactory geometryFactory) {
+            this.handler = handler;
+            this.shp = shp;
+            this.geometryFactory = geometryFactory;
+        }
+        
+        /**
+         * Decodes the mapped records start (inclusive) to end (exclusive)
+         * into the same positions of geometries.
+         * @return the number of errors
+         */
+        int read(long[] offsets, Geometry[] geometries, int start, int end) {
+            for (int i = start ; i < end ; i++) {
+                geometries[i] = read(offsets[i]);
+            }
+            return errors;
+        }
+        
+        // decodes the mapped record starting at offset
+        Geometry read(long offset) {
+            int recordNumber = shp.getInt(offset);
+            int contentLength = shp.getInt(offset+4);
+            long length = Math.min(Math.max(2L * contentLength, 0), shp.size() - offset - 8);
+            EndianDataInputStream file = new EndianDataInputStream(shp.slice(offset+8, (int)length));
+            return read(file, recordNumber, contentLength);
+        }
+        
+        // decodes the record content at the current position of the stream
+        Geometry read(EndianDataInputStream file, int recordNumber, int contentLength) {
+            try{
+                Geometry body = handler.read(file,geometryFactory,contentLength); 
+                if (body.getUserData() != null) errors++;
+                // System.out.println("Done record: " + recordNumber);
+                return body;
+            } catch(IllegalArgumentException r2d2) {
+                System.err.println("Error processing record " +recordNumber + " : " + r2d2.getMessage());
+                System.err.println("   an empty Geometry has been returned");
+                r2d2.printStackTrace();
+                errors++;
+                return handler.getEmptyGeometry(geometryFactory);
+            } catch(Exception c3p0) {
+                System.err.println("Error processing record " +recordNumber + " : " + c3p0.getMessage());
+                System.err.println("   an empty Geometry has been returned");
+                c3p0.printStackTrace();
+                errors++;
+                return handler.getEmptyGeometry(geometryFactory);
+            }
+        }
+    }
 }
-
@@ -77,11 +77,13 @@ import org.openjump.core.ui.plugin.wms.ZoomToWMSPlugIn;
 import org.openjump.core.ui.style.decoration.ArrowLineStringMiddlepointStyle;
 import org.openjump.core.ui.style.decoration.SegmentDownhillArrowStyle;
 import org.openjump.core.ui.style.decoration.VertexZValueStyle;
+import org.openjump.core.ui.swing.factory.field.CheckBoxFieldComponentFactory;
 import org.openjump.core.ui.swing.factory.field.ComboBoxFieldComponentFactory;
 import org.openjump.core.ui.swing.factory.field.FieldComponentFactoryRegistry;
 import org.openjump.core.ui.swing.factory.field.FileFieldComponentFactory;
 import org.openjump.core.ui.swing.wizard.WizardGroup;
 
+import com.vividsolutions.jump.io.ShapefileReader;
 import com.vividsolutions.jump.io.datasource.StandardReaderWriterFileDataSource;
 import com.vividsolutions.jump.workbench.JUMPWorkbench;
 import com.vividsolutions.jump.workbench.WorkbenchContext;
@@ -133,6 +135,8 @@ public class OpenJumpConfiguration {
       new FileFieldComponentFactory(workbenchContext));
 	FieldComponentFactoryRegistry.setFactory(workbenchContext, "CharSetComboBoxField",
       new ComboBoxFieldComponentFactory(workbenchContext, null, Charset.availableCharsets().keySet().toArray()));
+	FieldComponentFactoryRegistry.setFactory(workbenchContext, "CheckBoxField",
+      new CheckBoxFieldComponentFactory(workbenchContext));
 
 
     /***************************************************************************
@@ -640,6 +644,11 @@ public class OpenJumpConfiguration {
 					fileLoader.addOption("charset", "CharSetComboBoxField", Charset.defaultCharset().displayName(), true);
 				}
 			}
+			// and if we should show the memory-mapped reading option
+			Object showMemoryMappedOption = PersistentBlackboardPlugIn.get(workbenchContext).get(DatasetOptionsPanel.BB_DATASET_OPTIONS_SHOW_MEMORY_MAPPED_OPTION);
+			if (Boolean.TRUE.equals(showMemoryMappedOption)) {
+				fileLoader.addOption(ShapefileReader.MEMORY_MAPPED_PROPERTY_KEY, "CheckBoxField", Boolean.TRUE, false);
+			}
 		}
         registry.createEntry(FileLayerLoader.KEY, fileLoader);
       }
@@ -1,6 +1,7 @@
 package org.openjump.core.ui;
 
 import com.vividsolutions.jump.I18N;
+import com.vividsolutions.jump.io.ShapefileReader;
 import com.vividsolutions.jump.util.Blackboard;
 import com.vividsolutions.jump.workbench.WorkbenchContext;
 import com.vividsolutions.jump.workbench.registry.Registry;
@@ -21,6 +22,7 @@ import org.openjump.core.ui.io.file.FileLayerLoader;
 /**
  * OptionsPanel for setting up some dataset options.
  * - should the Charset selection be shown
+ * - should the memory-mapped reading option be shown for shapefiles
  *
  * @author Matthias Scholz <ms@jammerhund.de>
  */
@@ -28,10 +30,12 @@ public class DatasetOptionsPanel extends JPanel implements OptionsPanel {
 
 	// Blackboard keys
 	public static final String BB_DATASET_OPTIONS_SHOW_CHARSET_SELECTION = DatasetOptionsPanel.class.getName() + "SHOW_CHARSET_SELECTION";
+	public static final String BB_DATASET_OPTIONS_SHOW_MEMORY_MAPPED_OPTION = DatasetOptionsPanel.class.getName() + "SHOW_MEMORY_MAPPED_OPTION";
 
 	private JPanel mainPanel;
 	private JPanel fillPanel;
 	private JCheckBox charsetSelectionCheckBox;
+	private JCheckBox memoryMappedOptionCheckBox;
 
 	private Blackboard blackboard = null;
 	private WorkbenchContext context = null;
@@ -47,6 +51,7 @@ public class DatasetOptionsPanel extends JPanel implements OptionsPanel {
 		mainPanel = new JPanel();
 		fillPanel = new JPanel();
 		charsetSelectionCheckBox = new JCheckBox(I18N.get("ui.DatasetOptionsPanel.ShowCharsetSelection"));
+		memoryMappedOptionCheckBox = new JCheckBox(I18N.get("ui.DatasetOptionsPanel.ShowMemoryMappedOption"));
 
 		this.setLayout(new BorderLayout());
 		this.setBorder(new EmptyBorder(new Insets(5, 10, 5, 10)));
@@ -61,6 +66,14 @@ public class DatasetOptionsPanel extends JPanel implements OptionsPanel {
         gridBagConstraints.insets = new java.awt.Insets(5, 10, 5, 10);
         mainPanel.add(charsetSelectionCheckBox, gridBagConstraints);
 
+		// Memory-mapped reading option
+		gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 1;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
+        gridBagConstraints.insets = new java.awt.Insets(5, 10, 5, 10);
+        mainPanel.add(memoryMappedOptionCheckBox, gridBagConstraints);
+
 		// empty fill Panel for nice layout
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
@@ -78,6 +91,7 @@ public class DatasetOptionsPanel extends JPanel implements OptionsPanel {
 
 	public void okPressed() {
 		blackboard.put(BB_DATASET_OPTIONS_SHOW_CHARSET_SELECTION, charsetSelectionCheckBox.isSelected());
+		blackboard.put(BB_DATASET_OPTIONS_SHOW_MEMORY_MAPPED_OPTION, memoryMappedOptionCheckBox.isSelected());
 		Registry registry = context.getRegistry();
 		List loaders = registry.getEntries(FileLayerLoader.KEY);
 		for (Object loader : loaders) {
@@ -88,6 +102,10 @@ public class DatasetOptionsPanel extends JPanel implements OptionsPanel {
 					if (charsetSelectionCheckBox.isSelected()) {
 						fileLoader.addOption("charset", "CharSetComboBoxField", Charset.defaultCharset().displayName(), true);
 					}
+					fileLoader.removeOption(ShapefileReader.MEMORY_MAPPED_PROPERTY_KEY, "CheckBoxField", Boolean.TRUE, false);
+					if (memoryMappedOptionCheckBox.isSelected()) {
+						fileLoader.addOption(ShapefileReader.MEMORY_MAPPED_PROPERTY_KEY, "CheckBoxField", Boolean.TRUE, false);
+					}
 				}
 			}
 		}
@@ -102,6 +120,8 @@ public class DatasetOptionsPanel extends JPanel implements OptionsPanel {
 			// or to false, if we do not have an Blackboard value
 			charsetSelectionCheckBox.setSelected(false);
 		}
+		Object showMemoryMappedOption = blackboard.get(BB_DATASET_OPTIONS_SHOW_MEMORY_MAPPED_OPTION);
+		memoryMappedOptionCheckBox.setSelected(Boolean.TRUE.equals(showMemoryMappedOption));
 	}
 
 }
@@ -0,0 +1,90 @@
+/*
+Copyright (c) 2011, Micha&euml;l Michaud
+All rights reserved.
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of its authors nor the names of its contributors may
+      be used to endorse or promote products derived from this software without
+      specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.openjump.core.ui.plugin.match;
+
+import com.vividsolutions.jump.feature.Feature;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.openjump.core.ui.plugin.match.util.StringUtil;
+
+/**
+ * A MatchSink writing each Match as a line of a delimiter separated values
+ * file (source identifier, target identifier, score).
+ * Features are identified by the value of an attribute, or by their FID if
+ * no attribute is given.
+ */
+public class DSVMatchSink implements MatchSink {
+    
+    private final Writer writer;
+    private final char delimiter;
+    private final String sourceAttribute;
+    private final String targetAttribute;
+    
+    /**
+     * Create a MatchSink writing matches to a file.
+     * @param file the path of the file to write
+     * @param delimiter the character used to separate fields
+     * @param sourceAttribute attribute identifying source features (FID if null)
+     * @param targetAttribute attribute identifying target features (FID if null)
+     */
+    public DSVMatchSink(String file, char delimiter,
+                        String sourceAttribute, String targetAttribute) throws IOException {
+        this.writer = new BufferedWriter(new FileWriter(file));
+        this.delimiter = delimiter;
+        this.sourceAttribute = sourceAttribute;
+        this.targetAttribute = targetAttribute;
+        writer.write((sourceAttribute == null ? "SOURCE_FID" : sourceAttribute) + delimiter +
+                     (targetAttribute == null ? "TARGET_FID" : targetAttribute) + delimiter +
+                     "SCORE");
+        writer.write(StringUtil.LINE_SEPARATOR);
+    }
+    
+    public void write(Match match) throws IOException {
+        writer.write(identifier(match.getSource(), sourceAttribute));
+        writer.write(delimiter);
+        writer.write(identifier(match.getTarget(), targetAttribute));
+        writer.write(delimiter);
+        writer.write(Double.toString(match.getScore()));
+        writer.write(StringUtil.LINE_SEPARATOR);
+    }
+    
+    public void close() throws IOException {
+        writer.close();
+    }
+    
+    private static String identifier(Feature f, String attribute) {
+        if (attribute == null) return Integer.toString(f.getID());
+        Object value = f.getAttribute(attribute);
+        return value == null ? "" : value.toString();
+    }
+    
+}
@@ -32,6 +32,12 @@ import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.index.strtree.STRtree;
 import com.vividsolutions.jts.operation.union.UnaryUnionOp;
 import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureCollectionWrapper;
+import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.FeatureSchema;
+import com.vividsolutions.jump.feature.IndexedFeatureCollection;
+import com.vividsolutions.jump.feature.IndexedFeatureDataset;
 
 import org.openjump.core.ui.plugin.match.matcher.*;
 import org.openjump.core.ui.plugin.match.util.text.Rule;
@@ -41,14 +47,22 @@ import org.openjump.core.ui.plugin.validate.pojo.MatchList;
 import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Matcher iterating through two FeatureCollection to find matching features.
@@ -60,6 +74,10 @@ public class FeatureCollectionMatcher {
     
     private Collection<Feature> source;
     private Collection<Feature> target;
+    // the feature collections the source and target features come from,
+    // queried cell by cell by the streaming geometry matching
+    private FeatureCollection sourceCollection;
+    private FeatureCollection targetCollection;
     private GeometryMatcher geometryMatcher;
     private StringMatcher attributeMatcher;
     private MatchMap matchMap;
@@ -69,6 +87,12 @@ public class FeatureCollectionMatcher {
     private boolean n_m = false;
     private static final Matcher OVERLAP = OverlapsMatcher.instance();
     
+    // number of threads used to compare source features with their candidates
+    private int threadCount = 1;
+    // more partitions than threads, so that a dense area does not keep
+    // one thread busy while the others are idle
+    private static final int PARTITIONS_PER_THREAD = 4;
+    
     /**
      * A high level matcher able to compare features from two feature 
      * collections. It is able to compare pairs of features or to pre-process
@@ -97,6 +121,37 @@ public class FeatureCollectionMatcher {
         matchMap = new MatchMap();
     }
     
+    /**
+     * A matcher comparing the features of two feature collections. The
+     * streaming geometry matching pulls the features of each grid cell from
+     * the collections through envelope queries.
+     * @param source the source feature collection
+     * @param target the target feature collection
+     * @param geometryMatcher the Matcher to evaluate geometric similarity
+     * @param attributeMatcher the matcher to evaluate semantic similarity
+     */
+    public FeatureCollectionMatcher(FeatureCollection source,
+                                    FeatureCollection target,
+                                    GeometryMatcher geometryMatcher,
+                                    StringMatcher attributeMatcher) {
+        // features are only listed if an in-memory matching is done, a
+        // collection reading its features from a database cannot list them
+        this((Collection<Feature>)null, (Collection<Feature>)null,
+             geometryMatcher, attributeMatcher);
+        this.sourceCollection = source;
+        this.targetCollection = target;
+    }
+    
+    private Collection<Feature> getSource() {
+        if (source == null) source = sourceCollection.getFeatures();
+        return source;
+    }
+    
+    private Collection<Feature> getTarget() {
+        if (target == null) target = targetCollection.getFeatures();
+        return target;
+    }
+    
     /**
      * Main method trying to match all features from both input feature
      * collections and returning the set of source features matching one or
@@ -126,6 +181,15 @@ public class FeatureCollectionMatcher {
         return matchMap.getSourceFeatures();
     }
     
+    /**
+     * Set the number of threads used by the geometry matching and by the
+     * attribute join. With more than one thread, source features are matched
+     * in parallel, which gives the same MatchMap as a single thread.
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+    
     public MatchMap getMatchMap() {
         return matchMap;
     }
@@ -144,80 +208,49 @@ public class FeatureCollectionMatcher {
      * @param singleTarget whether a source feature can match several target 
      * features or not.
      */
-    public MatchMap geometryMatching(boolean singleSource, boolean singleTarget) throws Exception {
-        double maxDistance = geometryMatcher.getMaximumDistance();
-        if (Double.isNaN(maxDistance)) maxDistance = 0.0;
+    public MatchMap geometryMatching(boolean singleSource, final boolean singleTarget) throws Exception {
+        final double maxDistance = getMaximumDistance();
         //System.out.println("Geometry Matching " + geometryMatcher + " " + maxDistance);
         long t0 = System.currentTimeMillis();
         double minOverlapping = geometryMatcher.getMinimumOverlapping();
         //System.out.println("geometryMatcher.minOverlapping = " + minOverlapping);
-        STRtree index = indexFeatureCollection(target);
+        final STRtree index = indexFeatureCollection(getTarget());
+        // build the index before sharing it between threads
+        index.build();
         // For each feature of the source collection
         
         MatchList matchList = new MatchList();
-        
-        for (Feature f1 : source) {
-            //System.out.println("Feature " + f1.getID());
-            Geometry g1 = f1.getGeometry();
-            Envelope env = new Envelope(g1.getEnvelopeInternal());
-            env.expandBy(maxDistance);
-            List<Feature> candidates = index.query(env);
-            // if matching_layer = reference_layer don't try to match f1 with itself
-            candidates.remove(f1);
-            // This loop can select several target features for one source
-            // feature, a singleTarget filter must be applied afterwards
-            int count = 0;
-            for (Feature f2 : candidates) {
-                double score = geometryMatcher.match(f1, f2, null);
-                if (score > 0.0) {
-                    matchMap.add(new Match(f1, f2, score));
-                    count++;
-                    
-                    //////////////////////////////////////////////////////////////////////////
-                    // Store the matches, to be used in the validation process
-                    //////////////////////////////////////////////////////////////////////////
-                    matchList.storeMatch(f1, f2);
-                }
+        List<List<Match>> partitions = matchSources(getSource(), new SourceMatcher() {
+            public Object createContext() {
+                // a GeometryCache cannot be shared between threads
+                return new GeometryCache();
             }
-            
-            // If one source can match multiple target 
-            // and several target candidates are available
-            // and some candidates have not been individually matched
-            
-            // TODO : try to short-circuit this loop 
-            // if transfer attributes is not required
-            if (!singleTarget && candidates.size() > 1 && !(count == candidates.size())) {
-                Geometry globalTarget = union(candidates);
-                // if g1 matches union of candidates, we try to attribute 
-                // a score to each g1/candidate pair
-                if (geometryMatcher.match(g1, globalTarget, null) > 0) {
-                    Geometry g1Buffer = g1.buffer(maxDistance, 4);
-                    for (Feature f2 : candidates) {
-                        Geometry g2Buffer = f2.getGeometry().buffer(maxDistance, 4);
-                        Geometry intersection = g1Buffer.intersection(g2Buffer);
-                        if (intersection.isEmpty()) continue;
-                        double ratio1 = intersection.getArea()/g1Buffer.getArea();
-                        double ratio2 = intersection.getArea()/g2Buffer.getArea();
-                        if (ratio1 < 0.25 && ratio2 < 0.25) continue;
-                        if (ratio2 < 0.5) continue;
-                        matchMap.add(new Match(f1, f2, 2.0*ratio2-1.0));
-                        
-                        //////////////////////////////////////////////////////////////////////////
-                        // Store the matches, to be used in the validation process
-                        //////////////////////////////////////////////////////////////////////////
-                        matchList.storeMatch(f1, f2);
-                    }
-                }
+            public void match(Feature f1, Object context, List<Match> matches) throws Exception {
+                //System.out.println("Feature " + f1.getID());
+                matchSourceFeature(f1, index, maxDistance, singleTarget, (GeometryCache)context, matches);
+            }
+        });
+        
+        // Matches are merged in the order of the source collection, so that
+        // the MatchMap and the MatchList do not depend on the number of threads
+        for (List<Match> matches : partitions) {
+            for (Match m : matches) {
+                matchMap.add(m);
+                
+                //////////////////////////////////////////////////////////////////////////
+                // Store the matches, to be used in the validation process
+                //////////////////////////////////////////////////////////////////////////
+                matchList.storeMatch(m.getSource(), m.getTarget());
             }
         }
         
         //////////////////////////////////////////////////////////////////////////
         //	Check and store single objects
         //////////////////////////////////////////////////////////////////////////
-        for (Feature f : source) {
+        for (Feature f : getSource()) {
         	matchList.tryAddUnmatchedSourceFeature(f);
         }
-        for (Feature f : target) {
+        for (Feature f : getTarget()) {
         	matchList.tryAddUnmatchedTargetFeature(f);
         }
         
@@ -236,6 +269,272 @@ public class FeatureCollectionMatcher {
         return matchMap;
     }
     
+    /**
+     * Streaming version of the geometry matching, for datasets too large to
+     * keep a spatial index of the whole target collection and all the
+     * candidate matches in memory.
+     * <p>
+     * The extent of the source collection is divided into a grid of square
+     * cells. Each source feature belongs to the cell containing the center of
+     * its envelope, and the cells are processed one after the other : the
+     * source features of a cell are queried from the source collection with
+     * the cell envelope, and the target features close enough to them (their
+     * footprint plus a halo of maxDistance) are queried from the target
+     * collection. Only the features of one cell and its halo are indexed, and
+     * matches are written to the sink as soon as a source feature has been
+     * processed. Neither the MatchMap nor the validation MatchList are fed by
+     * this method.
+     * <p>
+     * Features are pulled from the collections through
+     * {@link FeatureCollection#query(Envelope)}, so that a collection reading
+     * its features from a database (or from an IndexedFeatureDataset) only
+     * returns the features of the current cell. A plain FeatureDataset, whose
+     * query is a linear scan, is indexed once before the first cell.
+     * <p>
+     * The matches written are the same as the ones obtained by
+     * {@link #matchAll(boolean, boolean)} with singleSource = false. Filtering
+     * matches with singleSource = true needs all the matches of a target
+     * feature, which is not compatible with a cell by cell processing.
+     * @param sink the MatchSink receiving the matches
+     * @param singleTarget whether a source feature can match several target
+     * features or not.
+     * @param cellSize the width and height of the grid cells, in map units
+     * @return the number of matches written to the sink
+     */
+    public long geometryMatching(MatchSink sink, boolean singleTarget, double cellSize) throws Exception {
+        if (!(cellSize > 0.0)) {
+            sink.close();
+            throw new IllegalArgumentException("cellSize must be a positive number : " + cellSize);
+        }
+        double maxDistance = getMaximumDistance();
+        long written = 0;
+        List<Feature> cellSources = new ArrayList<Feature>();
+        List<Match> matches = new ArrayList<Match>();
+        GeometryCache cache = new GeometryCache();
+        Map<Feature,Match> bestMatches = new LinkedHashMap<Feature,Match>();
+        try {
+            FeatureCollection sourceFC = queryable(sourceCollection, source);
+            FeatureCollection targetFC = queryable(targetCollection, target);
+            Envelope extent = sourceFC.getEnvelope();
+            if (extent == null || extent.isNull()) return written;
+            int columns = Math.max(1, (int)Math.ceil(extent.getWidth()/cellSize));
+            int rows = Math.max(1, (int)Math.ceil(extent.getHeight()/cellSize));
+            for (int row = 0 ; row < rows ; row++) {
+                for (int column = 0 ; column < columns ; column++) {
+                    Envelope cell = new Envelope(
+                        extent.getMinX() + column*cellSize,
+                        column == columns-1 ? extent.getMaxX() : extent.getMinX() + (column+1)*cellSize,
+                        extent.getMinY() + row*cellSize,
+                        row == rows-1 ? extent.getMaxY() : extent.getMinY() + (row+1)*cellSize);
+                    // Source features are assigned to exactly one cell, which
+                    // guarantees that each match is computed and written once
+                    cellSources.clear();
+                    Envelope footprint = new Envelope();
+                    for (Object o : sourceFC.query(cell)) {
+                        Feature f = (Feature)o;
+                        Envelope env = f.getGeometry().getEnvelopeInternal();
+                        int c = (int)Math.floor((env.centre().x - extent.getMinX())/cellSize);
+                        int r = (int)Math.floor((env.centre().y - extent.getMinY())/cellSize);
+                        if (Math.min(columns-1, Math.max(0, c)) != column) continue;
+                        if (Math.min(rows-1, Math.max(0, r)) != row) continue;
+                        cellSources.add(f);
+                        footprint.expandToInclude(env);
+                    }
+                    if (cellSources.isEmpty()) continue;
+                    // Source features may extend beyond their cell : index the
+                    // targets close to the footprint of the cell source features
+                    footprint.expandBy(maxDistance);
+                    STRtree index = new STRtree();
+                    for (Object o : targetFC.query(footprint)) {
+                        Feature f = (Feature)o;
+                        index.insert(f.getGeometry().getEnvelopeInternal(), f);
+                    }
+                    for (Feature f1 : cellSources) {
+                        matches.clear();
+                        bestMatches.clear();
+                        matchSourceFeature(f1, index, maxDistance, singleTarget, cache, matches);
+                        // Keep the best score for each target, as MatchMap.add does
+                        for (Match m : matches) {
+                            Match previous = bestMatches.get(m.getTarget());
+                            if (previous == null || previous.getScore() < m.getScore()) {
+                                bestMatches.put(m.getTarget(), m);
+                            }
+                        }
+                        if (singleTarget) {
+                            // Keep the match which would come first in a MatchMap
+                            Match best = null;
+                            for (Match m : bestMatches.values()) {
+                                if (best == null || m.compareTo(best) < 0) best = m;
+                            }
+                            if (best != null) {
+                                sink.write(best);
+                                written++;
+                            }
+                        }
+                        else {
+                            for (Match m : bestMatches.values()) {
+                                sink.write(m);
+                                written++;
+                            }
+                        }
+                    }
+                    // geometries cached for this cell will not be used again
+                    cache.clear();
+                }
+            }
+        } finally {
+            sink.close();
+        }
+        return written;
+    }
+    
+    /**
+     * Returns a FeatureCollection answering envelope queries without scanning
+     * all its features : the collection itself if it is indexed or reads its
+     * features lazily (e.g. from a database), an IndexedFeatureCollection
+     * otherwise.
+     */
+    private static FeatureCollection queryable(FeatureCollection fc, Collection<Feature> features) {
+        if (fc == null) {
+            FeatureSchema schema = features.isEmpty() ? 
+                new FeatureSchema() : features.iterator().next().getSchema();
+            return new IndexedFeatureCollection(new FeatureDataset(features, schema));
+        }
+        if (fc instanceof FeatureCollectionWrapper) {
+            FeatureCollectionWrapper wrapper = (FeatureCollectionWrapper)fc;
+            if (fc instanceof IndexedFeatureCollection || wrapper.hasWrapper(IndexedFeatureCollection.class)) {
+                return fc;
+            }
+            if (isScanned(wrapper.getUltimateWrappee())) {
+                return new IndexedFeatureCollection(fc);
+            }
+            return fc;
+        }
+        return isScanned(fc) ? new IndexedFeatureCollection(fc) : fc;
+    }
+    
+    private static boolean isScanned(FeatureCollection fc) {
+        return fc instanceof FeatureDataset && !(fc instanceof IndexedFeatureDataset);
+    }
+    
+    /**
+     * Compares one source feature with its candidates, for matchSources.
+     * Each partition of source features gets its own context object, so that
+     * the context does not need to be thread-safe.
+     */
+    private interface SourceMatcher {
+        
+        Object createContext();
+        
+        void match(Feature f1, Object context, List<Match> matches) throws Exception;
+    }
+    
+    /**
+     * Compare source features with their candidates using threadCount
+     * threads. Source features are split into contiguous partitions, each
+     * partition being matched into its own list of matches.
+     * @return the lists of matches of each partition, in the order of sources
+     */
+    private List<List<Match>> matchSources(Collection<Feature> collection, 
+                                           final SourceMatcher matcher) throws Exception {
+        if (threadCount < 2 || collection.size() < 2) {
+            List<Match> matches = new ArrayList<Match>();
+            Object context = matcher.createContext();
+            for (Feature f1 : collection) {
+                matcher.match(f1, context, matches);
+            }
+            return Collections.singletonList(matches);
+        }
+        final List<Feature> sources = new ArrayList<Feature>(collection);
+        int partitionCount = Math.min(sources.size(), threadCount * PARTITIONS_PER_THREAD);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<List<Match>>> futures = new ArrayList<Future<List<Match>>>(partitionCount);
+            for (int p = 0 ; p < partitionCount ; p++) {
+                final int from = (int)((long)sources.size() * p / partitionCount);
+                final int to = (int)((long)sources.size() * (p+1) / partitionCount);
+                futures.add(executor.submit(new Callable<List<Match>>() {
+                    public List<Match> call() throws Exception {
+                        List<Match> matches = new ArrayList<Match>();
+                        Object context = matcher.createContext();
+                        for (int i = from ; i < to ; i++) {
+                            matcher.match(sources.get(i), context, matches);
+                        }
+                        return matches;
+                    }
+                }));
+            }
+            List<List<Match>> partitions = new ArrayList<List<Match>>(partitionCount);
+            for (Future<List<Match>> future : futures) {
+                partitions.add(future.get());
+            }
+            return partitions;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) throw (Exception)e.getCause();
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    private double getMaximumDistance() {
+        double maxDistance = geometryMatcher.getMaximumDistance();
+        if (Double.isNaN(maxDistance)) maxDistance = 0.0;
+        return maxDistance;
+    }
+    
+    /**
+     * Compare a source feature with the target candidates returned by index
+     * and add the resulting matches to matches, in the order they are found.
+     * The same target may be added twice, with different scores.
+     * The GeometryCache is passed to the geometryMatcher as its context.
+     */
+    private void matchSourceFeature(Feature f1, STRtree index, double maxDistance,
+                                    boolean singleTarget, GeometryCache cache,
+                                    List<Match> matches) throws Exception {
+        Geometry g1 = f1.getGeometry();
+        Envelope env = new Envelope(g1.getEnvelopeInternal());
+        env.expandBy(maxDistance);
+        List<Feature> candidates = index.query(env);
+        // if matching_layer = reference_layer don't try to match f1 with itself
+        candidates.remove(f1);
+        // This loop can select several target features for one source
+        // feature, a singleTarget filter must be applied afterwards
+        int count = 0;
+        for (Feature f2 : candidates) {
+            double score = geometryMatcher.match(f1, f2, cache);
+            if (score > 0.0) {
+                matches.add(new Match(f1, f2, score));
+                count++;
+            }
+        }
+        
+        // If one source can match multiple target 
+        // and several target candidates are available
+        // and some candidates have not been individually matched
+        
+        // TODO : try to short-circuit this loop 
+        // if transfer attributes is not required
+        if (!singleTarget && candidates.size() > 1 && !(count == candidates.size())) {
+            Geometry globalTarget = union(candidates);
+            // if g1 matches union of candidates, we try to attribute 
+            // a score to each g1/candidate pair
+            if (geometryMatcher.match(g1, globalTarget, null) > 0) {
+                Geometry g1Buffer = g1.buffer(maxDistance, 4);
+                for (Feature f2 : candidates) {
+                    Geometry g2Buffer = f2.getGeometry().buffer(maxDistance, 4);
+                    Geometry intersection = g1Buffer.intersection(g2Buffer);
+                    if (intersection.isEmpty()) continue;
+                    double ratio1 = intersection.getArea()/g1Buffer.getArea();
+                    double ratio2 = intersection.getArea()/g2Buffer.getArea();
+                    if (ratio1 < 0.25 && ratio2 < 0.25) continue;
+                    if (ratio2 < 0.5) continue;
+                    matches.add(new Match(f1, f2, 2.0*ratio2-1.0));
+                }
+            }
+        }
+    }
+    
     private STRtree indexFeatureCollection(Collection<Feature> collection) {
         STRtree index = new STRtree();
         for (Feature f : collection) {
@@ -264,6 +563,37 @@ public class FeatureCollectionMatcher {
         return UnaryUnionOp.union(geom);
     }
     
+    /**
+     * Find the target features of index matching the attribute of f1.
+     */
+    private void matchAttribute(Feature f1, Index index, List<Match> matches) throws Exception {
+        String sourceValue = attributeMatcher.getSourceRule().transform(
+            f1.getString(attributeMatcher.getSourceAttribute()));
+        //System.out.println("sourceValue : " + sourceValue);
+        // A ScoredIndex (e.g. a BKTree based index) has already computed 
+        // the distance between sourceValue and the target values
+        if (index instanceof ScoredIndex) {
+            Map<Feature,Double> candidates = ((ScoredIndex)index).queryWithScores(sourceValue);
+            for (Map.Entry<Feature,Double> candidate : candidates.entrySet()) {
+                matches.add(new Match(f1, candidate.getKey(), candidate.getValue()));
+            }
+            return;
+        }
+        Set<Feature> candidates = index.query(sourceValue);
+        if (candidates == null) return;
+        else if (Double.isNaN(attributeMatcher.getMaximumDistance())) {
+            for (Feature f2 : candidates) {
+                matches.add(new Match(f1, f2, 1.0));
+            }
+        }
+        else {
+            for (Feature f2 : candidates) {
+                double d = attributeMatcher.match(f1, f2, null);
+                matches.add(new Match(f1, f2, d));
+            }
+        }
+    }
+    
     private MatchMap attributeMatching(boolean singleSource, boolean singleTarget) throws Exception {
         String sourceAttribute = attributeMatcher.getSourceAttribute();
         String targetAttribute = attributeMatcher.getTargetAttribute();
@@ -271,29 +601,21 @@ public class FeatureCollectionMatcher {
         Rule targetRule = attributeMatcher.getTargetRule();
         // If geometryMatcher is null, a simple join will be done.
         if (geometryMatcher == null && attributeMatcher != null) {
-            Index index = attributeMatcher.createIndex(target);
-            for (Feature f1 : source) {
-                String sourceValue = sourceRule.transform(f1.getString(sourceAttribute));
-                //System.out.println("sourceValue : " + sourceValue);
-                Set<Feature> candidates = 
-                    index.query(sourceValue);
-                if (candidates == null) continue;
-                else if (Double.isNaN(attributeMatcher.getMaximumDistance())) {
-                    for (Feature f2 : candidates) {
-                        matchMap.add(new Match(f1, f2, 1.0));
-                    }
+            // index attribute data
+            final Index index = attributeMatcher.createIndex(getTarget());
+            List<List<Match>> partitions = matchSources(getSource(), new SourceMatcher() {
+                public Object createContext() {
+                    return null;
                 }
-                // In the case where a BKTree is used, there is room for 
-                // optimizition because distances are already computed by the
-                // BKTree query method
-                else {
-                    for (Feature f2 : candidates) {
-                        double d = attributeMatcher.match(f1, f2, null);
-                        matchMap.add(new Match(f1, f2, d));
-                    }
+                public void match(Feature f1, Object context, List<Match> matches) throws Exception {
+                    matchAttribute(f1, index, matches);
                 }
-            }            
-            // index attribute data
+            });
+            for (List<Match> matches : partitions) {
+                for (Match m : matches) {
+                    matchMap.add(m);
+                }
+            }
         }
         // If a geometry matching has already been done, attribute matching
         // use the resulting MatchMap from the geometry matching process 
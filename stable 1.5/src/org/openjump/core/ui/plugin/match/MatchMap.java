@@ -28,10 +28,13 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package org.openjump.core.ui.plugin.match;
 
 import com.vividsolutions.jump.feature.Feature;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -41,10 +44,12 @@ import java.util.TreeSet;
 /**
  * A Map accumulating information about matches between two sets of features.
  *
- * The MatchMap will store every single Match in a Tree Map ordering all 
- * possible matches from the best score to the worst score. For matches
- * returning the same score, ordering is determined by the 
- * {@link Match.compareTo(Object other)} method.
+ * The MatchMap stores at most one Match per couple of features, in a hash
+ * map keyed by the source and target feature IDs, and appends every Match
+ * to an array. Matches are ordered from the best score to the worst score
+ * only when they are requested ({@link #getAllMatches()}, 
+ * {@link #filter(boolean, boolean)}). For matches returning the same score, 
+ * ordering is determined by the {@link Match.compareTo(Object other)} method.
  *
  * @author Micha&euml;l Michaud
  * @version 0.5 (2011-12-01)
@@ -52,16 +57,15 @@ import java.util.TreeSet;
 public class MatchMap {
     
     private final SortedSet<Match> EMPTY_SET = Collections.unmodifiableSortedSet(new TreeSet<Match>());
-        
-    private final TreeSet<Match> matches = new TreeSet<Match>();
-    private final Map<Feature,TreeSet<Match>> sourceMap = new HashMap<Feature,TreeSet<Match>>();
-    private final Map<Feature,TreeSet<Match>> targetMap = new HashMap<Feature,TreeSet<Match>>();
-    
-    //TODO : to improve performance, instead of maintaining 3 ordered map during 
-    // the feeding (at each add call), sort the map on demand, keeping track of 
-    // the ordering state (sorted after a get* or a filter call, unsorted after 
-    // a add call.
-    boolean sorted;
+    
+    // Matches in insertion order. Removed matches are not erased from the
+    // array immediately : an entry is alive if it is still the Match
+    // registered in pairs for its couple of features.
+    private Match[] matches = new Match[16];
+    private int count = 0;
+    private final Map<Long,Match> pairs = new HashMap<Long,Match>();
+    private final Map<Feature,List<Match>> sourceMap = new HashMap<Feature,List<Match>>();
+    private final Map<Feature,List<Match>> targetMap = new HashMap<Feature,List<Match>>();
 
     /**
      * Construct a new MatchMap.
@@ -72,38 +76,42 @@ public class MatchMap {
      * Add a match to this MatchMap.
      */
     public void add(Match m) {
-        SortedSet<Match> previousMatches = getMatches(m.getSource(), m.getTarget());
+        Long key = key(m.getSource(), m.getTarget());
+        Match previousMatch = pairs.get(key);
         // If matches already contains a Match from f1 to f2
-        if (!previousMatches.isEmpty()) {
+        if (previousMatch != null) {
             // previousMatch is not as good as new one : remove it !
-            Match previousMatch = previousMatches.first();
             if (previousMatch.getScore() < m.getScore()) {
                 removeMatch(previousMatch);
             }
             // previousMatch is better than new one : don't add the new one !
             else return;
-        }   
-        if (matches.add(m)) {
-            TreeSet<Match> set = sourceMap.get(m.getSource());
-            if (set == null) {
-                set = new TreeSet<Match>();
-                sourceMap.put(m.getSource(), set);
-            }
-            set.add(m);
-            set = targetMap.get(m.getTarget());
-            if (set == null) {
-                set = new TreeSet<Match>();
-                targetMap.put(m.getTarget(), set);
-            }
-            set.add(m);
         }
+        pairs.put(key, m);
+        if (count == matches.length) {
+            matches = Arrays.copyOf(matches, count + (count >> 1) + 1);
+        }
+        matches[count++] = m;
+        getOrCreate(sourceMap, m.getSource()).add(m);
+        getOrCreate(targetMap, m.getTarget()).add(m);
     }
     
     /**
-     * Get the whole match Set.
+     * Get the whole match Set, ordered from the best to the worst match.
+     * The returned Set is a snapshot which is not affected by further 
+     * modifications of the MatchMap.
      */
     public Set<Match> getAllMatches() {
-        return matches;
+        sort();
+        final Match[] snapshot = Arrays.copyOf(matches, count);
+        return new AbstractSet<Match>() {
+            public Iterator<Match> iterator() {
+                return Collections.unmodifiableList(Arrays.asList(snapshot)).iterator();
+            }
+            public int size() {
+                return snapshot.length;
+            }
+        };
     }
     
     /**
@@ -124,26 +132,24 @@ public class MatchMap {
      * Get Matches recorded for this source Feature.
      */
     public SortedSet<Match> getMatchesForSourceFeature(Feature f) {
-        SortedSet<Match> matches = sourceMap.get(f);
-        return matches == null ? EMPTY_SET : matches;
+        List<Match> matches = sourceMap.get(f);
+        return matches == null ? EMPTY_SET : new TreeSet<Match>(matches);
     }
     
     /**
      * Get Matches recorded for this target Feature.
      */
     public SortedSet<Match> getMatchesForTargetFeature(Feature f) {
-        SortedSet<Match> matches = targetMap.get(f);
-        return matches == null ? EMPTY_SET : matches;
+        List<Match> matches = targetMap.get(f);
+        return matches == null ? EMPTY_SET : new TreeSet<Match>(matches);
     }
     
     /**
      * Get Features matching source Feature f.
      */
     public List<Feature> getMatchedFeaturesFromSource(Feature f) {
-        TreeSet<Match> matchedFeatures = sourceMap.get(f);
         List<Feature> list = new ArrayList<Feature>();
-        if (matchedFeatures == null) return list;
-        for (Match m : matchedFeatures) {
+        for (Match m : sortedCopy(sourceMap.get(f))) {
             list.add(m.getTarget());
         }
         return list;
@@ -153,42 +159,37 @@ public class MatchMap {
      * Get Features matching target Feature f.
      */
     public List<Feature> getMatchedFeaturesFromTarget(Feature f) {
-        TreeSet<Match> matchedFeatures = targetMap.get(f);
         List<Feature> list = new ArrayList<Feature>();
-        if (matchedFeatures == null) return list;
-        for (Match m : matchedFeatures) {
+        for (Match m : sortedCopy(targetMap.get(f))) {
             list.add(m.getSource());
         }
         return list;
     }
     
     /**
-     * Return Match from source to target. Usually, the result contains 0
-     * or 1 Match, but nothing prevent insertion of several matches per couple
-     * of features.
+     * Return Match from source to target. The result contains 0 or 1 Match,
+     * as the MatchMap only keeps the best Match of each couple of features.
      */
     public SortedSet<Match> getMatches(Feature source, Feature target) {
-        // Set of matches from f1
-        TreeSet<Match> set1 = sourceMap.get(source);
-        // Set of matches to f2
-        TreeSet<Match> set2 = targetMap.get(target);
-        // Intersection of both sets = Match:f1->f2
-        if (set1 != null && set2 != null) {
-            SortedSet<Match> set = (TreeSet<Match>)set1.clone();
-            set.retainAll(set2);
-            return set;
-        }
-        else return EMPTY_SET;
+        Match m = pairs.get(key(source, target));
+        if (m == null) return EMPTY_SET;
+        SortedSet<Match> set = new TreeSet<Match>();
+        set.add(m);
+        return set;
     }
     
     private boolean removeMatchesForSourceFeature(Feature f) {
-        TreeSet<Match> set = sourceMap.remove(f);
-        return matches.removeAll(set);
+        List<Match> list = sourceMap.get(f);
+        if (list == null) return false;
+        for (Match m : list.toArray(new Match[list.size()])) removeMatch(m);
+        return true;
     }
     
     private boolean removeMatchesForTargetFeature(Feature f) {
-        TreeSet<Match> set = targetMap.remove(f);
-        return matches.removeAll(set);
+        List<Match> list = targetMap.get(f);
+        if (list == null) return false;
+        for (Match m : list.toArray(new Match[list.size()])) removeMatch(m);
+        return true;
     }
     
     /**
@@ -200,50 +201,110 @@ public class MatchMap {
     }
     
     /**
-     * Remove a match from the map.
+     * Remove a match from the map (the match recorded for the same couple of
+     * features is removed if it has the same score).
      */
     public void removeMatch(Match m) {
-        matches.remove(m);
-        sourceMap.get(m.getSource()).remove(m);
-        if (sourceMap.get(m.getSource()).size() == 0) sourceMap.remove(m.getSource());
-        targetMap.get(m.getTarget()).remove(m);
-        if (targetMap.get(m.getTarget()).size() == 0) targetMap.remove(m.getTarget());
+        Long key = key(m.getSource(), m.getTarget());
+        Match removed = pairs.get(key);
+        if (removed == null || removed.compareTo(m) != 0) return;
+        pairs.remove(key);
+        removeFrom(sourceMap, removed.getSource(), removed);
+        removeFrom(targetMap, removed.getTarget(), removed);
+        // the array entry is dropped by the next sort
     }
     
     /**
      * Filter the matchMap so that each source feature has only one target match
      * and/or each target feature has only one source match.
+     * Matches are examined once, from the best to the worst : a match is kept
+     * if its source (singleTarget) and/or its target (singleSource) have not
+     * already been used by a better match.
      */
     public MatchMap filter(boolean singleSource, boolean singleTarget) {
         if (!singleSource && !singleTarget) return this;
-        TreeSet<Match> filteredMatches = new TreeSet<Match>();
-        while (matches.size() > 0) {
-            Match m = matches.first();
-            // put the best match pair in the new filteredMatches TreeSet
-            filteredMatches.add(m);
-            //System.out.println("   New Set " + Arrays.toString(filteredMatches.toArray()));
-            // remove all sources features matching m.target and/or 
-            // all target features matching m.source from matches
-            removeMatch(m, singleSource, singleTarget);
-            //System.out.println("   Original Map " + this);
-        }
+        sort();
+        Set<Feature> usedSources = new HashSet<Feature>();
+        Set<Feature> usedTargets = new HashSet<Feature>();
         MatchMap matchMap = new MatchMap();
-        for (Match m : filteredMatches) matchMap.add(m);
+        for (int i = 0 ; i < count ; i++) {
+            Match m = matches[i];
+            if (singleTarget && usedSources.contains(m.getSource())) continue;
+            if (singleSource && usedTargets.contains(m.getTarget())) continue;
+            // put the best remaining match pair in the new MatchMap
+            matchMap.add(m);
+            usedSources.add(m.getSource());
+            usedTargets.add(m.getTarget());
+        }
         System.out.println("   New Match Map " + matchMap);
         return matchMap;
     }
     
     public int size() {
-        return matches.size();
+        return pairs.size();
     }
     
     public void clear() {
-        matches.clear();
+        Arrays.fill(matches, 0, count, null);
+        count = 0;
+        pairs.clear();
         sourceMap.clear();
         targetMap.clear();
     }
     
     public String toString() {
-        return "MatchMap : " + Arrays.toString(matches.toArray());
+        sort();
+        return "MatchMap : " + Arrays.toString(Arrays.copyOf(matches, count));
+    }
+    
+    /**
+     * Drop removed matches from the array and sort it.
+     * Match scores may have been changed (see {@link Match#combineScore}),
+     * so the array is always sorted again, which is linear if the order
+     * did not change.
+     */
+    private void sort() {
+        int alive = 0;
+        for (int i = 0 ; i < count ; i++) {
+            Match m = matches[i];
+            if (pairs.get(key(m.getSource(), m.getTarget())) == m) {
+                matches[alive++] = m;
+            }
+        }
+        Arrays.fill(matches, alive, count, null);
+        count = alive;
+        Arrays.sort(matches, 0, count);
+    }
+    
+    private static Long key(Feature source, Feature target) {
+        return ((long)source.getID() << 32) | (target.getID() & 0xFFFFFFFFL);
+    }
+    
+    private static List<Match> getOrCreate(Map<Feature,List<Match>> map, Feature f) {
+        List<Match> list = map.get(f);
+        if (list == null) {
+            list = new ArrayList<Match>(2);
+            map.put(f, list);
+        }
+        return list;
+    }
+    
+    private static void removeFrom(Map<Feature,List<Match>> map, Feature f, Match m) {
+        List<Match> list = map.get(f);
+        if (list == null) return;
+        for (int i = 0 ; i < list.size() ; i++) {
+            if (list.get(i) == m) {
+                list.remove(i);
+                break;
+            }
+        }
+        if (list.isEmpty()) map.remove(f);
+    }
+    
+    private static List<Match> sortedCopy(List<Match> list) {
+        if (list == null) return Collections.emptyList();
+        List<Match> copy = new ArrayList<Match>(list);
+        Collections.sort(copy);
+        return copy;
     }
 }
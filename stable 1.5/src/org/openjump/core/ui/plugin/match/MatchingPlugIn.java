@@ -63,6 +63,7 @@ import java.awt.Graphics2D;
 import java.awt.geom.Point2D;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
 
 import java.util.Arrays;
 import java.util.ArrayList;
@@ -75,6 +76,7 @@ import java.util.Map;
 import java.util.SortedSet;
 
 import javax.swing.JCheckBox;
+import javax.swing.JFileChooser;
 import javax.swing.JComboBox;
 import javax.swing.JTextField;
 
@@ -106,6 +108,8 @@ public class MatchingPlugIn extends ThreadedBasePlugIn {
     private final String GEOMETRY_MATCHER             = I18NPlug.getI18N("Geometry-matcher");
     private final String MAXIMUM_DISTANCE             = I18NPlug.getI18N("Maximum-distance");
     private final String MINIMUM_OVERLAPPING          = I18NPlug.getI18N("Minimum-overlapping");
+    private final String THREAD_COUNT                 = I18NPlug.getI18N("Thread-count");
+    private final String THREAD_COUNT_TOOLTIP         = I18NPlug.getI18N("Thread-count-tooltip");
     
     // Output options
     private final String OUTPUT_OPTIONS               = I18NPlug.getI18N("Output-options");
@@ -114,6 +118,10 @@ public class MatchingPlugIn extends ThreadedBasePlugIn {
     private final String COPY_MATCHING_FEATURES       = I18NPlug.getI18N("Copy-matching-features");
     private final String COPY_NOT_MATCHING_FEATURES   = I18NPlug.getI18N("Copy-not-matching-features");
     private final String DISPLAY_LINKS                = I18NPlug.getI18N("Display-links"); 
+    private final String WRITE_MATCHES_TO_FILE        = I18NPlug.getI18N("Write-matches-to-file");
+    private final String WRITE_MATCHES_TO_FILE_TOOLTIP= I18NPlug.getI18N("Write-matches-to-file-tooltip");
+    private final String MATCH_FILE                   = I18NPlug.getI18N("Match-file");
+    private final String CELL_SIZE                    = I18NPlug.getI18N("Cell-size");
     
     // Attributes options
     private final String ATTRIBUTE_OPTIONS            = I18NPlug.getI18N("Attribute-options");
@@ -141,6 +149,7 @@ public class MatchingPlugIn extends ThreadedBasePlugIn {
     private final String MISSING_INPUT_LAYER            = I18NPlug.getI18N("Missing-input-layer");
     private final String CHOOSE_MATCHER                 = I18NPlug.getI18N("Choose-geometry-or-attribute-matcher");
     private final String MISSING_DIRECTORY              = I18NPlug.getI18N("Missing-directory");
+    private final String WRITE_MATCHES_GEOMETRY_ONLY    = I18NPlug.getI18N("Write-matches-geometry-only");
     
     // Parameters : source layer and cardinality
     private String source_layer_name;
@@ -154,6 +163,7 @@ public class MatchingPlugIn extends ThreadedBasePlugIn {
     private boolean set_max_distance = !Double.isNaN(max_distance);
     private double min_overlapping = geometry_matcher.getMinimumOverlapping();
     private boolean set_min_overlapping = !Double.isNaN(min_overlapping);
+    private int thread_count = Runtime.getRuntime().availableProcessors();
     // Parameters : output options
     //private boolean select_matching_features;
     //private boolean select_not_matching_features;
@@ -161,6 +171,9 @@ public class MatchingPlugIn extends ThreadedBasePlugIn {
     private boolean copy_not_matching_features;
     private boolean transfer_option;
     private boolean display_links = false;
+    private boolean write_matches_to_file = false;
+    private String match_file = "";
+    private double cell_size = 1000.0;
 
     // Parameters : attribute parameters
     private boolean use_attributes = false;
@@ -249,6 +262,7 @@ public class MatchingPlugIn extends ThreadedBasePlugIn {
             min_overlapping    = dialog.getDouble(MINIMUM_OVERLAPPING);
             geometry_matcher.setMaximumDistance(max_distance);
             geometry_matcher.setMinimumOverlapping(min_overlapping);
+            thread_count       = dialog.getInteger(THREAD_COUNT);
             
             // Get output options
             //select_matching_features     = dialog.getBoolean(SELECT_MATCHING_FEATURES);
@@ -256,6 +270,8 @@ public class MatchingPlugIn extends ThreadedBasePlugIn {
             copy_matching_features       = dialog.getBoolean(COPY_MATCHING_FEATURES);
             copy_not_matching_features   = dialog.getBoolean(COPY_NOT_MATCHING_FEATURES);
             display_links                = dialog.getBoolean(DISPLAY_LINKS);
+            write_matches_to_file        = dialog.getBoolean(WRITE_MATCHES_TO_FILE);
+            cell_size                    = dialog.getDouble(CELL_SIZE);
             
             // get attribute options
             use_attributes               = dialog.getBoolean(USE_ATTRIBUTES);
@@ -288,6 +304,22 @@ public class MatchingPlugIn extends ThreadedBasePlugIn {
                 context.getWorkbenchFrame().warnUser(CHOOSE_MATCHER);
                 return false;
             }
+            // matches written to a file are not kept in a MatchMap, which
+            // is needed by attribute matching and by single_source filter
+            if (write_matches_to_file && 
+                ((geometry_matcher instanceof MatchAllMatcher) || use_attributes || single_source)) {
+                context.getWorkbenchFrame().warnUser(WRITE_MATCHES_GEOMETRY_ONLY);
+                return false;
+            }
+            if (write_matches_to_file) {
+                JFileChooser chooser = GUIUtil.createJFileChooserWithOverwritePrompting("txt");
+                chooser.setDialogTitle(MATCH_FILE);
+                if (match_file.length() > 0) chooser.setSelectedFile(new File(match_file));
+                if (JFileChooser.APPROVE_OPTION != chooser.showSaveDialog(context.getWorkbenchFrame())) {
+                    return false;
+                }
+                match_file = chooser.getSelectedFile().getPath();
+            }
             return true;
         }
         else return false;
@@ -338,6 +370,8 @@ public class MatchingPlugIn extends ThreadedBasePlugIn {
         
         final JTextField jtf_overlap = dialog.addDoubleField(MINIMUM_OVERLAPPING, min_overlapping, 12, null);
         jtf_overlap.setEnabled(set_min_overlapping);
+        
+        dialog.addPositiveIntegerField(THREAD_COUNT, thread_count, 4, THREAD_COUNT_TOOLTIP);
 
         ////////////////////////////////////////////////////////////////////////
         // UI : CHOOSE TARGET LAYER AND SOURCE CARDINALITY
@@ -373,6 +407,11 @@ public class MatchingPlugIn extends ThreadedBasePlugIn {
         final JCheckBox jcb_new_layer_match = dialog.addCheckBox(COPY_MATCHING_FEATURES, copy_matching_features, null);
         final JCheckBox jcb_new_layer_diff  = dialog.addCheckBox(COPY_NOT_MATCHING_FEATURES, copy_not_matching_features, null);
         final JCheckBox jcb_display_links   = dialog.addCheckBox(DISPLAY_LINKS, display_links, null);
+        final JCheckBox jcb_write_matches   = dialog.addCheckBox(WRITE_MATCHES_TO_FILE, write_matches_to_file, WRITE_MATCHES_TO_FILE_TOOLTIP);
+        final JTextField jtf_cell_size      = dialog.addPositiveDoubleField(CELL_SIZE, cell_size, 12, null);
+        jcb_write_matches.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {updateDialog(dialog);}
+        });
 
         ////////////////////////////////////////////////////////////////////////
         // UI : CHOOSE ATTRIBUTE OPTIONS
@@ -487,8 +526,15 @@ public class MatchingPlugIn extends ThreadedBasePlugIn {
             ((JCheckBox)dialog.getCheckBox(USE_ATTRIBUTES)).setSelected(false);
         }
         
+        // Updates related to matches written to a file
+        boolean write = dialog.getBoolean(WRITE_MATCHES_TO_FILE);
+        dialog.setFieldEnabled(CELL_SIZE, write);
+        dialog.setFieldEnabled(COPY_MATCHING_FEATURES, !write);
+        dialog.setFieldEnabled(COPY_NOT_MATCHING_FEATURES, !write);
+        dialog.setFieldEnabled(DISPLAY_LINKS, !write);
+        
         // Updates related to attribute transfer
-        dialog.setTabEnabled(TRANSFER_OPTIONS, srcLayer_has_attributes);
+        dialog.setTabEnabled(TRANSFER_OPTIONS, srcLayer_has_attributes && !write);
         dialog.setFieldEnabled(TRANSFER_BEST_MATCH_ONLY, transfer);
         dialog.setFieldEnabled(STRING_AGGREGATION, !transfer_best_match_only);
         dialog.setFieldEnabled(INTEGER_AGGREGATION, !transfer_best_match_only);
@@ -539,8 +585,16 @@ public class MatchingPlugIn extends ThreadedBasePlugIn {
         monitor.allowCancellationRequests();
         monitor.report(SEARCHING_MATCHES);
         FeatureCollectionMatcher matcher = new FeatureCollectionMatcher(
-                source_fc.getFeatures(), target_fc.getFeatures(), 
-                geometry_matcher, attribute_matcher);
+                source_fc, target_fc, geometry_matcher, attribute_matcher);
+        if (write_matches_to_file) {
+            // matches are written cell by cell, without building a MatchMap
+            long count = matcher.geometryMatching(
+                new DSVMatchSink(match_file, '\t', null, null), single_target, cell_size);
+            context.getWorkbenchFrame().setStatusMessage(I18NPlug.getMessage(
+                "Matches-written", new Object[]{count, match_file}));
+            return;
+        }
+        matcher.setThreadCount(thread_count);
         Collection<Feature> features = matcher.matchAll(single_source, single_target);
         //if (select_matching_features) {}
         //if (select_not_matching_features) {}
@@ -53,11 +53,23 @@ public class CentroidDistanceMatcher extends GeometryMatcher {
     
     /**
      * {@inheritDoc}.
+     * If context is a {@link GeometryCache}, centroids are read from the cache.
      */
     public double match(Geometry source, Geometry target, Object context)
                                                               throws Exception {
-        source = source.getCentroid();
-        target = target.getCentroid();
+        // centroids lie inside the envelopes : envelopes distance is a lower
+        // bound of the centroids distance
+        if (source.getEnvelopeInternal().distance(target.getEnvelopeInternal()) > max_dist) {
+            return 0.0;
+        }
+        if (context instanceof GeometryCache) {
+            source = ((GeometryCache)context).getCentroid(source);
+            target = ((GeometryCache)context).getCentroid(target);
+        }
+        else {
+            source = source.getCentroid();
+            target = target.getCentroid();
+        }
         double dist = source.distance(target);
         if (dist > max_dist) return 0.0;
         else return (1.0 - dist/max_dist);
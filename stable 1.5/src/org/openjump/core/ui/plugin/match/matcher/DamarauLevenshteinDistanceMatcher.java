@@ -29,17 +29,10 @@ package org.openjump.core.ui.plugin.match.matcher;
 
 import com.vividsolutions.jump.feature.Feature;
 import org.openjump.core.ui.plugin.match.Index;
-import fr.michaelm.util.text.Rule;
-import fr.michaelm.util.text.RuleRegistry;
-import fr.michaelm.util.text.TransformationException;
-import fr.michaelm.util.text.algo.BKTree;
-import fr.michaelm.util.text.algo.EditDistance;
-import fr.michaelm.util.text.algo.DamarauLevenshteinDistance;
+import org.openjump.core.ui.plugin.match.util.text.TransformationException;
+import org.openjump.core.ui.plugin.match.util.text.algo.EditDistance;
+import org.openjump.core.ui.plugin.match.util.text.algo.DamarauLevenshteinDistance;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.TreeMap;
 
 /**
  * A matcher based on the Damarau Levenshtein distance metric.
@@ -99,48 +92,26 @@ public class DamarauLevenshteinDistanceMatcher extends StringMatcher {
     
     /**
      * Create an index following the Index interface.
-     * This index does not accelearate queries as it returns the whole set for
-     * any query.
+     * The index returns the features within getMaximumDistance() of the query
+     * with their score (it is a {@link org.openjump.core.ui.plugin.match.ScoredIndex}).
      * @param features features to index
      * @throws TransformationException if the targetRule could not be applied
      *         to target features to build the index.
      */
     public Index createIndex(final Collection<Feature> features) 
                                                 throws TransformationException {
-        // As BKTree contains Strings, not Features, we build an normal index
-        // along with the BKTree to retrieve features from attribute values
-        final int limit = (int)max_dist;
-        final BKTree tree = new BKTree(new EditDistance() {
-            public int editDistance(String s, String t) {
-                return DamarauLevenshteinDistance
-                    .damarauLevenshtein(s, t, limit);
-            }
-        });
-        final TreeMap<String,Set<Feature>> index = 
-            new TreeMap<String,Set<Feature>>(collator);
-        for (Feature f : features) {
-            String value = targetRule.transform(f.getString(getTargetAttribute()));
-            tree.add(value);
-            Set set = index.get(value);
-            if (set == null) {
-                set = new HashSet();
-                index.put(value, set);
-            }
-            set.add(f);
-        }
-        return new Index() {
-            public Set<Feature> query(Object value) {
-                Set<Feature> candidates = new HashSet<Feature>();
-                // Get candidate strings from the BKTree
-                HashMap<String,Integer> map = 
-                    tree.query(value.toString(), (int)getMaximumDistance());
-                // Get candidate features from the index
-                for (String s : map.keySet()) {
-                    candidates.addAll(index.get(s));
+        // A transposition counts for one Damarau-Levenshtein operation and
+        // two Levenshtein operations : the BKTree (Levenshtein) is searched
+        // with twice the maximum distance, then candidates are checked with
+        // the Damarau-Levenshtein distance (limited to limit+1 so that a 
+        // distance over the limit cannot be mistaken for the limit)
+        final int limit = (int)getMaximumDistance();
+        return new FuzzyStringIndex(features, getTargetAttribute(), targetRule,
+            collator, getMaximumDistance(), 2*limit, new EditDistance() {
+                public int editDistance(String s, String t) {
+                    return DamarauLevenshteinDistance.damarauLevenshtein(s, t, limit+1);
                 }
-                return candidates;
-            }
-        };
+            });
     }
 
 }
@@ -0,0 +1,136 @@
+/*
+Copyright (c) 2011, Micha&euml;l Michaud
+All rights reserved.
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of its authors nor the names of its contributors may
+      be used to endorse or promote products derived from this software without
+      specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.openjump.core.ui.plugin.match.matcher;
+
+import com.vividsolutions.jump.feature.Feature;
+import org.openjump.core.ui.plugin.match.ScoredIndex;
+import org.openjump.core.ui.plugin.match.util.text.Rule;
+import org.openjump.core.ui.plugin.match.util.text.TransformationException;
+import org.openjump.core.ui.plugin.match.util.text.algo.BKTree;
+import org.openjump.core.ui.plugin.match.util.text.algo.EditDistance;
+import org.openjump.core.ui.plugin.match.util.text.algo.LevenshteinDistance;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of target features by the value of an attribute, returning the
+ * features whose value is within an edit distance of the query string.
+ * <p>
+ * Distinct values are stored in a BKTree using the Levenshtein distance,
+ * which is a metric, so that the tree returns all the values within the
+ * search radius. If the matcher uses another edit distance, the search 
+ * radius must be large enough to include all the values within maxDistance
+ * for this edit distance, and the distance is computed again on the 
+ * candidates returned by the tree.
+ * <p>
+ * Features are grouped by the collation key of their value, so that values
+ * considered as equal by the collator of the matcher return the same
+ * features, as with a TreeMap ordered by this collator.
+ * <p>
+ * Queries do not modify the index and can be run from several threads.
+ */
+class FuzzyStringIndex implements ScoredIndex {
+    
+    private final BKTree tree = new BKTree(LevenshteinDistance.LEVENSHTEIN_DISTANCE);
+    private final Map<CollationKey,List<Feature>> index = new HashMap<CollationKey,List<Feature>>();
+    // collation key of each distinct value added to the tree
+    private final Map<String,CollationKey> keys = new HashMap<String,CollationKey>();
+    private final double maxDistance;
+    private final int searchRadius;
+    private final EditDistance distance;
+    
+    /**
+     * @param features features to index
+     * @param attribute attribute to index
+     * @param rule rule transforming attribute values before they are indexed
+     * @param collator collator deciding which values are equal
+     * @param maxDistance maximum edit distance of the candidates
+     * @param searchRadius Levenshtein distance used to query the BKTree
+     * @param distance edit distance computed on the candidates returned by
+     *        the BKTree, or null to use the Levenshtein distance computed by
+     *        the tree
+     * @throws TransformationException if the rule could not be applied
+     */
+    FuzzyStringIndex(Collection<Feature> features, String attribute, Rule rule,
+                     Collator collator, double maxDistance, int searchRadius, EditDistance distance) 
+                                                throws TransformationException {
+        this.maxDistance = maxDistance;
+        this.searchRadius = searchRadius;
+        this.distance = distance;
+        for (Feature f : features) {
+            String value = rule.transform(f.getString(attribute));
+            if (value == null) continue;
+            CollationKey key = keys.get(value);
+            if (key == null) {
+                key = collator.getCollationKey(value);
+                keys.put(value, key);
+                // only distinct values are added to the tree
+                tree.add(value);
+            }
+            List<Feature> list = index.get(key);
+            if (list == null) {
+                list = new ArrayList<Feature>();
+                index.put(key, list);
+            }
+            list.add(f);
+        }
+    }
+    
+    public Set<Feature> query(Object value) {
+        return new HashSet<Feature>(queryWithScores(value).keySet());
+    }
+    
+    /**
+     * Returns the features whose value is within maxDistance of value, with
+     * the score 1 - distance/maxDistance.
+     */
+    public Map<Feature,Double> queryWithScores(Object value) {
+        Map<Feature,Double> candidates = new HashMap<Feature,Double>();
+        if (value == null) return candidates;
+        String s = value.toString();
+        for (Map.Entry<String,Integer> entry : tree.query(s, searchRadius).entrySet()) {
+            int d = distance == null ? entry.getValue() : distance.editDistance(s, entry.getKey());
+            if (d > maxDistance) continue;
+            Double score = 1.0 - d/maxDistance;
+            // features of a group may be found through several values
+            for (Feature f : index.get(keys.get(entry.getKey()))) {
+                Double previous = candidates.get(f);
+                if (previous == null || previous < score) candidates.put(f, score);
+            }
+        }
+        return candidates;
+    }
+    
+}
@@ -0,0 +1,144 @@
+/*
+Copyright (c) 2011, Micha&euml;l Michaud
+All rights reserved.
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of its authors nor the names of its contributors may
+      be used to endorse or promote products derived from this software without
+      specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.openjump.core.ui.plugin.match.matcher;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of objects derived from geometries (prepared geometries and
+ * centroids), shared by the successive calls of a GeometryMatcher during
+ * one matching process. It is passed to the matchers as the context
+ * parameter of {@link GeometryMatcher#match(Geometry, Geometry, Object)}.
+ * <p>
+ * The cache keeps the most recently used entries only, so that its size
+ * stays bounded whatever the size of the datasets. Geometries are compared
+ * by identity. A GeometryCache is not thread-safe : each thread must use
+ * its own cache.
+ */
+public class GeometryCache {
+    
+    public static final int DEFAULT_MAXIMUM_SIZE = 4096;
+    
+    private final PreparedGeometryFactory factory = new PreparedGeometryFactory();
+    private final Map<Key,PreparedGeometry> preparedGeometries;
+    private final Map<Key,Point> centroids;
+    
+    /**
+     * Create a GeometryCache keeping at most DEFAULT_MAXIMUM_SIZE entries of
+     * each kind.
+     */
+    public GeometryCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+    
+    /**
+     * Create a GeometryCache keeping at most maximumSize entries of each kind.
+     */
+    public GeometryCache(int maximumSize) {
+        preparedGeometries = new LRUMap<PreparedGeometry>(maximumSize);
+        centroids = new LRUMap<Point>(maximumSize);
+    }
+    
+    /**
+     * Returns the PreparedGeometry of g, preparing it on the first call.
+     */
+    public PreparedGeometry getPreparedGeometry(Geometry g) {
+        Key key = new Key(g);
+        PreparedGeometry prepared = preparedGeometries.get(key);
+        if (prepared == null) {
+            prepared = factory.create(g);
+            preparedGeometries.put(key, prepared);
+        }
+        return prepared;
+    }
+    
+    /**
+     * Returns the centroid of g, computing it on the first call.
+     */
+    public Point getCentroid(Geometry g) {
+        Key key = new Key(g);
+        Point centroid = centroids.get(key);
+        if (centroid == null) {
+            centroid = g.getCentroid();
+            centroids.put(key, centroid);
+        }
+        return centroid;
+    }
+    
+    public void clear() {
+        preparedGeometries.clear();
+        centroids.clear();
+    }
+    
+    /**
+     * Identity based key (Geometry.equals compares coordinates).
+     */
+    private static final class Key {
+        
+        private final Geometry geometry;
+        
+        Key(Geometry geometry) {
+            this.geometry = geometry;
+        }
+        
+        public int hashCode() {
+            return System.identityHashCode(geometry);
+        }
+        
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key)o).geometry == geometry;
+        }
+    }
+    
+    /**
+     * A LinkedHashMap in access order, removing the least recently used entry
+     * when its maximum size is reached.
+     */
+    private static final class LRUMap<V> extends LinkedHashMap<Key,V> {
+        
+        private static final long serialVersionUID = 8579199823929775432L;
+        
+        private final int maximumSize;
+        
+        LRUMap(int maximumSize) {
+            super(16, 0.75f, true);
+            this.maximumSize = maximumSize;
+        }
+        
+        protected boolean removeEldestEntry(Map.Entry<Key,V> eldest) {
+            return size() > maximumSize;
+        }
+    }
+    
+}
@@ -51,8 +51,14 @@ public class Intersects2DMatcher extends GeometryMatcher {
     
     /**
      * {@inheritDoc}.
+     * If context is a {@link GeometryCache}, the prepared source geometry is
+     * used to discard disjoint geometries before computing the intersection.
      */
     public double match(Geometry source, Geometry target, Object context) throws Exception {
+        if (context instanceof GeometryCache && 
+            !((GeometryCache)context).getPreparedGeometry(source).intersects(target)) {
+            return 0.0;
+        }
         Geometry i = source.intersection(target);
         return ((!i.isEmpty()) && i.getDimension() == 2) ? 1.0 : 0.0;
     }
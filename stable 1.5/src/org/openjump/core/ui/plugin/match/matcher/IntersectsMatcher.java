@@ -51,8 +51,13 @@ public class IntersectsMatcher extends GeometryMatcher {
     
     /**
      * {@inheritDoc}.
+     * If context is a {@link GeometryCache}, the prepared source geometry is
+     * used.
      */
     public double match(Geometry source, Geometry target, Object context) throws Exception {
+        if (context instanceof GeometryCache) {
+            return ((GeometryCache)context).getPreparedGeometry(source).intersects(target) ? 1.0 : 0.0;
+        }
         return source.intersects(target) ? 1.0 : 0.0;
     }
     
@@ -51,9 +51,15 @@ public class IsWithinMatcher extends GeometryMatcher {
     
     /**
      * {@inheritDoc}.
+     * If context is a {@link GeometryCache}, the test is done with the
+     * prepared target geometry (source within target = target contains source).
      */
     public double match(Geometry source, Geometry target, Object context) 
                                                               throws Exception {
+        if (context instanceof GeometryCache) {
+            if (!target.getEnvelopeInternal().covers(source.getEnvelopeInternal())) return 0.0;
+            return ((GeometryCache)context).getPreparedGeometry(target).contains(source) ? 1.0 : 0.0;
+        }
         return source.within(target) ? 1.0 : 0.0;
     }
     
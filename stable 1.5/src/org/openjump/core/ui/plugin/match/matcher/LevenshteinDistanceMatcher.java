@@ -29,16 +29,9 @@ package org.openjump.core.ui.plugin.match.matcher;
 
 import com.vividsolutions.jump.feature.Feature;
 import org.openjump.core.ui.plugin.match.Index;
-import fr.michaelm.util.text.Rule;
-import fr.michaelm.util.text.RuleRegistry;
-import fr.michaelm.util.text.TransformationException;
-import fr.michaelm.util.text.algo.BKTree;
-import fr.michaelm.util.text.algo.LevenshteinDistance;
+import org.openjump.core.ui.plugin.match.util.text.TransformationException;
+import org.openjump.core.ui.plugin.match.util.text.algo.LevenshteinDistance;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.TreeMap;
 
 /**
  * String equality matcher to check if two attributes are equals.
@@ -94,42 +87,17 @@ public class LevenshteinDistanceMatcher extends StringMatcher {
     
     /**
      * Create an index following the Index interface.
-     * This index does not accelearate queries as it returns the whole set for
-     * any query.
+     * The index returns the features within getMaximumDistance() of the query
+     * with their score (it is a {@link org.openjump.core.ui.plugin.match.ScoredIndex}).
      * @param features features to index
      * @throws TransformationException if the targetRule could not be applied
      *         to target features to build the index.
      */
     public Index createIndex(final Collection<Feature> features) 
                                                 throws TransformationException {
-        // As BKTree contains Strings, not Features, we build an normal index
-        // along with the BKTree to retrieve features from attribute values
-        final BKTree tree = new BKTree(LevenshteinDistance.LEVENSHTEIN_DISTANCE);
-        final TreeMap<String,Set<Feature>> index = 
-            new TreeMap<String,Set<Feature>>(collator);
-        for (Feature f : features) {
-            String value = targetRule.transform(f.getString(getTargetAttribute()));
-            tree.add(value);
-            Set set = index.get(value);
-            if (set == null) {
-                set = new HashSet();
-                index.put(value, set);
-            }
-            set.add(f);
-        }
-        return new Index() {
-            public Set<Feature> query(Object value) {
-                Set<Feature> candidates = new HashSet<Feature>();
-                // Get candidate strings from the BKTree
-                HashMap<String,Integer> map = 
-                    tree.query(value.toString(), (int)getMaximumDistance());
-                // Get candidate features from the index
-                for (String s : map.keySet()) {
-                    candidates.addAll(index.get(s));
-                }
-                return candidates;
-            }
-        };
+        // The BKTree computes Levenshtein distances, which are reused as is
+        return new FuzzyStringIndex(features, getTargetAttribute(), targetRule,
+            collator, getMaximumDistance(), (int)getMaximumDistance(), null);
     }
 
 }
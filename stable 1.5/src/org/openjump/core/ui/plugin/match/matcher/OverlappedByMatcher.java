@@ -50,7 +50,16 @@ public class OverlappedByMatcher extends GeometryMatcher {
         this.min_overlap = min_overlap;
     }
     
+    /**
+     * {@inheritDoc}.
+     * If context is a {@link GeometryCache}, the prepared source geometry is
+     * used to discard disjoint geometries before computing the intersection.
+     */
     public double match(Geometry source, Geometry target, Object context) throws Exception {
+        if (context instanceof GeometryCache && 
+            !((GeometryCache)context).getPreparedGeometry(source).intersects(target)) {
+            return 0.0;
+        }
         Geometry intersection = source.intersection(target);
         double score = (100.0*intersection.getArea()/source.getArea() - min_overlap)/(100-min_overlap);
         return Math.max(0, score);
@@ -50,7 +50,16 @@ public class OverlapsMatcher extends GeometryMatcher {
         this.min_overlap = min_overlap;
     }
     
+    /**
+     * {@inheritDoc}.
+     * If context is a {@link GeometryCache}, the prepared source geometry is
+     * used to discard disjoint geometries before computing the intersection.
+     */
     public double match(Geometry g, Geometry ref, Object context) throws Exception {
+        if (context instanceof GeometryCache && 
+            !((GeometryCache)context).getPreparedGeometry(g).intersects(ref)) {
+            return 0.0;
+        }
         Geometry intersection = g.intersection(ref);
         double score = (100.0*intersection.getArea()/ref.getArea() - min_overlap)/(100-min_overlap);
         return Math.max(0, score);
@@ -26,7 +26,6 @@ import java.util.HashMap;
 public class BKTree {
 
     private Node root;
-    private HashMap<String, Integer> matches;
     private EditDistance distance;
     private String bestTerm;
     
@@ -55,8 +54,11 @@ public class BKTree {
      * the searchObject
      */
     public HashMap<String, Integer> query(String searchObject, int threshold) {
-        matches = new HashMap<String,Integer>();
-        root.query(searchObject, threshold, matches);
+        // use a local map, so that the tree can be queried by several threads
+        HashMap<String, Integer> matches = new HashMap<String,Integer>();
+        if (root != null) {
+            root.query(searchObject, threshold, matches);
+        }
         return matches;
     }
     
@@ -147,12 +149,9 @@ public class BKTree {
         public void query(String term, int threshold, HashMap<String, Integer> collected) {
             int distanceAtNode = distance.editDistance(term, this.term);
             
-            if(distanceAtNode == threshold) {
-                collected.put(this.term, distanceAtNode);
-                return;
-            }
-            
-            if(distanceAtNode < threshold) {
+            // children at distance [distanceAtNode-threshold, distanceAtNode+threshold]
+            // may still be within threshold, even if this node is at threshold
+            if(distanceAtNode <= threshold) {
                 collected.put(this.term, distanceAtNode);
             }
             
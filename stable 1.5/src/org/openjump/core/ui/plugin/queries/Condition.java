@@ -4,13 +4,19 @@ import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.ArrayList;
 import java.util.GregorianCalendar;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.FeatureCollection;
 import com.vividsolutions.jump.util.FlexibleDateParser;
@@ -20,7 +26,10 @@ import com.vividsolutions.jump.workbench.plugin.PlugInContext;
 /**
  * Condition
  * @author Michael MICHAUD
- * @version 0.2.3
+ * @version 0.3
+ * version 0.3   (2026-10-18)
+ *     spatial conditions use a GeometryIndex of the target geometries and
+ *     prepared geometries, and may be tested by several threads
  * version 0.2.3 (2012-03-05)
  *     change TFFTFF*** to TFF*FF*** for the strictIntersection test
  * version 0.2.2 (2010-01-27)
@@ -31,7 +40,7 @@ import com.vividsolutions.jump.workbench.plugin.PlugInContext;
  
  
  */ 
-public class Condition  {
+public class Condition implements FeatureTester.Test {
     
     //private static final SimpleDateFormat DATE_PARSER = new SimpleDateFormat();
     private static final SimpleDateFormat[] DATE_PARSERS = new SimpleDateFormat[]{
@@ -52,35 +61,110 @@ public class Condition  {
     Operator op;
     Pattern pattern;   // only used for match & find functions
     PlugInContext context;
+    // the value and options are read once from the dialog, so that the
+    // condition can be tested by several threads
+    Object value;
+    int valueIndex;
+    boolean caseSensitive;
+    Date dateValue;
+    // indexes of the target geometries of a geometric operator
+    List<GeometryIndex> indexes;
     
      public Condition(QueryDialog query, PlugInContext context) {
         this.query = query;
         this.ft=query.function;
         this.op=query.operator;
+        this.value = query.valueCB.getSelectedValue();
+        this.valueIndex = query.valueCB.getSelectedIndex();
+        this.caseSensitive = query.caseSensitive.getState();
         if (op==Operator.MATC || op==Operator.FIND) {
-            if (query.caseSensitive.getState())
-                pattern = Pattern.compile((String)query.valueCB.getSelectedValue());
+            if (caseSensitive)
+                pattern = Pattern.compile((String)value);
             else 
-                pattern = Pattern.compile((String)query.valueCB.getSelectedValue(), Pattern.CASE_INSENSITIVE);
+                pattern = Pattern.compile((String)value, Pattern.CASE_INSENSITIVE);
         }
         this.context = context;
+        if (value instanceof String) dateValue = parseDate((String)value);
+        if (op.type=='G') indexes = createIndexes();
+    }
+    
+    private static Date parseDate(String s) {
+        Date date = null;
+        for (SimpleDateFormat sdf : DATE_PARSERS) {
+            try {date = sdf.parse(s);}
+            catch(Exception e){}
+            if (date != null) break;
+        }
+        if (date == null) {
+            try {date = FLEXIBLE_DATE_PARSER.parse(s, true);}
+            catch(Exception e){}
+        }
+        return date;
+    }
+    
+    /**
+     * Indexes the geometries features are compared with : the selection,
+     * the selected layers, all layers or the layer chosen as value.
+     */
+    private List<GeometryIndex> createIndexes() {
+        List<GeometryIndex> list = new ArrayList<GeometryIndex>();
+        // pos 1 = selected features case
+        if (valueIndex == QueryDialog.SELECTION) {
+            list.add(new GeometryIndex(query.selection));
+        }
+        // pos 2 = selected layers case
+        else if (valueIndex == QueryDialog.SELECTED_LAYERS) {
+            Layer[] ll = context.getLayerNamePanel().getSelectedLayers();
+            for (int i = 0 ; i < ll.length ; i++) {
+                list.add(GeometryIndex.get(ll[i]));
+            }
+        }
+        // pos 0 = all layers case
+        else if (valueIndex == QueryDialog.ALL_LAYERS) {
+            List ll = context.getLayerManager().getLayers();
+            for (int i = 0 ; i < ll.size() ; i++) {
+                list.add(GeometryIndex.get((Layer)ll.get(i)));
+            }
+        }
+        else {
+            Layer layer = context.getLayerManager().getLayer((String)value);
+            list.add(GeometryIndex.get(layer));
+        }
+        return list;
+    }
+    
+    /**
+     * Returns a new context for {@link #test(Feature, Object)}. A context
+     * keeps the geometries prepared by the tests, and must not be shared
+     * by several threads.
+     */
+    public Object createContext() {
+        return new IdentityHashMap<Geometry,PreparedGeometry>();
     }
     
     public String toString() {
         String att = query.attribute.trim().equals("")?"GEOMETRY":query.attribute;
         String func = ft.toString().trim().equals("")?"":"."+ft;
         return "" + att + func + " " + op + " \"" +
-               query.valueCB.getSelectedValue() + "\"";
+               value + "\"";
     }
     
     public boolean test(Feature feature) throws Exception {
+        return test(feature, createContext());
+    }
+    
+    /**
+     * Tests a feature, reusing the geometries prepared in context.
+     * @see #createContext()
+     */
+    public boolean test(Feature feature, Object context) throws Exception {
         Object o = null;
         //System.out.print("Nature de l'attribut : ");
         if(query.attributeType=='G') {
             //System.out.println(" geometrique");
             //System.out.println("Operator = " + op);
             o = feature.getGeometry();
-            if(ft.type=='G') return test(gfunction((Geometry)o));
+            if(ft.type=='G') return test(gfunction((Geometry)o), (Map<Geometry,PreparedGeometry>)context);
             else if(ft.type=='N') return test(nfunction((Geometry)o));
             else if(ft.type=='B') return test(bfunction((Geometry)o));
             else return false;
@@ -97,13 +181,13 @@ public class Condition  {
                 // Here, we assume that the user consider "null" different from
                 // any user input in the value combobox except 
                 if (op == Operator.NE || op == Operator.BNE || op == Operator.DIFF) {
-                    if (query.valueCB.getSelectedValue().toString().trim().length()==0) {
+                    if (value.toString().trim().length()==0) {
                         return false;
                     }
                     else return true;
                 }
                 if (op == Operator.EQ || op == Operator.BEQ || op == Operator.EQUA) {
-                    if (query.valueCB.getSelectedValue().toString().trim().length()==0) {
+                    if (value.toString().trim().length()==0) {
                         return true;
                     }
                     else return false;
@@ -127,14 +211,14 @@ public class Condition  {
     }
     
     private boolean test(boolean b) throws Exception {
-        boolean value = query.valueCB.getSelectedIndex()==0?true:false;
+        boolean value = valueIndex==0?true:false;
         if (b==value && op==Operator.BEQ) return true;
         else if (b!=value && op==Operator.BNE) return true;
         else return false;
     }
     
     private boolean test(double d) throws Exception {
-        double value = Double.parseDouble((String)query.valueCB.getSelectedValue());
+        double value = Double.parseDouble((String)this.value);
         if (op==Operator.EQ && d==value) return true;
         else if (op==Operator.NE && d!=value) return true;
         else if (op==Operator.LT && d<value) return true;
@@ -145,16 +229,7 @@ public class Condition  {
     }
     
     private boolean test(Date d) throws Exception {
-        Date value = null;
-        for (SimpleDateFormat sdf : DATE_PARSERS) {
-            try {value = sdf.parse((String)query.valueCB.getSelectedValue());}
-            catch(Exception e){}
-            if (value != null) break;
-        }
-        if (value == null) {
-            try {value = FLEXIBLE_DATE_PARSER.parse((String)query.valueCB.getSelectedValue(), true);}
-            catch(Exception e){}
-        }
+        Date value = dateValue;
         if (op==Operator.EQ && d==value) return true;
         else if (op==Operator.NE && d!=value) return true;
         else if (op==Operator.EQ && d.equals(value)) return true;
@@ -167,8 +242,8 @@ public class Condition  {
     }
     
     private boolean test(String s) throws Exception {
-        String value = (String)query.valueCB.getSelectedValue();
-        if (query.caseSensitive.getState()) {
+        String value = (String)this.value;
+        if (caseSensitive) {
             if (op==Operator.EQUA) return s.equals(value);
             else if (op==Operator.DIFF) return !s.equals(value);
             else if (op==Operator.STAR) return s.startsWith(value);
@@ -192,90 +267,45 @@ public class Condition  {
         }
     }
     
-    private boolean test(Geometry g) throws Exception {
-        int pos = query.valueCB.getSelectedIndex();
-        // Target Geometry is the selection
-        // System.out.println("position de la valeur selectionnee : " + pos);
-        // pos 1 = selected features case
-        if (pos == QueryDialog.SELECTION) {
-            for (Iterator it = query.selection.iterator() ; it.hasNext() ;) {
+    private boolean test(Geometry g, Map<Geometry,PreparedGeometry> prepared) throws Exception {
+        // Only the target geometries whose envelope intersects the envelope
+        // of g (expanded by the distance for WDIST) are compared with g
+        Envelope env = new Envelope(g.getEnvelopeInternal());
+        if (op==Operator.WDIST) env.expandBy(op.arg);
+        for (GeometryIndex index : indexes) {
+            List candidates = index.query(env);
+            // targets outside env are disjoint from g
+            if (op==Operator.DISJO && candidates.size() < index.size()) return true;
+            PreparedGeometry pg = null;
+            for (Iterator it = candidates.iterator() ; it.hasNext() ;) {
                 Geometry p = (Geometry)it.next();
-                if (op==Operator.INTER && g.intersects(p)) return true;
-                else if (op==Operator.CONTA && g.contains(p)) return true;
-                else if (op==Operator.WITHI && g.within(p)) return true;
-                else if (op==Operator.WSTRI && g.relate(p, "TFF*FF***")) return true;
-                else if (op==Operator.WDIST && g.distance(p)<op.arg) return true;
-                else if (op==Operator.TOUCH && g.touches(p)) return true;
-                else if (op==Operator.CROSS && g.crosses(p)) return true;
-                else if (op==Operator.OVERL && g.overlaps(p)) return true;
-                else if (op==Operator.DISJO && g.disjoint(p)) return true;
-                else;
-            }
-            return false;
-        }
-        // pos 2 = selected layers case
-        else if (pos == QueryDialog.SELECTED_LAYERS) {
-            Layer[] ll = context.getLayerNamePanel().getSelectedLayers();
-            for (int i = 0 ; i < ll.length ; i++) {
-                FeatureCollection fc = ll[i].getFeatureCollectionWrapper();
-                for (Iterator it = fc.iterator() ; it.hasNext() ;) {
-                    Geometry p = ((Feature)it.next()).getGeometry();
-                    if (op==Operator.INTER && g.intersects(p)) return true;
-                    else if (op==Operator.CONTA && g.contains(p)) return true;
-                    else if (op==Operator.WITHI && g.within(p)) return true;
-                    else if (op==Operator.WSTRI && g.relate(p, "TFF*FF***")) return true;
-                    else if (op==Operator.WDIST && g.distance(p)<op.arg) return true;
-                    else if (op==Operator.TOUCH && g.touches(p)) return true;
-                    else if (op==Operator.CROSS && g.crosses(p)) return true;
-                    else if (op==Operator.OVERL && g.overlaps(p)) return true;
-                    else if (op==Operator.DISJO && g.disjoint(p)) return true;
-                    else;
-                }
-                return false;
-            }
-        }
-        // pos 0 = all layers case
-        else if (pos == QueryDialog.ALL_LAYERS) {
-            List ll = context.getLayerManager().getLayers();
-            for (int i = 0 ; i < ll.size() ; i++) {
-                FeatureCollection fc = ((Layer)ll.get(i)).getFeatureCollectionWrapper();
-                for (Iterator it = fc.iterator() ; it.hasNext() ;) {
-                    Geometry p = ((Feature)it.next()).getGeometry();
-                    if (op==Operator.INTER && g.intersects(p)) return true;
-                    else if (op==Operator.CONTA && g.contains(p)) return true;
-                    else if (op==Operator.WITHI && g.within(p)) return true;
-                    else if (op==Operator.WSTRI && g.relate(p, "TFF*FF***")) return true;
-                    else if (op==Operator.WDIST && g.distance(p)<op.arg) return true;
-                    else if (op==Operator.TOUCH && g.touches(p)) return true;
-                    else if (op==Operator.CROSS && g.crosses(p)) return true;
-                    else if (op==Operator.OVERL && g.overlaps(p)) return true;
-                    else if (op==Operator.DISJO && g.disjoint(p)) return true;
-                    else;
+                if (op==Operator.INTER && prepare(p, prepared).intersects(g)) return true;
+                else if (op==Operator.CONTA) {
+                    if (pg == null) pg = PreparedGeometryFactory.prepare(g);
+                    if (pg.contains(p)) return true;
                 }
-                return false;
-            }
-        }
-        else {
-            Layer layer = context.getLayerManager().getLayer((String)query.valueCB.getSelectedValue());
-            FeatureCollection fc = layer.getFeatureCollectionWrapper();
-            for (Iterator it = fc.iterator() ; it.hasNext() ;) {
-                Geometry p = ((Feature)it.next()).getGeometry();
-                if (op==Operator.INTER && g.intersects(p)) return true;
-                else if (op==Operator.CONTA && g.contains(p)) return true;
-                else if (op==Operator.WITHI && g.within(p)) return true;
+                else if (op==Operator.WITHI && prepare(p, prepared).contains(g)) return true;
                 else if (op==Operator.WSTRI && g.relate(p, "TFF*FF***")) return true;
                 else if (op==Operator.WDIST && g.distance(p)<op.arg) return true;
                 else if (op==Operator.TOUCH && g.touches(p)) return true;
                 else if (op==Operator.CROSS && g.crosses(p)) return true;
                 else if (op==Operator.OVERL && g.overlaps(p)) return true;
-                else if (op==Operator.DISJO && g.disjoint(p)) return true;
+                else if (op==Operator.DISJO && prepare(p, prepared).disjoint(g)) return true;
                 else;
             }
-            return false;
         }
         return false;
     }
     
+    private static PreparedGeometry prepare(Geometry g, Map<Geometry,PreparedGeometry> prepared) {
+        PreparedGeometry pg = prepared.get(g);
+        if (pg == null) {
+            pg = PreparedGeometryFactory.prepare(g);
+            prepared.put(g, pg);
+        }
+        return pg;
+    }
+    
     //**************************************************************************
     // apply functions
     //**************************************************************************
@@ -0,0 +1,126 @@
+package org.openjump.core.ui.plugin.queries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vividsolutions.jump.feature.Feature;
+
+/**
+ * FeatureTester
+ * Tests features with a {@link Condition} using several threads.
+ * Features are split into contiguous partitions, tested by the worker
+ * threads, while the calling thread reports the progression. Each worker
+ * thread tests its partitions with a context of its own, so that the
+ * geometries prepared for a partition are reused by the next ones.
+ */
+public class FeatureTester {
+
+    /**
+     * A test of features keeping its intermediate results in a context,
+     * which is used by a single thread.
+     */
+    public interface Test {
+
+        Object createContext();
+
+        boolean test(Feature feature, Object context) throws Exception;
+    }
+
+    // partitions of the features tested by each thread
+    private static final int PARTITIONS_PER_THREAD = 4;
+    // delay between two progress reports, in milliseconds
+    private static final long PROGRESS_INTERVAL = 200;
+
+    private final Test test;
+
+    public FeatureTester(Test test) {
+        this.test = test;
+    }
+
+    /**
+     * Tests features with threadCount threads, or on the calling thread if
+     * threadCount is less than 2.
+     * @param count incremented for each feature tested
+     * @return the features satisfying the test, in their order
+     */
+    public List test(final List features, int threadCount, final AtomicInteger count)
+                                                              throws Exception {
+        List okFeatures = new ArrayList();
+        if (threadCount < 2) {
+            Object context = test.createContext();
+            for (int i = 0 ; i < features.size() && !isCancelled() ; i++) {
+                Feature f = (Feature)features.get(i);
+                if (test.test(f, context)) okFeatures.add(f);
+                count.incrementAndGet();
+            }
+            return okFeatures;
+        }
+        int partitionCount = Math.min(features.size(), threadCount * PARTITIONS_PER_THREAD);
+        if (partitionCount == 0) return okFeatures;
+        final ThreadLocal<Object> contexts = new ThreadLocal<Object>() {
+            protected Object initialValue() {
+                return test.createContext();
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<List>> futures = new ArrayList<Future<List>>(partitionCount);
+            for (int p = 0 ; p < partitionCount ; p++) {
+                final int from = (int)((long)features.size() * p / partitionCount);
+                final int to = (int)((long)features.size() * (p+1) / partitionCount);
+                futures.add(executor.submit(new Callable<List>() {
+                    public List call() throws Exception {
+                        List ok = new ArrayList();
+                        Object context = contexts.get();
+                        for (int i = from ; i < to && !isCancelled() ; i++) {
+                            Feature f = (Feature)features.get(i);
+                            if (test.test(f, context)) ok.add(f);
+                            count.incrementAndGet();
+                        }
+                        return ok;
+                    }
+                }));
+            }
+            for (Future<List> future : futures) {
+                while (true) {
+                    try {
+                        okFeatures.addAll(future.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS));
+                        break;
+                    } catch (TimeoutException e) {
+                        progress();
+                    }
+                }
+            }
+            return okFeatures;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) throw (Exception)e.getCause();
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Called by the worker threads before each feature: the remaining
+     * features are not tested once it returns true.
+     */
+    protected boolean isCancelled() {
+        return false;
+    }
+
+    /**
+     * Called on the calling thread while the features are tested, to report
+     * the progression.
+     */
+    protected void progress() {
+    }
+
+}
@@ -0,0 +1,117 @@
+package org.openjump.core.ui.plugin.queries;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.workbench.model.CategoryEvent;
+import com.vividsolutions.jump.workbench.model.FeatureEvent;
+import com.vividsolutions.jump.workbench.model.Layer;
+import com.vividsolutions.jump.workbench.model.LayerEvent;
+import com.vividsolutions.jump.workbench.model.LayerEventType;
+import com.vividsolutions.jump.workbench.model.LayerListener;
+import com.vividsolutions.jump.workbench.model.LayerManager;
+
+/**
+ * GeometryIndex
+ * STRtree of the geometries a spatial {@link Condition} compares features
+ * with (the selection or the geometries of a layer).
+ * The index of a layer is kept until the features of the layer change, so
+ * that successive queries against the same layer do not build it again.
+ * Once built, the index may be queried by several threads.
+ */
+public class GeometryIndex {
+
+    private static final Map<Layer,GeometryIndex> layerIndexes = new WeakHashMap<Layer,GeometryIndex>();
+
+    private static final Map<LayerManager,LayerListener> listeners = new WeakHashMap<LayerManager,LayerListener>();
+
+    private final STRtree tree = new STRtree();
+
+    // number of geometries, including the empty ones which are not in the tree
+    private final int size;
+
+    // feature collection the index was built from, null for the selection
+    private final FeatureCollection featureCollection;
+
+    /**
+     * Creates the index of a collection of geometries.
+     */
+    public GeometryIndex(Collection geometries) {
+        this(geometries, null);
+    }
+
+    private GeometryIndex(Collection geometries, FeatureCollection featureCollection) {
+        for (Iterator it = geometries.iterator() ; it.hasNext() ; ) {
+            Geometry g = (Geometry)it.next();
+            if (!g.isEmpty()) tree.insert(g.getEnvelopeInternal(), g);
+        }
+        // build the tree now, so that queries do not modify it
+        tree.build();
+        this.size = geometries.size();
+        this.featureCollection = featureCollection;
+    }
+
+    /**
+     * Returns the index of the geometries of a layer, built again if the
+     * features of the layer have changed since the last call.
+     */
+    public static GeometryIndex get(Layer layer) {
+        FeatureCollection fc = layer.getFeatureCollectionWrapper().getUltimateWrappee();
+        synchronized(layerIndexes) {
+            listen(layer.getLayerManager());
+            GeometryIndex index = layerIndexes.get(layer);
+            if (index == null || index.featureCollection != fc) {
+                List features = layer.getFeatureCollectionWrapper().getFeatures();
+                List geometries = new ArrayList(features.size());
+                for (Iterator it = features.iterator() ; it.hasNext() ; ) {
+                    geometries.add(((Feature)it.next()).getGeometry());
+                }
+                index = new GeometryIndex(geometries, fc);
+                layerIndexes.put(layer, index);
+            }
+            return index;
+        }
+    }
+
+    private static void listen(LayerManager layerManager) {
+        if (layerManager == null || listeners.containsKey(layerManager)) return;
+        LayerListener listener = new LayerListener() {
+            public void featuresChanged(FeatureEvent e) {
+                synchronized(layerIndexes) {layerIndexes.remove(e.getLayer());}
+            }
+            public void layerChanged(LayerEvent e) {
+                if (e.getType() == LayerEventType.REMOVED) {
+                    synchronized(layerIndexes) {layerIndexes.remove(e.getLayerable());}
+                }
+            }
+            public void categoryChanged(CategoryEvent e) {
+            }
+        };
+        layerManager.addLayerListener(listener);
+        listeners.put(layerManager, listener);
+    }
+
+    /**
+     * Returns the geometries whose envelope intersects envelope.
+     */
+    public List query(Envelope envelope) {
+        return tree.query(envelope);
+    }
+
+    /**
+     * Returns the number of geometries of the index, empty ones included.
+     */
+    public int size() {
+        return size;
+    }
+
+}
@@ -18,6 +18,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.BorderFactory;
 import javax.swing.border.Border;
@@ -83,7 +84,7 @@ public class QueryDialog extends BDialog {
     Map enumerations = new HashMap();
     // Flag indicating a query is running
     static boolean runningQuery = false;
-    static boolean cancelQuery = false;
+    static volatile boolean cancelQuery = false;
     
     // if mmpatch is used (mmpatch gives more attribute types), mmaptch must
     // be set to true
@@ -900,6 +901,12 @@ public class QueryDialog extends BDialog {
                 cancelQuery=false;
                 refreshButton.setEnabled(false);
                 
+                // Set the selection used as target for geometric operations
+                // Bug fixed on 2007-08-10 : selection has index 1 (SELECTION), not 0
+                if (operator.type=='G' && valueCB.getSelectedIndex() == SELECTION) {
+                    selection = context.getLayerViewPanel().getSelectionManager().getSelectedItems();
+                }
+                
                 // New condition
                 Condition condition = new Condition(queryDialog, context);
                 
@@ -934,12 +941,6 @@ public class QueryDialog extends BDialog {
                     }
                 }
                 
-                // Set the selection used as target for geometric operations
-                // Bug fixed on 2007-08-10 : selection has index 1 (SELECTION), not 0
-                if (operator.type=='G' && valueCB.getSelectedIndex() == SELECTION) {
-                    selection = context.getLayerViewPanel().getSelectionManager().getSelectedItems();
-                }
-                
                 // initialize the selection if the select option is true
                 if(select.getState()) {selectedFeatures.unselectItems();}
                 
@@ -952,7 +953,7 @@ public class QueryDialog extends BDialog {
                 }
                 
                 // Loop on the requested layers
-                int count = 0;
+                AtomicInteger count = new AtomicInteger();
                 for (int i = 0 ; i < layers.size() ; i++) {
                     Layer layer = (Layer)layers.get(i);
                     FeatureCollection fc = layer.getFeatureCollectionWrapper();
@@ -984,27 +985,11 @@ public class QueryDialog extends BDialog {
                     
                     // initialize a new list for the new selection
                     List okFeatures = new ArrayList();
-                    int mod = 1;
-                    if (total > 1000) mod = 10;
-                    if (total > 33000) mod = 100;
-                    if (total > 1000000) mod = 1000;
                     try {
-                        for (Iterator it = features.iterator() ; it.hasNext() ; ) {
-                            count++;
-                            if (count%mod==0) {
-                                progressBar.setProgressText(""+count+"/"+total);
-                                progressBar.setValue(count);
-                            }
-                            Feature f = (BasicFeature)it.next();
-                            if (condition.test(f)) {
-                                okFeatures.add(f);
-                                featuresfound++;
-                            }
-                            Thread.yield();
-                            if (cancelQuery) break;
-                        }
-                        progressBar.setProgressText(""+count+"/"+total);
-                        progressBar.setValue(count);
+                        okFeatures = testFeatures(condition, new ArrayList(features), count, total);
+                        featuresfound += okFeatures.size();
+                        progressBar.setProgressText(""+count.get()+"/"+total);
+                        progressBar.setValue(count.get());
                     }
                     catch(Exception e) {e.printStackTrace();}
                     if (cancelQuery) break;
@@ -1080,6 +1065,25 @@ public class QueryDialog extends BDialog {
         t.start();
     }
     
+    /**
+     * Tests features with condition, using one thread per processor, while
+     * this thread reports the progression.
+     * @return the features satisfying the condition, in their order
+     */
+    private List testFeatures(Condition condition, List features,
+                              final AtomicInteger count, final int total) throws Exception {
+        FeatureTester tester = new FeatureTester(condition) {
+            protected boolean isCancelled() {
+                return cancelQuery;
+            }
+            protected void progress() {
+                progressBar.setProgressText(""+count.get()+"/"+total);
+                progressBar.setValue(count.get());
+            }
+        };
+        return tester.test(features, Runtime.getRuntime().availableProcessors(), count);
+    }
+    
     private void ok() {executeQuery();}
     
     //private void cancel() {setVisible(false);}
@@ -43,6 +43,7 @@ import com.vividsolutions.jump.feature.FeatureDataset;
 import com.vividsolutions.jump.feature.FeatureSchema;
 import com.vividsolutions.jump.I18N;
 import com.vividsolutions.jump.task.TaskMonitor;
+import com.vividsolutions.jump.tools.DissolveEngine;
 import com.vividsolutions.jump.workbench.model.Layer;
 import com.vividsolutions.jump.workbench.model.StandardCategoryNames;
 import com.vividsolutions.jump.workbench.plugin.EnableCheckFactory;
@@ -59,11 +60,13 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import javax.swing.ImageIcon;
 import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
@@ -103,6 +106,7 @@ public class UnionByAttributePlugIn extends AbstractThreadedUiPlugIn {
     private boolean aggregate_unused_fields = false;
     
     private GeometryFactory factory;
+    private DissolveEngine engine;
     
     public UnionByAttributePlugIn() {
         //super(
@@ -304,8 +308,29 @@ public class UnionByAttributePlugIn extends AbstractThreadedUiPlugIn {
             }
         }
         
-        // Order features by attribute value in a map
-        Map map = new HashMap();
+        FeatureCollection resultfc = dissolve(context, monitor, inputFC, newSchema);
+        // a cancelled union is incomplete, no layer is created
+        if (monitor.isCancelRequested()) return;
+        context.getLayerManager().addCategory(StandardCategoryNames.RESULT);
+        String newLayerName = layer.getName() +
+            (use_attribute ? ("-" + attribute + " (dissolve)") : " (union)");
+        context.addLayer(StandardCategoryNames.RESULT, newLayerName, resultfc);
+        context.getOutputFrame().append("<h3>"+
+            I18N.get("ui.plugin.analysis.UnionByAttributePlugIn.end-of-process") + " " +
+            I18N.get("ui.plugin.analysis.UnionByAttributePlugIn") + "</h3>");
+    }
+    
+    /**
+     * Dissolves the features of inputFC into features of newSchema, one per
+     * value of the attribute, or a single one if no attribute is used.
+     * The features are in the order in which the values are found in
+     * inputFC. The result is incomplete if the task is cancelled.
+     */
+    public FeatureCollection dissolve(PlugInContext context, TaskMonitor monitor,
+                                      FeatureCollection inputFC, FeatureSchema newSchema) {
+        // Order features by attribute value in a map, keeping the order in
+        // which the values are found
+        Map map = new LinkedHashMap();
         monitor.report(I18N.get("ui.plugin.analysis.UnionByAttributePlugIn"));
         for (Iterator i = inputFC.iterator() ; i.hasNext() ; ) {
             Feature f = (Feature)i.next();
@@ -324,37 +349,68 @@ public class UnionByAttributePlugIn extends AbstractThreadedUiPlugIn {
         }
         
         // Computing the result
-        int count = 1;
+        // Groups are unioned in parallel by the engine, which takes them from
+        // the map one after the other, so that the features of a group can
+        // be released as soon as its union is done
+        // The tasks return the attributes of the new features, which are
+        // created on this thread (FeatureUtil.nextID is not thread-safe)
+        final PlugInContext fcontext = context;
+        final TaskMonitor fmonitor = monitor;
+        final FeatureSchema fschema = newSchema;
+        final Iterator groups = map.entrySet().iterator();
+        Iterator<Callable<Object[]>> tasks = new Iterator<Callable<Object[]>>() {
+            public boolean hasNext() {
+                return groups.hasNext();
+            }
+            public Callable<Object[]> next() {
+                final Map.Entry group = (Map.Entry)groups.next();
+                groups.remove();
+                return new Callable<Object[]>() {
+                    public Object[] call() {
+                        FeatureCollection fca = (FeatureCollection)group.getValue();
+                        if (fca.size() == 0) return null;
+                        FeatureSchema schema = fca.getFeatureSchema();
+                        Object[] values = union(fcontext, fmonitor, fca);
+                        if (use_attribute) values[schema.getAttributeIndex(attribute)] = group.getKey();
+                        Object[] newValues = new Object[fschema.getAttributeCount()];
+                        // Copy feature attributes in newValues
+                        for (int j = 0, max = fschema.getAttributeCount() ; j < max ; j++) {
+                            newValues[j] = values[schema.getAttributeIndex(fschema.getAttributeName(j))];
+                        }
+                        return newValues;
+                    }
+                };
+            }
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
         FeatureCollection resultfc = new FeatureDataset(newSchema);
-        for (Iterator i = map.keySet().iterator() ; i.hasNext() ; ) {
-            monitor.report(I18N.get("ui.plugin.analysis.UnionByAttributePlugIn.computing-union") + " (" + count++ + "/" + map.size() + ")");
-            Object key = i.next();
-            FeatureCollection fca = (FeatureCollection)map.get(key);
-            if (fca.size() > 0) {
-                Feature feature = union(context, monitor, fca);
-                if (use_attribute) feature.setAttribute(attribute, key);
+        engine = new DissolveEngine();
+        try {
+            List<Object[]> results = engine.invokeAll(tasks, map.size(), monitor,
+                I18N.get("ui.plugin.analysis.UnionByAttributePlugIn.computing-union"));
+            for (Object[] values : results) {
+                if (values == null) continue;
                 Feature newFeature = new BasicFeature(newSchema);
-                // Copy feature attributes in newFeature
-                for (int j = 0, max = newSchema.getAttributeCount() ; j < max ; j++) {
-                    newFeature.setAttribute(j, feature.getAttribute(newSchema.getAttributeName(j)));
-                }
+                newFeature.setAttributes(values);
                 resultfc.add(newFeature);
             }
+        } finally {
+            engine.shutdown();
+            engine = null;
         }
-        context.getLayerManager().addCategory(StandardCategoryNames.RESULT);
-        String newLayerName = layer.getName() +
-            (use_attribute ? ("-" + attribute + " (dissolve)") : " (union)");
-        context.addLayer(StandardCategoryNames.RESULT, newLayerName, resultfc);
-        context.getOutputFrame().append("<h3>"+
-            I18N.get("ui.plugin.analysis.UnionByAttributePlugIn.end-of-process") + " " +
-            I18N.get("ui.plugin.analysis.UnionByAttributePlugIn") + "</h3>");
+        return resultfc;
     }
     
    /**
     * New method for union. Uses new UnaryUnionOp which is much more
-    * efficient for large datasets.
+    * efficient for large datasets, through the DissolveEngine which unions
+    * large groups by spatial partitions.
+    * May be called by several threads at once : it returns the attributes of
+    * the union, in the schema of fc, rather than a new feature.
     */
-    private Feature union(PlugInContext context, TaskMonitor monitor, FeatureCollection fc) {
+    private Object[] union(PlugInContext context, TaskMonitor monitor, FeatureCollection fc) {
         Collection points      = new ArrayList();
         Collection lineStrings = new ArrayList();
         Collection polygons    = new ArrayList();
@@ -363,10 +419,12 @@ public class UnionByAttributePlugIn extends AbstractThreadedUiPlugIn {
             Feature f = (Feature) it.next();
             Geometry g = f.getGeometry();
             if (!g.isValid()) {
-                context.getWorkbenchFrame().warnUser(
-                    I18N.get("ui.plugin.analysis.UnionByAttributePlugIn.invalid-geometry-excluded"));
-                context.getOutputFrame().addText(
-                    I18N.getMessage("ui.plugin.analysis.UnionByAttributePlugIn.exclusion", new Object[]{f.getID()}));
+                synchronized (this) {
+                    context.getWorkbenchFrame().warnUser(
+                        I18N.get("ui.plugin.analysis.UnionByAttributePlugIn.invalid-geometry-excluded"));
+                    context.getOutputFrame().addText(
+                        I18N.getMessage("ui.plugin.analysis.UnionByAttributePlugIn.exclusion", new Object[]{f.getID()}));
+                }
                 continue;
             }
             else if (g.isEmpty()) continue;
@@ -385,11 +443,11 @@ public class UnionByAttributePlugIn extends AbstractThreadedUiPlugIn {
             }
         }
         Geometry gp;
-        if (points.size()>0 && null != (gp = UnaryUnionOp.union(points))) {
+        if (points.size()>0 && null != (gp = engine.union(points))) {
             geoms.add(gp);
         }
         else if (lineStrings.size()>0) {
-            gp = UnaryUnionOp.union(lineStrings);
+            gp = engine.union(lineStrings);
             if (gp != null && merge_linestrings) {
                 LineMerger merger = new LineMerger();
                 merger.add(gp);
@@ -397,25 +455,25 @@ public class UnionByAttributePlugIn extends AbstractThreadedUiPlugIn {
             }
             else if (gp != null) geoms.add(gp);
         }
-        if (polygons.size()>0 && null != (gp = UnaryUnionOp.union(polygons))) {
+        if (polygons.size()>0 && null != (gp = engine.union(polygons))) {
             geoms.add(gp);
         }
         
         FeatureSchema schema = fc.getFeatureSchema();
-        Feature feature = new BasicFeature(schema);
+        Object[] values = new Object[schema.getAttributeCount()];
         if (geoms.size()==0) {
-            feature.setGeometry(factory.createGeometryCollection(new Geometry[]{}));
+            values[schema.getGeometryIndex()] = factory.createGeometryCollection(new Geometry[]{});
         }
         else {
-            feature.setGeometry(UnaryUnionOp.union(geoms));
+            values[schema.getGeometryIndex()] = UnaryUnionOp.union(geoms);
         }
         if (aggregate_unused_fields) {
-            feature = aggregateValues(context, fc, feature);
+            values = aggregateValues(context, fc, values);
         }
-        return feature;
+        return values;
     }
     
-    private Feature aggregateValues(PlugInContext context, FeatureCollection fc, Feature feature) {
+    private Object[] aggregateValues(PlugInContext context, FeatureCollection fc, Object[] values) {
         FeatureSchema schema = fc.getFeatureSchema();
         for (int i = 0, max = schema.getAttributeCount() ; i < max ; i++) {
             if (schema.getAttributeType(i) == AttributeType.INTEGER) {
@@ -424,7 +482,7 @@ public class UnionByAttributePlugIn extends AbstractThreadedUiPlugIn {
                     Object val = ((Feature)it.next()).getAttribute(i);
                     if (val != null) total += ((Integer)val).intValue();
                 }
-                feature.setAttribute(i, new Integer(total));
+                values[i] = new Integer(total);
             }
             else if (schema.getAttributeType(i) == AttributeType.DOUBLE) {
                 double total = 0;
@@ -432,7 +490,7 @@ public class UnionByAttributePlugIn extends AbstractThreadedUiPlugIn {
                     Object val = ((Feature)it.next()).getAttribute(i);
                     if (val != null) total += ((Double)val).doubleValue();
                 }
-                feature.setAttribute(i, new Double(total));
+                values[i] = new Double(total);
             }
             else if (schema.getAttributeType(i) == AttributeType.STRING) {
                 java.util.Set set = new java.util.TreeSet();
@@ -440,15 +498,17 @@ public class UnionByAttributePlugIn extends AbstractThreadedUiPlugIn {
                     Object val = ((Feature)it.next()).getAttribute(i);
                     if (val != null) set.add(val);
                 }
-                feature.setAttribute(i, java.util.Arrays.toString(set.toArray()));
+                values[i] = java.util.Arrays.toString(set.toArray());
             }
             else if (schema.getAttributeType(i) != AttributeType.GEOMETRY) {
-                context.getOutputFrame().addText(
-                    I18N.getMessage("ui.plugin.analysis.UnionByAttributePlugIn.cannot-be-aggregated", 
-                    new Object[]{schema.getAttributeName(i), schema.getAttributeType(i)}));
+                synchronized (this) {
+                    context.getOutputFrame().addText(
+                        I18N.getMessage("ui.plugin.analysis.UnionByAttributePlugIn.cannot-be-aggregated", 
+                        new Object[]{schema.getAttributeName(i), schema.getAttributeType(i)}));
+                }
             }
         }
-        return feature;
+        return values;
     }
     
     private void writeReport(PlugInContext context) {
@@ -1,18 +1,27 @@
 package org.openjump.core.ui.plugin.validate;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.openjump.core.ui.plugin.AbstractUiPlugIn;
 import org.openjump.core.ui.plugin.validate.contextcalculator.AbstractContextCalculator;
 import org.openjump.core.ui.plugin.validate.objectcalculator.AbstractObjectCalculator;
 import org.openjump.core.ui.plugin.validate.pojo.MatchList;
 import org.openjump.core.ui.plugin.validate.pojo.SupportingRelations;
+import org.openjump.core.ui.plugin.validate.pojo.SurroundingMatchIndex;
 
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.strtree.STRtree;
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.FeatureCollection;
 import com.vividsolutions.jump.task.TaskMonitor;
@@ -43,12 +52,14 @@ public class ValidatePlugIn extends AbstractUiPlugIn implements ThreadedPlugIn {
 	private final String T_Context_Weight = "weight of context similarity";
 	private final String T_Context_NUM = "mininal neighbouring objects";
 	private final String T_Angle_Tolerance = "angle tolerance";
+	private final String T_Parallel = "parallel validation";
 	
 	// Parameters (set by user in dialog window)
 	private double VALID_THRESHOLD = 0.8;
 	private double CONTEXT_WEIGHT = 0.8;
 	private String CONTEXT_MEASURE = "";
 	private int ANGLE_TOLERANCE = 5;
+	private boolean PARALLEL = false;
 	
 	/**
 	 * The minimal number of supporting objects needed in context similarity calculation
@@ -63,9 +74,37 @@ public class ValidatePlugIn extends AbstractUiPlugIn implements ThreadedPlugIn {
 	 */
 	private final double BUFFER_INC_RATE = 1.1;
 	
+	/**
+	 * Seed used to pick the starting match of the forward traversal, fixed so that repeated runs give identical results.
+	 */
+	private final long RANDOM_SEED = 0L;
+	
 	private SharedSpace sharedSpace;
 	private MatchList matchList;
 	private SupportingRelations supportingRelations;
+	private SurroundingMatchIndex surroundingMatchIndex;
+	
+	/**
+	 * The maximal number of times a match is re-evaluated while backtracking from one invalid match
+	 */
+	private final int MAX_REEVALUATIONS = 3;
+	
+	/**
+	 * Marks used in backtracking, indexed by match index; an entry is valid only if it equals the current generation
+	 */
+	private int[] onBacktrackStack;
+	private int[] reEvaluationStamp;
+	private int[] reEvaluationCount;
+	private int backtrackGeneration = 0;
+	
+	/**
+	 * Marks of the matches whose invalid status changed since the current wave was evaluated, indexed by match index; 
+	 * an entry is valid only if it equals the current wave generation
+	 */
+	private int[] changedInWaveStamp;
+	private int changedInWaveCount = 0;
+	private int waveGeneration = 0;
+	private boolean committingWave = false;
 	
 	private AbstractContextCalculator contextSimilarityCalculator;
 	private AbstractObjectCalculator objectSimilarityCalculator;
@@ -115,6 +154,7 @@ public class ValidatePlugIn extends AbstractUiPlugIn implements ThreadedPlugIn {
         dialog.addPositiveDoubleField(T_Context_Weight, this.CONTEXT_WEIGHT, 4);
         dialog.addPositiveIntegerField(T_Context_NUM, MIN_SURR_OBJ_NEEDED, 4);
         dialog.addPositiveIntegerField(T_Angle_Tolerance, this.ANGLE_TOLERANCE, 4, null);
+        dialog.addCheckBox(T_Parallel, this.PARALLEL, "validate the matches of each traversal wave concurrently (same result as the sequential validation)");
 	  }
 
     private void getDialogValues(MultiInputDialog dialog){
@@ -123,8 +163,16 @@ public class ValidatePlugIn extends AbstractUiPlugIn implements ThreadedPlugIn {
         this.CONTEXT_MEASURE = dialog.getText(T_Context_Measure);
         this.MIN_SURR_OBJ_NEEDED = dialog.getInteger(T_Context_NUM);
         this.ANGLE_TOLERANCE = dialog.getInteger(T_Angle_Tolerance);
+        this.PARALLEL = dialog.getBoolean(T_Parallel);
 	  }
     
+    /**
+     * Set whether the matches of each traversal wave are evaluated concurrently.
+     */
+    public void setParallel(boolean parallel) {
+    	this.PARALLEL = parallel;
+    }
+    
     
     
 	
@@ -133,6 +181,28 @@ public class ValidatePlugIn extends AbstractUiPlugIn implements ThreadedPlugIn {
      */
 	@Override
 	public void run(TaskMonitor monitor, PlugInContext context) throws Exception {
+		/*
+		 * Fetch the source & reference geographic object sets.
+		 */
+		List<Feature> sourceFeatures = sharedSpace.getSourceLayer().getFeatureCollectionWrapper().getFeatures();
+		List<Feature> targetFeatures = sharedSpace.getTargetLayer().getFeatureCollectionWrapper().getFeatures();
+		
+		if (validate(sourceFeatures, targetFeatures)) {
+			showResult(context);
+			System.out.println("Validation Finished \n");
+		}
+	}
+	
+	/**
+	 * Validate the matches of the match list stored in the shared space and detect the missing matches.
+	 * @param sourceFeatures Source geographic object set
+	 * @param targetFeatures Target geographic object set
+	 * @return false if the match list cannot be validated
+	 */
+	public boolean validate(List<Feature> sourceFeatures, List<Feature> targetFeatures) throws Exception {
+		if (sharedSpace == null) {
+			sharedSpace = SharedSpace.getInstance();
+		}
 		
 		/*
 		 * Call factory to generate required context & object similarity calculator.
@@ -166,21 +236,20 @@ public class ValidatePlugIn extends AbstractUiPlugIn implements ThreadedPlugIn {
 		 * Initialize a queue to contain the discovered matches in the forward traversal.
 		 */
 		Queue<Feature> queue = new LinkedList<Feature>();
-		Random random = new  Random();
+		Random random = new Random(RANDOM_SEED);
 		int numFeatures = matchList.numberOfFeatures();
 		if (numFeatures < 0) {
 			System.out.println("Feature numbers in MatchList are not aligned");
-			return;
+			return false;
 		}
 		Feature startingFeature = matchList.getSourceFeatureByIndex(random.nextInt(numFeatures));
 		queue.offer(startingFeature);
 		matchList.setAsInQueue(startingFeature);
 		
 		/*
-		 * Fetch the source & reference geographic object sets.
+		 * Index the source layer objects to search for supporting matches.
 		 */
-		final List<Feature> sourceFeatures = sharedSpace.getSourceLayer().getFeatureCollectionWrapper().getFeatures();
-		final List<Feature> targetFeatures = sharedSpace.getTargetLayer().getFeatureCollectionWrapper().getFeatures();
+		surroundingMatchIndex = new SurroundingMatchIndex(sourceFeatures);
 		
 		/*
 		 * Initialize the record of supporting relations.
@@ -194,13 +263,45 @@ public class ValidatePlugIn extends AbstractUiPlugIn implements ThreadedPlugIn {
 		///////////////////////////////////////////
 		// Validate Input Matches
 		///////////////////////////////////////////
+		ForkJoinPool pool = PARALLEL ? new ForkJoinPool(Runtime.getRuntime().availableProcessors()) : null;
+		try {
+			if (PARALLEL) {
+				validateInWaves(queue, sourceFeatures, pool);
+			} else {
+				validateInSequence(queue, sourceFeatures);
+			}
+			int validatedMatchNum = matchList.getSourceList().size();
+			System.out.println("Complete validating input matches: " + validatedMatchNum);
+			
+			
+			
+			///////////////////////////////////////////
+			// Detect Missing Matches
+			///////////////////////////////////////////
+			detectMissingMatches(targetFeatures, pool);
+			System.out.println("Detected " + (matchList.getSourceList().size()-validatedMatchNum) + " missing matches");
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+			}
+		}
+		return true;
+	}
+	
+
+	/**
+	 * Validate the input matches one by one in the order of forward traversal.
+	 * @param queue The queue of forward traversal, containing the starting match
+	 * @param sourceFeatures Source geographic object set
+	 */
+	private void validateInSequence(Queue<Feature> queue, List<Feature> sourceFeatures) {
 		while (!queue.isEmpty()) {
 			// Get the match to be validated
 			Feature sourceFeature = queue.poll();
-			
+		
 			// Find the surrounding matches
-			ArrayList<Feature> sourceSurr = findSurroundingMatch(sourceFeature, sourceFeatures, queue, true, false);
-			
+			ArrayList<Feature> sourceSurr = findSurroundingMatch(sourceFeature, queue, true, false);
+		
 			/*
 			 * Calculate context similarity & object similarity.
 			 */
@@ -208,7 +309,7 @@ public class ValidatePlugIn extends AbstractUiPlugIn implements ThreadedPlugIn {
 			matchList.setContextSimilarity(sourceFeature, contextSimilarity);
 			double objectSimilarity = objectSimilarityCalculator.calObjectSimilarity(sourceFeature, matchList.getMatchedTargetFeature(sourceFeature));
 			matchList.setObjectSimilarity(sourceFeature, objectSimilarity);
-			
+		
 			/*
 			 * Backtrack if the match is considered as invalid.
 			 */
@@ -216,120 +317,361 @@ public class ValidatePlugIn extends AbstractUiPlugIn implements ThreadedPlugIn {
 				matchList.setAsValid(sourceFeature);
 			} else {
 				matchList.setAsInvalid(sourceFeature);
-				backtrackRecursion(sourceFeature, "");
+				backtrack(sourceFeature);
 			}
-			
+		
 			/*
 			 * Check and pick up the undiscovered matches caused by gap between object clusters
 			 */
 			if (queue.isEmpty()) {
-				int c = 0;
-				for (Feature f : sourceFeatures) {
-					if (matchList.shouldBeQueued(f)) {
-						c++;
-					}
-				}
-				System.out.println("Current UNDISCOVERED objects: " + c);
-				matchList.supplementSingleMatch(queue);
+				supplementQueue(queue, sourceFeatures);
 			}
 		}
-		int validatedMatchNum = matchList.getSourceList().size();
-		System.out.println("Complete validating input matches: " + validatedMatchNum);
-		
-		
-		
-		///////////////////////////////////////////
-		// Detect Missing Matches
-		///////////////////////////////////////////
-
-		/*
-		 * Find potential matches for all the alone objects in the source layer
-		 */
-		ArrayList<Feature> unmatchedSourceFeatures = matchList.getUnmatchedSourceFeatures();
-		for (Feature singleF : unmatchedSourceFeatures) {
-			ArrayList<Feature> tempMatch = new ArrayList<Feature>();
-			Geometry buffer = singleF.getGeometry();
-			
+	}
+	
+	/**
+	 * Validate the input matches wave by wave: all the matches in the queue of forward traversal form a wave,
+	 * whose supporting matches, context similarities and object similarities are calculated concurrently
+	 * against the statuses left by the previous waves. The results are then committed one by one in queue order
+	 * (discovering the next wave and backtracking from invalid matches).
+	 * The evaluation of a match only depends on the invalid matches around it, so a result is evaluated again 
+	 * when a match within its buffer radius became valid or invalid earlier in the same wave, or when its buffer 
+	 * lacks supporting matches (a farther match may then be needed); the validation is therefore identical 
+	 * to the sequential one.
+	 * @param queue The queue of forward traversal, containing the starting match
+	 * @param sourceFeatures Source geographic object set
+	 * @param pool The pool evaluating the matches of a wave
+	 */
+	private void validateInWaves(Queue<Feature> queue, List<Feature> sourceFeatures, ForkJoinPool pool) throws Exception {
+		while (!queue.isEmpty()) {
 			/*
-			 *  Find potential match object from target matched list
+			 * Evaluate the current wave concurrently, the match list is only read in this step.
 			 */
-			for (Feature f : targetFeatures) {
-				if (buffer.intersects(f.getGeometry()) && !tempMatch.contains(f))
-					tempMatch.add(f);
+			List<Callable<WaveResult>> tasks = new ArrayList<Callable<WaveResult>>();
+			while (!queue.isEmpty()) {
+				final Feature sourceFeature = queue.poll();
+				tasks.add(new Callable<WaveResult>() {
+					public WaveResult call() {
+						return evaluateMatch(sourceFeature);
+					}
+				});
 			}
+			List<Future<WaveResult>> futures = pool.invokeAll(tasks);
+			
 			/*
-			 *  Find potential match object from single target layer objects
+			 * Commit the results in queue order.
 			 */
-			for (Feature f : matchList.getUnmatchedTargetFeatures()) {
-				if (buffer.intersects(f.getGeometry()) && !tempMatch.contains(f))
-					tempMatch.add(f);
+			startWaveGeneration();
+			committingWave = true;
+			for (Future<WaveResult> future : futures) {
+				WaveResult result = future.get();
+				Feature sourceFeature = result.sourceFeature;
+				if (isOutdated(sourceFeature, result.sourceSurr, result.radius)) {
+					result = evaluateMatch(sourceFeature);
+				}
+				recordSurroundingMatch(sourceFeature, result.sourceSurr, result.radius, queue, true, false);
+				matchList.setContextSimilarity(sourceFeature, result.contextSimilarity);
+				matchList.setObjectSimilarity(sourceFeature, result.objectSimilarity);
+				if (matchList.getConfidenceLevel(sourceFeature) >= VALID_THRESHOLD) {
+					matchList.setAsValid(sourceFeature);
+				} else {
+					matchList.setAsInvalid(sourceFeature);
+					markChangedInWave(sourceFeature);
+					backtrack(sourceFeature);
+				}
 			}
+			committingWave = false;
 			
-			/*
-			 *  Calculate the confidence level for each potential match
-			 */
-			for (Feature potentialMatchedObject : tempMatch) {
-				ArrayList<Feature> sourceSurr = findSurroundingMatch(singleF, sourceFeatures, null, false, false);
-				double contextSimilarity = calContextSimilarity(singleF, potentialMatchedObject, sourceSurr);
-				double objectSimilarity = objectSimilarityCalculator.calObjectSimilarity(singleF, potentialMatchedObject);
-				double confidenceLevel = contextSimilarity*matchList.getContextWeight() + objectSimilarity*(1-matchList.getContextWeight());
-
-				if (confidenceLevel >= VALID_THRESHOLD) {
-					matchList.storeMatch(singleF, potentialMatchedObject);
-					matchList.setAsNew(singleF);
+			if (queue.isEmpty()) {
+				supplementQueue(queue, sourceFeatures);
+			}
+		}
+	}
+	
+	/**
+	 * Check whether the status of a match which may support the evaluated object changed after the evaluation.
+	 * The matches within the buffer radius are found through the spatial index, and looked up in the marks of the wave.
+	 * @param sourceFeature The evaluated source layer object
+	 * @param sourceSurr The supporting matches found in the evaluation
+	 * @param radius The buffer radius used in the evaluation
+	 */
+	private boolean isOutdated(Feature sourceFeature, ArrayList<Feature> sourceSurr, double radius) {
+		if (changedInWaveCount == 0) {
+			return false;
+		}
+		if (sourceSurr.size() < MIN_SURR_OBJ_NEEDED) {
+			return true;
+		}
+		if (radius < 0) {
+			return true;
+		}
+		for (Feature f : surroundingMatchIndex.queryAllWithinDistance(sourceFeature, radius)) {
+			int i = matchList.indexOfSource(f);
+			if (i >= 0 && i < changedInWaveStamp.length && changedInWaveStamp[i] == waveGeneration) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Start a new wave: the marks of the previous one become stale, the array is (re)allocated if the match list grew.
+	 */
+	private void startWaveGeneration() {
+		int n = matchList.numberOfFeatures();
+		if (changedInWaveStamp == null || changedInWaveStamp.length < n) {
+			changedInWaveStamp = new int[n];
+		}
+		waveGeneration++;
+		changedInWaveCount = 0;
+	}
+	
+	/**
+	 * Record that the invalid status of a match changed during the current wave, if a wave is being committed.
+	 */
+	private void markChangedInWave(Feature f) {
+		if (!committingWave) {
+			return;
+		}
+		int i = matchList.indexOfSource(f);
+		if (i >= changedInWaveStamp.length) {
+			// the missing matches are appended to the match list
+			changedInWaveStamp = Arrays.copyOf(changedInWaveStamp, Math.max(i + 1, changedInWaveStamp.length * 2));
+		}
+		if (i >= 0 && changedInWaveStamp[i] != waveGeneration) {
+			changedInWaveStamp[i] = waveGeneration;
+			changedInWaveCount++;
+		}
+	}
+	
+	/**
+	 * Find potential matches for all the alone objects in the source layer.
+	 * The candidates of each alone object are found through a spatial index over the target layer objects.
+	 * The alone objects are evaluated one by one in their order, and the missing matches found for an object
+	 * support the objects evaluated after it, as in the sequential validation. If a pool is given, all the alone 
+	 * objects are first evaluated concurrently against the statuses left by the validation of the input matches; 
+	 * the results are then committed in order, and a result is evaluated again when a missing match committed 
+	 * before it lies within its buffer radius, or when its buffer lacks supporting matches.
+	 * @param targetFeatures Target geographic object set
+	 * @param pool The pool evaluating the alone objects, null to evaluate them in the current thread
+	 */
+	private void detectMissingMatches(List<Feature> targetFeatures, ForkJoinPool pool) throws Exception {
+		/*
+		 *  Index the potential match objects: target layer objects, then single target layer objects (without duplicates)
+		 */
+		final ArrayList<Feature> potentialObjects = new ArrayList<Feature>();
+		IdentityHashMap<Feature, Boolean> indexed = new IdentityHashMap<Feature, Boolean>();
+		for (Feature f : targetFeatures) {
+			if (indexed.put(f, Boolean.TRUE) == null) {
+				potentialObjects.add(f);
+			}
+		}
+		for (Feature f : matchList.getUnmatchedTargetFeatures()) {
+			if (indexed.put(f, Boolean.TRUE) == null) {
+				potentialObjects.add(f);
+			}
+		}
+		final STRtree targetIndex = new STRtree();
+		for (int i = 0; i < potentialObjects.size(); i++) {
+			targetIndex.insert(potentialObjects.get(i).getGeometry().getEnvelopeInternal(), i);
+		}
+		targetIndex.build();
+		
+		/*
+		 *  Evaluate the alone objects concurrently against the current statuses
+		 */
+		List<Feature> aloneObjects = new ArrayList<Feature>(matchList.getUnmatchedSourceFeatures());
+		List<Future<AloneObjectResult>> futures = null;
+		if (pool != null) {
+			List<Callable<AloneObjectResult>> tasks = new ArrayList<Callable<AloneObjectResult>>();
+			for (final Feature singleF : aloneObjects) {
+				tasks.add(new Callable<AloneObjectResult>() {
+					public AloneObjectResult call() {
+						return evaluateAloneObject(singleF, potentialObjects, targetIndex);
+					}
+				});
+			}
+			futures = pool.invokeAll(tasks);
+		}
+		
+		/*
+		 *  Calculate the confidence level for each potential match, and commit the missing matches in order
+		 */
+		startWaveGeneration();
+		committingWave = true;
+		try {
+			for (int k = 0; k < aloneObjects.size(); k++) {
+				Feature singleF = aloneObjects.get(k);
+				AloneObjectResult result;
+				if (futures == null) {
+					result = evaluateAloneObject(singleF, potentialObjects, targetIndex);
+				} else {
+					result = futures.get(k).get();
+					if (result.sourceSurr != null && isOutdated(singleF, result.sourceSurr, result.radius)) {
+						result = evaluateAloneObject(singleF, potentialObjects, targetIndex);
+					}
+				}
+				for (MissingMatch m : result.missingMatches) {
+					matchList.storeMatch(m.sourceFeature, m.targetFeature);
+					matchList.setAsNew(m.sourceFeature);
 					supportingRelations.addMatchSpace();
-					findSurroundingMatch(singleF, sourceFeatures, null, true, true);
-					calContextSimilarity(singleF, potentialMatchedObject, sourceSurr);
-					matchList.setContextSimilarity(singleF, contextSimilarity);
-					matchList.setObjectSimilarity(singleF, objectSimilarity);
+					recordSurroundingMatch(m.sourceFeature, result.sourceSurr, result.radius, null, true, true);
+					matchList.setContextSimilarity(m.sourceFeature, m.contextSimilarity);
+					matchList.setObjectSimilarity(m.sourceFeature, m.objectSimilarity);
+				}
+				if (!result.missingMatches.isEmpty()) {
+					markChangedInWave(singleF);
 				}
 			}
+		} finally {
+			committingWave = false;
 		}
-		System.out.println("Detected " + (matchList.getSourceList().size()-validatedMatchNum) + " missing matches");
+	}
+	
+	/**
+	 * Find and evaluate the potential matches of an alone source layer object, without changing any record.
+	 * @return the potential matches whose confidence level reaches the validation threshold, 
+	 * with the supporting matches they were evaluated against
+	 */
+	private AloneObjectResult evaluateAloneObject(Feature singleF, List<Feature> potentialObjects, STRtree targetIndex) {
+		AloneObjectResult result = new AloneObjectResult();
+		result.missingMatches = new ArrayList<MissingMatch>();
+		Geometry buffer = singleF.getGeometry();
 		
-		showResult(context);
-		System.out.println("Validation Finished \n");
+		/*
+		 *  Find potential match objects, in the order of the target layer
+		 */
+		List<Integer> candidates = new ArrayList<Integer>();
+		for (Object o : targetIndex.query(buffer.getEnvelopeInternal())) {
+			Integer i = (Integer)o;
+			if (buffer.intersects(potentialObjects.get(i).getGeometry())) {
+				candidates.add(i);
+			}
+		}
+		if (candidates.isEmpty()) {
+			return result;
+		}
+		Collections.sort(candidates);
+		
+		result.radius = surroundingRadius(singleF);
+		result.sourceSurr = surroundingMatchWithin(singleF, result.radius);
+		for (Integer i : candidates) {
+			Feature potentialMatchedObject = potentialObjects.get(i);
+			double contextSimilarity = calContextSimilarity(singleF, potentialMatchedObject, result.sourceSurr);
+			double objectSimilarity = objectSimilarityCalculator.calObjectSimilarity(singleF, potentialMatchedObject);
+			double confidenceLevel = contextSimilarity*matchList.getContextWeight() + objectSimilarity*(1-matchList.getContextWeight());
+			
+			if (confidenceLevel >= VALID_THRESHOLD) {
+				MissingMatch m = new MissingMatch();
+				m.sourceFeature = singleF;
+				m.targetFeature = potentialMatchedObject;
+				m.contextSimilarity = contextSimilarity;
+				m.objectSimilarity = objectSimilarity;
+				result.missingMatches.add(m);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Find the supporting matches and calculate the similarities of a candidate match without changing any record,
+	 * so that it can be called concurrently for the matches in one wave.
+	 */
+	private WaveResult evaluateMatch(Feature sourceFeature) {
+		WaveResult result = new WaveResult();
+		Feature targetFeature = matchList.getMatchedTargetFeature(sourceFeature);
+		result.sourceFeature = sourceFeature;
+		result.radius = surroundingRadius(sourceFeature);
+		result.sourceSurr = surroundingMatchWithin(sourceFeature, result.radius);
+		result.contextSimilarity = calContextSimilarity(sourceFeature, targetFeature, result.sourceSurr);
+		result.objectSimilarity = objectSimilarityCalculator.calObjectSimilarity(sourceFeature, targetFeature);
+		return result;
+	}
+	
+	/**
+	 * Check and pick up the undiscovered matches caused by gap between object clusters
+	 */
+	private void supplementQueue(Queue<Feature> queue, List<Feature> sourceFeatures) {
+		int c = 0;
+		for (Feature f : sourceFeatures) {
+			if (matchList.shouldBeQueued(f)) {
+				c++;
+			}
+		}
+		System.out.println("Current UNDISCOVERED objects: " + c);
+		matchList.supplementSingleMatch(queue);
 	}
 	
-
 	/**
 	 * Find the supporting matches / Define the context for a candidate match.
+	 * The buffer radius starts from a quarter of the perimeter and grows geometrically (multiplied by
+	 * BUFFER_INC_RATE at each step) until it captures MIN_SURR_OBJ_NEEDED supporting matches; the radius is
+	 * derived from the distance to the k-th nearest supporting match found in the spatial index, so the layer
+	 * is not rescanned for every buffer step.
 	 * @param sourceFeature The source layer object involved in the being checked candidate match
-	 * @param sourceFeatures Source geographic object set
 	 * @param queue Used to recored the discovered matches to support the forward traversal
 	 * @param recordProcess Set as true if the supporting matches should be recorded in supporting relations; this field is false when testing the potential matches 
 	 * @param isMissingMatch Set as true if the current being checked match is a missing match, this will leads to difference when recording the dependencies
 	 * @return
 	 */
-	private ArrayList<Feature> findSurroundingMatch(Feature sourceFeature, List<Feature> sourceFeatures, Queue<Feature> queue, boolean recordProcess, boolean isMissingMatch) {
+	private ArrayList<Feature> findSurroundingMatch(Feature sourceFeature, Queue<Feature> queue, boolean recordProcess, boolean isMissingMatch) {
+		double radius = surroundingRadius(sourceFeature);
+		ArrayList<Feature> sourceSurr = surroundingMatchWithin(sourceFeature, radius);
+		recordSurroundingMatch(sourceFeature, sourceSurr, radius, queue, recordProcess, isMissingMatch);
+		return sourceSurr;
+	}
+	
+	/**
+	 * Calculate the buffer radius which captures enough supporting matches for a candidate match.
+	 * @param sourceFeature The source layer object involved in the being checked candidate match
+	 * @return the buffer radius; -1 if there is no suitable supporting match at all
+	 */
+	private double surroundingRadius(Feature sourceFeature) {
 		/*
 		 *  Create a buffer for the source layer object involved in the current match 
 		 */
 		Geometry sfGeom = sourceFeature.getGeometry();
-		ArrayList<Feature> sourceSurr = new ArrayList<Feature>();
 		
 		double radius = sfGeom.getLength() / 4 / 4;
 		
 		// An alternative way to initialize buffer radius. But not applicable when area < 1, since square root of area will become bigger
 //		double radius = Math.pow(sfGeom.getArea(), 1/2) / 4;
 		
-		Geometry buffer = sfGeom.buffer(radius);
-		while (sourceSurr.size() < MIN_SURR_OBJ_NEEDED) {
-			sourceSurr.clear();
-			buffer = sfGeom.buffer(radius);
-			
-	        /*
-	         *  Create lists to contain the surrounding objects.
-	         */
-			for (Feature f : sourceFeatures) {
-				if (buffer.intersects(f.getGeometry()) && f != sourceFeature && matchList.isSuitableSupportingMatch(f)) {
-					sourceSurr.add(f);
-				}
-			}
+		/*
+		 *  Grow the buffer geometrically until it reaches the k-th nearest supporting match 
+		 *  (or the farthest one, if there are not enough supporting matches in the layer)
+		 */
+		double kthDistance = surroundingMatchIndex.distanceToNearest(sourceFeature, MIN_SURR_OBJ_NEEDED, matchList);
+		if (kthDistance < 0) {
+			return -1;
+		}
+		if (radius <= 0 && kthDistance > 0) {
+			radius = kthDistance;
+		}
+		while (radius < kthDistance) {
 			radius = radius * BUFFER_INC_RATE;
 		}
+		return radius;
+	}
+	
+	/**
+	 * Collect the supporting matches within the buffer radius of a candidate match.
+	 */
+	private ArrayList<Feature> surroundingMatchWithin(Feature sourceFeature, double radius) {
+		if (radius < 0) {
+			return new ArrayList<Feature>();
+		}
+		return surroundingMatchIndex.queryWithinDistance(sourceFeature, radius, matchList);
+	}
+	
+	/**
+	 * Record the supporting matches found for a candidate match: push the undiscovered ones onto the queue
+	 * and record the dependencies between the candidate match and its supporting matches.
+	 */
+	private void recordSurroundingMatch(Feature sourceFeature, ArrayList<Feature> sourceSurr, double radius, 
+			Queue<Feature> queue, boolean recordProcess, boolean isMissingMatch) {
 		if (recordProcess) {
-			matchList.setBufferRadius(sourceFeature, radius);
+			matchList.setBufferRadius(sourceFeature, Math.max(radius, 0));
 		}
 		
 		/*
@@ -350,48 +692,82 @@ public class ValidatePlugIn extends AbstractUiPlugIn implements ThreadedPlugIn {
 		if (recordProcess) {
 			supportingRelations.addSupportingRelation(sourceFeature, sourceSurr, isMissingMatch);
 		}
-		
-		return sourceSurr;
 	}
 	
 	
 	/**
-	 * Backtrack the and remedy the influence of an invalid match in a recursive way, 
+	 * Backtrack the and remedy the influence of an invalid match, 
 	 * recalculate the context similarity for all matches this invalid match supports.
+	 * Newly discovered invalid matches are backtracked in turn (depth first, as a recursion would do), 
+	 * using an explicit stack over the match indices so that long chains cannot overflow the call stack.
+	 * A match already being backtracked is not entered again, and each match is re-evaluated at most 
+	 * MAX_REEVALUATIONS times per backtracking, which bounds the cost of oscillating dependencies.
 	 * @param invalidFeature The invalid match.
-	 * @param pre A prefix of the printed information, used to control the style
 	 */
-	private void backtrackRecursion(Feature invalidFeature, String pre) {
-		System.out.println(pre + "start backtrack " + invalidFeature.getID());
-		
-		/*
-		 * Used to control the style of the information printed out
-		 */
-		pre += "\t";
-		int round = 1;
+	private void backtrack(Feature invalidFeature) {
+		int invalidIndex = matchList.indexOfSource(invalidFeature);
+		if (invalidIndex < 0) {
+			return;
+		}
+		startBacktrackGeneration();
 		
-		ArrayList<Feature> supports = supportingRelations.getFeaturesSupportedBy(invalidFeature);
-		for (Feature f : supports) {
-
+		ArrayDeque<BacktrackFrame> stack = new ArrayDeque<BacktrackFrame>();
+		stack.push(new BacktrackFrame(invalidIndex, supportingRelations.getIndicesSupportedBy(invalidIndex)));
+		onBacktrackStack[invalidIndex] = backtrackGeneration;
+		while (!stack.isEmpty()) {
+			BacktrackFrame frame = stack.peek();
+			if (frame.position == frame.supported.length) {
+				stack.pop();
+				onBacktrackStack[frame.matchIndex] = 0;
+				continue;
+			}
+			int i = frame.supported[frame.position++];
+			if (onBacktrackStack[i] == backtrackGeneration) {
+				continue; // cycle: this match is already being backtracked
+			}
+			if (reEvaluationStamp[i] != backtrackGeneration) {
+				reEvaluationStamp[i] = backtrackGeneration;
+				reEvaluationCount[i] = 0;
+			}
+			if (reEvaluationCount[i] >= MAX_REEVALUATIONS) {
+				continue;
+			}
+			reEvaluationCount[i]++;
+			
+			Feature f = matchList.getSourceFeatureByIndex(i);
 			double preCL = matchList.getContextSimilarity(f); // confidence level before re-calculation
 			
-			ArrayList<Feature> sourceSurr = findSurroundingMatch(f, matchList.getSourceList(), null, true, false);
+			ArrayList<Feature> sourceSurr = findSurroundingMatch(f, null, true, false);
 			double contextSimilarity = calContextSimilarity(f, matchList.getMatchedTargetFeature(f), sourceSurr);
 			matchList.setContextSimilarity(f, contextSimilarity);
 			
 			if (preCL >= VALID_THRESHOLD && matchList.getConfidenceLevel(f) < VALID_THRESHOLD) {
-				System.out.println(pre + round + " Discover new invalid " + f.getID() + "  (" + preCL + "-->"+ matchList.getConfidenceLevel(f));
 				matchList.setAsInvalid(f);
-				// Use recursion to deal with chain effect occurs
-				backtrackRecursion(f, pre);
+				markChangedInWave(f);
+				// Deal with the chain effect before the remaining matches of this frame
+				stack.push(new BacktrackFrame(i, supportingRelations.getIndicesSupportedBy(i)));
+				onBacktrackStack[i] = backtrackGeneration;
 			} else if (preCL < VALID_THRESHOLD && matchList.getConfidenceLevel(f) >= VALID_THRESHOLD) {
-				System.out.println(pre + round + " Recover as valid " + f.getID() + "  (" + preCL + "-->"+ matchList.getConfidenceLevel(f));
 				matchList.setAsValid(f);
+				markChangedInWave(f);
 			}
-			round++;
 		}
 	}
 	
+	/**
+	 * Start a new backtracking: the marks of the previous one become stale, the arrays are (re)allocated if the match list grew.
+	 */
+	private void startBacktrackGeneration() {
+		int n = matchList.numberOfFeatures();
+		if (onBacktrackStack == null || onBacktrackStack.length < n) {
+			onBacktrackStack = new int[n];
+			reEvaluationStamp = new int[n];
+			reEvaluationCount = new int[n];
+			backtrackGeneration = 0;
+		}
+		backtrackGeneration++;
+	}
+	
 	
 	/**
 	 * An auxiliary method for calculating context similarity. 
@@ -413,5 +789,49 @@ public class ValidatePlugIn extends AbstractUiPlugIn implements ThreadedPlugIn {
 //		context.addLayer(StandardCategoryNames.WORKING, "New Matches -- target layer", npair.getValue());
 		System.out.println("result\nvalid matches: " + pair.getKey().size() +"; invalide matches: " + pair.getValue().size() + "; new matches: " + npair.getKey().size());
 	}
+	
+	/**
+	 * The result of evaluating one match of a wave, committed after the whole wave has been evaluated.
+	 */
+	private static class WaveResult {
+		private Feature sourceFeature;
+		private ArrayList<Feature> sourceSurr;
+		private double radius;
+		private double contextSimilarity;
+		private double objectSimilarity;
+	}
+	
+	/**
+	 * A match being backtracked, and the position reached in the list of matches it supports.
+	 */
+	private static class BacktrackFrame {
+		private int matchIndex;
+		private int[] supported;
+		private int position = 0;
+		
+		BacktrackFrame(int matchIndex, int[] supported) {
+			this.matchIndex = matchIndex;
+			this.supported = supported;
+		}
+	}
+	
+	/**
+	 * The result of evaluating an alone source layer object; the supporting matches are null if it has no potential match object.
+	 */
+	private static class AloneObjectResult {
+		private ArrayList<Feature> sourceSurr;
+		private double radius;
+		private List<MissingMatch> missingMatches;
+	}
+	
+	/**
+	 * A missing match found for an alone source layer object.
+	 */
+	private static class MissingMatch {
+		private Feature sourceFeature;
+		private Feature targetFeature;
+		private double contextSimilarity;
+		private double objectSimilarity;
+	}
 
 }
@@ -1,6 +1,9 @@
 package org.openjump.core.ui.plugin.validate.pojo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Queue;
 
 import com.vividsolutions.jump.feature.Feature;
@@ -12,7 +15,11 @@ import javafx.util.Pair;
 
 /**
  * This class stores the matches to be validated.
- * In validation process, the context similarity, object similarity and status of match will also be recorded in this class
+ * In validation process, the context similarity, object similarity and status of match will also be recorded in this class.
+ * <p>
+ * Each match is identified by its index in the record. Features are resolved to this index through identity hash maps
+ * (a feature involved in several matches resolves to its first match, as before), and the per-match values are kept
+ * in primitive arrays, so that look-ups and updates run in constant time.
  * @author Guangdi Hu
  *
  */
@@ -21,43 +28,71 @@ public class MatchList {
 	private double CONTEXT_SIMILARITY_WEIGHT = 0.8;
 	private double VALID_THRESHOLD = 0;
 	
-	private ArrayList<Integer> sourceFeatureIDs = null;
-	private ArrayList<Integer> targetFeatureIDs = null;
+	private static final int INITIAL_CAPACITY = 16;
+	
+	/**
+	 * Index of the first match of a feature / of a feature ID
+	 */
+	private IdentityHashMap<Feature, Integer> sourceIndices = null;
+	private IdentityHashMap<Feature, Integer> targetIndices = null;
+	private HashMap<Integer, Integer> sourceIDIndices = null;
+	private HashMap<Integer, Integer> targetIDIndices = null;
 	
 	/**
 	 * The following feature lists only contain the matched features, not all the features in the source and target layers
 	 */
 	private ArrayList<Feature> sourceFeatureList = null; 
 	private ArrayList<Feature> targetFeatureList = null; 
-	private ArrayList<Double> contextSimilarties = null;
-	private ArrayList<Double> objectSimilarities = null;
-	private ArrayList<Double> bufferRadiusList = null;
-
-	private ArrayList<Integer> validationStatuses = null;
-	private final int UNDISCOVERED = 0;
-	private final int INQUEUE      = 1;
-	private final int INVALID      = 2;
-	private final int VALID        = 3;
-	private final int NEW          = 4;
+	
+	/**
+	 * Per-match values, aligned with the feature lists; only the first numberOfFeatures() entries are used
+	 */
+	private double[] contextSimilarities = null;
+	private double[] objectSimilarities = null;
+	private double[] bufferRadii = null;
+	private byte[] validationStatuses = null;
+	
+	/**
+	 * Index of the next match involving the same source layer object, -1 at the end of the chain
+	 */
+	private int[] nextMatchOfSource = null;
+	
+	private static final byte UNDISCOVERED = 0;
+	private static final byte INQUEUE      = 1;
+	private static final byte INVALID      = 2;
+	private static final byte VALID        = 3;
+	private static final byte NEW          = 4;
+	
+	/**
+	 * All matches before this index have been discovered, used by supplementSingleMatch()
+	 */
+	private int undiscoveredCursor = 0;
 	
 	/**
 	 * The following fields are used for detecting missing matches
 	 */
 	private ArrayList<Feature> unmatchedSourceFeatures = null; 
 	private ArrayList<Feature> unmatchedTargetFeatures = null; 
+	private IdentityHashMap<Feature, Boolean> unmatchedSourceFeatureSet = null;
+	private IdentityHashMap<Feature, Boolean> unmatchedTargetFeatureSet = null;
 	
 	
 	public MatchList() {
-		sourceFeatureIDs = new ArrayList<Integer>();
-		targetFeatureIDs = new ArrayList<Integer>();
+		sourceIndices = new IdentityHashMap<Feature, Integer>();
+		targetIndices = new IdentityHashMap<Feature, Integer>();
+		sourceIDIndices = new HashMap<Integer, Integer>();
+		targetIDIndices = new HashMap<Integer, Integer>();
 		sourceFeatureList = new ArrayList<Feature>();
 		targetFeatureList = new ArrayList<Feature>();
-		validationStatuses = new ArrayList<Integer>();
-		contextSimilarties = new ArrayList<Double>();
-		objectSimilarities = new ArrayList<Double>();
-		bufferRadiusList = new ArrayList<Double>();
+		contextSimilarities = new double[INITIAL_CAPACITY];
+		objectSimilarities = new double[INITIAL_CAPACITY];
+		bufferRadii = new double[INITIAL_CAPACITY];
+		validationStatuses = new byte[INITIAL_CAPACITY];
+		nextMatchOfSource = new int[INITIAL_CAPACITY];
 		unmatchedSourceFeatures = new ArrayList<Feature>();
 		unmatchedTargetFeatures = new ArrayList<Feature>();
+		unmatchedSourceFeatureSet = new IdentityHashMap<Feature, Boolean>();
+		unmatchedTargetFeatureSet = new IdentityHashMap<Feature, Boolean>();
 	}
 	
 	public ArrayList<Feature> getSourceList() {
@@ -65,11 +100,31 @@ public class MatchList {
 	}
 	
 	public void clear() {
-		for (int i = 0; i < sourceFeatureList.size(); i++) {
-			contextSimilarties.set(i, 1.0);
-			objectSimilarities.set(i, 0.0);
-			validationStatuses.set(i, UNDISCOVERED);
-		}
+		int n = sourceFeatureList.size();
+		Arrays.fill(contextSimilarities, 0, n, 1.0);
+		Arrays.fill(objectSimilarities, 0, n, 0.0);
+		Arrays.fill(validationStatuses, 0, n, UNDISCOVERED);
+		undiscoveredCursor = 0;
+	}
+	
+	/**
+	 * Return the index of the (first) match involving a source layer object
+	 * @param sourceFeature a source layer object
+	 * @return the index of the match in record; -1 if the object is not matched
+	 */
+	public int indexOfSource(Feature sourceFeature) {
+		Integer i = sourceIndices.get(sourceFeature);
+		return i == null ? -1 : i.intValue();
+	}
+	
+	/**
+	 * Return the index of the (first) match involving a target layer object
+	 * @param targetFeature a target layer object
+	 * @return the index of the match in record; -1 if the object is not matched
+	 */
+	public int indexOfTarget(Feature targetFeature) {
+		Integer i = targetIndices.get(targetFeature);
+		return i == null ? -1 : i.intValue();
 	}
 	
 	
@@ -79,40 +134,21 @@ public class MatchList {
 	 * @param targetFeature The target layer object involved in the new match
 	 */
 	public void storeMatch(Feature sourceFeature, Feature targetFeature) {
-		int sourceIndex = sourceFeatureList.indexOf(sourceFeature);
-		int targetIndex = targetFeatureList.indexOf(targetFeature);
-		if (sourceIndex < 0  && targetIndex < 0) {
-			// none of the pair has been stored
-			storeNonDuplicatedMatch(sourceFeature, targetFeature);
-		} else if (sourceIndex >= 0) {
-			// multiple matches are assigned to this source feature, check: if this match has been stored, ignore it
-			boolean duplicated = false;
-			for (int i = sourceIndex; i < sourceFeatureList.size(); i++) {
-				if (sourceFeatureList.get(i) == sourceFeature && targetFeatureList.get(i) == targetFeature) {
-					duplicated = true;
-					break;
-				}
-			}
-			if (!duplicated) {
-				storeNonDuplicatedMatch(sourceFeature, targetFeature);
-			}
-		} else if (targetIndex >= 0) {
-			// multiple matches are assigned to this target feature, check: if this match has been stored, ignore it
-			boolean duplicated = false;
-			for (int i = targetIndex; i < targetFeatureList.size(); i++) {
-				if (sourceFeatureList.get(i) == sourceFeature && targetFeatureList.get(i) == targetFeature) {
-					duplicated = true;
-					break;
-				}
-			}
-			if (!duplicated) {
-				storeNonDuplicatedMatch(sourceFeature, targetFeature);
+		int sourceIndex = indexOfSource(sourceFeature);
+		if (sourceIndex < 0) {
+			// this source feature has not been stored, so the pair cannot be a duplicate
+			storeNonDuplicatedMatch(sourceFeature, targetFeature, -1);
+			return;
+		}
+		// multiple matches are assigned to this source feature, check: if this match has been stored, ignore it
+		int last = sourceIndex;
+		for (int i = sourceIndex; i >= 0; i = nextMatchOfSource[i]) {
+			if (targetFeatureList.get(i) == targetFeature) {
+				return;
 			}
-		} else {
-			System.out.println("//////////////////////////");
-			System.out.println("// None of the cases is evoked in storeMatch(): " + sourceFeature.getID() + "--" + targetFeature.getID());
-			System.out.println("//////////////////////////");
+			last = i;
 		}
+		storeNonDuplicatedMatch(sourceFeature, targetFeature, last);
 	}
 	
 	/**
@@ -121,11 +157,11 @@ public class MatchList {
 	 * @return true if this match is not invalid; false otherwise
 	 */
 	public boolean isSuitableSupportingMatch(Feature f) {
-		int index = sourceFeatureList.indexOf(f);
+		int index = indexOfSource(f);
 		if( index == -1) {
 			return false; // no match
 		} else {
-			if (validationStatuses.get(index) == INVALID) {
+			if (validationStatuses[index] == INVALID) {
 				return false;
 			}
 			return true;
@@ -138,29 +174,64 @@ public class MatchList {
 	 * @return false if all matches have been processed; true otherwise
 	 */
 	public boolean supplementSingleMatch(Queue<Feature> queue) {
-		for (int i = 0 ; i < validationStatuses.size(); i++) {
+		// a discovered match never goes back to UNDISCOVERED (except through clear()), so the scan can resume where it stopped
+		for (int i = undiscoveredCursor; i < sourceFeatureList.size(); i++) {
 			if (shouldBeQueued(sourceFeatureList.get(i))) {
 				queue.offer(sourceFeatureList.get(i));
-				validationStatuses.set(i, INQUEUE);
+				validationStatuses[i] = INQUEUE;
+				undiscoveredCursor = i + 1;
 				System.out.println("Supplement Match: " + sourceFeatureList.get(i).getID());
 				return true;
 			}
 		}
+		undiscoveredCursor = sourceFeatureList.size();
 		return false;
 	}
 	
 	/**
 	 * Auxiliary method for add a match into record, and initialize its statuses
+	 * @param previousOfSource index of the last match stored for the same source feature, -1 if none
 	 */
-	private void storeNonDuplicatedMatch(Feature sourceFeature, Feature targetFeature) {
-		sourceFeatureIDs.add(sourceFeature.getID());
-		targetFeatureIDs.add(targetFeature.getID());
+	private void storeNonDuplicatedMatch(Feature sourceFeature, Feature targetFeature, int previousOfSource) {
+		int i = sourceFeatureList.size();
+		ensureCapacity(i + 1);
+		if (previousOfSource < 0) {
+			sourceIndices.put(sourceFeature, i);
+		} else {
+			nextMatchOfSource[previousOfSource] = i;
+		}
+		if (!targetIndices.containsKey(targetFeature)) {
+			targetIndices.put(targetFeature, i);
+		}
+		if (!sourceIDIndices.containsKey(sourceFeature.getID())) {
+			sourceIDIndices.put(sourceFeature.getID(), i);
+		}
+		if (!targetIDIndices.containsKey(targetFeature.getID())) {
+			targetIDIndices.put(targetFeature.getID(), i);
+		}
 		sourceFeatureList.add(sourceFeature);
 		targetFeatureList.add(targetFeature);
-		validationStatuses.add(UNDISCOVERED);
-		contextSimilarties.add(1.0);
-		objectSimilarities.add(0.0); // object similarity will be considered only if context similarity lower than threshold, so it is initiated to 0
-		bufferRadiusList.add(0.0);
+		nextMatchOfSource[i] = -1;
+		validationStatuses[i] = UNDISCOVERED;
+		contextSimilarities[i] = 1.0;
+		objectSimilarities[i] = 0.0; // object similarity will be considered only if context similarity lower than threshold, so it is initiated to 0
+		bufferRadii[i] = 0.0;
+	}
+	
+	/**
+	 * Grow the per-match arrays so that they can hold at least minCapacity matches
+	 */
+	private void ensureCapacity(int minCapacity) {
+		int capacity = validationStatuses.length;
+		if (minCapacity <= capacity) {
+			return;
+		}
+		int newCapacity = Math.max(minCapacity, capacity + (capacity >> 1));
+		contextSimilarities = Arrays.copyOf(contextSimilarities, newCapacity);
+		objectSimilarities = Arrays.copyOf(objectSimilarities, newCapacity);
+		bufferRadii = Arrays.copyOf(bufferRadii, newCapacity);
+		validationStatuses = Arrays.copyOf(validationStatuses, newCapacity);
+		nextMatchOfSource = Arrays.copyOf(nextMatchOfSource, newCapacity);
 	}
 	
 	/**
@@ -168,8 +239,9 @@ public class MatchList {
 	 * @param sourceFeature the being checked source layer object
 	 */
 	public void tryAddUnmatchedSourceFeature(Feature sourceFeature) {
-		if (!sourceFeatureList.contains(sourceFeature) && !unmatchedSourceFeatures.contains(sourceFeature)) {
+		if (!sourceIndices.containsKey(sourceFeature) && !unmatchedSourceFeatureSet.containsKey(sourceFeature)) {
 			unmatchedSourceFeatures.add(sourceFeature);
+			unmatchedSourceFeatureSet.put(sourceFeature, Boolean.TRUE);
 		}
 	}
 	
@@ -178,8 +250,9 @@ public class MatchList {
 	 * @param sourceFeature the being checked target layer object
 	 */
 	public void tryAddUnmatchedTargetFeature(Feature targetFeature) {
-		if (!targetFeatureList.contains(targetFeature) && !unmatchedTargetFeatures.contains(targetFeature)) {
+		if (!targetIndices.containsKey(targetFeature) && !unmatchedTargetFeatureSet.containsKey(targetFeature)) {
 			unmatchedTargetFeatures.add(targetFeature);
+			unmatchedTargetFeatureSet.put(targetFeature, Boolean.TRUE);
 		}
 	}
 	
@@ -189,8 +262,8 @@ public class MatchList {
 	 * @return The source layer object specified by the input id
 	 */
 	public Feature getSourceFeatureByID(int id) {
-		int index = sourceFeatureIDs.indexOf(id);
-		if (index == -1) {
+		Integer index = sourceIDIndices.get(id);
+		if (index == null) {
 			return null;
 		}
 		return sourceFeatureList.get(index);
@@ -202,8 +275,8 @@ public class MatchList {
 	 * @return The target layer object specified by the input id
 	 */
 	public Feature getTargetFeatureByID(int id) {
-		int index = targetFeatureIDs.indexOf(id);
-		if (index == -1) {
+		Integer index = targetIDIndices.get(id);
+		if (index == null) {
 			return null;
 		}
 		return targetFeatureList.get(index);
@@ -233,7 +306,7 @@ public class MatchList {
 	 * @return the corresponding object in target layer 
 	 */
 	public Feature getMatchedTargetFeature(Feature sourceFeature) {
-		int i = sourceFeatureList.indexOf(sourceFeature);
+		int i = indexOfSource(sourceFeature);
 		if (i == -1) {
 			return null;
 		} else {
@@ -247,7 +320,7 @@ public class MatchList {
 	 * @return the corresponding object in source layer 
 	 */
 	public Feature getMatchedSourceFeature(Feature targetFeature) {
-		int i = targetFeatureList.indexOf(targetFeature);
+		int i = indexOfTarget(targetFeature);
 		if ( i == -1 ) {
 			return null;
 		} else {
@@ -259,7 +332,7 @@ public class MatchList {
 	 * Return the number of recorded matches
 	 */
 	public int numberOfFeatures() {
-		if (sourceFeatureList.size() == targetFeatureList.size() && sourceFeatureList.size() == validationStatuses.size()) {
+		if (sourceFeatureList.size() == targetFeatureList.size()) {
 			return sourceFeatureList.size();
 		} else {
 			return -1;
@@ -272,11 +345,11 @@ public class MatchList {
 	 * @return true if it has not been discovered
 	 */
 	public boolean shouldBeQueued(Feature sourceFeature) {
-		int i = sourceFeatureList.indexOf(sourceFeature);
+		int i = indexOfSource(sourceFeature);
 		if (i == -1) {
 			return false;
 		}
-		if (validationStatuses.get(i) == UNDISCOVERED) {
+		if (validationStatuses[i] == UNDISCOVERED) {
 			return true;
 		} else {
 			return false;
@@ -288,10 +361,7 @@ public class MatchList {
 	 * @param sourceFeature the target match
 	 */
 	public void setAsInQueue(Feature sourceFeature) {
-		int i = sourceFeatureList.indexOf(sourceFeature);
-		if (i >= 0) {
-			validationStatuses.set(i, INQUEUE);
-		}
+		setStatus(sourceFeature, INQUEUE);
 	}
 	
 	/**
@@ -299,10 +369,7 @@ public class MatchList {
 	 * @param sourceFeature the target match
 	 */
 	public void setAsInvalid(Feature sourceFeature) {
-		int i = sourceFeatureList.indexOf(sourceFeature);
-		if (i >= 0) {
-			validationStatuses.set(i, INVALID);
-		}
+		setStatus(sourceFeature, INVALID);
 	}
 	
 	/**
@@ -310,10 +377,7 @@ public class MatchList {
 	 * @param sourceFeature the target match
 	 */
 	public void setAsValid(Feature sourceFeature) {
-		int i = sourceFeatureList.indexOf(sourceFeature);
-		if (i >= 0) {
-			validationStatuses.set(i, VALID);
-		}
+		setStatus(sourceFeature, VALID);
 	}
 	
 	/**
@@ -321,9 +385,13 @@ public class MatchList {
 	 * @param sourceFeature the target match
 	 */
 	public void setAsNew(Feature sourceFeature) {
-		int i = sourceFeatureList.indexOf(sourceFeature);
+		setStatus(sourceFeature, NEW);
+	}
+	
+	private void setStatus(Feature sourceFeature, byte status) {
+		int i = indexOfSource(sourceFeature);
 		if (i >= 0) {
-			validationStatuses.set(i, NEW);
+			validationStatuses[i] = status;
 		}
 	}
 	
@@ -333,9 +401,9 @@ public class MatchList {
 	 * @return true if the match is invalid
 	 */
 	public boolean isInvalid(Feature sourceFeature) {
-		int i = sourceFeatureList.indexOf(sourceFeature);
+		int i = indexOfSource(sourceFeature);
 		if (i >= 0) {
-			return validationStatuses.get(i) == INVALID || validationStatuses.get(i) == NEW; // ignore newly detected omitted matches
+			return validationStatuses[i] == INVALID || validationStatuses[i] == NEW; // ignore newly detected omitted matches
 		} else {
 			return true;
 		}
@@ -348,12 +416,12 @@ public class MatchList {
 	 * @param similarity context similarity
 	 */
 	public void setContextSimilarity(Feature srcFeature, Double similarity) {
-		int i = sourceFeatureList.indexOf(srcFeature);
+		int i = indexOfSource(srcFeature);
 		if (i == -1) {
 			System.out.println("--setContextSimilarity-- feature not found id = " + srcFeature.getID());
 			return;
 		}
-		contextSimilarties.set(i, similarity);
+		contextSimilarities[i] = similarity;
 	}
 	
 	/**
@@ -362,12 +430,12 @@ public class MatchList {
 	 * @param similarity object similarity
 	 */
 	public void setObjectSimilarity(Feature srcFeature, Double similarity) {
-		int i = sourceFeatureList.indexOf(srcFeature);
+		int i = indexOfSource(srcFeature);
 		if (i == -1) {
 			System.out.println("--setObjectSimilarity-- feature not found id = " + srcFeature.getID());
 			return;
 		}
-		objectSimilarities.set(i, similarity);
+		objectSimilarities[i] = similarity;
 	}
 	
 	/**
@@ -376,9 +444,9 @@ public class MatchList {
 	 * @return context similarity of this match
 	 */
 	public double getContextSimilarity(Feature f) {
-		int i = sourceFeatureList.indexOf(f);
+		int i = indexOfSource(f);
 		if (i >= 0) {
-			return contextSimilarties.get(i);
+			return contextSimilarities[i];
 		}
 		System.out.println("--getContextSimilarity-- Feature Not Found id = " + f.getID());
 		return 0;
@@ -390,9 +458,9 @@ public class MatchList {
 	 * @return object similarity of this match
 	 */
 	public double getObjectSimilarity(Feature f) {
-		int i = sourceFeatureList.indexOf(f);
+		int i = indexOfSource(f);
 		if (i >= 0) {
-			return objectSimilarities.get(i);
+			return objectSimilarities[i];
 		}
 		System.out.println("--getObjectSimilarity-- Feature Not Found id = " + f.getID());
 		return 0;
@@ -404,9 +472,9 @@ public class MatchList {
 	 * @return the confidence level of this match
 	 */
 	public double getConfidenceLevel(Feature f) {
-		int i = sourceFeatureList.indexOf(f);
+		int i = indexOfSource(f);
 		if (i >= 0) {
-			return contextSimilarties.get(i) * CONTEXT_SIMILARITY_WEIGHT + objectSimilarities.get(i) * (1 - CONTEXT_SIMILARITY_WEIGHT);
+			return contextSimilarities[i] * CONTEXT_SIMILARITY_WEIGHT + objectSimilarities[i] * (1 - CONTEXT_SIMILARITY_WEIGHT);
 		}
 		System.out.println("--getConfidenceLevel-- Feature Not Found id = " + f.getID());
 		return 0;
@@ -439,13 +507,13 @@ public class MatchList {
 		validColl = new FeatureDataset(fs);
 		invalidColl = new FeatureDataset(fs);
 		for (int i = 0; i < sourceFeatureList.size(); i++) {
-			if (validationStatuses.get(i) == VALID) {
+			if (validationStatuses[i] == VALID) {
 				validColl.add(sourceFeatureList.get(i).clone(true));
-			} else if (validationStatuses.get(i) == INVALID) {
+			} else if (validationStatuses[i] == INVALID) {
 				invalidColl.add(sourceFeatureList.get(i).clone(true));
 			} else {
-				if (validationStatuses.get(i) != NEW)
-					System.out.println("Neither Valid nor Invalid: " + validationStatuses.get(i));
+				if (validationStatuses[i] != NEW)
+					System.out.println("Neither Valid nor Invalid: " + validationStatuses[i]);
 			}
 		}
 		return new Pair<FeatureCollection, FeatureCollection>(validColl, invalidColl);
@@ -462,7 +530,7 @@ public class MatchList {
 		sourceColl = new FeatureDataset(fs);
 		targetColl = new FeatureDataset(fs);
 		for (int i = 0; i < sourceFeatureList.size(); i++) {
-			if (validationStatuses.get(i) == NEW) {
+			if (validationStatuses[i] == NEW) {
 				sourceColl.add(sourceFeatureList.get(i).clone(false));
 				targetColl.add(targetFeatureList.get(i).clone(false));
 			}
@@ -476,9 +544,9 @@ public class MatchList {
 	 * @param r buffer radius
 	 */
 	public void setBufferRadius(Feature feature, double r) {
-		int i = sourceFeatureList.indexOf(feature);
+		int i = indexOfSource(feature);
 		if (i >= 0) {
-			bufferRadiusList.set(i, r);
+			bufferRadii[i] = r;
 		}
 	}
 	
@@ -488,11 +556,11 @@ public class MatchList {
 	 * @return the buffer radius of the match; -1 if the match not exists
 	 */
 	public double getBufferRadius(Feature feature) {
-		int i = sourceFeatureList.indexOf(feature);
+		int i = indexOfSource(feature);
 		if (i == -1) {
 			return 0;		
 		}
-		return bufferRadiusList.get(i);
+		return bufferRadii[i];
 	}
 
 	/**
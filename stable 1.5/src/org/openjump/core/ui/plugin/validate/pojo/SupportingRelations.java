@@ -1,6 +1,7 @@
 package org.openjump.core.ui.plugin.validate.pojo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.openjump.core.ui.plugin.validate.SharedSpace;
 
@@ -10,37 +11,60 @@ import com.vividsolutions.jump.feature.Feature;
 /**
  * Used to record the dependence between each candidate match and its supporting matches.
  * In backtracking, the algorithm look up the records in this class to identify the matches which are influenced by the invalid match.
+ * <p>
+ * Matches are identified by their index in the {@link MatchList}, the adjacency of each match is kept in an int array
+ * (with the number of used entries stored aside), so no feature list has to be searched when recording or looking up a dependence.
  * @author Guangdi Hu
  *
  */
 public class SupportingRelations {
 	SharedSpace sharedSpace = SharedSpace.getInstance();
-	private ArrayList<Feature> features = null;
-	private ArrayList<ArrayList<Feature>> beSupportedBy = null;
-	private ArrayList<ArrayList<Feature>> supports = null;
-	
+	private MatchList matchList = null;
+
+	private static final int[] EMPTY = new int[0];
+
+	/**
+	 * beSupportedBy[i]: indices of the supporting matches of match i
+	 */
+	private int[][] beSupportedBy = null;
+
+	/**
+	 * supports[i][0..supportsCount[i]): indices of the matches supported by match i
+	 */
+	private int[][] supports = null;
+	private int[] supportsCount = null;
+
+	private int size = 0;
+
 	public SupportingRelations() {
-		beSupportedBy = new ArrayList<ArrayList<Feature>>();
-		supports = new ArrayList<ArrayList<Feature>>();
-		features = sharedSpace.getMatchList().getSourceList();
-		for (int i = 0; i < features.size(); i++) {
-			beSupportedBy.add(new ArrayList<Feature>());
-			supports.add(new ArrayList<Feature>());
-		}
+		matchList = sharedSpace.getMatchList();
+		size = matchList.getSourceList().size();
+		beSupportedBy = new int[Math.max(size, 1)][];
+		supports = new int[Math.max(size, 1)][];
+		supportsCount = new int[Math.max(size, 1)];
+		Arrays.fill(beSupportedBy, EMPTY);
+		Arrays.fill(supports, EMPTY);
 	}
-	
+
 	/**
 	 * Assign a new space to record the dependence for a detected missing match.
 	 */
 	public void addMatchSpace() {
-		beSupportedBy.add(new ArrayList<Feature>());
-		supports.add(new ArrayList<Feature>());
+		if (size == beSupportedBy.length) {
+			int capacity = size + (size >> 1) + 1;
+			beSupportedBy = Arrays.copyOf(beSupportedBy, capacity);
+			supports = Arrays.copyOf(supports, capacity);
+			supportsCount = Arrays.copyOf(supportsCount, capacity);
+			Arrays.fill(beSupportedBy, size, capacity, EMPTY);
+			Arrays.fill(supports, size, capacity, EMPTY);
+		}
+		size++;
 	}
-	
+
 	/**
 	 * Record the dependence between one candidate match and its supporting matches.
-	 * The dependence on each match composes of two parts: 
-	 * which matches are the supporting match of this match, and this match acts as the supporting match of which matches 
+	 * The dependence on each match composes of two parts:
+	 * which matches are the supporting match of this match, and this match acts as the supporting match of which matches
 	 * @param beSupportedFeature
 	 * @param ss
 	 * @param omittedMatch true if the current match is omitted match, so it can only be supported by others, but not support other matches
@@ -49,74 +73,126 @@ public class SupportingRelations {
 		if (ss.isEmpty()) {
 			return;
 		}
-		
-		// Clean the previous supporting relation (let others forget they have support this match)
-		int i = features.indexOf(beSupportedFeature);
+
+		int i = indexOf(beSupportedFeature);
 		if (i == -1) {
 			System.out.println("--SupportingRelations-- the center feature is not found in record id = " + beSupportedFeature.getID());
+			return;
+		}
+
+		int[] newSupporting = new int[ss.size()];
+		int n = 0;
+		for (Feature f : ss) {
+			int index = indexOf(f);
+			if (index == -1) {
+				System.out.println("--SupportingRelations-- not found record of id = " + f.getID());
+			} else {
+				newSupporting[n++] = index;
+			}
 		}
-		ArrayList<Feature> nn = (ArrayList<Feature>)beSupportedBy.get(i).clone();
-		
-		
+		newSupporting = Arrays.copyOf(newSupporting, n);
+
 		// Set new supporting relation
 		if (!omittedMatch) {
-			for (Feature f : nn) {
-				if (!ss.contains(f)) { // if the context has been changed, let the origin context forget they have supported this match
-					int index = features.indexOf(f);
-					if (index == -1) {
-						System.out.println("--SupportingRelations-- not found record of id = " + f.getID());
-					} else {
-						ArrayList<Feature> newSupports = new ArrayList<Feature>();
-						for (Feature sup : supports.get(index)) {
-							if ( sup != beSupportedFeature) {
-								newSupports.add(sup);
-							}
-						}
-						supports.set(index, newSupports);
-					}
+			// Clean the previous supporting relation (let others forget they have support this match)
+			for (int index : beSupportedBy[i]) {
+				if (!contains(newSupporting, newSupporting.length, index)) {
+					removeSupport(index, i);
 				}
 			}
-			for (Feature f : ss) {
-				int index = features.indexOf(f);
-				if (index == -1) {
-					System.out.println("--SupportingRelations-- not found record of id = " + f.getID());
-				} else {
-					if (!supports.get(index).contains(beSupportedFeature)) {
-						supports.get(index).add(beSupportedFeature);
-					}
-				}
+			for (int index : newSupporting) {
+				addSupport(index, i);
 			}
 		}
-		
 
-		beSupportedBy.set(i, ss);
+		beSupportedBy[i] = newSupporting;
 	}
-	
+
 	/**
 	 * Identify all the matches whose supporting matches contains the input match
 	 * @param f The source layer object involved in a match
 	 * @return A list of matches influenced by the input match
 	 */
 	public ArrayList<Feature> getFeaturesSupportedBy(Feature f) {
-		int index = features.indexOf(f);
+		int index = indexOf(f);
 		if (index == -1) {
 			return null;
 		} else {
-			return supports.get(index);
+			return toFeatures(supports[index], supportsCount[index]);
 		}
 	}
-	
+
 	/**
 	 * Find all the supporting matches of the input match
 	 * @param f The source layer object involved in a match
 	 * @return The list of supporting matches of the input match
 	 */
 	public ArrayList<Feature> getSupportingFeaturesOf(Feature f) {
-		int index = features.indexOf(f);
+		int index = indexOf(f);
 		if (index == -1) {
 			return null;
 		} else {
-			return beSupportedBy.get(index);
+			return toFeatures(beSupportedBy[index], beSupportedBy[index].length);
+		}
+	}
+
+	/**
+	 * Identify all the matches supported by a match, by their index in the match list
+	 * @param matchIndex index of the supporting match
+	 * @return a copy of the indices of the matches influenced by this match
+	 */
+	public int[] getIndicesSupportedBy(int matchIndex) {
+		if (matchIndex < 0 || matchIndex >= size) {
+			return EMPTY;
+		}
+		return Arrays.copyOf(supports[matchIndex], supportsCount[matchIndex]);
+	}
+
+	private int indexOf(Feature f) {
+		int index = matchList.indexOfSource(f);
+		return index < size ? index : -1;
+	}
+
+	private void addSupport(int supporting, int supported) {
+		int[] list = supports[supporting];
+		int count = supportsCount[supporting];
+		if (contains(list, count, supported)) {
+			return;
+		}
+		if (count == list.length) {
+			list = Arrays.copyOf(list, Math.max(4, count * 2));
+			supports[supporting] = list;
+		}
+		list[count] = supported;
+		supportsCount[supporting] = count + 1;
+	}
+
+	private void removeSupport(int supporting, int supported) {
+		int[] list = supports[supporting];
+		int count = supportsCount[supporting];
+		int j = 0;
+		for (int k = 0; k < count; k++) {
+			if (list[k] != supported) {
+				list[j++] = list[k];
+			}
+		}
+		supportsCount[supporting] = j;
+	}
+
+	private static boolean contains(int[] list, int count, int value) {
+		for (int k = 0; k < count; k++) {
+			if (list[k] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private ArrayList<Feature> toFeatures(int[] indices, int count) {
+		ArrayList<Feature> features = new ArrayList<Feature>(count);
+		for (int k = 0; k < count; k++) {
+			features.add(matchList.getSourceFeatureByIndex(indices[k]));
 		}
+		return features;
 	}
 }
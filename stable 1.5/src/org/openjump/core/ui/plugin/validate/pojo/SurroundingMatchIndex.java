@@ -0,0 +1,171 @@
+package org.openjump.core.ui.plugin.validate.pojo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.strtree.AbstractNode;
+import com.vividsolutions.jts.index.strtree.Boundable;
+import com.vividsolutions.jts.index.strtree.ItemBoundable;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import com.vividsolutions.jump.feature.Feature;
+
+/**
+ * A spatial index over the source layer objects, used to define the context of a candidate match.
+ * Instead of testing a growing buffer against every object in the layer, the index finds the k-th
+ * nearest suitable supporting match with an incremental (best-first) nearest neighbour search,
+ * and collects the supporting matches within a given radius with a single window query.
+ * <p>
+ * The index is read-only once built, so it can be queried from several threads at the same time.
+ * @author Guangdi Hu
+ *
+ */
+public class SurroundingMatchIndex {
+
+	private STRtree index = null;
+
+	/**
+	 * Position of each indexed object in the input collection, used to return the objects in layer order
+	 */
+	private IdentityHashMap<Feature, Integer> positions = null;
+
+	private final Comparator<Feature> layerOrder = new Comparator<Feature>() {
+		public int compare(Feature f1, Feature f2) {
+			return positions.get(f1).compareTo(positions.get(f2));
+		}
+	};
+
+	public SurroundingMatchIndex(Collection<Feature> features) {
+		index = new STRtree();
+		positions = new IdentityHashMap<Feature, Integer>();
+		for (Feature f : features) {
+			if (positions.containsKey(f)) {
+				continue;
+			}
+			positions.put(f, positions.size());
+			index.insert(f.getGeometry().getEnvelopeInternal(), f);
+		}
+		index.build();
+	}
+
+	/**
+	 * Find the distance between a candidate object and its k-th nearest suitable supporting match.
+	 * @param center The source layer object involved in the candidate match
+	 * @param k The number of supporting matches needed
+	 * @param matchList The match list, used to decide whether an object is a suitable supporting match
+	 * @return the distance to the k-th nearest suitable supporting match;
+	 * the distance to the farthest one if fewer than k suitable supporting matches exist; -1 if there is none
+	 */
+	public double distanceToNearest(Feature center, int k, MatchList matchList) {
+		if (index.size() == 0) {
+			return -1;
+		}
+		Geometry geom = center.getGeometry();
+		Envelope env = geom.getEnvelopeInternal();
+		PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>();
+		queue.add(new Candidate(index.getRoot(), 0.0, false));
+		int found = 0;
+		double distance = -1;
+		while (!queue.isEmpty()) {
+			Candidate c = queue.poll();
+			if (c.boundable instanceof AbstractNode) {
+				for (Object child : ((AbstractNode)c.boundable).getChildBoundables()) {
+					Boundable b = (Boundable)child;
+					queue.add(new Candidate(b, env.distance((Envelope)b.getBounds()), false));
+				}
+				continue;
+			}
+			Feature f = (Feature)((ItemBoundable)c.boundable).getItem();
+			if (f == center || !matchList.isSuitableSupportingMatch(f)) {
+				continue;
+			}
+			if (!c.exact) {
+				// the envelope distance is only a lower bound, queue the object again with its exact distance
+				queue.add(new Candidate(c.boundable, geom.distance(f.getGeometry()), true));
+				continue;
+			}
+			distance = c.distance;
+			if (++found >= k) {
+				break;
+			}
+		}
+		return distance;
+	}
+
+	/**
+	 * Find all the suitable supporting matches within a distance of a candidate object.
+	 * @param center The source layer object involved in the candidate match
+	 * @param radius The search radius
+	 * @param matchList The match list, used to decide whether an object is a suitable supporting match
+	 * @return the supporting matches, in the order of the indexed collection
+	 */
+	public ArrayList<Feature> queryWithinDistance(Feature center, double radius, MatchList matchList) {
+		Geometry geom = center.getGeometry();
+		Envelope env = new Envelope(geom.getEnvelopeInternal());
+		env.expandBy(radius);
+		List candidates = index.query(env);
+		ArrayList<Feature> result = new ArrayList<Feature>();
+		for (Object o : candidates) {
+			Feature f = (Feature)o;
+			if (f != center && matchList.isSuitableSupportingMatch(f) && geom.isWithinDistance(f.getGeometry(), radius)) {
+				result.add(f);
+			}
+		}
+		Collections.sort(result, layerOrder);
+		return result;
+	}
+
+	/**
+	 * Find all the indexed objects within a distance of a candidate object, whatever their status.
+	 * @param center The source layer object involved in the candidate match
+	 * @param radius The search radius
+	 * @return the objects found, in no particular order
+	 */
+	public ArrayList<Feature> queryAllWithinDistance(Feature center, double radius) {
+		Geometry geom = center.getGeometry();
+		Envelope env = new Envelope(geom.getEnvelopeInternal());
+		env.expandBy(radius);
+		List candidates = index.query(env);
+		ArrayList<Feature> result = new ArrayList<Feature>();
+		for (Object o : candidates) {
+			Feature f = (Feature)o;
+			if (f != center && geom.isWithinDistance(f.getGeometry(), radius)) {
+				result.add(f);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * An entry of the best-first search, ordered by its (lower bound) distance to the query geometry.
+	 */
+	private static class Candidate implements Comparable<Candidate> {
+
+		private Boundable boundable;
+		private double distance;
+		private boolean exact;
+
+		Candidate(Boundable boundable, double distance, boolean exact) {
+			this.boundable = boundable;
+			this.distance = distance;
+			this.exact = exact;
+		}
+
+		public int compareTo(Candidate o) {
+			if (distance != o.distance) {
+				return distance < o.distance ? -1 : 1;
+			}
+			// expand exact distances first, so that ties are resolved without looking further
+			if (exact != o.exact) {
+				return exact ? -1 : 1;
+			}
+			return 0;
+		}
+	}
+}